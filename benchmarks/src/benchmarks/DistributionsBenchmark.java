@@ -0,0 +1,76 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import main.MersenneTwisterFast;
+import math.Distributions;
+import math.Distributions.Distribution;
+import math.Numeric;
+
+/**
+ * Samples from common distributions.  Each case is given as the name followed by its parameters, separated by spaces (integers without a decimal point)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DistributionsBenchmark{
+
+	@Param({"Unif 0.0 1.0", "Norm 0.0 1.0", "LogNorm 0.0 0.5", "Gamma 2.0 1.0", "Beta 2.0 5.0", "Bin 20 0.3", "Pois 4.0", "Tri 0.0 1.0 3.0"})
+	public String dist;
+	
+	Distribution distribution;
+	Numeric params[];
+	MersenneTwisterFast generator;
+	
+	@Setup
+	public void setup(){
+		String parts[]=dist.split(" ");
+		distribution=Distributions.getDistribution(parts[0]);
+		params=new Numeric[parts.length-1];
+		for(int i=0; i<params.length; i++){
+			String value=parts[i+1];
+			if(value.contains(".")){params[i]=new Numeric(Double.parseDouble(value));}
+			else{params[i]=new Numeric(Integer.parseInt(value));}
+		}
+		generator=new MersenneTwisterFast(1234);
+	}
+	
+	@Benchmark
+	public Numeric sample() throws Exception{
+		return(Distributions.sample(distribution, params, generator));
+	}
+}
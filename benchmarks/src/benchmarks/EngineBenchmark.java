@@ -0,0 +1,67 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import base.AmuaModel;
+import base.RunReport;
+
+/**
+ * Runs each reference model end to end, as a cluster run would.  The model decides the engine:
+ * smallTree/largeTree - DecisionTree cohort, treeMicrosim - TreeMonteCarlo,
+ * cohort/tables - MarkovCohort, microsim - MarkovMonteCarloPOOL.
+ * Models are saved with numThreads=1 so results measure the engine, not the scheduler.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=5, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EngineBenchmark{
+
+	@Param({"smallTree","largeTree","treeMicrosim","cohort","tables","microsim"})
+	public String model;
+	
+	AmuaModel myModel;
+	
+	@Setup
+	public void setup() throws Exception{
+		myModel=Models.open(model);
+	}
+	
+	@Benchmark
+	public RunReport run(){
+		return(myModel.runModel(null, false));
+	}
+}
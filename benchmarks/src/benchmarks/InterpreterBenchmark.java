@@ -0,0 +1,70 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import base.AmuaModel;
+import main.MersenneTwisterFast;
+import math.Interpreter;
+import math.Numeric;
+import math.Token;
+
+/**
+ * Evaluates pre-parsed expressions from the tables model: arithmetic on parameters, functions of a variable,
+ * a table lookup, and a distribution sample
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InterpreterBenchmark{
+
+	@Param({"pSick*hrTrt+(1-pSick)*pRecover", "rrS1*mBase*exp(0.05*(age-40))", "0.75*tUtil[age,\"Female\"]", "Norm(40,5,~)"})
+	public String expression;
+	
+	Token tokens[];
+	
+	@Setup
+	public void setup() throws Exception{
+		AmuaModel myModel=Models.open("tables");
+		myModel.curGenerator=new MersenneTwisterFast[]{new MersenneTwisterFast(1234)};
+		tokens=Interpreter.parse(expression, myModel);
+	}
+	
+	@Benchmark
+	public Numeric evaluate() throws Exception{
+		return(Interpreter.evaluateTokens(tokens, 0, true));
+	}
+}
@@ -0,0 +1,47 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line options.  The GC profiler is added unless other
+ * profilers are given, so every run reports allocation rates (gc.alloc.rate.norm = bytes per op) next to ops/sec.
+ */
+public class Main{
+
+	public static void main(String args[]) throws Exception{
+		CommandLineOptions cmdOptions=new CommandLineOptions(args);
+		if(cmdOptions.shouldHelp() || cmdOptions.shouldList() || cmdOptions.shouldListProfilers()
+				|| cmdOptions.shouldListResultFormats() || cmdOptions.shouldListWithParams()){
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		ChainedOptionsBuilder options=new OptionsBuilder().parent(cmdOptions);
+		if(cmdOptions.getProfilers().isEmpty()){
+			options.addProfiler(GCProfiler.class);
+		}
+		new Runner(options.build()).run();
+	}
+}
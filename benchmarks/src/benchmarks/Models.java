@@ -0,0 +1,62 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package benchmarks;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+import base.AmuaModel;
+import cluster.ClusterRun;
+
+/**
+ * Reference models bundled with the benchmarks (models/*.amua)
+ */
+final class Models{
+
+	private Models(){
+		
+	}
+	
+	/**
+	 * Opens and checks a reference model without a display
+	 * @param name File name without the .amua extension
+	 */
+	static AmuaModel open(String name) throws Exception{
+		InputStream in=Models.class.getResourceAsStream("/models/"+name+".amua");
+		if(in==null){throw new IllegalArgumentException("Unknown model: "+name);}
+		//ClusterRun opens models from a file
+		File file=File.createTempFile(name, ".amua");
+		file.deleteOnExit();
+		try{
+			Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally{
+			in.close();
+		}
+		AmuaModel myModel=ClusterRun.openModel(file.getAbsolutePath());
+		ArrayList<String> errors=myModel.parseModel();
+		if(errors.size()>0){
+			throw new IllegalStateException(name+": "+errors.get(0));
+		}
+		return(myModel);
+	}
+}
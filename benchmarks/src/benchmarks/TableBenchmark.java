@@ -0,0 +1,68 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import base.AmuaModel;
+import main.Table;
+
+/**
+ * Looks up ages 0-100 in the tables model: tMort (Truncate, 101 rows), tUtil (Linear, 11 rows), tCost (Cubic Splines, 6 rows)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TableBenchmark{
+
+	@Param({"tMort","tUtil","tCost"})
+	public String table;
+	
+	Table curTable;
+	int age;
+	
+	@Setup
+	public void setup() throws Exception{
+		AmuaModel myModel=Models.open("tables");
+		curTable=myModel.tables.get(myModel.getTableIndex(table));
+	}
+	
+	@Benchmark
+	public double lookup(){
+		age++;
+		if(age>100){age=0;}
+		return(curTable.getLookupValue(age+0.5, "\"Female\""));
+	}
+}
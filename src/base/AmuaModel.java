@@ -23,7 +23,9 @@ import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
@@ -88,7 +90,9 @@ public class AmuaModel{
 	@XmlElement public boolean CRN; //common random numbers
 	@XmlElement public int crnSeed; //CRN seed
 	@XmlElement public boolean displayIndResults;
+	@XmlElement public boolean streamMicrosim; //only keep summaries of individual results - process people in batches where possible
 	@XmlElement public int numThreads=1;
+	@XmlElement public boolean compileExpressions=true; //evaluate scalar expressions with compiled form
 	//Subgroup settings
 	@XmlElement public boolean reportSubgroups;
 	@XmlElement public ArrayList<String> subgroupNames, subgroupDefinitions;
@@ -111,6 +115,10 @@ public class AmuaModel{
 	//innate vars
 	@XmlTransient public ArrayList<Variable> innateVariables;
 	@XmlTransient public MarkovTrace traceMarkov;
+	//parsed expressions
+	@XmlTransient public int version; //incremented on each edit
+	@XmlTransient volatile ConcurrentHashMap<String,Token[]> parsedExpressions;
+	@XmlTransient int parsedVersion, parsedThreads;
 		
 	//Display
 	@XmlTransient public frmMain mainForm;
@@ -531,8 +539,8 @@ public class AmuaModel{
 			curParam.valid=true;
 			if(curParam.locked==false){
 				try{
-					curParam.parsedTokens=Interpreter.parse(curParam.expression,this);
-					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, false);
+					curParam.parsedTokens=parseExpression(curParam.expression);
+					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, false).copy();
 					
 				}catch(Exception e){
 					curParam.valid=false;
@@ -547,10 +555,9 @@ public class AmuaModel{
 		for(int i=0; i<numVars; i++){
 			Variable curVar=variables.get(i);
 			curVar.valid=true;
+			curVar.dependents=new ArrayList<Variable>();
 			try{
-				curVar.parsedTokens=Interpreter.parse(curVar.expression, this);
-				curVar.value[0]=Interpreter.evaluateTokens(curVar.parsedTokens, 0, false);
-				curVar.dependents=new ArrayList<Variable>();
+				curVar.parsedTokens=parseExpression(curVar.expression);
 			}catch(Exception e){
 				curVar.valid=false;
 				curVar.parsedTokens=null;
@@ -558,9 +565,10 @@ public class AmuaModel{
 			}
 		}
 		//get variable dependents
+		Variable curT=null;
 		if(type==1) { //Markov
 			int indexT=getInnateVariableIndex("t");
-			Variable curT=innateVariables.get(indexT);
+			curT=innateVariables.get(indexT);
 			curT.dependents=new ArrayList<Variable>();
 		}
 		for(int i=0; i<numVars; i++){
@@ -569,6 +577,18 @@ public class AmuaModel{
 				curVar.getDependents(this);
 			}
 		}
+		ArrayList<Variable> order=scheduleVariables(curT);
+		//evaluate in dependency order
+		for(int i=0; i<order.size(); i++){
+			Variable curVar=order.get(i);
+			try{
+				curVar.value[0]=Interpreter.evaluateTokens(curVar.parsedTokens, 0, false).copy();
+			}catch(Exception e){
+				curVar.valid=false;
+				curVar.parsedTokens=null;
+				curVar.value[0]=null;
+			}
+		}
 		
 		//constraints
 		int numConst=constraints.size();
@@ -584,6 +604,85 @@ public class AmuaModel{
 		}
 	}
 
+	/**
+	 * Sorts valid variables topologically and compiles each variable's update order (and t's, if not null).
+	 * Variables in a circular definition, or that depend on one, are never reached and are marked invalid.
+	 * @return Valid variables, each after the variables it depends on
+	 */
+	private ArrayList<Variable> scheduleVariables(Variable curT){
+		int numVars=variables.size();
+		IdentityHashMap<Variable,Integer> indices=new IdentityHashMap<Variable,Integer>();
+		for(int i=0; i<numVars; i++){indices.put(variables.get(i), i);}
+		
+		//Kahn's algorithm
+		int numInputs[]=new int[numVars];
+		for(int i=0; i<numVars; i++){
+			Variable curVar=variables.get(i);
+			if(curVar.valid){
+				for(int d=0; d<curVar.dependents.size(); d++){numInputs[indices.get(curVar.dependents.get(d))]++;}
+			}
+		}
+		ArrayList<Variable> order=new ArrayList<Variable>();
+		for(int i=0; i<numVars; i++){
+			if(variables.get(i).valid && numInputs[i]==0){order.add(variables.get(i));}
+		}
+		for(int o=0; o<order.size(); o++){
+			ArrayList<Variable> dependents=order.get(o).dependents;
+			for(int d=0; d<dependents.size(); d++){
+				int index=indices.get(dependents.get(d));
+				numInputs[index]--;
+				if(numInputs[index]==0){order.add(dependents.get(d));}
+			}
+		}
+		int rank[]=new int[numVars];
+		Arrays.fill(rank, -1);
+		for(int o=0; o<order.size(); o++){rank[indices.get(order.get(o))]=o;}
+		for(int i=0; i<numVars; i++){
+			Variable curVar=variables.get(i);
+			if(curVar.valid && rank[i]==-1){ //circular
+				curVar.valid=false;
+				curVar.parsedTokens=null;
+				curVar.value[0]=null;
+			}
+		}
+		
+		//update orders
+		for(int i=0; i<numVars; i++){
+			Variable curVar=variables.get(i);
+			if(curVar.valid){curVar.updateOrder=getUpdateOrder(curVar,indices,rank,order);}
+			else{curVar.updateOrder=new Variable[0];}
+		}
+		if(curT!=null){curT.updateOrder=getUpdateOrder(curT,indices,rank,order);}
+		return(order);
+	}
+	
+	/**
+	 * Returns the valid variables reachable from source, sorted by rank
+	 */
+	private static Variable[] getUpdateOrder(Variable source, IdentityHashMap<Variable,Integer> indices, int rank[], ArrayList<Variable> order){
+		boolean reached[]=new boolean[order.size()]; //[rank]
+		Stack<Variable> stack=new Stack<Variable>();
+		stack.push(source);
+		int numReached=0;
+		while(!stack.isEmpty()){
+			ArrayList<Variable> dependents=stack.pop().dependents;
+			for(int d=0; d<dependents.size(); d++){
+				int curRank=rank[indices.get(dependents.get(d))];
+				if(curRank!=-1 && reached[curRank]==false){
+					reached[curRank]=true;
+					numReached++;
+					stack.push(dependents.get(d));
+				}
+			}
+		}
+		Variable updateOrder[]=new Variable[numReached];
+		int u=0;
+		for(int r=0; r<reached.length; r++){
+			if(reached[r]){updateOrder[u]=order.get(r); u++;}
+		}
+		return(updateOrder);
+	}
+
 	public void rescale(int scale){
 		if(type==0){panelTree.rescale(scale);}
 		else if(type==1){panelMarkov.rescale(scale);}
@@ -645,6 +744,7 @@ public class AmuaModel{
 	}
 
 	public void saveSnapshot(String action){
+		version++; //invalidate parsed expressions
 		unsavedChanges=true;
 		setUnsavedStatus();
 		//Add undoable action
@@ -660,6 +760,32 @@ public class AmuaModel{
 		mainForm.mntmRedo.setText("Redo");
 	}
 
+	/**
+	 * Returns parsed tokens for an expression, re-using tokens already parsed for the current version of the model.
+	 * Tokens are bound to model objects, so the cache is cleared whenever the model is edited or the number of threads changes.
+	 * Objects with the same expression share tokens, and evaluateTokens may return a token's own value, so values stored
+	 * on parameters and variables must be copies.
+	 */
+	public Token[] parseExpression(String expression) throws Exception{
+		ConcurrentHashMap<String,Token[]> cache=parsedExpressions;
+		if(cache==null || parsedVersion!=version || parsedThreads!=numThreads){
+			synchronized(this){
+				if(parsedExpressions==null || parsedVersion!=version || parsedThreads!=numThreads){
+					parsedVersion=version;
+					parsedThreads=numThreads;
+					parsedExpressions=new ConcurrentHashMap<String,Token[]>();
+				}
+				cache=parsedExpressions;
+			}
+		}
+		Token tokens[]=cache.get(expression);
+		if(tokens==null){
+			tokens=Interpreter.parse(expression, this);
+			cache.put(expression, tokens);
+		}
+		return(tokens);
+	}
+
 	private void setUnsavedStatus(){
 		mainForm.setTabName("*"+name,type);
 	}
@@ -876,7 +1002,7 @@ public class AmuaModel{
 				panelTree.tree.showEV=true;
 			}
 			evaluateParameters(); //get parameters
-			panelTree.tree.runModel(display,runReport); //run model
+			tree.runModel(display,runReport); //run model
 			runReport.getResults(true);
 			unlockParams(); //unlock parameters
 			
@@ -1123,6 +1249,76 @@ public class AmuaModel{
 		}
 	}
 	
+	/**
+	 * Returns an independent headless copy of this model, parsed and ready to run on a worker thread
+	 * @param numThreads Number of threads the copy uses for each run
+	 */
+	public AmuaModel copyForWorker(int numThreads) throws Exception{
+		AmuaModel worker=new ModelSnapshot(this).getHeadlessModel();
+		worker.errorLog=errorLog;
+		worker.numThreads=numThreads;
+		worker.simParamSets=false; //turn off use parameter sets (no looping through)
+		if(worker.type==1){worker.markov.showTrace=false;}
+		ArrayList<String> errors=worker.parseModel();
+		if(errors.size()>0){
+			throw new Exception("Errors in base case model!");
+		}
+		worker.getStrategies();
+		for(int c=0; c<worker.constraints.size(); c++){
+			worker.constraints.get(c).parseConstraints();
+		}
+		return(worker);
+	}
+	
+	/**
+	 * Samples all parameters from curGenerator[0] until the constraints are met and the model is valid.
+	 * Constraints must be parsed first.
+	 * @param origValues Parameter values to reset to before each attempt
+	 */
+	public void sampleParameters(Numeric origValues[]) throws Exception{
+		boolean validParams=false;
+		while(validParams==false){
+			validParams=trySampleParameters(origValues,null);
+		}
+	}
+	
+	/**
+	 * Makes one attempt to sample the parameters from curGenerator[0].  Constraints must be parsed first.
+	 * @param origValues Parameter values to reset to before sampling
+	 * @param fixedValues Values to use instead of sampling (null entries are sampled), or null to sample all parameters
+	 * @return true if the constraints are met and the model is valid
+	 */
+	public boolean trySampleParameters(Numeric origValues[], Numeric fixedValues[]) throws Exception{
+		int numParams=parameters.size();
+		int numConstraints=constraints.size();
+		for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
+			Parameter curParam=parameters.get(v);
+			curParam.locked=false;
+			curParam.value=origValues[v];
+			if(fixedValues!=null && fixedValues[v]!=null){
+				curParam.value=fixedValues[v];
+				curParam.locked=true;
+			}
+		}
+		for(int v=0; v<numParams; v++){ //sample all parameters
+			Parameter curParam=parameters.get(v);
+			if(curParam.locked==false){
+				curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true).copy();
+				curParam.locked=true;
+			}
+		}
+		//check constraints
+		int c=0;
+		while(c<numConstraints){
+			Constraint curConst=constraints.get(c);
+			if(curConst.checkConstraints(this)==false){return(false);}
+			c++;
+		}
+		//check model for valid params
+		ArrayList<String> errors=parseModel();
+		return(errors.size()==0);
+	}
+	
 	public void unlockParams(){
 		for(int v=0; v<parameters.size(); v++){
 			parameters.get(v).locked=false;
@@ -1428,6 +1624,7 @@ public class AmuaModel{
 		modelParams.setColumnCount(0);
 		modelParams.addColumn("Set");
 		modelParams.addColumn("Score");
+		modelParams.addColumn("Weight");
 		int numParams=parameterNames.length;
 		for(int p=0; p<numParams; p++){
 			modelParams.addColumn(parameterNames[p]);
@@ -1438,8 +1635,9 @@ public class AmuaModel{
 			modelParams.addRow(new Object[]{null});
 			modelParams.setValueAt(curSet.id, i, 0);
 			modelParams.setValueAt(curSet.score, i, 1);
+			modelParams.setValueAt(curSet.weight, i, 2);
 			for(int p=0; p<numParams; p++){
-				modelParams.setValueAt(curSet.values[p].saveAsCSVString().replaceAll("\"", ""), i, 2+p);
+				modelParams.setValueAt(curSet.values[p].saveAsCSVString().replaceAll("\"", ""), i, 3+p);
 			}
 		}
 		
@@ -1456,7 +1654,7 @@ public class AmuaModel{
 			Parameter curParam=parameters.get(p);
 			if(curParam.locked==false){
 				//curParam.value=Interpreter.evaluate(curParam.expression, this,sampleParam);
-				curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, sampleParam);
+				curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, sampleParam).copy();
 				curParam.locked=true;
 			}
 		}
@@ -27,6 +27,7 @@ import main.Console;
 import main.ConsoleTable;
 import main.DimInfo;
 import math.MathUtils;
+import math.StreamingStats;
 
 /**
  * Individual-level stats
@@ -54,6 +55,12 @@ public class MicroStats{
 	 */
 	public double variables[][];
 	
+	/**
+	 * If true, individual results are folded into running summaries instead of being stored
+	 */
+	boolean streaming;
+	StreamingStats outcomeStats[], varStats[];
+	
 	//Summaries
 	public double outcomesMean[], varsMean[];
 	public double outcomesSD[], varsSD[];
@@ -73,6 +80,43 @@ public class MicroStats{
 		numVars=myModel.variables.size();
 		variables=new double[numVars][numPeople];
 	}
+	
+	/**
+	 * Streaming constructor - individuals are added with addPerson and only summaries are kept
+	 */
+	public MicroStats(AmuaModel myModel){
+		this.myModel=myModel;
+		this.dimInfo=myModel.dimInfo;
+		numDim=dimInfo.dimNames.length;
+		numVars=myModel.variables.size();
+		streaming=true;
+		outcomeStats=new StreamingStats[numDim];
+		for(int d=0; d<numDim; d++){outcomeStats[d]=new StreamingStats();}
+		varStats=new StreamingStats[numVars];
+		for(int v=0; v<numVars; v++){varStats[v]=new StreamingStats();}
+	}
+	
+	/**
+	 * Adds one individual's outcomes [dimension] and variable values [variable] to a streaming summary
+	 */
+	public void addPerson(double personOutcomes[], double personVars[]){
+		numPeople++;
+		for(int d=0; d<numDim; d++){outcomeStats[d].add(personOutcomes[d]);}
+		for(int v=0; v<numVars; v++){varStats[v].add(personVars[v]);}
+	}
+	
+	/**
+	 * Adds the individuals summarized by another streaming summary
+	 */
+	public void merge(MicroStats other){
+		numPeople+=other.numPeople;
+		for(int d=0; d<numDim; d++){outcomeStats[d].merge(other.outcomeStats[d]);}
+		for(int v=0; v<numVars; v++){varStats[v].merge(other.varStats[v]);}
+	}
+	
+	public int getNumPeople(){
+		return(numPeople);
+	}
 
 	public void printSummary(Console console){
 		calcSummary();
@@ -164,6 +208,10 @@ public class MicroStats{
 	
 	
 	public void calcSummary(){
+		if(streaming){
+			calcStreamingSummary();
+			return;
+		}
 		//mean
 		outcomesMean=new double[numDim];
 		for(int d=0; d<numDim; d++){
@@ -231,4 +279,34 @@ public class MicroStats{
 		}
 	}
 	
+	private void calcStreamingSummary(){
+		outcomesMean=new double[numDim]; varsMean=new double[numVars];
+		outcomesSD=new double[numDim]; varsSD=new double[numVars];
+		outcomesMin=new double[numDim]; varsMin=new double[numVars];
+		outcomesQ1=new double[numDim]; varsQ1=new double[numVars];
+		outcomesMed=new double[numDim]; varsMed=new double[numVars];
+		outcomesQ3=new double[numDim]; varsQ3=new double[numVars];
+		outcomesMax=new double[numDim]; varsMax=new double[numVars];
+		for(int d=0; d<numDim; d++){
+			StreamingStats curStats=outcomeStats[d];
+			outcomesMean[d]=curStats.getMean();
+			outcomesSD[d]=curStats.getSD();
+			outcomesMin[d]=curStats.getMin();
+			outcomesQ1[d]=curStats.getQuantile(0.25);
+			outcomesMed[d]=curStats.getQuantile(0.50);
+			outcomesQ3[d]=curStats.getQuantile(0.75);
+			outcomesMax[d]=curStats.getMax();
+		}
+		for(int v=0; v<numVars; v++){
+			StreamingStats curStats=varStats[v];
+			varsMean[v]=curStats.getMean();
+			varsSD[v]=curStats.getSD();
+			varsMin[v]=curStats.getMin();
+			varsQ1[v]=curStats.getQuantile(0.25);
+			varsMed[v]=curStats.getQuantile(0.50);
+			varsQ3[v]=curStats.getQuantile(0.75);
+			varsMax[v]=curStats.getMax();
+		}
+	}
+	
 }
\ No newline at end of file
@@ -28,8 +28,11 @@ import main.ParameterSet;
 import main.Scenario;
 import main.Table;
 import main.Variable;
+import markov.MarkovNode;
 import markov.MarkovTree;
+import math.Numeric;
 import tree.DecisionTree;
+import tree.TreeNode;
 
 public class ModelSnapshot{
 
@@ -53,7 +56,9 @@ public class ModelSnapshot{
 	public boolean CRN;
 	public int crnSeed;
 	public boolean displayIndResults;
+	public boolean streamMicrosim;
 	public int numThreads;
+	public boolean compileExpressions;
 	public boolean reportSubgroups;
 	public ArrayList<String> subgroupNames, subgroupDefinitions;
 	
@@ -119,7 +124,9 @@ public class ModelSnapshot{
 		CRN=model.CRN;
 		crnSeed=model.crnSeed;
 		displayIndResults=model.displayIndResults;
+		streamMicrosim=model.streamMicrosim;
 		numThreads=model.numThreads;
+		compileExpressions=model.compileExpressions;
 		
 		//subgroup settings
 		reportSubgroups=model.reportSubgroups;
@@ -135,6 +142,67 @@ public class ModelSnapshot{
 
 	//Re-points model data/objects
 	public void getSnapshot(AmuaModel model){
+		model.version++; //model objects are replaced
+		setModelData(model);
+		
+		if(type==0){
+			model.tree=tree;
+			model.panelTree.tree=model.tree;
+			model.tree.myModel=model;
+			for(int i=0; i<model.tree.nodes.size(); i++){
+				model.tree.nodes.get(i).setPanel(model.panelTree);
+			}
+		}
+		else if(type==1){
+			model.markov=markov;
+			model.panelMarkov.tree=model.markov;
+			model.markov.myModel=model;
+			for(int i=0; i<model.markov.nodes.size(); i++) {
+				model.markov.nodes.get(i).setPanel(model.panelMarkov);
+			}
+			model.markov.updateMarkovChain(model.markov.nodes.get(0));
+		}
+	}
+
+	//Returns a new model that runs without a display (e.g. on a worker thread).  Takes ownership of the snapshot objects
+	public AmuaModel getHeadlessModel(){
+		AmuaModel model=new AmuaModel();
+		model.cluster=true; //no display
+		setModelData(model);
+		model.innateVariables=new ArrayList<Variable>();
+		for(int i=0; i<variables.size(); i++){ //thread-specific values are not shared with the original
+			Variable curVar=variables.get(i);
+			curVar.value=new Numeric[1];
+			curVar.locked=new boolean[1];
+		}
+		for(int i=0; i<tables.size(); i++){
+			tables.get(i).myModel=model;
+		}
+		
+		if(type==0){
+			model.tree=tree;
+			tree.myModel=model;
+			for(int i=0; i<tree.nodes.size(); i++){
+				TreeNode curNode=tree.nodes.get(i);
+				curNode.myModel=model;
+				curNode.tree=tree;
+			}
+		}
+		else if(type==1){
+			model.addT();
+			model.markov=markov;
+			markov.myModel=model;
+			for(int i=0; i<markov.nodes.size(); i++){
+				MarkovNode curNode=markov.nodes.get(i);
+				curNode.myModel=model;
+				curNode.tree=markov;
+			}
+			markov.updateMarkovChain(markov.nodes.get(0));
+		}
+		return(model);
+	}
+	
+	private void setModelData(AmuaModel model){
 		model.name=name;
 		model.type=type;
 		model.meta=meta; //reference
@@ -156,29 +224,13 @@ public class ModelSnapshot{
 		model.CRN=CRN;
 		model.crnSeed=crnSeed;
 		model.displayIndResults=displayIndResults;
+		model.streamMicrosim=streamMicrosim;
 		model.numThreads=numThreads;
+		model.compileExpressions=compileExpressions;
 		
 		model.reportSubgroups=reportSubgroups;
 		model.subgroupNames=subgroupNames;
 		model.subgroupDefinitions=subgroupDefinitions;
-		
-		if(type==0){
-			model.tree=tree;
-			model.panelTree.tree=model.tree;
-			model.tree.myModel=model;
-			for(int i=0; i<model.tree.nodes.size(); i++){
-				model.tree.nodes.get(i).setPanel(model.panelTree);
-			}
-		}
-		else if(type==1){
-			model.markov=markov;
-			model.panelMarkov.tree=model.markov;
-			model.markov.myModel=model;
-			for(int i=0; i<model.markov.nodes.size(); i++) {
-				model.markov.nodes.get(i).setPanel(model.panelMarkov);
-			}
-			model.markov.updateMarkovChain(model.markov.nodes.get(0));
-		}
 	}
 
 }
\ No newline at end of file
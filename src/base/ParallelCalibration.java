@@ -0,0 +1,461 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import main.MersenneTwisterFast;
+import main.ParameterSet;
+import main.RandomStreams;
+import markov.MarkovNode;
+import markov.MarkovTrace;
+import markov.TraceMonitor;
+import math.Interpreter;
+import math.MathUtils;
+import math.Numeric;
+import math.Token;
+
+/**
+ * Calibrates a Markov model by scoring parameter sets in parallel.  Each worker owns a headless copy of the model, as in
+ * ParallelPSA.  Proposals are numbered, draw from their own random stream, and are run in batches that are accepted in
+ * proposal order, so the calibrated sets don't depend on the number of workers.
+ * <p>
+ * Random: scores sets sampled from the priors.<br>
+ * ABC: rejection sampling - keeps sets sampled from the priors that score at or below the threshold.<br>
+ * ABC-SMC: population Monte Carlo (Beaumont et al. 2009).  The first generation is sampled from the priors.  Each later
+ * generation perturbs weighted sets from the one before with a Gaussian kernel, and keeps those within a tolerance set to a
+ * quantile of the previous scores, until the tolerance reaches the threshold.  Parameters with a single continuous
+ * distribution as their expression are perturbed, others are resampled from their priors.
+ * <p>
+ * If the score is a sum of non-negative terms (see PartialScore), proposals are stopped as soon as the terms read so far
+ * exceed the tolerance, without simulating the remaining cycles.
+ */
+public class ParallelCalibration{
+	
+	public static final int RANDOM=0, ABC=1, ABC_SMC=2;
+	
+	/**
+	 * Maximum number of proposals run between progress updates, per worker
+	 */
+	static final int MAX_BATCH_PER_WORKER=16;
+	
+	AmuaModel myModel;
+	String chainName;
+	long key;
+	boolean seeded;
+	int numWorkers;
+	AmuaModel workers[];
+	Numeric origValues[][]; //[worker][parameter]
+	Token scoreTokens[][]; //[worker][token]
+	ScoreMonitor monitors[]; //[worker], null if the score can't be checked during runs
+	int numParams;
+	/**
+	 * Parameters perturbed by ABC-SMC kernels
+	 */
+	boolean perturbed[];
+	volatile boolean cancelled;
+	
+	//ABC-SMC settings
+	double quantile=0.5;
+	int maxGenerations=20;
+	
+	//results
+	int numRuns;
+	int numStopped;
+	int numGenerations;
+	double finalTolerance;
+	double effectiveSize;
+	
+	/**
+	 * Reports progress on the thread that called run
+	 */
+	public interface ProgressListener{
+		/**
+		 * @param numAccepted Number of sets accepted so far in the current generation
+		 * @param note Generation, tolerance, and acceptance rate
+		 */
+		void progress(int numAccepted, String note);
+	}
+	
+	private static class Proposal{
+		ParameterSet set;
+		double x[]; //perturbed parameter values
+		double score;
+		boolean accepted;
+		double weight;
+		boolean stopped; //run stopped early
+	}
+	
+	/**
+	 * Stops runs once the partial score of the calibrated chain exceeds the tolerance
+	 */
+	private static class ScoreMonitor implements TraceMonitor{
+		PartialScore partialScore;
+		String chainName;
+		double tolerance;
+		
+		@Override
+		public boolean stopAfterCycle(MarkovNode chain, MarkovTrace trace, int t) throws Exception{
+			if(chain.name.equals(chainName)==false){return(false);}
+			return(partialScore.update(trace, t)>tolerance);
+		}
+	}
+	
+	private static class Population{
+		ArrayList<Proposal> particles;
+		double tolerance;
+		double cumWeights[];
+		double sigma[]; //kernel standard deviation of each perturbed parameter
+	}
+	
+	/**
+	 * @param myModel Markov model to calibrate.  Must be parsed without errors and is not changed
+	 * @param strScore Score expression, evaluated after each run with trace() referring to the chain
+	 * @param chainName Chain whose trace is scored
+	 * @param seeded If true results are reproducible from the seed
+	 */
+	public ParallelCalibration(AmuaModel myModel, String strScore, String chainName, boolean seeded, int seed) throws Exception{
+		this.myModel=myModel;
+		this.chainName=chainName;
+		this.seeded=seeded;
+		if(seeded){key=RandomStreams.getKey(seed);}
+		else{key=RandomStreams.newKey();}
+		
+		numWorkers=Math.max(1, myModel.numThreads);
+		workers=new AmuaModel[numWorkers];
+		origValues=new Numeric[numWorkers][];
+		scoreTokens=new Token[numWorkers][];
+		monitors=new ScoreMonitor[numWorkers];
+		numParams=myModel.parameters.size();
+		for(int w=0; w<numWorkers; w++){
+			workers[w]=myModel.copyForWorker(1);
+			workers[w].sampleParam=true;
+			workers[w].generatorParam=new MersenneTwisterFast();
+			origValues[w]=new Numeric[numParams];
+			for(int v=0; v<numParams; v++){
+				origValues[w][v]=workers[w].parameters.get(v).value.copy();
+			}
+			scoreTokens[w]=Interpreter.parse(strScore, workers[w]);
+			PartialScore partialScore=new PartialScore(strScore, workers[w]);
+			if(partialScore.isValid()){
+				monitors[w]=new ScoreMonitor();
+				monitors[w].partialScore=partialScore;
+				monitors[w].chainName=chainName;
+			}
+		}
+		perturbed=new boolean[numParams];
+		for(int v=0; v<numParams; v++){
+			perturbed[v]=Interpreter.isContinuousDistribution(workers[0].parameters.get(v).parsedTokens);
+		}
+	}
+	
+	/**
+	 * @param quantile Quantile of the previous generation's scores used as the next tolerance (0-1)
+	 * @param maxGenerations Generations to run if the tolerance has not reached the threshold
+	 */
+	public void setSMCSettings(double quantile, int maxGenerations){
+		this.quantile=quantile;
+		this.maxGenerations=maxGenerations;
+	}
+	
+	/**
+	 * Runs the calibration and waits for it to finish.  If cancelled, returns the sets accepted so far (ABC-SMC: the
+	 * last complete generation).
+	 * @param threshold Score threshold (ignored for Random)
+	 */
+	public ParameterSet[] run(int method, int numSets, double threshold, ProgressListener listener) throws Exception{
+		cancelled=false;
+		numRuns=0;
+		numStopped=0;
+		numGenerations=0;
+		ArrayList<Proposal> accepted;
+		if(method==RANDOM){
+			accepted=sampleGeneration(0, numSets, Double.POSITIVE_INFINITY, null, listener);
+			finalTolerance=Double.POSITIVE_INFINITY;
+		}
+		else if(method==ABC){
+			accepted=sampleGeneration(0, numSets, threshold, null, listener);
+			finalTolerance=threshold;
+		}
+		else{
+			Population pop=null;
+			accepted=null;
+			double tolerance=Double.POSITIVE_INFINITY;
+			boolean done=false;
+			int g=0;
+			while(done==false && g<maxGenerations){
+				if(pop!=null){ //shrink tolerance
+					double next=getScoreQuantile(pop.particles, quantile);
+					if(next>=pop.tolerance){next=threshold;} //no progress, go to the threshold
+					tolerance=Math.max(threshold, next);
+				}
+				ArrayList<Proposal> curAccepted=sampleGeneration(g, numSets, tolerance, pop, listener);
+				if(cancelled){
+					if(pop==null){accepted=curAccepted;} //partial first generation
+					done=true;
+				}
+				else{
+					accepted=curAccepted;
+					pop=getPopulation(accepted, tolerance);
+					numGenerations=g+1;
+					finalTolerance=tolerance;
+					if(tolerance<=threshold){done=true;}
+				}
+				g++;
+			}
+		}
+		
+		int numAccepted=accepted.size();
+		double totalWeight=0, sumSq=0;
+		for(int i=0; i<numAccepted; i++){totalWeight+=accepted.get(i).weight;}
+		ParameterSet sets[]=new ParameterSet[numAccepted];
+		for(int i=0; i<numAccepted; i++){
+			Proposal curProposal=accepted.get(i);
+			sets[i]=curProposal.set;
+			sets[i].id=(i+1)+"";
+			sets[i].score=curProposal.score;
+			double w=curProposal.weight/totalWeight;
+			sets[i].weight=w*numAccepted; //mean weight of 1
+			sumSq+=w*w;
+		}
+		effectiveSize=1.0/sumSq;
+		return(sets);
+	}
+	
+	public void cancel(){
+		cancelled=true;
+	}
+	
+	public boolean isCancelled(){
+		return(cancelled);
+	}
+	
+	/**
+	 * Number of model runs, including rejected proposals
+	 */
+	public int getNumRuns(){
+		return(numRuns);
+	}
+	
+	/**
+	 * Number of runs stopped early because their partial score exceeded the tolerance
+	 */
+	public int getNumStopped(){
+		return(numStopped);
+	}
+	
+	/**
+	 * Number of complete ABC-SMC generations
+	 */
+	public int getNumGenerations(){
+		return(numGenerations);
+	}
+	
+	/**
+	 * Tolerance the returned sets were accepted at
+	 */
+	public double getFinalTolerance(){
+		return(finalTolerance);
+	}
+	
+	/**
+	 * Effective sample size of the returned weights
+	 */
+	public double getEffectiveSize(){
+		return(effectiveSize);
+	}
+	
+	/**
+	 * Runs proposals in batches until numSets are accepted, keeping them in proposal order
+	 */
+	private ArrayList<Proposal> sampleGeneration(final int generation, int numSets, final double tolerance, final Population prev, ProgressListener listener) throws Exception{
+		ArrayList<Proposal> accepted=new ArrayList<Proposal>();
+		int numProposed=0;
+		int batchSize=Math.min(numSets, numWorkers*MAX_BATCH_PER_WORKER);
+		while(accepted.size()<numSets && cancelled==false){
+			final Proposal batch[]=new Proposal[batchSize];
+			final int first=numProposed;
+			Scheduler.run(numWorkers, batchSize, new Scheduler.ChunkTask(){
+				@Override
+				public void run(int n, int w) throws Exception{
+					if(cancelled){return;}
+					batch[n]=propose(w, RandomStreams.split(key, generation, first+n), tolerance, prev);
+				}
+			});
+			for(int n=0; n<batchSize; n++){
+				if(batch[n]!=null){
+					numRuns++;
+					numProposed++;
+					if(batch[n].stopped){numStopped++;}
+					if(batch[n].accepted && accepted.size()<numSets){accepted.add(batch[n]);}
+				}
+			}
+			
+			double rate=accepted.size()/(Math.max(1, numProposed)*1.0);
+			String note="Generation "+(generation+1);
+			if(tolerance<Double.POSITIVE_INFINITY){note+=" - Tolerance: "+MathUtils.round(tolerance, 4);}
+			note+=" - Acceptance: "+MathUtils.round(rate*100, 2)+"%";
+			if(numStopped>0){note+=" - Stopped early: "+MathUtils.round((numStopped*100.0)/numRuns, 1)+"%";}
+			listener.progress(accepted.size(), note);
+			
+			//size the next batch from the acceptance rate so far
+			int needed=numSets-accepted.size();
+			if(rate>0){batchSize=(int)Math.ceil(needed/rate);}
+			else{batchSize=batchSize*2;}
+			batchSize=Math.max(numWorkers, Math.min(batchSize, numWorkers*MAX_BATCH_PER_WORKER));
+		}
+		return(accepted);
+	}
+	
+	private Proposal propose(int w, long stream, double tolerance, Population prev) throws Exception{
+		AmuaModel worker=workers[w];
+		RandomStreams.seed(worker.generatorParam, stream);
+		worker.curGenerator=new MersenneTwisterFast[]{worker.generatorParam};
+		Proposal proposal=new Proposal();
+		if(prev==null){ //sample from priors
+			worker.sampleParameters(origValues[w]);
+		}
+		else{ //perturb a weighted set from the previous generation
+			Numeric fixedValues[]=new Numeric[numParams];
+			boolean valid=false;
+			while(valid==false){
+				double rand=worker.generatorParam.nextDouble();
+				int j=Arrays.binarySearch(prev.cumWeights, rand);
+				if(j<0){j=-(j+1);}
+				j=Math.min(j, prev.cumWeights.length-1);
+				double x[]=prev.particles.get(j).x;
+				for(int v=0; v<numParams; v++){
+					if(perturbed[v]){
+						fixedValues[v]=new Numeric(x[v]+prev.sigma[v]*worker.generatorParam.nextGaussian());
+					}
+				}
+				valid=worker.trySampleParameters(origValues[w], fixedValues);
+				if(valid && getPriorDensity(worker)==0){valid=false;} //outside prior support
+			}
+		}
+		if(seeded && worker.simType==1 && myModel.CRN==false){ //seed simulation from this proposal's stream
+			worker.CRN=true;
+			worker.crnSeed=worker.generatorParam.nextInt();
+		}
+		
+		//Run model and score the chain's trace
+		worker.generatorVar=new MersenneTwisterFast[1];
+		worker.curGenerator=worker.generatorVar;
+		ScoreMonitor monitor=monitors[w];
+		if(monitor!=null && tolerance<Double.POSITIVE_INFINITY){
+			monitor.partialScore.reset();
+			monitor.tolerance=tolerance;
+			worker.markov.traceMonitor=monitor;
+		}
+		else{worker.markov.traceMonitor=null;}
+		RunReport report=new RunReport(worker);
+		worker.markov.runModel(false, report, false);
+		if(worker.markov.stopped){ //can't meet the tolerance
+			proposal.stopped=true;
+			proposal.score=monitor.partialScore.curScore;
+			return(proposal);
+		}
+		int chainIndex=report.names.indexOf(chainName);
+		if(chainIndex!=-1){worker.traceMarkov=report.markovTraces.get(chainIndex);}
+		proposal.score=Interpreter.evaluateTokens(scoreTokens[w], 0, false).getDouble();
+		proposal.accepted=(proposal.score<=tolerance); //NaN is rejected
+		
+		if(proposal.accepted){
+			proposal.set=new ParameterSet(worker);
+			proposal.x=new double[numParams];
+			for(int v=0; v<numParams; v++){
+				if(perturbed[v]){proposal.x[v]=worker.parameters.get(v).value.getDouble();}
+			}
+			proposal.weight=1;
+			if(prev!=null){ //importance weight: prior / kernel mixture
+				double kernelSum=0;
+				int numPrev=prev.particles.size();
+				for(int j=0; j<numPrev; j++){
+					double x[]=prev.particles.get(j).x;
+					double sumSq=0;
+					for(int v=0; v<numParams; v++){
+						if(perturbed[v] && prev.sigma[v]>0){
+							double z=(proposal.x[v]-x[v])/prev.sigma[v];
+							sumSq+=z*z;
+						}
+					}
+					double prevWeight=prev.cumWeights[j]-(j>0 ? prev.cumWeights[j-1] : 0);
+					kernelSum+=prevWeight*Math.exp(-0.5*sumSq);
+				}
+				proposal.weight=getPriorDensity(worker)/kernelSum;
+			}
+		}
+		return(proposal);
+	}
+	
+	/**
+	 * Joint prior density of the perturbed parameters at their current values
+	 */
+	private double getPriorDensity(AmuaModel worker) throws Exception{
+		double density=1;
+		for(int v=0; v<numParams; v++){
+			if(perturbed[v]){
+				double x=worker.parameters.get(v).value.getDouble();
+				density*=Interpreter.getDensity(worker.parameters.get(v).parsedTokens, x, 0);
+			}
+		}
+		return(density);
+	}
+	
+	private Population getPopulation(ArrayList<Proposal> particles, double tolerance){
+		Population pop=new Population();
+		pop.particles=particles;
+		pop.tolerance=tolerance;
+		int numParticles=particles.size();
+		double total=0;
+		for(int i=0; i<numParticles; i++){total+=particles.get(i).weight;}
+		pop.cumWeights=new double[numParticles];
+		double cum=0;
+		for(int i=0; i<numParticles; i++){
+			cum+=particles.get(i).weight/total;
+			pop.cumWeights[i]=cum;
+		}
+		//kernel: twice the weighted variance of each parameter
+		pop.sigma=new double[numParams];
+		for(int v=0; v<numParams; v++){
+			if(perturbed[v]){
+				double mean=0, meanSq=0;
+				for(int i=0; i<numParticles; i++){
+					double w=particles.get(i).weight/total, x=particles.get(i).x[v];
+					mean+=w*x;
+					meanSq+=w*x*x;
+				}
+				double var=Math.max(0, meanSq-mean*mean);
+				pop.sigma[v]=Math.sqrt(2*var);
+			}
+		}
+		return(pop);
+	}
+	
+	private static double getScoreQuantile(ArrayList<Proposal> particles, double quantile){
+		int numParticles=particles.size();
+		double scores[]=new double[numParticles];
+		for(int i=0; i<numParticles; i++){scores[i]=particles.get(i).score;}
+		Arrays.sort(scores);
+		int index=(int)Math.floor(quantile*(numParticles-1));
+		return(scores[index]);
+	}
+}
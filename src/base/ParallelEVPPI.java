@@ -0,0 +1,137 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package base;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import math.GaussianProcess;
+import math.SplineRegression;
+
+/**
+ * Estimates the expected value of partial perfect information (EVPPI) from a set of PSA results by nonparametric
+ * regression (Strong, Oakley &amp; Brennan 2014), so the model is not run again.  The net benefit of each strategy
+ * relative to the first is regressed on the parameters of interest.  EVPPI is the mean of the maximum fitted net
+ * benefit minus the maximum of the mean net benefits.  Parameter groups are estimated in parallel.
+ */
+public class ParallelEVPPI{
+
+	/**
+	 * Generalized additive model of penalized regression splines.  Fast, but ignores interactions within a group
+	 */
+	public static final int GAM=0;
+	/**
+	 * Gaussian process.  Captures interactions within a group
+	 */
+	public static final int GP=1;
+	
+	double params[][]; //[parameter][iteration]
+	double netBenefit[][]; //[strategy][iteration]
+	int numThreads;
+	volatile boolean cancelled;
+	
+	public interface ProgressListener{
+		/**
+		 * Called when a group has been estimated.  May be called from several threads at once.
+		 */
+		void groupComplete(int numComplete);
+	}
+	
+	/**
+	 * @param params Sampled parameter values [parameter][iteration]
+	 * @param netBenefit Net benefit of each strategy [strategy][iteration].  Higher is better
+	 */
+	public ParallelEVPPI(double params[][], double netBenefit[][], int numThreads){
+		this.params=params;
+		this.netBenefit=netBenefit;
+		this.numThreads=Math.max(1, numThreads);
+	}
+	
+	/**
+	 * Estimates EVPPI for each group of parameters, using the first sampleSizes[k] iterations for estimate k
+	 * @param groups Parameter indices in each group
+	 * @param sampleSizes Number of iterations to use for each estimate (e.g. to check convergence)
+	 * @return EVPPI [group][sample size], or null if cancelled
+	 */
+	public double[][] run(final int method, final int groups[][], final int sampleSizes[], final ProgressListener listener) throws Exception{
+		cancelled=false;
+		final int numGroups=groups.length;
+		final double evppi[][]=new double[numGroups][];
+		final AtomicInteger numComplete=new AtomicInteger();
+		Scheduler.run(Math.min(numThreads, Math.max(1, numGroups)), numGroups, new Scheduler.ChunkTask(){
+			@Override
+			public void run(int g, int slot) throws Exception{
+				if(cancelled){return;}
+				evppi[g]=estimate(method, groups[g], sampleSizes);
+				if(listener!=null){listener.groupComplete(numComplete.incrementAndGet());}
+			}
+		});
+		if(cancelled){return(null);}
+		return(evppi);
+	}
+	
+	public void cancel(){
+		cancelled=true;
+	}
+	
+	public boolean isCancelled(){
+		return(cancelled);
+	}
+	
+	private double[] estimate(int method, int group[], int sampleSizes[]){
+		int numStrat=netBenefit.length;
+		int numIterations=netBenefit[0].length;
+		int numSizes=sampleSizes.length;
+		double x[][]=new double[group.length][];
+		for(int j=0; j<group.length; j++){x[j]=params[group[j]];}
+		
+		//fitted incremental net benefit vs. first strategy [strategy][size][iteration]
+		double fitted[][][]=new double[numStrat][numSizes][];
+		for(int s=1; s<numStrat; s++){
+			double inb[]=new double[numIterations];
+			for(int i=0; i<numIterations; i++){inb[i]=netBenefit[s][i]-netBenefit[0][i];}
+			GaussianProcess gp=null;
+			if(method==GP){gp=new GaussianProcess(x, inb);} //hyperparameters from all iterations
+			for(int k=0; k<numSizes; k++){
+				if(cancelled){return(null);}
+				if(method==GP){fitted[s][k]=gp.fit(x, inb, sampleSizes[k]);}
+				else{fitted[s][k]=SplineRegression.fit(x, inb, sampleSizes[k]);}
+			}
+		}
+		
+		double evppi[]=new double[numSizes];
+		for(int k=0; k<numSizes; k++){
+			int n=sampleSizes[k];
+			double meanMax=0; //E[max]
+			double means[]=new double[numStrat];
+			for(int i=0; i<n; i++){
+				double curMax=0; //first strategy is the reference
+				for(int s=1; s<numStrat; s++){
+					double cur=fitted[s][k][i];
+					means[s]+=cur;
+					curMax=Math.max(curMax, cur);
+				}
+				meanMax+=curMax;
+			}
+			double maxMean=0; //max E[]
+			for(int s=1; s<numStrat; s++){maxMean=Math.max(maxMean, means[s]/(n*1.0));}
+			evppi[k]=Math.max(0, meanMax/(n*1.0)-maxMean);
+		}
+		return(evppi);
+	}
+}
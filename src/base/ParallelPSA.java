@@ -0,0 +1,180 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package base;
+
+import main.MersenneTwisterFast;
+import main.ParameterSet;
+import main.RandomStreams;
+import math.Numeric;
+
+/**
+ * Runs PSA iterations in parallel.  Each worker owns a headless copy of the model, so sampled parameters,
+ * variables, and results are never shared between iterations that run at the same time.
+ * Iteration i samples parameters from its own generator, keyed by a SplitMix64 split of the seed's key
+ * (RandomStreams.split(RandomStreams.getKey(seed), i)), so iterations draw from independent streams and results are the
+ * same for any number of workers and in whatever order iterations finish.
+ */
+public class ParallelPSA{
+
+	AmuaModel myModel;
+	int iterations[]; //iteration numbers to run
+	int seed;
+	boolean seeded;
+	boolean sampleParamSets;
+	boolean seedIterationRNG;
+	int numWorkers;
+	AmuaModel workers[];
+	Numeric origValues[][]; //[worker][parameter]
+	volatile boolean cancelled;
+
+	/**
+	 * Records the results of one iteration.  Called on a worker thread as soon as the iteration has run,
+	 * so iterations may be recorded in any order and concurrently with each other.
+	 */
+	public interface IterationListener{
+		/**
+		 * @param n Index of the iteration in the list of iterations to run
+		 * @param worker Model copy the iteration ran on - holds the sampled parameters and expected values until the worker runs its next iteration
+		 * @param report Run report for the iteration
+		 */
+		void iterationComplete(int n, AmuaModel worker, RunReport report) throws Exception;
+	}
+
+	/**
+	 * Runs iterations 0 to numIterations-1
+	 * @param myModel Model to analyze.  Must be parsed without errors and is not changed
+	 * @param seeded If true parameter draws (and simulation draws, for Monte Carlo models) are reproducible from the seed
+	 * @param sampleParamSets If true each iteration also sets the parameters of a randomly chosen parameter set
+	 */
+	public ParallelPSA(AmuaModel myModel, int numIterations, boolean seeded, int seed, boolean sampleParamSets) throws Exception{
+		this(myModel, getRange(numIterations), seeded, seed, sampleParamSets);
+	}
+
+	/**
+	 * Runs a list of iterations, e.g. one batch of a larger analysis.  Each iteration gives the same results as in
+	 * any other list run with the same seed.
+	 */
+	public ParallelPSA(AmuaModel myModel, int iterations[], boolean seeded, int seed, boolean sampleParamSets) throws Exception{
+		this.myModel=myModel;
+		this.iterations=iterations;
+		this.seeded=seeded;
+		this.seed=seed;
+		if(seeded==false){this.seed=new MersenneTwisterFast().nextInt();}
+		this.sampleParamSets=sampleParamSets;
+		
+		int numIterations=iterations.length;
+		numWorkers=Math.max(1, Math.min(myModel.numThreads, numIterations));
+		int workerThreads=myModel.numThreads;
+		if(numWorkers>1){workerThreads=1;} //parallelize over iterations instead of within each run
+		workers=new AmuaModel[numWorkers];
+		origValues=new Numeric[numWorkers][];
+		for(int w=0; w<numWorkers; w++){
+			workers[w]=myModel.copyForWorker(workerThreads);
+			workers[w].sampleParam=true;
+			workers[w].generatorParam=new MersenneTwisterFast();
+			int numParams=workers[w].parameters.size();
+			origValues[w]=new Numeric[numParams];
+			for(int v=0; v<numParams; v++){
+				origValues[w][v]=workers[w].parameters.get(v).value.copy();
+			}
+		}
+	}
+
+	private static int[] getRange(int numIterations){
+		int iterations[]=new int[numIterations];
+		for(int i=0; i<numIterations; i++){iterations[i]=i;}
+		return(iterations);
+	}
+
+	/**
+	 * Seed Monte Carlo simulations with the iteration number (as for cluster runs) instead of from the iteration's stream
+	 */
+	public void setSeedIterationRNG(boolean seedIterationRNG){
+		this.seedIterationRNG=seedIterationRNG;
+	}
+
+	/**
+	 * Only keep state prevalence and rewards in Markov traces, so long analyses don't retain a column per variable for every iteration
+	 */
+	public void setSummaryTraces(boolean summaryTraces){
+		for(int w=0; w<numWorkers; w++){
+			if(workers[w].type==1){workers[w].markov.summaryTraces=summaryTraces;}
+		}
+	}
+	
+	/**
+	 * Don't keep Markov traces, for analyses that only use expected values
+	 */
+	public void setKeepTraces(boolean keepTraces){
+		for(int w=0; w<numWorkers; w++){
+			if(workers[w].type==1){workers[w].markov.keepTraces=keepTraces;}
+		}
+	}
+	
+	/**
+	 * Runs all iterations and waits for them to finish.  Iterations that have not started when the analysis is
+	 * cancelled are skipped.
+	 */
+	public void run(final IterationListener listener) throws Exception{
+		cancelled=false;
+		Scheduler.run(numWorkers, iterations.length, new Scheduler.ChunkTask(){
+			@Override
+			public void run(int n, int w) throws Exception{
+				if(cancelled){return;}
+				RunReport report=runIteration(workers[w], origValues[w], iterations[n]);
+				listener.iterationComplete(n, workers[w], report);
+			}
+		});
+	}
+
+	public void cancel(){
+		cancelled=true;
+	}
+
+	public boolean isCancelled(){
+		return(cancelled);
+	}
+
+	public int getNumWorkers(){
+		return(numWorkers);
+	}
+
+	private RunReport runIteration(AmuaModel worker, Numeric origValues[], int iteration) throws Exception{
+		RandomStreams.seed(worker.generatorParam, RandomStreams.split(RandomStreams.getKey(seed), iteration)); //independent stream per iteration
+		worker.curGenerator=new MersenneTwisterFast[]{worker.generatorParam};
+		worker.sampleParameters(origValues);
+		if(sampleParamSets){
+			int curSet=ParameterSet.sampleIndex(worker.parameterSets, worker.generatorParam);
+			worker.parameterSets[curSet].setParameters(worker);
+		}
+		if(seedIterationRNG){
+			worker.CRN=true;
+			worker.crnSeed=iteration;
+		}
+		else if(seeded && worker.simType==1 && myModel.CRN==false){ //seed simulation from this iteration's stream
+			worker.CRN=true;
+			worker.crnSeed=worker.generatorParam.nextInt();
+		}
+		
+		//Run model - cohort runs use expected values as in the base case, simulations seed their own generators
+		worker.generatorVar=new MersenneTwisterFast[1];
+		worker.curGenerator=worker.generatorVar;
+		return(worker.runModel(null, false));
+	}
+}
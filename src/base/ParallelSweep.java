@@ -0,0 +1,147 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package base;
+
+import java.util.ArrayList;
+
+import main.Parameter;
+import math.Numeric;
+
+/**
+ * Runs the points of a deterministic sensitivity analysis (one-way, two-way, tornado, threshold) in parallel.
+ * Each point fixes some parameters and runs the model.  Each worker owns a headless copy of the model, so parameter
+ * values, variables, and results are never shared between points that run at the same time.
+ */
+public class ParallelSweep{
+
+	AmuaModel myModel;
+	int numPoints;
+	int numWorkers;
+	AmuaModel workers[];
+	Numeric origValues[][]; //[worker][parameter]
+	volatile boolean cancelled;
+
+	/**
+	 * Sets up and records each point.  Both methods are called on worker threads, so points may run in any order and
+	 * concurrently with each other.
+	 */
+	public interface PointTask{
+		/**
+		 * Sets the parameters for a point.  All parameters are reset to their base case values and unlocked first.
+		 * Parameters that are set should be locked.
+		 */
+		void setParameters(int point, AmuaModel worker) throws Exception;
+		
+		/**
+		 * Records the results of a point as soon as it has run
+		 * @param worker Model copy the point ran on - holds the expected values until the worker runs its next point
+		 */
+		void pointComplete(int point, AmuaModel worker) throws Exception;
+	}
+	
+	/**
+	 * @param myModel Model to analyze.  Must be parsed without errors and is not changed
+	 * @param numPoints Number of points to run
+	 */
+	public ParallelSweep(AmuaModel myModel, int numPoints) throws Exception{
+		this.myModel=myModel;
+		this.numPoints=numPoints;
+		numWorkers=Math.max(1, Math.min(myModel.numThreads, numPoints));
+		int workerThreads=myModel.numThreads;
+		if(numWorkers>1){workerThreads=1;} //parallelize over points instead of within each run
+		workers=new AmuaModel[numWorkers];
+		origValues=new Numeric[numWorkers][];
+		for(int w=0; w<numWorkers; w++){
+			workers[w]=myModel.copyForWorker(workerThreads);
+			if(workers[w].type==1){workers[w].markov.keepTraces=false;} //only EVs are used
+			int numParams=workers[w].parameters.size();
+			origValues[w]=new Numeric[numParams];
+			for(int v=0; v<numParams; v++){
+				origValues[w][v]=workers[w].parameters.get(v).value.copy();
+			}
+		}
+	}
+	
+	/**
+	 * Runs all points and waits for them to finish.  Points that have not started when the analysis is cancelled are skipped.
+	 */
+	public void run(final PointTask task) throws Exception{
+		cancelled=false;
+		Scheduler.run(numWorkers, numPoints, new Scheduler.ChunkTask(){
+			@Override
+			public void run(int point, int w) throws Exception{
+				if(cancelled){return;}
+				runPoint(workers[w], origValues[w], point, task);
+				task.pointComplete(point, workers[w]);
+			}
+		});
+	}
+	
+	public void cancel(){
+		cancelled=true;
+	}
+	
+	public boolean isCancelled(){
+		return(cancelled);
+	}
+	
+	public int getNumWorkers(){
+		return(numWorkers);
+	}
+	
+	/**
+	 * Runs the model once on a given worker with one parameter set to a value.  Used by searches that choose each value
+	 * from the results of earlier runs.
+	 * @param w Worker to use [0,numWorkers).  A worker must only be used by one thread at a time
+	 * @return Model copy the value ran on - holds the expected values until the worker runs again
+	 */
+	public AmuaModel runValue(int w, int paramIndex, double value) throws Exception{
+		AmuaModel worker=workers[w];
+		resetParameters(worker, origValues[w]);
+		Parameter curParam=worker.parameters.get(paramIndex);
+		curParam.value.setDouble(value);
+		curParam.locked=true;
+		runModel(worker, curParam.name+"="+value);
+		return(worker);
+	}
+	
+	private void runPoint(AmuaModel worker, Numeric origValues[], int point, PointTask task) throws Exception{
+		resetParameters(worker, origValues);
+		task.setParameters(point, worker);
+		runModel(worker, "point "+point);
+	}
+	
+	private void resetParameters(AmuaModel worker, Numeric origValues[]){
+		int numParams=origValues.length;
+		for(int v=0; v<numParams; v++){ //reset to base case
+			Parameter curParam=worker.parameters.get(v);
+			curParam.value=origValues[v].copy();
+			curParam.locked=false;
+		}
+	}
+	
+	private void runModel(AmuaModel worker, String label) throws Exception{
+		ArrayList<String> errors=worker.parseModel();
+		if(errors.size()>0){
+			throw new Exception("Errors in model at "+label+": "+errors.get(0));
+		}
+		worker.runModel(null, false);
+	}
+}
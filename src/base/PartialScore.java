@@ -0,0 +1,230 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package base;
+
+import java.util.ArrayList;
+
+import markov.MarkovTrace;
+import math.Interpreter;
+import math.Token;
+
+/**
+ * Splits a calibration score into terms added at the top level so it can be checked while a chain is running.  If every term is
+ * non-negative (a product or quotient of abs(), even powers, and positive numbers), the sum of the terms whose trace rows have
+ * been simulated is a lower bound on the final score, and a run can be stopped as soon as it exceeds the tolerance.
+ * Terms may not read variables, since their values change during the run.
+ * e.g. abs(trace[10,'Sick']-0.3)/0.3 + (trace[20,'Dead']-0.5)^2
+ */
+public class PartialScore{
+	
+	AmuaModel myModel;
+	/**
+	 * Terms ordered by the last trace row they read
+	 */
+	Token terms[][];
+	/**
+	 * Last trace row read by each term.  Integer.MAX_VALUE if not known until the run finishes.
+	 */
+	int lastRows[];
+	boolean valid;
+	
+	//current run
+	int nextTerm;
+	double curScore;
+	
+	/**
+	 * @param strScore Score expression
+	 * @param myModel Model the terms are parsed for
+	 */
+	public PartialScore(String strScore, AmuaModel myModel) throws Exception{
+		this.myModel=myModel;
+		ArrayList<String> strTerms=split(strScore, '+');
+		int numTerms=strTerms.size();
+		valid=true;
+		for(int i=0; i<numTerms; i++){
+			if(isNonNegative(strTerms.get(i))==false){valid=false;}
+		}
+		if(valid){
+			//sort terms by last row (insertion sort - few terms)
+			int order[]=new int[numTerms];
+			int rows[]=new int[numTerms];
+			for(int i=0; i<numTerms; i++){
+				rows[i]=getLastRow(strTerms.get(i));
+				int j=i;
+				while(j>0 && rows[order[j-1]]>rows[i]){
+					order[j]=order[j-1];
+					j--;
+				}
+				order[j]=i;
+			}
+			terms=new Token[numTerms][];
+			lastRows=new int[numTerms];
+			for(int i=0; i<numTerms; i++){
+				terms[i]=Interpreter.parse(strTerms.get(order[i]), myModel);
+				if(Interpreter.readsVariables(terms[i])){valid=false;} //may differ during the run
+				lastRows[i]=rows[order[i]];
+			}
+		}
+	}
+	
+	/**
+	 * True if the score can be checked while a chain is running
+	 */
+	public boolean isValid(){
+		return(valid);
+	}
+	
+	/**
+	 * Clears the partial score before a run
+	 */
+	public void reset(){
+		nextTerm=0;
+		curScore=0;
+	}
+	
+	/**
+	 * Adds the terms that only read trace rows up to t.  Call once per cycle, in order.
+	 * @param trace Trace being simulated
+	 * @return Partial score - a lower bound on the final score
+	 */
+	public double update(MarkovTrace trace, int t) throws Exception{
+		myModel.traceMarkov=trace;
+		while(nextTerm<terms.length && lastRows[nextTerm]<=t){
+			curScore+=Interpreter.evaluateTokens(terms[nextTerm], 0, false).getDouble();
+			nextTerm++;
+		}
+		return(curScore);
+	}
+	
+	/**
+	 * Splits an expression on a character outside of brackets and strings
+	 */
+	private static ArrayList<String> split(String expr, char c){
+		ArrayList<String> parts=new ArrayList<String>();
+		int depth=0, start=0;
+		boolean inString=false;
+		for(int i=0; i<expr.length(); i++){
+			char curChar=expr.charAt(i);
+			if(curChar=='\''){inString=!inString;}
+			else if(inString==false){
+				if(curChar=='(' || curChar=='['){depth++;}
+				else if(curChar==')' || curChar==']'){depth--;}
+				else if(curChar==c && depth==0 && isExponent(expr, i)==false){
+					parts.add(expr.substring(start, i).trim());
+					start=i+1;
+				}
+			}
+		}
+		parts.add(expr.substring(start).trim());
+		return(parts);
+	}
+	
+	/**
+	 * True if a '+' or '-' is the sign of a number's exponent, e.g. 1e-5
+	 */
+	private static boolean isExponent(String expr, int i){
+		if(i<2){return(false);}
+		char prev=expr.charAt(i-1);
+		return((prev=='e' || prev=='E') && Character.isDigit(expr.charAt(i-2)));
+	}
+	
+	private static boolean isNonNegative(String term){
+		if(term.length()==0){return(false);}
+		//split into factors on '*' and '/'
+		ArrayList<String> factors=new ArrayList<String>();
+		ArrayList<String> products=split(term, '*');
+		for(int i=0; i<products.size(); i++){
+			factors.addAll(split(products.get(i), '/'));
+		}
+		for(int i=0; i<factors.size(); i++){
+			String factor=factors.get(i);
+			if(split(factor, '-').size()>1){return(false);} //subtraction or negation outside of brackets
+			ArrayList<String> powers=split(factor, '^');
+			if(powers.size()==2){ //even powers
+				try{
+					double exponent=Double.parseDouble(powers.get(1));
+					if(exponent%2!=0){return(false);}
+				} catch(NumberFormatException e){
+					return(false);
+				}
+			}
+			else if(powers.size()>2){return(false);}
+			else if(factor.startsWith("abs(") && factor.endsWith(")") && isEnclosed(factor, 3)){} //abs
+			else{ //positive number
+				try{
+					if(Double.parseDouble(factor)<=0){return(false);}
+				} catch(NumberFormatException e){
+					return(false);
+				}
+			}
+		}
+		return(true);
+	}
+	
+	/**
+	 * True if the bracket at open closes at the end of the expression
+	 */
+	private static boolean isEnclosed(String expr, int open){
+		int depth=0;
+		for(int i=open; i<expr.length(); i++){
+			char curChar=expr.charAt(i);
+			if(curChar=='(' || curChar=='['){depth++;}
+			else if(curChar==')' || curChar==']'){
+				depth--;
+				if(depth==0){return(i==expr.length()-1);}
+			}
+		}
+		return(false);
+	}
+	
+	/**
+	 * Last trace row read by a term, or Integer.MAX_VALUE if a row is not a number
+	 */
+	private static int getLastRow(String term){
+		int lastRow=-1;
+		int index=term.indexOf("trace[");
+		while(index!=-1){
+			int open=index+5;
+			int close=open;
+			int depth=0;
+			boolean found=false;
+			while(found==false && close<term.length()){
+				char curChar=term.charAt(close);
+				if(curChar=='[' || curChar=='('){depth++;}
+				else if(curChar==']' || curChar==')'){
+					depth--;
+					if(depth==0){found=true;}
+				}
+				if(found==false){close++;}
+			}
+			if(found==false){return(Integer.MAX_VALUE);}
+			ArrayList<String> args=split(term.substring(open+1, close), ',');
+			String row=args.get(0);
+			if(row.contains(":")){row=row.substring(row.indexOf(':')+1).trim();}
+			try{
+				lastRow=Math.max(lastRow, Integer.parseInt(row));
+			} catch(NumberFormatException e){
+				return(Integer.MAX_VALUE);
+			}
+			index=term.indexOf("trace[", close);
+		}
+		return(lastRow);
+	}
+}
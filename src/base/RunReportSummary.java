@@ -68,6 +68,13 @@ public class RunReportSummary{
 	
 	//Constructor
 	public RunReportSummary(RunReport reports[]){
+		this(reports,null);
+	}
+	
+	/**
+	 * @param traceSummaries Markov trace summaries already aggregated while the runs finished [Chain][0=Overall, g+1=Group g], or null to summarize the traces kept in each report
+	 */
+	public RunReportSummary(RunReport reports[], MarkovTraceSummary traceSummaries[][]){
 		int numReports=reports.length;
 		type=reports[0].type;
 		myModel=reports[0].myModel;
@@ -81,6 +88,7 @@ public class RunReportSummary{
 		MarkovTrace tracesGroups[][][]=null;
 		int numChains=0;
 		if(type==0){treeReports=new TreeReport[numReports];}
+		else if(type==1 && traceSummaries!=null){numChains=traceSummaries.length;}
 		else if(type==1){
 			numChains=reports[0].markovTraces.size();
 			traces=new MarkovTrace[numChains][numReports];
@@ -89,7 +97,7 @@ public class RunReportSummary{
 		
 		for(int i=0; i<numReports; i++){
 			if(type==0){treeReports[i]=reports[i].treeReport;}
-			else if(type==1){
+			else if(type==1 && traceSummaries==null){
 				//overall
 				for(int j=0; j<numChains; j++){
 					traces[j][i]=reports[i].markovTraces.get(j);
@@ -110,7 +118,8 @@ public class RunReportSummary{
 			markovChainNames=new String[numChains];
 			markovTraceSummary=new MarkovTraceSummary[numChains];
 			for(int i=0; i<numChains; i++){
-				markovTraceSummary[i]=new MarkovTraceSummary(traces[i]);
+				if(traceSummaries!=null){markovTraceSummary[i]=traceSummaries[i][0];}
+				else{markovTraceSummary[i]=new MarkovTraceSummary(traces[i]);}
 				markovChainNames[i]=markovTraceSummary[i].traceName;
 			}
 			//subgroups
@@ -118,7 +127,8 @@ public class RunReportSummary{
 				markovTraceSummaryGroup=new MarkovTraceSummary[numSubgroups][numChains];
 				for(int g=0; g<numSubgroups; g++) {
 					for(int i=0; i<numChains; i++) {
-						markovTraceSummaryGroup[g][i]=new MarkovTraceSummary(tracesGroups[g][i]);
+						if(traceSummaries!=null){markovTraceSummaryGroup[g][i]=traceSummaries[i][g+1];}
+						else{markovTraceSummaryGroup[g][i]=new MarkovTraceSummary(tracesGroups[g][i]);}
 					}
 				}
 			}
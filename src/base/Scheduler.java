@@ -0,0 +1,147 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package base;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Shared scheduler for simulations.  Work is divided into a fixed number of chunks that are run on one
+ * ForkJoinPool for the whole process, sized to the available processors.  Model expressions keep thread-specific
+ * state (variable values, token values, RNGs), so each run forks one task per state slot [0,numThreads) and the
+ * tasks claim chunks from a shared counter until none are left.  This limits each run to numThreads workers
+ * whatever the pool size, and runs can overlap or be nested without waiting on each other's slots.
+ * Chunk boundaries depend only on the number of items, not on the number of threads or the order chunks run in.
+ */
+public final class Scheduler{
+
+	/**
+	 * Minimum number of items per chunk
+	 */
+	static final int MIN_CHUNK_SIZE=64;
+	/**
+	 * Maximum number of chunks
+	 */
+	static final int MAX_CHUNKS=1024;
+
+	private static ForkJoinPool pool; //created once, never shut down
+
+	/**
+	 * Work performed on one chunk
+	 */
+	public interface ChunkTask{
+		/**
+		 * @param chunk Chunk index
+		 * @param slot Thread-specific state slot [0,numThreads) to use while processing the chunk
+		 */
+		void run(int chunk, int slot) throws Exception;
+	}
+
+	/**
+	 * Returns the shared pool
+	 */
+	public static synchronized ForkJoinPool getPool(){
+		if(pool==null){
+			pool=new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		}
+		return(pool);
+	}
+
+	public static int getNumChunks(int numItems){
+		int numChunks=numItems/MIN_CHUNK_SIZE;
+		return(Math.max(1, Math.min(MAX_CHUNKS, numChunks)));
+	}
+
+	/**
+	 * First item of a chunk (inclusive).  The end of chunk k is the beginning of chunk k+1.
+	 */
+	public static int getChunkBegin(int chunk, int numChunks, int numItems){
+		return((int)(((long)chunk*numItems)/numChunks));
+	}
+
+	/**
+	 * Runs all chunks and waits for them to finish.  The first error thrown by a chunk is re-thrown here,
+	 * and chunks that have not started yet are skipped.
+	 */
+	public static void run(int numThreads, int numChunks, ChunkTask task) throws Exception{
+		if(numThreads==1){ //run in calling thread
+			for(int k=0; k<numChunks; k++){
+				task.run(k, 0);
+			}
+			return;
+		}
+		int numWorkers=Math.min(numThreads, numChunks);
+		AtomicInteger nextChunk=new AtomicInteger();
+		AtomicReference<Exception> error=new AtomicReference<Exception>();
+		final SlotWorker workers[]=new SlotWorker[numWorkers];
+		for(int n=0; n<numWorkers; n++){
+			workers[n]=new SlotWorker(n,numChunks,task,nextChunk,error);
+		}
+		if(ForkJoinTask.inForkJoinPool()){ //nested run, fork into the current pool
+			ForkJoinTask.invokeAll(workers);
+		}
+		else{
+			getPool().invoke(new RecursiveAction(){
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected void compute(){
+					invokeAll(workers);
+				}
+			});
+		}
+		if(error.get()!=null){
+			throw error.get();
+		}
+	}
+
+	/**
+	 * Owns one state slot and runs chunks until there are none left or a chunk has failed
+	 */
+	private static class SlotWorker extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+		int slot, numChunks;
+		ChunkTask task;
+		AtomicInteger nextChunk;
+		AtomicReference<Exception> error;
+
+		SlotWorker(int slot, int numChunks, ChunkTask task, AtomicInteger nextChunk, AtomicReference<Exception> error){
+			this.slot=slot;
+			this.numChunks=numChunks;
+			this.task=task;
+			this.nextChunk=nextChunk;
+			this.error=error;
+		}
+
+		@Override
+		protected void compute(){
+			while(error.get()==null){
+				int chunk=nextChunk.getAndIncrement();
+				if(chunk>=numChunks){return;}
+				try{
+					task.run(chunk, slot);
+				} catch(Exception e){
+					error.compareAndSet(null, e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,232 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the parameter values where the difference between two strategies changes sign (i.e. where the preferred
+ * strategy switches).  Sign changes are bracketed from a coarse grid of differences, then each bracket is narrowed with
+ * Brent's method, which needs far fewer model runs than bisection or scanning.  Brackets are solved in parallel.
+ */
+public class ThresholdSearch{
+
+	AmuaModel myModel;
+	int paramIndex;
+	ArrayList<double[]> brackets; //{lower, upper, diff at lower, diff at upper}
+	ArrayList<Threshold> exact; //grid points where the difference is zero
+	int maxIterations=100;
+	AtomicInteger numRuns;
+	ParallelSweep sweep;
+	volatile boolean cancelled;
+	
+	/**
+	 * Returns the difference between the two strategies from a model copy that has just run
+	 */
+	public interface Difference{
+		double evaluate(AmuaModel worker) throws Exception;
+	}
+	
+	public interface ProgressListener{
+		/**
+		 * Called after each model run.  May be called from several threads at once.
+		 */
+		void progress(int numRuns);
+	}
+	
+	public static class Threshold implements Comparable<Threshold>{
+		/**
+		 * Parameter value of the threshold
+		 */
+		public double value;
+		/**
+		 * Difference between the strategies at value
+		 */
+		public double difference;
+		/**
+		 * Final bracket containing the sign change
+		 */
+		public double lower, upper;
+		/**
+		 * Number of model runs used to refine the bracket
+		 */
+		public int numRuns;
+		/**
+		 * True if the difference at value is within the tolerance.  False if the bracket could not be narrowed further
+		 * (e.g. the difference jumps across zero instead of crossing it)
+		 */
+		public boolean converged;
+		
+		@Override
+		public int compareTo(Threshold other){
+			return(Double.compare(value, other.value));
+		}
+	}
+	
+	/**
+	 * @param paramIndex Index of the parameter that varies
+	 * @param grid Parameter values already run, in increasing order
+	 * @param diffs Difference between the strategies at each grid value
+	 */
+	public ThresholdSearch(AmuaModel myModel, int paramIndex, double grid[], double diffs[]){
+		this.myModel=myModel;
+		this.paramIndex=paramIndex;
+		brackets=new ArrayList<double[]>();
+		exact=new ArrayList<Threshold>();
+		for(int i=0; i<grid.length; i++){
+			if(diffs[i]==0){
+				Threshold curThresh=new Threshold();
+				curThresh.value=grid[i]; curThresh.lower=grid[i]; curThresh.upper=grid[i];
+				curThresh.converged=true;
+				exact.add(curThresh);
+			}
+			else if(i>0 && diffs[i-1]!=0 && Math.signum(diffs[i-1])*Math.signum(diffs[i])<0){ //NaN never brackets
+				brackets.add(new double[]{grid[i-1], grid[i], diffs[i-1], diffs[i]});
+			}
+		}
+	}
+	
+	/**
+	 * Number of grid intervals that contain a sign change
+	 */
+	public int getNumBrackets(){
+		return(brackets.size());
+	}
+	
+	/**
+	 * Number of thresholds that will be returned by solve
+	 */
+	public int getNumThresholds(){
+		return(brackets.size()+exact.size());
+	}
+	
+	public int getMaxIterations(){
+		return(maxIterations);
+	}
+	
+	/**
+	 * Refines each bracket until the difference is within the tolerance.
+	 * @param tolerance Maximum absolute difference at the threshold
+	 * @return Thresholds in increasing order, or null if cancelled
+	 */
+	public Threshold[] solve(final Difference difference, final double tolerance, final ProgressListener listener) throws Exception{
+		cancelled=false;
+		numRuns=new AtomicInteger();
+		final int numBrackets=brackets.size();
+		final Threshold refined[]=new Threshold[numBrackets];
+		if(numBrackets>0){
+			sweep=new ParallelSweep(myModel, numBrackets);
+			Scheduler.run(sweep.getNumWorkers(), numBrackets, new Scheduler.ChunkTask(){
+				@Override
+				public void run(int b, int w) throws Exception{
+					if(cancelled){return;}
+					refined[b]=brent(brackets.get(b), w, difference, tolerance, listener);
+				}
+			});
+		}
+		if(cancelled){return(null);}
+		
+		Threshold thresholds[]=new Threshold[numBrackets+exact.size()];
+		for(int b=0; b<numBrackets; b++){thresholds[b]=refined[b];}
+		for(int i=0; i<exact.size(); i++){thresholds[numBrackets+i]=exact.get(i);}
+		Arrays.sort(thresholds);
+		return(thresholds);
+	}
+	
+	public void cancel(){
+		cancelled=true;
+	}
+	
+	public int getNumRuns(){
+		if(numRuns==null){return(0);}
+		return(numRuns.get());
+	}
+	
+	/**
+	 * Brent's method: inverse quadratic/secant steps, falling back to bisection whenever a step would not shrink the
+	 * bracket fast enough.  b is always the best estimate and [b,c] always brackets the sign change.
+	 */
+	private Threshold brent(double bracket[], int w, Difference difference, double tolerance, ProgressListener listener) throws Exception{
+		double a=bracket[0], b=bracket[1], fa=bracket[2], fb=bracket[3];
+		double c=b, fc=fb, d=b-a, e=d;
+		double xTol=1E-12*(bracket[1]-bracket[0]); //smallest useful bracket width
+		Threshold curThresh=new Threshold();
+		int iter=0;
+		while(true){
+			if((fb>0 && fc>0) || (fb<0 && fc<0)){ //keep the sign change between b and c
+				c=a; fc=fa;
+				d=b-a; e=d;
+			}
+			if(Math.abs(fc)<Math.abs(fb)){ //b is the best estimate
+				a=b; b=c; c=a;
+				fa=fb; fb=fc; fc=fa;
+			}
+			double tol1=2*Math.ulp(b)+0.5*xTol;
+			double xm=0.5*(c-b);
+			if(Math.abs(fb)<=tolerance || Math.abs(xm)<=tol1 || iter>=maxIterations || cancelled){
+				break;
+			}
+			if(Math.abs(e)>=tol1 && Math.abs(fa)>Math.abs(fb)){ //try interpolation
+				double p, q, s=fb/fa;
+				if(a==c){ //secant
+					p=2*xm*s;
+					q=1-s;
+				}
+				else{ //inverse quadratic
+					double r=fb/fc;
+					q=fa/fc;
+					p=s*(2*xm*q*(q-r)-(b-a)*(r-1));
+					q=(q-1)*(r-1)*(s-1);
+				}
+				if(p>0){q=-q;}
+				p=Math.abs(p);
+				double min1=3*xm*q-Math.abs(tol1*q);
+				double min2=Math.abs(e*q);
+				if(2*p<Math.min(min1, min2)){ //accept interpolation
+					e=d;
+					d=p/q;
+				}
+				else{ //bisect
+					d=xm;
+					e=d;
+				}
+			}
+			else{ //bisect
+				d=xm;
+				e=d;
+			}
+			a=b; fa=fb;
+			if(Math.abs(d)>tol1){b+=d;}
+			else{b+=(xm>0 ? tol1 : -tol1);}
+			fb=difference.evaluate(sweep.runValue(w, paramIndex, b));
+			iter++;
+			if(listener!=null){listener.progress(numRuns.incrementAndGet());}
+			else{numRuns.incrementAndGet();}
+		}
+		curThresh.value=b;
+		curThresh.difference=fb;
+		curThresh.lower=Math.min(b, c);
+		curThresh.upper=Math.max(b, c);
+		curThresh.numRuns=iter;
+		curThresh.converged=(Math.abs(fb)<=tolerance);
+		return(curThresh);
+	}
+}
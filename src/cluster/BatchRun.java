@@ -0,0 +1,451 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2020 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cluster;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+
+import base.AmuaModel;
+import base.ParallelPSA;
+import base.RunReport;
+import base.Scheduler;
+import main.MersenneTwisterFast;
+import main.Parameter;
+import main.RandomStreams;
+import main.Scenario;
+import math.Numeric;
+
+/**
+ * Headless batch runner.  Opens the model once and runs a list of PSA iterations, scenarios, or sensitivity grid
+ * points in one process, spreading the runs across threads.  Each run is appended to a CSV file as soon as it finishes.
+ * Arguments: -batch model inputs outpath [iterations] [threads]
+ */
+public class BatchRun{
+
+	AmuaModel myModel;
+	ClusterInputs inputs;
+	String outpath;
+	int numStrat, numDim, numSubgroups;
+	
+	//output
+	int numRuns, numComplete, curProg;
+
+	//Constructor
+	public BatchRun(String args[], String version){
+		try{
+			if(args.length<4){
+				System.out.println("Usage: -batch model inputs outpath [iterations] [threads]");
+				return;
+			}
+			String model=args[1];
+			String inputFile=args[2];
+			outpath=args[3];
+
+			System.out.println("===========================================");
+			System.out.println("Amua "+version);
+			System.out.println("===========================================");
+			System.out.println("Model: "+model);
+			System.out.println("Inputs: "+inputFile);
+			System.out.println("Output path: "+outpath);
+
+			//open model
+			System.out.println("Opening model...");
+			myModel=ClusterRun.openModel(model);
+			
+			//check model
+			ArrayList<String> errorsBase=myModel.parseModel();
+			if(errorsBase.size()>0){
+				int numErr=errorsBase.size();
+				System.out.println(numErr+" errors found!");
+				for(int i=0; i<numErr; i++) {
+					System.out.println(errorsBase.get(i));
+				}
+				return;
+			}
+			System.out.println("Model checked!");
+
+			//read inputs
+			System.out.println("Reading inputs...");
+			JAXBContext context = JAXBContext.newInstance(ClusterInputs.class);
+			Unmarshaller un = context.createUnmarshaller();
+			inputs = (ClusterInputs) un.unmarshal(new File(inputFile));
+			if(args.length>4){inputs.iterations=args[4];}
+			if(args.length>5){myModel.numThreads=Integer.parseInt(args[5]);}
+			System.out.println("done");
+			System.out.println("Threads: "+myModel.numThreads);
+
+			numStrat=myModel.getStrategies();
+			numDim=myModel.dimInfo.dimNames.length;
+			numSubgroups=0;
+			if(myModel.simType==1 && myModel.reportSubgroups){numSubgroups=myModel.subgroupNames.size();}
+			
+			ClusterRun.writeModelProperties(myModel, outpath);
+			long startTime=System.currentTimeMillis();
+			if(inputs.operation.contains("PSA")){
+				runPSA();
+			}
+			else if(inputs.operation.contains("Scenario")){
+				runScenarios();
+			}
+			else if(inputs.operation.contains("Sensitivity")){
+				runSensitivity();
+			}
+			else{
+				System.out.println("Unknown operation: "+inputs.operation);
+				return;
+			}
+			long endTime=System.currentTimeMillis();
+			System.out.println("Runs: "+numComplete+" ("+(endTime-startTime)/1000.0+" s)");
+			
+		}catch(Exception e){
+			e.printStackTrace();
+		}
+	}
+
+	private void runPSA() throws Exception{
+		if(inputs.iterations==null){inputs.iterations="1";}
+		final int iterations[]=parseList(inputs.iterations);
+		System.out.println("Running PSA: "+iterations.length+" iterations...");
+		
+		ParallelPSA psa=new ParallelPSA(myModel, iterations, inputs.seedParamRNG, inputs.paramSeed, inputs.sampleParamSets);
+		psa.setSeedIterationRNG(inputs.seedIterationRNG);
+		
+		int numParams=myModel.parameters.size();
+		String labels[]=new String[numParams+1];
+		labels[0]="Iteration";
+		for(int v=0; v<numParams; v++){
+			labels[v+1]=myModel.parameters.get(v).name;
+		}
+		try(BufferedWriter writer=openResults("PSA_results.csv", labels, iterations.length)){
+			psa.run(new ParallelPSA.IterationListener(){
+				@Override
+				public void iterationComplete(int n, AmuaModel worker, RunReport report) throws Exception{
+					int iteration=iterations[n];
+					int numParams=worker.parameters.size();
+					String values[]=new String[numParams+1];
+					values[0]=iteration+"";
+					for(int v=0; v<numParams; v++){
+						values[v+1]=worker.parameters.get(v).value.saveAsCSVString();
+					}
+					recordRun(writer, worker, report, values, iteration);
+				}
+			});
+		}
+	}
+
+	private void runScenarios() throws Exception{
+		//get scenarios
+		final ArrayList<Scenario> scenarios=new ArrayList<Scenario>();
+		if(myModel.scenarios!=null){
+			for(int i=0; i<myModel.scenarios.size(); i++){
+				Scenario curScenario=myModel.scenarios.get(i);
+				if(inputs.scenarioNames==null || inputs.scenarioNames.isEmpty()){
+					scenarios.add(curScenario);
+				}
+				else{
+					String names[]=inputs.scenarioNames.split(";");
+					for(int j=0; j<names.length; j++){
+						if(names[j].trim().equals(curScenario.name)){scenarios.add(curScenario);}
+					}
+				}
+			}
+		}
+		//flatten runs
+		int totalRuns=0;
+		for(int i=0; i<scenarios.size(); i++){
+			totalRuns+=scenarios.get(i).numIterations;
+		}
+		final int scenarioIndex[]=new int[totalRuns], iterationIndex[]=new int[totalRuns];
+		int k=0;
+		for(int i=0; i<scenarios.size(); i++){
+			for(int j=0; j<scenarios.get(i).numIterations; j++){
+				scenarioIndex[k]=i;
+				iterationIndex[k]=j;
+				k++;
+			}
+		}
+		System.out.println("Running scenarios: "+scenarios.size()+" ("+totalRuns+" runs)...");
+		try(BufferedWriter writer=openResults("Scenario_results.csv", new String[]{"Scenario","Iteration"}, totalRuns)){
+			//each worker keeps its copy until it moves on to a different scenario
+			final int numWorkers=Math.max(1, Math.min(myModel.numThreads, totalRuns));
+			final int workerThreads=(numWorkers>1) ? 1 : myModel.numThreads;
+			final AmuaModel workers[]=new AmuaModel[numWorkers];
+			final int workerScenario[]=new int[numWorkers];
+			final Numeric origValues[][]=new Numeric[numWorkers][];
+			final int paramSeed=new MersenneTwisterFast().nextInt();
+			for(int w=0; w<numWorkers; w++){workerScenario[w]=-1;}
+		
+			Scheduler.run(numWorkers, totalRuns, new Scheduler.ChunkTask(){
+				@Override
+				public void run(int k, int w) throws Exception{
+					Scenario curScenario=scenarios.get(scenarioIndex[k]);
+					if(workerScenario[w]!=scenarioIndex[k]){
+						workers[w]=getScenarioModel(curScenario, workerThreads);
+						origValues[w]=getValues(workers[w]);
+						workerScenario[w]=scenarioIndex[k];
+					}
+					AmuaModel worker=workers[w];
+					int i=iterationIndex[k];
+				
+					int seed=paramSeed;
+					if(curScenario.crn2){seed=curScenario.seed2;}
+					RandomStreams.seed(worker.generatorParam, RandomStreams.split(RandomStreams.getKey(seed), i));
+					worker.curGenerator=new MersenneTwisterFast[]{worker.generatorParam};
+					if(curScenario.sampleParams){
+						worker.sampleParameters(origValues[w]);
+					}
+					else if(curScenario.useParamSets && worker.parameterSets!=null){
+						int numSets=worker.parameterSets.length;
+						int curSet=i%numSets; //keep looping over sets
+						worker.parameterSets[curSet].setParameters(worker);
+						curScenario.overwriteParams(worker);
+					}
+				
+					worker.generatorVar=new MersenneTwisterFast[1];
+					worker.curGenerator=worker.generatorVar;
+					RunReport report=worker.runModel(null, false);
+					recordRun(writer, worker, report, new String[]{curScenario.name, i+""}, k);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns a model copy with the scenario applied
+	 */
+	private AmuaModel getScenarioModel(Scenario curScenario, int numThreads) throws Exception{
+		AmuaModel worker=myModel.copyForWorker(numThreads);
+		curScenario.parseUpdates(worker);
+		curScenario.applyUpdates(worker);
+		
+		worker.cohortSize=curScenario.cohortSize;
+		worker.CRN=curScenario.crn1;
+		worker.crnSeed=curScenario.seed1;
+		//analysis
+		worker.dimInfo.analysisType=curScenario.analysisType;
+		worker.dimInfo.objective=curScenario.objective;
+		worker.dimInfo.objectiveDim=curScenario.objectiveDim;
+		worker.dimInfo.costDim=curScenario.costDim;
+		worker.dimInfo.effectDim=curScenario.effectDim;
+		worker.dimInfo.WTP=curScenario.WTP;
+		worker.dimInfo.baseScenario=curScenario.baseScenario;
+		worker.dimInfo.extendedDim=curScenario.extendedDim;
+		//markov
+		if(worker.type==1){
+			worker.markov.halfCycleCorrection=curScenario.halfCycleCorrection;
+			worker.markov.discountRewards=curScenario.discountRewards;
+			if(curScenario.discountRewards){
+				if(curScenario.discountRates==null || curScenario.discountRates.length!=numDim){
+					throw new Exception("Error: Incorrect model dimensions in Scenario "+curScenario.name+" !");
+				}
+				for(int d=0; d<numDim; d++){
+					worker.markov.discountRates[d]=curScenario.discountRates[d];
+				}
+				worker.markov.discountStartCycle=curScenario.discountStartCycle;
+			}
+		}
+		
+		ArrayList<String> errors=worker.parseModel();
+		if(errors.size()>0){
+			throw new Exception("Errors found in run: "+curScenario.name+"!");
+		}
+		worker.sampleParam=curScenario.sampleParams;
+		worker.generatorParam=new MersenneTwisterFast();
+		return(worker);
+	}
+
+	private void runSensitivity() throws Exception{
+		if(inputs.sensParams==null || inputs.sensParams.length==0){
+			throw new Exception("No sensitivity parameters specified");
+		}
+		final int numSensParams=inputs.sensParams.length;
+		final int paramIndices[]=new int[numSensParams];
+		int totalRuns=1;
+		String labels[]=new String[numSensParams+1];
+		labels[0]="Point";
+		for(int j=0; j<numSensParams; j++){
+			paramIndices[j]=myModel.getParameterIndex(inputs.sensParams[j]);
+			if(paramIndices[j]==-1){
+				throw new Exception("Parameter not found: "+inputs.sensParams[j]);
+			}
+			if(inputs.sensMin==null || inputs.sensMin.length<=j){
+				throw new Exception("SensMin not specified for parameter: "+inputs.sensParams[j]);
+			}
+			if(inputs.sensMax==null || inputs.sensMax.length<=j){
+				throw new Exception("SensMax not specified for parameter: "+inputs.sensParams[j]);
+			}
+			if(inputs.sensIntervals==null || inputs.sensIntervals.length<=j){
+				throw new Exception("SensIntervals not specified for parameter: "+inputs.sensParams[j]);
+			}
+			if(inputs.sensIntervals[j]<0){
+				throw new Exception("SensIntervals must be non-negative for parameter: "+inputs.sensParams[j]);
+			}
+			labels[j+1]=inputs.sensParams[j];
+			totalRuns*=(inputs.sensIntervals[j]+1);
+		}
+		if(inputs.sensMin.length!=numSensParams || inputs.sensMax.length!=numSensParams || inputs.sensIntervals.length!=numSensParams){
+			throw new Exception("SensMin, SensMax, and SensIntervals must have one value for each of the "+numSensParams+" sensitivity parameters");
+		}
+		System.out.println("Running sensitivity grid: "+totalRuns+" points...");
+		try(BufferedWriter writer=openResults("Sensitivity_results.csv", labels, totalRuns)){
+			final int numWorkers=Math.max(1, Math.min(myModel.numThreads, totalRuns));
+			final int workerThreads=(numWorkers>1) ? 1 : myModel.numThreads;
+			final AmuaModel workers[]=new AmuaModel[numWorkers];
+			final Numeric origValues[][]=new Numeric[numWorkers][];
+		
+			Scheduler.run(numWorkers, totalRuns, new Scheduler.ChunkTask(){
+				@Override
+				public void run(int k, int w) throws Exception{
+					if(workers[w]==null){
+						workers[w]=myModel.copyForWorker(workerThreads);
+						origValues[w]=getValues(workers[w]);
+					}
+					AmuaModel worker=workers[w];
+					for(int v=0; v<worker.parameters.size(); v++){ //reset
+						Parameter curParam=worker.parameters.get(v);
+						curParam.locked=false;
+						curParam.value=origValues[w][v];
+					}
+					//set grid point - first parameter varies fastest
+					String values[]=new String[numSensParams+1];
+					values[0]=k+"";
+					int index=k;
+					for(int j=0; j<numSensParams; j++){
+						int intervals=inputs.sensIntervals[j];
+						int i=index%(intervals+1);
+						index/=(intervals+1);
+						double step=(inputs.sensMax[j]-inputs.sensMin[j])/(intervals*1.0);
+						double curVal=inputs.sensMin[j]+step*i;
+						if(intervals==0){curVal=inputs.sensMin[j];}
+						Parameter curParam=worker.parameters.get(paramIndices[j]);
+						curParam.value=new Numeric(curVal);
+						curParam.locked=true;
+						values[j+1]=curVal+"";
+					}
+					ArrayList<String> errors=worker.parseModel();
+					if(errors.size()>0){
+						throw new Exception("Errors found at point "+k+": "+errors.get(0));
+					}
+				
+					worker.generatorVar=new MersenneTwisterFast[1];
+					worker.curGenerator=worker.generatorVar;
+					RunReport report=worker.runModel(null, false);
+					recordRun(writer, worker, report, values, k);
+				}
+			});
+		}
+	}
+
+	private static Numeric[] getValues(AmuaModel worker){
+		int numParams=worker.parameters.size();
+		Numeric values[]=new Numeric[numParams];
+		for(int v=0; v<numParams; v++){
+			values[v]=worker.parameters.get(v).value.copy();
+		}
+		return(values);
+	}
+
+	/**
+	 * Returns a list of integers, e.g. 1-1000 or 1,5,10-20
+	 */
+	static int[] parseList(String text){
+		ArrayList<Integer> list=new ArrayList<Integer>();
+		String items[]=text.replaceAll(" ", "").split(",");
+		for(int i=0; i<items.length; i++){
+			if(items[i].isEmpty()){continue;}
+			int dash=items[i].indexOf('-',1); //allow negative start
+			if(dash==-1){
+				list.add(Integer.parseInt(items[i]));
+			}
+			else{
+				int start=Integer.parseInt(items[i].substring(0, dash));
+				int end=Integer.parseInt(items[i].substring(dash+1));
+				for(int j=start; j<=end; j++){list.add(j);}
+			}
+		}
+		int values[]=new int[list.size()];
+		for(int i=0; i<values.length; i++){values[i]=list.get(i);}
+		return(values);
+	}
+
+	/**
+	 * Opens the results file and writes the header.  The caller closes the returned writer.
+	 */
+	private BufferedWriter openResults(String filename, String labels[], int numRuns) throws IOException{
+		this.numRuns=numRuns;
+		numComplete=0;
+		curProg=0;
+		BufferedWriter out=new BufferedWriter(new FileWriter(outpath+filename));
+		for(int i=0; i<labels.length; i++){
+			out.write(labels[i]+",");
+		}
+		for(int g=0; g<numSubgroups+1; g++){
+			String group="";
+			if(g>0){group="_"+myModel.subgroupNames.get(g-1);}
+			for(int s=0; s<numStrat; s++){
+				for(int d=0; d<numDim; d++){
+					out.write(myModel.strategyNames[s]+"_"+myModel.dimInfo.dimSymbols[d]+group+",");
+				}
+			}
+		}
+		out.newLine();
+		out.flush();
+		return(out);
+	}
+
+	/**
+	 * Appends the results of a run to the results file.  Called from worker threads
+	 */
+	private void recordRun(BufferedWriter out, AmuaModel worker, RunReport report, String labels[], int runNum) throws IOException{
+		report.getResults(true);
+		if(inputs.writeRunFiles){
+			report.writeSummary(outpath, runNum);
+			report.write(outpath, runNum);
+		}
+		StringBuilder row=new StringBuilder();
+		for(int i=0; i<labels.length; i++){
+			row.append(labels[i]).append(',');
+		}
+		for(int g=0; g<numSubgroups+1; g++){
+			for(int s=0; s<numStrat; s++){
+				for(int d=0; d<numDim; d++){
+					if(g==0){row.append(report.outcomeEVs[d][s]).append(',');}
+					else{row.append(report.outcomeEVsGroup[g-1][d][s]).append(',');}
+				}
+			}
+		}
+		synchronized(this){
+			out.write(row.toString());
+			out.newLine();
+			out.flush();
+			numComplete++;
+			int prog=(int)((numComplete*100L)/numRuns);
+			if(prog>curProg){
+				curProg=prog;
+				System.out.println("Progress: "+curProg);
+			}
+		}
+	}
+}
@@ -32,6 +32,15 @@ public class ClusterInputs{
 	@XmlElement public int paramSeed;
 	@XmlElement public boolean sampleParamSets;
 	
+	//batch inputs
+	@XmlElement public String iterations; //PSA iterations to run, e.g. 1-1000 or 1,5,10-20
+	@XmlElement public String scenarioNames; //scenarios to run, separated by ';'.  All scenarios if empty
+	@XmlElement(name="SensParameter") public String sensParams[]; //sensitivity grid
+	@XmlElement(name="SensMin") public double sensMin[];
+	@XmlElement(name="SensMax") public double sensMax[];
+	@XmlElement(name="SensIntervals") public int sensIntervals[];
+	@XmlElement public boolean writeRunFiles; //also write results and traces for each run
+	
 		
 	//Constructor
 	public ClusterInputs(){
@@ -26,7 +26,9 @@ import base.AmuaModel;
 import base.RunReport;
 import main.Constraint;
 import main.MersenneTwisterFast;
+import main.RandomStreams;
 import main.Parameter;
+import main.ParameterSet;
 import math.Interpreter;
 import math.Numeric;
 
@@ -46,13 +48,9 @@ public class ClusterPSA{
 			myModel.curGenerator[0]=myModel.generatorParam;
 			if(inputs.seedParamRNG){
 				int seed=inputs.paramSeed;
-				myModel.generatorParam.setSeed(seed+iteration);
+				RandomStreams.seed(myModel.generatorParam, RandomStreams.split(RandomStreams.getKey(seed), iteration)); //same stream as a batch run of this iteration
 			}
 			myModel.simParamSets=false; //turn off use parameter sets (no looping through)
-			int numSets=-1;
-			if(inputs.sampleParamSets) {
-				numSets=myModel.parameterSets.length;
-			}
 			if(inputs.seedIterationRNG) { //seed by iteration
 				myModel.CRN=true;
 				myModel.crnSeed=iteration;
@@ -87,7 +85,7 @@ public class ClusterPSA{
 				for(int v=0; v<numParams; v++){ //sample all parameters
 					Parameter curParam=myModel.parameters.get(v);
 					if(curParam.locked==false) {
-						curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true);
+						curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true).copy();
 						curParam.locked=true;
 					}
 				}
@@ -107,9 +105,13 @@ public class ClusterPSA{
 				}
 			} //end sample params
 			if(inputs.sampleParamSets) {
-				int curSet=myModel.generatorParam.nextInt(numSets);
+				int curSet=ParameterSet.sampleIndex(myModel.parameterSets, myModel.generatorParam);
 				myModel.parameterSets[curSet].setParameters(myModel);
 			}
+			if(inputs.seedParamRNG && myModel.simType==1 && myModel.CRN==false) { //seed simulation from this iteration's stream
+				myModel.CRN=true;
+				myModel.crnSeed=myModel.generatorParam.nextInt();
+			}
 			System.out.println("done");
 			
 			//Run model
@@ -62,65 +62,8 @@ public class ClusterRun{
 
 			//open model
 			System.out.println("Opening model...");
-			JAXBContext context = JAXBContext.newInstance(AmuaModel.class);
-			Unmarshaller un = context.createUnmarshaller();
-			AmuaModel myModel = (AmuaModel) un.unmarshal(new File(model));
-			myModel.cluster=true;
+			AmuaModel myModel=openModel(model);
 			
-			//initialize model objects
-			if(myModel.parameters==null) {myModel.parameters=new ArrayList<Parameter>();}
-			if(myModel.variables==null) {myModel.variables=new ArrayList<Variable>();}
-			if(myModel.tables==null) {myModel.tables=new ArrayList<Table>();}
-			if(myModel.constraints==null) {myModel.constraints=new ArrayList<Constraint>();}
-			myModel.innateVariables=new ArrayList<Variable>();
-			if(myModel.subgroupNames==null){
-				myModel.subgroupNames=new ArrayList<String>();
-				myModel.subgroupDefinitions=new ArrayList<String>();
-			}
-			//parameter sets
-			if(myModel.parameterNames!=null){
-				int numSets=myModel.parameterSets.length;
-				for(int i=0; i<numSets; i++){
-					myModel.parameterSets[i].parseXMLValues();
-				}
-			}
-			
-			if(myModel.type==0) { //Decision Tree
-				myModel.tree.myModel=myModel;
-				TreeNode root=myModel.tree.nodes.get(0);
-				root.cost=new String[myModel.dimInfo.dimNames.length];
-				root.numDimensions=myModel.dimInfo.dimNames.length;
-				int size=myModel.tree.nodes.size();
-				for(int i=1; i<size; i++){ //Skip root
-					TreeNode curNode=myModel.tree.nodes.get(i);
-					curNode.myModel=myModel;
-					curNode.numDimensions=myModel.dimInfo.dimNames.length;
-					curNode.tree=myModel.tree;
-				}
-			}
-			else if(myModel.type==1) { //Markov
-				myModel.markov.myModel=myModel;
-				myModel.addT();
-				
-				MarkovNode root=myModel.markov.nodes.get(0);
-				root.cost=new String[myModel.dimInfo.dimNames.length];
-				root.numDimensions=myModel.dimInfo.dimNames.length;
-				int numChildren=root.childIndices.size();
-				for(int i=0; i<numChildren; i++){ //Skip root
-					int index=root.childIndices.get(i);
-					MarkovNode node=myModel.markov.nodes.get(index);
-					openMarkovNode(node, myModel);
-				}
-			}
-			
-			//Construct splines if needed
-			for(int t=0; t<myModel.tables.size(); t++){
-				Table curTable=myModel.tables.get(t);
-				curTable.myModel=myModel;
-				if(curTable.interpolate!=null && curTable.interpolate.matches("Cubic Splines")){
-					curTable.constructSplines();
-				}
-			}
 			//check model
 			ArrayList<String> errorsBase=myModel.parseModel();
 			if(errorsBase.size()>0){
@@ -161,7 +104,75 @@ public class ClusterRun{
 
 	}
 	
-	private void openMarkovNode(MarkovNode node, AmuaModel myModel){
+	/**
+	 * Opens a model file without a display
+	 */
+	public static AmuaModel openModel(String file) throws Exception{
+		JAXBContext context = JAXBContext.newInstance(AmuaModel.class);
+		Unmarshaller un = context.createUnmarshaller();
+		AmuaModel myModel = (AmuaModel) un.unmarshal(new File(file));
+		myModel.cluster=true;
+		
+		//initialize model objects
+		if(myModel.parameters==null) {myModel.parameters=new ArrayList<Parameter>();}
+		if(myModel.variables==null) {myModel.variables=new ArrayList<Variable>();}
+		if(myModel.tables==null) {myModel.tables=new ArrayList<Table>();}
+		if(myModel.constraints==null) {myModel.constraints=new ArrayList<Constraint>();}
+		myModel.innateVariables=new ArrayList<Variable>();
+		if(myModel.subgroupNames==null){
+			myModel.subgroupNames=new ArrayList<String>();
+			myModel.subgroupDefinitions=new ArrayList<String>();
+		}
+		//parameter sets
+		if(myModel.parameterNames!=null){
+			int numSets=myModel.parameterSets.length;
+			for(int i=0; i<numSets; i++){
+				myModel.parameterSets[i].parseXMLValues();
+			}
+		}
+		
+		if(myModel.type==0) { //Decision Tree
+			myModel.tree.myModel=myModel;
+			TreeNode root=myModel.tree.nodes.get(0);
+			root.cost=new String[myModel.dimInfo.dimNames.length];
+			root.numDimensions=myModel.dimInfo.dimNames.length;
+			root.myModel=myModel;
+			root.tree=myModel.tree;
+			int size=myModel.tree.nodes.size();
+			for(int i=1; i<size; i++){ //Skip root
+				TreeNode curNode=myModel.tree.nodes.get(i);
+				curNode.myModel=myModel;
+				curNode.numDimensions=myModel.dimInfo.dimNames.length;
+				curNode.tree=myModel.tree;
+			}
+		}
+		else if(myModel.type==1) { //Markov
+			myModel.markov.myModel=myModel;
+			myModel.addT();
+			
+			MarkovNode root=myModel.markov.nodes.get(0);
+			root.cost=new String[myModel.dimInfo.dimNames.length];
+			root.numDimensions=myModel.dimInfo.dimNames.length;
+			int numChildren=root.childIndices.size();
+			for(int i=0; i<numChildren; i++){ //Skip root
+				int index=root.childIndices.get(i);
+				MarkovNode node=myModel.markov.nodes.get(index);
+				openMarkovNode(node, myModel);
+			}
+		}
+		
+		//Construct splines if needed
+		for(int t=0; t<myModel.tables.size(); t++){
+			Table curTable=myModel.tables.get(t);
+			curTable.myModel=myModel;
+			if(curTable.interpolate!=null && curTable.interpolate.matches("Cubic Splines")){
+				curTable.constructSplines();
+			}
+		}
+		return(myModel);
+	}
+	
+	private static void openMarkovNode(MarkovNode node, AmuaModel myModel){
 		if(node.type==1){ //chain
 			node.chain=node; //set chain
 			if(node.stateNames==null) { //no state names saved
@@ -180,7 +191,7 @@ public class ClusterRun{
 		}
 	}
 	
-	private void writeModelProperties(AmuaModel myModel, String outpath) {
+	static void writeModelProperties(AmuaModel myModel, String outpath) {
 		try {
 			FileWriter fstream = new FileWriter(outpath+"Properties.csv"); //Create new file
 			BufferedWriter out = new BufferedWriter(fstream);
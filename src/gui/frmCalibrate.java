@@ -59,10 +59,9 @@ import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 
 import base.AmuaModel;
+import base.ParallelCalibration;
 import base.RunReport;
-import main.Constraint;
 import main.DimInfo;
-import main.MersenneTwisterFast;
 import main.Parameter;
 import main.ParameterSet;
 import main.ScaledIcon;
@@ -191,6 +190,7 @@ public class frmCalibrate {
 			};
 			modelParamSets.addColumn("Set");
 			modelParamSets.addColumn("Score");
+			modelParamSets.addColumn("Weight");
 			for(int i=0; i<numParams; i++){
 				modelParamSets.addColumn(paramNames[i]);
 			}
@@ -489,9 +489,18 @@ public class frmCalibrate {
 						modelCalibSettings.setValueAt("Score Threshold", 0, 0);
 						tableCalibSettings.setEnabled(true);
 					}
+					else if(method==2){ //abc-smc
+						modelCalibSettings.setRowCount(3);
+						modelCalibSettings.setValueAt("Score Threshold", 0, 0);
+						modelCalibSettings.setValueAt("Tolerance Quantile", 1, 0);
+						modelCalibSettings.setValueAt("0.5", 1, 1);
+						modelCalibSettings.setValueAt("Max Generations", 2, 0);
+						modelCalibSettings.setValueAt("20", 2, 1);
+						tableCalibSettings.setEnabled(true);
+					}
 				}
 			});
-			comboMethod.setModel(new DefaultComboBoxModel(new String[] {"Random", "Approximate Bayesian Computation"}));
+			comboMethod.setModel(new DefaultComboBoxModel(new String[] {"Random", "Approximate Bayesian Computation", "ABC - Sequential Monte Carlo"}));
 			comboMethod.setBounds(56, 38, 229, 26);
 			panel_2.add(comboMethod);
 			
@@ -593,99 +602,48 @@ public class frmCalibrate {
 									
 									int method=comboMethod.getSelectedIndex();
 									numSets=Integer.parseInt(textNumSets.getText());
+									double thresh=0;
+									if(method!=ParallelCalibration.RANDOM){
+										thresh=Double.parseDouble((String) tableCalibSettings.getValueAt(0,1));
+									}
 									progress.setMaximum(numSets+1);
-									params=new ParameterSet[numSets];
+									progress.setMillisToPopup(0);
+									progress.setMillisToDecideToPopup(0);
+									progress.setProgress(0);
+									progress.setProgress(1);
+									progress.setNote("Sampling...");
 									
 									modelParams.setRowCount(0);
-									
-									myModel.sampleParam=true;
-									myModel.generatorParam=new MersenneTwisterFast();
-									if(myModel.curGenerator==null){myModel.curGenerator=new MersenneTwisterFast[1];}
-									myModel.curGenerator[0]=myModel.generatorParam;
-									
-									
-									//Get orig values for all parameters
-									Numeric origValues[]=new Numeric[numParams];
-									for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters
-										origValues[v]=myModel.parameters.get(v).value.copy();
+									for(int v=0; v<numParams; v++){
 										modelParams.addRow(new Object[]{null});
 										modelParams.setValueAt(myModel.parameters.get(v).name, v, 0);
 										modelParams.setValueAt(myModel.parameters.get(v).expression, v, 1);
 									}
-									//Initialize constraint expressions
-									for(int c=0; c<numConst; c++){
-										myModel.constraints.get(c).parseConstraints();
-									}
 									
-									long startTime=System.currentTimeMillis();
-									boolean wasCancelled=false;
-									
-									if(method==0){ //random
-										for(int i=0; i<numSets; i++){
-											progress.setProgress(i+1);
-											sampleAll();
-											RunReport curReport=new RunReport(myModel);
-											myModel.markov.runModel(false,curReport,false);
-											double curScore=Interpreter.evaluate(strScore, myModel, false).getDouble();
-											params[i]=new ParameterSet(myModel);
-											params[i].id=(i+1)+"";
-											params[i].score=curScore;
-											if(progress.isCanceled()){ //listen for cancel
-												numSets=i; //end for loop
-												wasCancelled=true;
-											}
-											//Update progress bar
-											String remTime=estimateTime(startTime,i,numSets);
-											progress.setNote("Time left: "+remTime);
-										}
+									final ParallelCalibration calibration=new ParallelCalibration(myModel, strScore, curChain.name, false, 0);
+									if(method==ParallelCalibration.ABC_SMC){
+										double quantile=Double.parseDouble((String) tableCalibSettings.getValueAt(1,1));
+										int maxGenerations=Integer.parseInt((String) tableCalibSettings.getValueAt(2,1));
+										calibration.setSMCSettings(quantile, maxGenerations);
 									}
-									else if(method==1){ //ABC
-										double thresh=Double.parseDouble((String) tableCalibSettings.getValueAt(0,1));
-										progress.setMillisToPopup(0);
-										progress.setMillisToDecideToPopup(0);
-										progress.setProgress(0);
-										progress.setProgress(1);
-										progress.setNote("Sampling...");
-										
-										for(int i=0; i<numSets; i++){
-											progress.setProgress(i+1);
-											double curScore=thresh+1;
-											while(curScore>thresh){
-												sampleAll();
-												RunReport curReport=new RunReport(myModel);
-												myModel.markov.runModel(false,curReport,false);
-												curScore=Interpreter.evaluate(strScore, myModel, false).getDouble();
-												if(progress.isCanceled()){ //listen for cancel
-													curScore=thresh-1; //end while loop
-													numSets=i; //end for loop
-													wasCancelled=true;
-												}
-											}
-											if(wasCancelled==false){
-												params[i]=new ParameterSet(myModel);
-												params[i].id=(i+1)+"";
-												params[i].score=curScore;
-											}
-											
-											//Update progress bar
-											String remTime=estimateTime(startTime,i,numSets);
-											progress.setNote("Time left: "+remTime);
-											
+									params=calibration.run(method, numSets, thresh, new ParallelCalibration.ProgressListener(){
+										@Override
+										public void progress(int numAccepted, String note){
+											progress.setProgress(numAccepted+1);
+											progress.setNote(note);
+											if(progress.isCanceled()){calibration.cancel();} //listen for cancel
 										}
-									}
+									});
+									numSets=params.length;
 									
 									if(myModel.type==1){
 										myModel.markov.showTrace=origShowTrace;
 									}
+									myModel.validateModelObjects();
 									
-									//Reset all parameters
-									myModel.sampleParam=false;
-									for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
-										Parameter curParam=myModel.parameters.get(v);
-										curParam.locked=false;
-										curParam.value=origValues[v];
+									if(method==ParallelCalibration.ABC_SMC && calibration.getFinalTolerance()>thresh){
+										JOptionPane.showMessageDialog(frmCalibrate, "Tolerance did not reach the score threshold after "+calibration.getNumGenerations()+" generations (final tolerance: "+calibration.getFinalTolerance()+")");
 									}
-									myModel.validateModelObjects();
 									
 									//Get parameter values
 									paramVals=new double[numParams][numSets];
@@ -695,9 +653,10 @@ public class frmCalibrate {
 										modelParamSets.addRow(new Object[]{null});
 										modelParamSets.setValueAt(Double.parseDouble(params[i].id), i, 0);
 										modelParamSets.setValueAt(params[i].score, i, 1);
+										modelParamSets.setValueAt(params[i].weight, i, 2);
 										scores[i]=params[i].score;
 										for(int j=0; j<numParams; j++){
-											//modelParamSets.setValueAt(params[i].values[j].toString(),i,2+j);
+											//modelParamSets.setValueAt(params[i].values[j].toString(),i,3+j);
 											//update parameter ranges
 											double val=Double.NaN;
 											try{
@@ -705,7 +664,7 @@ public class frmCalibrate {
 											} catch(Exception e){
 												val=Double.NaN;
 											}
-											modelParamSets.setValueAt(val,i,2+j);
+											modelParamSets.setValueAt(val,i,3+j);
 											
 											paramVals[j][i]=val;
 										}
@@ -757,53 +716,4 @@ public class frmCalibrate {
 			myModel.errorLog.recordError(ex);
 		}
 	}
-	
-	private String estimateTime(long startTime,int i, int numSets){
-		double prog=((i+1)/(numSets*1.0))*100;
-    	long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-    	remTime=(long) (remTime*(100-prog));
-    	remTime=remTime/1000;
-    	String seconds = Integer.toString((int)(remTime % 60));
-    	String minutes = Integer.toString((int)(remTime/60));
-    	if(seconds.length()<2){seconds="0"+seconds;}
-    	if(minutes.length()<2){minutes="0"+minutes;}
-    	return(minutes+":"+seconds);
-    }
-	
-	private void sampleAll(){
-		try{
-		//Sample parameters
-		boolean validParams=false;
-		while(validParams==false){
-			for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
-				Parameter curParam=myModel.parameters.get(v);
-				curParam.locked=false;
-				curParam.value=origValues[v];
-			}
-			
-			for(int v=0; v<numParams; v++){ //sample all parameters
-				Parameter curParam=myModel.parameters.get(v);
-				if(curParam.locked==false) {
-					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true);
-					curParam.locked=true;
-				}
-			}
-			//check constraints
-			validParams=true;
-			int c=0;
-			while(validParams==true && c<numConst){
-				Constraint curConst=myModel.constraints.get(c);
-				validParams=curConst.checkConstraints(myModel);
-				c++;
-			}
-			if(validParams){ //check model for valid params
-				if(myModel.parseModel().size()!=0){validParams=false;}
-			}
-		}
-		}catch(Exception e){
-			e.printStackTrace();
-			JOptionPane.showMessageDialog(frmCalibrate, e.getMessage());
-			myModel.errorLog.recordError(e);
-		}
-	}
 }
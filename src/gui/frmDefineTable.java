@@ -936,6 +936,7 @@ public class frmDefineTable {
 		if(table.interpolate!=null && table.interpolate.matches("Cubic Splines")){
 			table.constructSplines();
 		}
+		table.clearCache(); //data changed
 	}
 
 	private void getTable(){
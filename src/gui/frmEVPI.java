@@ -34,8 +34,8 @@ import java.io.File;
 import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.DefaultListModel;
@@ -74,18 +74,17 @@ import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 
 import base.AmuaModel;
+import base.ParallelEVPPI;
+import base.ParallelPSA;
+import base.RunReport;
 import filters.CSVFilter;
 import main.CEAHelper;
-import main.Constraint;
 import main.DimInfo;
 import main.HtmlSelection;
-import main.MersenneTwisterFast;
 import main.Parameter;
 import main.ScaledIcon;
-import math.Interpreter;
 import math.KernelSmooth;
 import math.MathUtils;
-import math.Numeric;
 import javax.swing.JTextPane;
 import java.awt.Font;
 import javax.swing.JToolBar;
@@ -133,9 +132,26 @@ public class frmEVPI {
 	 */
 	double results[][];
 	
-	ArrayList<SortedResult> sortedResults;
+	/**
+	 * Net benefit of each strategy, higher is better [Strategy][Iteration]
+	 */
+	double netBenefit[][];
 	
-	double evppiBins[][][];
+	/**
+	 * Parameters and groups of parameters with an EVPPI estimate
+	 */
+	String evppiNames[], evppiExpressions[];
+	double evppi[];
+	/**
+	 * EVPPI estimated from increasing numbers of iterations [Parameter/Group][# Iterations, EVPPI][Estimate]
+	 */
+	double evppiIter[][][];
+	String evppiMethod;
+	/**
+	 * EVPI report before and after the EVPPI table
+	 */
+	String reportHeader, reportFooter;
+	int reportDecimals;
 	boolean exportReady=false;
 	
 	JList<String> listParams;
@@ -145,7 +161,7 @@ public class frmEVPI {
 	JCheckBox chckbxSeed;
 	private JTextField textSeed;
 	String outcome;
-	private JTextField textNumBins;
+	JComboBox<String> comboEVPPIMethod;
 	
 	//RunReport reports[];
 	
@@ -191,9 +207,9 @@ public class frmEVPI {
 			modelParams=new DefaultTableModel(
 					new Object[][] {,},
 					//new String[] {"Parameter", "Expression","Sample"}) {
-					new String[] {"Parameter", "Expression"}){
+					new String[] {"Parameter", "Expression", "EVPPI Group"}){
 					//boolean[] columnEditables = new boolean[] {false, false,true};
-					boolean[] columnEditables = new boolean[] {false, false};
+					boolean[] columnEditables = new boolean[] {false, false, true};
 					public boolean isCellEditable(int row, int column) {return columnEditables[column];}
 			};
 
@@ -289,16 +305,16 @@ public class frmEVPI {
 							FileWriter fstream = new FileWriter(path+".csv"); //Create new file
 							BufferedWriter out = new BufferedWriter(fstream);
 							
-							if(tabIndex==1) { //EVPPI estimates
+							if(tabIndex==1 && evppiNames!=null) { //EVPPI estimates
 								//Headers
-								out.write("# Bins");
-								for(int p=0; p<numParams; p++) {out.write(","+paramNames[p]);}
+								out.write("# Iterations");
+								for(int p=0; p<evppiNames.length; p++) {out.write(","+evppiNames[p]);}
 								out.newLine();
-								int numBins=evppiBins[0][0].length;
-								for(int b=0; b<numBins; b++) {
-									out.write(evppiBins[0][0][b]+"");
-									for(int p=0; p<numParams; p++) {
-										out.write(","+evppiBins[p][1][b]);
+								int numEstimates=evppiIter[0][0].length;
+								for(int k=0; k<numEstimates; k++) {
+									out.write((int)evppiIter[0][0][k]+"");
+									for(int p=0; p<evppiNames.length; p++) {
+										out.write(","+evppiIter[p][1][k]);
 									}
 									out.newLine();
 								}
@@ -397,16 +413,20 @@ public class frmEVPI {
 			panel_2.add(textSeed);
 			textSeed.setColumns(10);
 			
-			JLabel lblEvppiBins = new JLabel("EVPPI # bins:");
-			lblEvppiBins.setBounds(6, 42, 81, 16);
-			panel_2.add(lblEvppiBins);
+			JLabel lblEvppiMethod = new JLabel("EVPPI:");
+			lblEvppiMethod.setBounds(6, 42, 69, 16);
+			panel_2.add(lblEvppiMethod);
 			
-			textNumBins = new JTextField();
-			textNumBins.setHorizontalAlignment(SwingConstants.CENTER);
-			textNumBins.setText("100");
-			textNumBins.setBounds(83, 36, 59, 28);
-			panel_2.add(textNumBins);
-			textNumBins.setColumns(10);
+			comboEVPPIMethod = new JComboBox<String>(new DefaultComboBoxModel<String>(new String[] {"GAM","Gaussian Process"}));
+			comboEVPPIMethod.setToolTipText("Metamodel used to estimate EVPPI from the PSA results");
+			comboEVPPIMethod.setBounds(73, 37, 140, 26);
+			panel_2.add(comboEVPPIMethod);
+			
+			final JButton btnUpdateEVPPI = new JButton("Update EVPPI");
+			btnUpdateEVPPI.setToolTipText("Re-estimate EVPPI from the current PSA results (e.g. after changing groups) without re-running the model");
+			btnUpdateEVPPI.setEnabled(false);
+			btnUpdateEVPPI.setBounds(223, 36, 126, 28);
+			panel_2.add(btnUpdateEVPPI);
 
 			tabbedPane = new JTabbedPane(JTabbedPane.TOP);
 			tabbedPane.addChangeListener(new ChangeListener() {
@@ -480,7 +500,7 @@ public class frmEVPI {
 			panelEVPPI.setLayout(gbl_panelEVPPI);
 			
 			chartDataEVPPI = new DefaultXYDataset();
-			chartEVPPI = ChartFactory.createScatterPlot(null, "# of Bins", "EVPPI", chartDataEVPPI, PlotOrientation.VERTICAL, true, false, false);
+			chartEVPPI = ChartFactory.createScatterPlot(null, "# of Iterations", "EVPPI", chartDataEVPPI, PlotOrientation.VERTICAL, true, false, false);
 			chartEVPPI.getXYPlot().setBackgroundPaint(new Color(1,1,1,1));
 			//Draw axes
 			ValueMarker marker = new ValueMarker(0);  // position is the value on the axis
@@ -662,17 +682,10 @@ public class frmEVPI {
 									JOptionPane.showMessageDialog(frmEVPI, "Errors in base case model!");
 								}
 								else{
-									boolean cancelled=false;
-
-									myModel.sampleParam=true;
-									myModel.generatorParam=new MersenneTwisterFast();
-									if(myModel.curGenerator==null){
-										myModel.curGenerator=new MersenneTwisterFast[1];
-									}
-									myModel.curGenerator[0]=myModel.generatorParam;
-									if(chckbxSeed.isSelected()){
-										int seed=Integer.parseInt(textSeed.getText());
-										myModel.generatorParam.setSeed(seed);
+									boolean seeded=chckbxSeed.isSelected();
+									int seed=0;
+									if(seeded){
+										seed=Integer.parseInt(textSeed.getText());
 									}
 																		
 									numIterations=Integer.parseInt(textIterations.getText().replaceAll(",", ""));
@@ -680,11 +693,11 @@ public class frmEVPI {
 
 									numStrat=myModel.getStrategies();
 									int numOutcomes=comboDimensions.getItemCount();
-									int numDim=myModel.dimInfo.dimNames.length;
+									final int numDim=myModel.dimInfo.dimNames.length;
 									
 									if(myModel.simType==1 && myModel.reportSubgroups){numSubgroups=myModel.subgroupNames.size();}
 									
-									int analysisType=myModel.dimInfo.analysisType;
+									final int analysisType=myModel.dimInfo.analysisType;
 									if(analysisType==1){CEAnotes=new String[1+numSubgroups][numStrat][numIterations];} //CEA
 									else{CEAnotes=null;}
 									
@@ -697,192 +710,104 @@ public class frmEVPI {
 									dataParamsCumDens=new double[numParams][2][numIterations];
 									
 									results=new double[numStrat][numIterations];
-									sortedResults=new ArrayList<SortedResult>();
 									
-									//Get orig values for all parameters
-									Numeric origValues[]=new Numeric[numParams];
-									for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters
-										origValues[v]=myModel.parameters.get(v).value.copy();
-									}
+									final long startTime=System.currentTimeMillis();
 									
-									//Parse constraints
-									for(int c=0; c<numConstraints; c++){
-										myModel.constraints.get(c).parseConstraints();
-									}
-									
-									boolean origShowTrace=true;
-									if(myModel.type==1){
-										origShowTrace=myModel.markov.showTrace;
-										myModel.markov.showTrace=false;
-									}
-									
-									long startTime=System.currentTimeMillis();
-									
-									//reports=new RunReport[numIterations];
-									
-									for(int n=0; n<numIterations; n++){
-										//Update progress
-										double prog=((n+1)/(numIterations*1.0))*100;
-										long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-										remTime=(long) (remTime*(100-prog));
-										remTime=remTime/1000;
-										String seconds = Integer.toString((int)(remTime % 60));
-										String minutes = Integer.toString((int)(remTime/60));
-										if(seconds.length()<2){seconds="0"+seconds;}
-										if(minutes.length()<2){minutes="0"+minutes;}
-										progress.setProgress(n+1);
-										progress.setNote("Time left: "+minutes+":"+seconds);
-										
-										//Sample parameters
-										myModel.curGenerator[0]=myModel.generatorParam;
-										boolean validParams=false;
-										while(validParams==false){
-											for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
-												Parameter curParam=myModel.parameters.get(v);
-												curParam.locked=false;
-												curParam.value=origValues[v];
-											}
-									
-											for(int v=0; v<numParams; v++){ //sample all parameters
-												Parameter curParam=myModel.parameters.get(v);
-												if(curParam.locked==false) {
-													curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true);
-													curParam.locked=true;
+									//Run iterations in parallel, each worker on its own copy of the model
+									final ParallelPSA psa=new ParallelPSA(myModel, numIterations, seeded, seed, false);
+									psa.setKeepTraces(false); //only EVs are used
+									final AtomicInteger numComplete=new AtomicInteger();
+									psa.run(new ParallelPSA.IterationListener(){
+										@Override
+										public void iterationComplete(int n, AmuaModel worker, RunReport report) throws Exception{
+											for(int v=0; v<numParams; v++){ //Record value
+												dataParamsIter[v][0][n]=n; dataParamsVal[v][0][n]=n;
+												try{
+													dataParamsIter[v][1][n]=worker.parameters.get(v).value.getDouble();
+												} catch(Exception e){
+													dataParamsIter[v][1][n]=Double.NaN;
 												}
-											}
-											//check constraints
-											validParams=true;
-											int c=0;
-											while(validParams==true && c<numConstraints){
-												Constraint curConst=myModel.constraints.get(c);
-												validParams=curConst.checkConstraints(myModel);
-												c++;
-											}
-											if(validParams){ //check model for valid params
-												if(myModel.parseModel().size()!=0){validParams=false;}
-											}
-										}
-
-										for(int v=0; v<numParams; v++){ //Record value
-											dataParamsIter[v][0][n]=n; dataParamsVal[v][0][n]=n;
-											try{
-												dataParamsIter[v][1][n]=myModel.parameters.get(v).value.getDouble();
-											} catch(Exception e){
-												dataParamsIter[v][1][n]=Double.NaN;
-											}
-											dataParamsVal[v][1][n]=dataParamsIter[v][1][n];
-										} 
-
-										//Run model
-										myModel.curGenerator=myModel.generatorVar;
-										//reports[n]=myModel.runModel(null, false);
-										myModel.runModel(null, false);
-													
-										//Get EVs
-										for(int d=0; d<numDim; d++){
-											for(int s=0; s<numStrat; s++){
-												//overall
-												dataResultsIter[0][d][s][0][n]=n; dataResultsVal[0][d][s][0][n]=n;
-												double curOutcome=myModel.getStrategyEV(s, d);
-												dataResultsIter[0][d][s][1][n]=curOutcome; dataResultsVal[0][d][s][1][n]=curOutcome;
-												//subgroups
-												for(int g=0; g<numSubgroups; g++){
-													dataResultsIter[g+1][d][s][0][n]=n; dataResultsVal[g+1][d][s][0][n]=n;
-													curOutcome=myModel.getSubgroupEV(g, s, d);
-													dataResultsIter[g+1][d][s][1][n]=curOutcome; dataResultsVal[g+1][d][s][1][n]=curOutcome;
+												dataParamsVal[v][1][n]=dataParamsIter[v][1][n];
+											} 
+														
+											//Get EVs
+											for(int d=0; d<numDim; d++){
+												for(int s=0; s<numStrat; s++){
+													//overall
+													dataResultsIter[0][d][s][0][n]=n; dataResultsVal[0][d][s][0][n]=n;
+													double curOutcome=worker.getStrategyEV(s, d);
+													dataResultsIter[0][d][s][1][n]=curOutcome; dataResultsVal[0][d][s][1][n]=curOutcome;
+													//subgroups
+													for(int g=0; g<numSubgroups; g++){
+														dataResultsIter[g+1][d][s][0][n]=n; dataResultsVal[g+1][d][s][0][n]=n;
+														curOutcome=worker.getSubgroupEV(g, s, d);
+														dataResultsIter[g+1][d][s][1][n]=curOutcome; dataResultsVal[g+1][d][s][1][n]=curOutcome;
+													}
 												}
 											}
-										}
-										if(analysisType>0){ //CEA or BCA
-											if(analysisType==1){ //CEA
-												for(int g=0; g<numSubgroups+1; g++){
-													Object table[][]=new CEAHelper().calculateICERs(myModel,g-1,true);
-													//get baseline row
-													int baseIndex=myModel.getStrategyIndex(myModel.dimInfo.baseScenario);
-													int baseRow=-1,curRow=0;
-													while(baseRow==-1 && curRow<table.length){
-														if((int)table[curRow][0]==baseIndex){
-															baseRow=curRow;
+											if(analysisType>0){ //CEA or BCA
+												if(analysisType==1){ //CEA
+													for(int g=0; g<numSubgroups+1; g++){
+														Object table[][]=new CEAHelper().calculateICERs(worker,g-1,true);
+														for(int s=0; s<table.length; s++){    
+															int origStrat=(int) table[s][0];
+															if(origStrat!=-1){
+																dataResultsIter[g][numDim][origStrat][0][n]=n; dataResultsVal[g][numDim][origStrat][0][n]=n;
+																double curOutcome=(double) table[s][4];
+																dataResultsIter[g][numDim][origStrat][1][n]=curOutcome; dataResultsVal[g][numDim][origStrat][1][n]=curOutcome;
+																CEAnotes[g][origStrat][n]=(String) table[s][5];
+															}
 														}
-														curRow++;
 													}
-
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														if(origStrat!=-1){
-															dataResultsIter[g][numDim][origStrat][0][n]=n; dataResultsVal[g][numDim][origStrat][0][n]=n;
+												}
+												else if(analysisType==2){ //BCA
+													for(int g=0; g<numSubgroups+1; g++){
+														Object table[][]=new CEAHelper().calculateNMB(worker,g-1,true);
+														for(int s=0; s<table.length; s++){    
+															int origStrat=(int) table[s][0];
+															dataResultsIter[g][numDim][origStrat][0][n]=n;    dataResultsVal[g][numDim][origStrat][0][n]=n;
 															double curOutcome=(double) table[s][4];
 															dataResultsIter[g][numDim][origStrat][1][n]=curOutcome; dataResultsVal[g][numDim][origStrat][1][n]=curOutcome;
-															CEAnotes[g][origStrat][n]=(String) table[s][5];
 														}
 													}
 												}
 											}
-											else if(analysisType==2){ //BCA
-												for(int g=0; g<numSubgroups+1; g++){
-													Object table[][]=new CEAHelper().calculateNMB(myModel,g-1,true);
-													//use first row as baseline
-													//int baseIndex=myModel.getStrategyIndex(myModel.dimInfo.baseScenario);
-													int baseIndex=0;
-													int baseRow=-1,curRow=0;
-													while(baseRow==-1 && curRow<table.length){
-														if((int)table[curRow][0]==baseIndex){
-															baseRow=curRow;
-														}
-														curRow++;
-													}
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														dataResultsIter[g][numDim][origStrat][0][n]=n;	dataResultsVal[g][numDim][origStrat][0][n]=n;
-														double curOutcome=(double) table[s][4];
-														dataResultsIter[g][numDim][origStrat][1][n]=curOutcome; dataResultsVal[g][numDim][origStrat][1][n]=curOutcome;
-													}
+											
+											//Get EVPI results
+											if(analysisType==0) { //EV
+												for(int s=0; s<numStrat; s++) {
+													results[s][n]=worker.getStrategyEV(s, worker.dimInfo.objectiveDim);
 												}
 											}
-										}
-										
-										
-										//Get EVPI results
-										SortedResult curResult=new SortedResult(n,numStrat,numParams);
-										for(int p=0; p<numParams; p++){ //Record parameter value
-											curResult.paramVals[p]=dataParamsIter[p][1][n];
-										} 
-										if(analysisType==0) { //EV
-											for(int s=0; s<numStrat; s++) {
-												results[s][n]=myModel.getStrategyEV(s, myModel.dimInfo.objectiveDim);
-												curResult.outcomes[s]=results[s][n];
+											else { //CEA or BCA
+												for(int s=0; s<numStrat; s++) {
+													double cost=worker.getStrategyEV(s, worker.dimInfo.costDim);
+													double effect=worker.getStrategyEV(s, worker.dimInfo.effectDim);
+													results[s][n]=worker.dimInfo.WTP*effect-cost; //NMB
+												}
 											}
-										}
-										else { //CEA or BCA
-											for(int s=0; s<numStrat; s++) {
-												double cost=myModel.getStrategyEV(s, myModel.dimInfo.costDim);
-												double effect=myModel.getStrategyEV(s, myModel.dimInfo.effectDim);
-												double NMB=myModel.dimInfo.WTP*effect-cost;
-												results[s][n]=NMB;
-												curResult.outcomes[s]=results[s][n];
+											
+											//Update progress
+											synchronized(progress){
+												int curComplete=numComplete.incrementAndGet();
+												double prog=(curComplete/(numIterations*1.0))*100;
+												long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
+												remTime=(long) (remTime*(100-prog));
+												remTime=remTime/1000;
+												String seconds = Integer.toString((int)(remTime % 60));
+												String minutes = Integer.toString((int)(remTime/60));
+												if(seconds.length()<2){seconds="0"+seconds;}
+												if(minutes.length()<2){minutes="0"+minutes;}
+												progress.setProgress(curComplete);
+												progress.setNote("Time left: "+minutes+":"+seconds);
+												if(progress.isCanceled()){  //Skip remaining iterations
+													psa.cancel();
+												}
 											}
 										}
-										
-										sortedResults.add(curResult);
-																		
-										if(progress.isCanceled()){  //End loop
-											n=numIterations;
-											cancelled=true;
-										}
-									}
-
-									//Reset all parameters
-									myModel.sampleParam=false;
-									for(int v=0; v<numParams; v++){ //Reset 'locked' for all parameter and orig values
-										Parameter curParam=myModel.parameters.get(v);
-										curParam.locked=false;
-										curParam.value=origValues[v];
-									}
-									myModel.validateModelObjects();
-									
-									if(myModel.type==1){
-										myModel.markov.showTrace=origShowTrace;
-									}
+									});
+									boolean cancelled=psa.isCancelled();
+									progress.close();
 									
 									if(cancelled==false){
 										double meanResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
@@ -954,87 +879,13 @@ public class frmEVPI {
 										//EVPI: E[max] - max E[]
 										double evpi=bestOutcome-bestMean;
 																				
-										//Calculate EVPPI (for each parameter)
-										double bestPPI[]=new double[numParams];
-										double evppi[]=new double[numParams];
-										
-										int numBins=Integer.parseInt(textNumBins.getText());
-										int reportNumBins=numBins;
-										
-										int numSamp=numIterations/numBins;
-										for(int p=0; p<numParams; p++) {
-											Collections.sort(sortedResults, new ResultComparator(-1)); //order by iteration (reset previous ordering)
-											Collections.sort(sortedResults, new ResultComparator(p)); //re-sort ascending by parameter
-											double curMax[]=new double[numBins];
-											double avgMax=0;
-											for(int k=0; k<numBins; k++) {
-												int index0=k*numSamp;
-												int index1=index0+numSamp;
-												//calculate strategy mean within bin
-												double binMeans[]=new double[numStrat];
-												for(int i=index0; i<index1; i++) {
-													for(int s=0; s<numStrat; s++) {
-														binMeans[s]+=sortedResults.get(i).outcomes[s];
-													}
-												}
-												//get best strategy among bin means
-												double binMax=Double.NEGATIVE_INFINITY;
-												for(int s=0; s<numStrat; s++) {
-													binMeans[s]/=(numSamp*1.0);
-													binMax=Math.max(binMax, sign*binMeans[s]);
-												}
-												curMax[k]=binMax;
-												avgMax+=binMax;
-											}
-											avgMax/=(numBins*1.0);
-											bestPPI[p]=avgMax;
-											evppi[p]=avgMax-bestMean;
+										//Net benefit for EVPPI, kept in iteration order
+										netBenefit=new double[numStrat][numIterations];
+										for(int s=0; s<numStrat; s++){
+											for(int n=0; n<numIterations; n++){netBenefit[s][n]=sign*results[s][n];}
 										}
-										
-										//Calculate EVPPI for varying bin sizes
-										ArrayList<Integer> binSizes=new ArrayList<Integer>();
-										for(int b=1; b<numIterations/2; b++) {
-											if(numIterations%b==0) { //divides evenly
-												binSizes.add(b);
-											}
-										}
-										
-										evppiBins=new double[numParams][2][binSizes.size()];
-										
-										for(int p=0; p<numParams; p++) {
-											Collections.sort(sortedResults, new ResultComparator(-1)); //order by iteration (reset previous ordering)
-											Collections.sort(sortedResults, new ResultComparator(p)); //re-sort ascending by parameter
-										
-											for(int b=0; b<binSizes.size(); b++) { //number of bins
-												numBins=binSizes.get(b);
-												evppiBins[p][0][b]=numBins;
-												numSamp=numIterations/numBins;
-												double curMax[]=new double[numBins];
-												double avgMax=0;
-												for(int k=0; k<numBins; k++) {
-													int index0=k*numSamp;
-													int index1=index0+numSamp;
-													//calculate strategy mean within bin
-													double binMeans[]=new double[numStrat];
-													for(int i=index0; i<index1; i++) {
-														for(int s=0; s<numStrat; s++) {
-															binMeans[s]+=sortedResults.get(i).outcomes[s];
-														}
-													}
-													//get best strategy among bin means
-													double binMax=Double.NEGATIVE_INFINITY;
-													for(int s=0; s<numStrat; s++) {
-														binMeans[s]/=(numSamp*1.0);
-														binMax=Math.max(binMax, sign*binMeans[s]);
-													}
-													curMax[k]=binMax;
-													avgMax+=binMax;
-												}
-												avgMax/=(numBins*1.0);
-												evppiBins[p][1][b]=avgMax-bestMean;
-											}
-										}
-										
+										evppiNames=null; //estimates from previous results no longer apply
+										estimateEVPPI();
 										
 										//Update EVPPI chart
 										updateEVPPIChart();
@@ -1053,15 +904,9 @@ public class frmEVPI {
 										updateParamChart();
 										
 										btnExport.setEnabled(true);
+										btnUpdateEVPPI.setEnabled(true);
 										
 										//Print results summary to textpane
-										HTMLEditorKit kit = new HTMLEditorKit();
-										textEVPI.setEditorKit(kit);
-										
-										//add html styles
-								        StyleSheet styleSheet = kit.getStyleSheet();
-								        styleSheet.addRule("th {border-bottom: 1px solid black}");
-										
 								        String strReport="";
 								        strReport+=("<html><body><b>EVPI Report</b><br>");
 								        
@@ -1105,19 +950,10 @@ public class frmEVPI {
 										strReport+=("</table>");
 										strReport+=("<br><br>");
 										
-										//evppi table
-										strReport+=("<table>");
-										strReport+=("<caption>Expected Value of Partial Perfect Information ("+reportNumBins+" bins)</caption>");
-										strReport+=("<tr><th>Parameter</th><th>Expression</th><th>EVPPI</th></tr>");
-										for(int p=0; p<numParams; p++) {
-											Parameter curParam=myModel.parameters.get(p);
-											strReport+=("<tr><td>"+curParam.name+"</td>");
-											strReport+=("<td>"+curParam.expression+"</td>");
-											strReport+=("<td align=\"right\">"+MathUtils.round(evppi[p],numDecimals)+"</td></tr>");
-										}
-										strReport+=("</table>");
-										strReport+=("<br><br>");
-										
+										//evppi table is added by updateReport
+										reportHeader=strReport;
+										reportDecimals=numDecimals;
+										strReport="";
 										
 										//outcome summaries
 										strReport+=("<table>");
@@ -1154,12 +990,8 @@ public class frmEVPI {
 										
 										//end EVPI report
 										strReport+=("</body></html>");
-								        
-										Document doc = kit.createDefaultDocument();
-										textEVPI.setDocument(doc);
-										textEVPI.setText(strReport);
-										
-										textEVPI.setCaretPosition(0); //go to top
+										reportFooter=strReport;
+										updateReport();
 										
 										exportReady=true;
 										btnCopy.setEnabled(true);
@@ -1185,7 +1017,6 @@ public class frmEVPI {
 										}*/
 										
 									}
-									progress.close();
 								}
 								frmEVPI.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
 								
@@ -1200,6 +1031,29 @@ public class frmEVPI {
 					SimThread.start();
 				}
 			});
+			
+			btnUpdateEVPPI.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					Thread EVPPIThread = new Thread(){ //Non-UI
+						public void run(){
+							try{
+								frmEVPI.setCursor(new Cursor(Cursor.WAIT_CURSOR));
+								if(tableParams.isEditing()){tableParams.getCellEditor().stopCellEditing();} //use group being typed
+								estimateEVPPI();
+								updateEVPPIChart();
+								updateReport();
+								frmEVPI.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+							} catch (Exception e) {
+								e.printStackTrace();
+								frmEVPI.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+								JOptionPane.showMessageDialog(frmEVPI, e.getMessage());
+								myModel.errorLog.recordError(e);
+							}
+						}
+					};
+					EVPPIThread.start();
+				}
+			});
 
 		} catch (Exception ex){
 			ex.printStackTrace();
@@ -1207,25 +1061,135 @@ public class frmEVPI {
 		}
 	}
 
-	public void updateEVPPIChart(){
-		if(chartDataEVPPI.getSeriesCount()>0){
-			for(int p=0; p<numParams; p++){
-				chartDataEVPPI.removeSeries(myModel.parameters.get(p).name);
+	/**
+	 * Estimates EVPPI for each parameter, and for each group of parameters with the same group label, from the stored PSA
+	 * results.  The model is not run again.  Estimates are also made from increasing numbers of iterations to show convergence.
+	 * @return false if cancelled
+	 */
+	boolean estimateEVPPI() throws Exception{
+		//Parameters, then groups
+		ArrayList<int[]> groups=new ArrayList<int[]>();
+		ArrayList<String> names=new ArrayList<String>();
+		ArrayList<String> expressions=new ArrayList<String>();
+		LinkedHashMap<String,ArrayList<Integer>> groupMembers=new LinkedHashMap<String,ArrayList<Integer>>();
+		for(int p=0; p<numParams; p++){
+			groups.add(new int[]{p});
+			names.add(paramNames[p]);
+			expressions.add(myModel.parameters.get(p).expression);
+			String label=(String)modelParams.getValueAt(p, 2);
+			if(label!=null && label.trim().length()>0){
+				label=label.trim();
+				if(groupMembers.get(label)==null){groupMembers.put(label, new ArrayList<Integer>());}
+				groupMembers.get(label).add(p);
+			}
+		}
+		for(String label : groupMembers.keySet()){
+			ArrayList<Integer> members=groupMembers.get(label);
+			int group[]=new int[members.size()];
+			String strMembers="";
+			for(int j=0; j<group.length; j++){
+				group[j]=members.get(j);
+				if(j>0){strMembers+=", ";}
+				strMembers+=paramNames[group[j]];
 			}
+			groups.add(group);
+			names.add("Group: "+label);
+			expressions.add(strMembers);
 		}
+		final int numGroups=groups.size();
+		
+		int numEstimates=Math.max(1, Math.min(10, numIterations/50)); //at least 50 iterations per estimate
+		int sampleSizes[]=new int[numEstimates];
+		for(int k=0; k<numEstimates; k++){sampleSizes[k]=(int)(((long)(k+1)*numIterations)/numEstimates);}
+		
+		double params[][]=new double[numParams][];
+		for(int p=0; p<numParams; p++){params[p]=dataParamsIter[p][1];}
+		
+		final ProgressMonitor progress=new ProgressMonitor(frmEVPI, "EVPPI", "Estimating EVPPI", 0, numGroups);
+		final ParallelEVPPI estimator=new ParallelEVPPI(params, netBenefit, myModel.numThreads);
+		int method=comboEVPPIMethod.getSelectedIndex();
+		double estimates[][]=estimator.run(method, groups.toArray(new int[numGroups][]), sampleSizes, new ParallelEVPPI.ProgressListener(){
+			@Override
+			public void groupComplete(int numComplete){
+				synchronized(progress){
+					progress.setProgress(numComplete);
+					if(progress.isCanceled()){
+						estimator.cancel();
+					}
+				}
+			}
+		});
+		progress.close();
+		if(estimates==null){return(false);}
+		
+		evppiNames=names.toArray(new String[numGroups]);
+		evppiExpressions=expressions.toArray(new String[numGroups]);
+		evppiMethod=(String)comboEVPPIMethod.getSelectedItem();
+		evppi=new double[numGroups];
+		evppiIter=new double[numGroups][2][numEstimates];
+		for(int g=0; g<numGroups; g++){
+			for(int k=0; k<numEstimates; k++){
+				evppiIter[g][0][k]=sampleSizes[k];
+				evppiIter[g][1][k]=estimates[g][k];
+			}
+			evppi[g]=estimates[g][numEstimates-1]; //all iterations
+		}
+		return(true);
+	}
+	
+	public void updateEVPPIChart(){
+		while(chartDataEVPPI.getSeriesCount()>0){
+			chartDataEVPPI.removeSeries(chartDataEVPPI.getSeriesKey(0));
+		}
+		if(evppiNames==null){return;}
+		int numSeries=evppiNames.length;
 		XYPlot plotResults = chartEVPPI.getXYPlot();
 		XYLineAndShapeRenderer rendererResults = new XYLineAndShapeRenderer(true,true);
 		DefaultDrawingSupplier supplierResults = new DefaultDrawingSupplier();
 		Shape circle=new Ellipse2D.Double(-2.5,-2.5,5,5);
-		for(int p=0; p<numParams; p++){
+		for(int p=0; p<numSeries; p++){
 			rendererResults.setSeriesPaint(p, supplierResults.getNextPaint());
 			rendererResults.setSeriesShape(p, circle);
 		}
 		plotResults.setRenderer(rendererResults);
 		
-		for(int p=0; p<numParams; p++){
-			chartDataEVPPI.addSeries(myModel.parameters.get(p).name,evppiBins[p]);
+		for(int p=0; p<numSeries; p++){
+			chartDataEVPPI.addSeries(evppiNames[p],evppiIter[p]);
+		}
+	}
+	
+	/**
+	 * Shows the EVPI report with the current EVPPI estimates
+	 */
+	public void updateReport(){
+		HTMLEditorKit kit = new HTMLEditorKit();
+		textEVPI.setEditorKit(kit);
+		
+		//add html styles
+		StyleSheet styleSheet = kit.getStyleSheet();
+		styleSheet.addRule("th {border-bottom: 1px solid black}");
+		
+		String strReport=reportHeader;
+		if(evppiNames!=null){
+			//evppi table
+			strReport+=("<table>");
+			strReport+=("<caption>Expected Value of Partial Perfect Information ("+evppiMethod+")</caption>");
+			strReport+=("<tr><th>Parameter</th><th>Expression</th><th>EVPPI</th></tr>");
+			for(int p=0; p<evppiNames.length; p++) {
+				strReport+=("<tr><td>"+evppiNames[p]+"</td>");
+				strReport+=("<td>"+evppiExpressions[p]+"</td>");
+				strReport+=("<td align=\"right\">"+MathUtils.round(evppi[p],reportDecimals)+"</td></tr>");
+			}
+			strReport+=("</table>");
+			strReport+=("<br><br>");
 		}
+		strReport+=reportFooter;
+		
+		Document doc = kit.createDefaultDocument();
+		textEVPI.setDocument(doc);
+		textEVPI.setText(strReport);
+		
+		textEVPI.setCaretPosition(0); //go to top
 	}
 	
 	
@@ -1352,32 +1316,3 @@ public class frmEVPI {
 		}
 	}
 }
-
-class SortedResult{
-	int iteration;
-	double outcomes[]; //strategy outcome of interest (e.g. NMB)
-	double paramVals[];
-	
-	SortedResult(int i, int numStrat, int numParams){ //constructor
-		iteration=i;
-		outcomes=new double[numStrat];
-		paramVals=new double[numParams];
-	}
-}
-
-class ResultComparator implements Comparator<SortedResult> {
-	int pIndex; //parameter index to sort by
-	
-	ResultComparator(int p){ //Constructor
-		this.pIndex=p;
-	}
-	
-	@Override public int compare(SortedResult o1, SortedResult o2) {
-		if(pIndex==-1) { //sort by iteration
-			return(Double.compare(o1.iteration, o2.iteration));
-		}
-		else { //sort by parameter value
-			return(Double.compare(o1.paramVals[pIndex], o2.paramVals[pIndex]));
-		}
-	}
-}
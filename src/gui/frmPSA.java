@@ -36,6 +36,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.DefaultListModel;
@@ -69,23 +70,19 @@ import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 
 import base.AmuaModel;
+import base.ParallelPSA;
 import base.RunReport;
 import base.RunReportSummary;
 import filters.CSVFilter;
 import main.CEAHelper;
 import main.Console;
 import main.ConsoleTable;
-import main.Constraint;
 import main.DimInfo;
-import main.MersenneTwisterFast;
-import main.Parameter;
 import markov.MarkovNode;
 import markov.MarkovTrace;
 import markov.MarkovTraceSummary;
-import math.Interpreter;
 import math.KernelSmooth;
 import math.MathUtils;
-import math.Numeric;
 
 /**
  *
@@ -138,6 +135,7 @@ public class frmPSA {
 	JCheckBox chckbxSeed;
 	private JTextField textSeed;
 	JCheckBox chckbxSampleParameterSets;
+	JCheckBox chckbxSummaryTraces;
 	String outcome;
 	
 	
@@ -413,6 +411,12 @@ public class frmPSA {
 				chckbxSampleParameterSets.setEnabled(true);
 			}
 			
+			chckbxSummaryTraces = new JCheckBox("Summary traces");
+			chckbxSummaryTraces.setToolTipText("Only keep state prevalence and rewards in Markov traces");
+			chckbxSummaryTraces.setEnabled(myModel.type==1);
+			chckbxSummaryTraces.setBounds(6, 41, 150, 18);
+			panel_2.add(chckbxSummaryTraces);
+			
 
 			tabbedPane = new JTabbedPane(JTabbedPane.TOP);
 			GridBagConstraints gbc_tabbedPane = new GridBagConstraints();
@@ -743,35 +747,23 @@ public class frmPSA {
 									JOptionPane.showMessageDialog(frmPSA, "Errors in base case model!");
 								}
 								else{
-									boolean cancelled=false;
-
-									myModel.sampleParam=true;
-									myModel.generatorParam=new MersenneTwisterFast();
-									if(myModel.curGenerator==null){
-										myModel.curGenerator=new MersenneTwisterFast[1];
+									boolean seeded=chckbxSeed.isSelected();
+									int seed=0;
+									if(seeded){
+										seed=Integer.parseInt(textSeed.getText());
 									}
-									myModel.curGenerator[0]=myModel.generatorParam;
-									if(chckbxSeed.isSelected()){
-										int seed=Integer.parseInt(textSeed.getText());
-										myModel.generatorParam.setSeed(seed);
-									}
-									myModel.simParamSets=false; //turn off use parameter sets (no looping through)
 									boolean sampleParamSets=chckbxSampleParameterSets.isSelected();
-									int numSets=-1;
-									if(sampleParamSets) {
-										numSets=myModel.parameterSets.length;
-									}
-																		
+									
 									numIterations=Integer.parseInt(textIterations.getText().replaceAll(",", ""));
 									progress.setMaximum(numIterations);
 
 									numStrat=myModel.getStrategies();
 									int numOutcomes=comboDimensions.getItemCount();
-									int numDim=myModel.dimInfo.dimNames.length;
+									final int numDim=myModel.dimInfo.dimNames.length;
 									
 									if(myModel.simType==1 && myModel.reportSubgroups){numSubgroups=myModel.subgroupNames.size();}
 									
-									int analysisType=myModel.dimInfo.analysisType;
+									final int analysisType=myModel.dimInfo.analysisType;
 									if(analysisType==1){CEAnotes=new String[1+numSubgroups][numStrat][numIterations];} //CEA
 									else{CEAnotes=null;}
 									
@@ -788,212 +780,161 @@ public class frmPSA {
 									
 									dataCEAC=new double[numStrat][][];
 									
-									//Get orig values for all parameters
-									Numeric origValues[]=new Numeric[numParams];
-									for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters
-										origValues[v]=myModel.parameters.get(v).value.copy();
-									}
-									
-									//Parse constraints
-									for(int c=0; c<numConstraints; c++){
-										myModel.constraints.get(c).parseConstraints();
-									}
-									
-									MarkovTrace traces[][][]=null;
-									ArrayList<MarkovNode> chainRoots=null;
-									int numChains = 0;
-									boolean origShowTrace=true;
+									ArrayList<MarkovNode> chainRoots=new ArrayList<MarkovNode>();
 									if(myModel.type==1){
 										//get number of chains
-										chainRoots=new ArrayList<MarkovNode>();
 										for(int n=0; n<myModel.markov.nodes.size(); n++){
 											MarkovNode curNode=myModel.markov.nodes.get(n);
 											if(curNode.type==1){chainRoots.add(curNode);}
 										}
-										numChains=chainRoots.size();
-										traces=new MarkovTrace[numChains][numSubgroups+1][numIterations];
-										origShowTrace=myModel.markov.showTrace;
-										myModel.markov.showTrace=false;
+									}
+									final int numChains=chainRoots.size();
+									final MarkovTraceSummary traceSummaries[][]=new MarkovTraceSummary[numChains][numSubgroups+1]; //traces are summarized as iterations finish
+									for(int c=0; c<numChains; c++){
+										for(int g=0; g<numSubgroups+1; g++){traceSummaries[c][g]=new MarkovTraceSummary();}
 									}
 									
-									long startTime=System.currentTimeMillis();
+									final long startTime=System.currentTimeMillis();
 									
 									reports=new RunReport[numIterations];
 									
-									for(int n=0; n<numIterations; n++){
-										//Update progress
-										double prog=((n+1)/(numIterations*1.0))*100;
-										long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-										remTime=(long) (remTime*(100-prog));
-										remTime=remTime/1000;
-										String seconds = Integer.toString((int)(remTime % 60));
-										String minutes = Integer.toString((int)(remTime/60));
-										if(seconds.length()<2){seconds="0"+seconds;}
-										if(minutes.length()<2){minutes="0"+minutes;}
-										progress.setProgress(n+1);
-										progress.setNote("Time left: "+minutes+":"+seconds);
-										
-										//Sample parameters
-										myModel.curGenerator[0]=myModel.generatorParam;
-										boolean validParams=false;
-										while(validParams==false){
-											for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
-												Parameter curParam=myModel.parameters.get(v);
-												curParam.locked=false;
-												curParam.value=origValues[v];
-											}
-									
-											for(int v=0; v<numParams; v++){ //sample all parameters
-												Parameter curParam=myModel.parameters.get(v);
-												if(curParam.locked==false) {
-													curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true);
-													curParam.locked=true;
+									//Run iterations in parallel, each worker on its own copy of the model
+									final ParallelPSA psa=new ParallelPSA(myModel, numIterations, seeded, seed, sampleParamSets);
+									psa.setSummaryTraces(chckbxSummaryTraces.isSelected());
+									final AtomicInteger numComplete=new AtomicInteger();
+									psa.run(new ParallelPSA.IterationListener(){
+										@Override
+										public void iterationComplete(int n, AmuaModel worker, RunReport report) throws Exception{
+											reports[n]=report;
+											for(int v=0; v<numParams; v++){ //Record value
+												dataParamsIter[v][0][n]=n; dataParamsVal[v][0][n]=n;
+												try{
+													dataParamsIter[v][1][n]=worker.parameters.get(v).value.getDouble();
+												} catch(Exception e){
+													dataParamsIter[v][1][n]=Double.NaN;
 												}
-											}
-											//check constraints
-											validParams=true;
-											int c=0;
-											while(validParams==true && c<numConstraints){
-												Constraint curConst=myModel.constraints.get(c);
-												validParams=curConst.checkConstraints(myModel);
-												c++;
-											}
-											if(validParams){ //check model for valid params
-												ArrayList<String> errors=myModel.parseModel();
-												if(errors.size()!=0) {
-													validParams=false;
-												}
-											}
-										} //end sample params
-										if(sampleParamSets) {
-											int curSet=myModel.generatorParam.nextInt(numSets);
-											myModel.parameterSets[curSet].setParameters(myModel);
-										}
-										
-										
-										for(int v=0; v<numParams; v++){ //Record value
-											dataParamsIter[v][0][n]=n; dataParamsVal[v][0][n]=n;
-											try{
-												dataParamsIter[v][1][n]=myModel.parameters.get(v).value.getDouble();
-											} catch(Exception e){
-												dataParamsIter[v][1][n]=Double.NaN;
-											}
-											dataParamsVal[v][1][n]=dataParamsIter[v][1][n];
-										} 
+												dataParamsVal[v][1][n]=dataParamsIter[v][1][n];
+											} 
 
-										//Run model
-										myModel.curGenerator=myModel.generatorVar;
-										reports[n]=myModel.runModel(null, false);
-										
-										if(myModel.type==1){ //Markov model
-											for(int c=0; c<numChains; c++){
-												traces[c][0][n]=reports[n].markovTraces.get(c); //overall
-												for(int g=0; g<numSubgroups; g++){
-													traces[c][g+1][n]=reports[n].markovTracesGroup[g].get(c);
+											if(worker.type==1){ //Markov model
+												for(int c=0; c<numChains; c++){
+													traceSummaries[c][0].add(n, report.markovTraces.get(c)); //overall
+													for(int g=0; g<numSubgroups; g++){
+														traceSummaries[c][g+1].add(n, report.markovTracesGroup[g].get(c));
+													}
 												}
+												//drop traces
+												report.markovTraces.clear();
+												for(int g=0; g<numSubgroups; g++){report.markovTracesGroup[g].clear();}
 											}
-										}
 																																								
-										//Get EVs
-										for(int d=0; d<numDim; d++){
-											for(int s=0; s<numStrat; s++){
-												//overall
-												dataResultsIter[0][d][s][0][n]=n; dataResultsVal[0][d][s][0][n]=n;
-												double curOutcome=myModel.getStrategyEV(s, d);
-												dataResultsIter[0][d][s][1][n]=curOutcome; dataResultsVal[0][d][s][1][n]=curOutcome;
-												//subgroups
-												for(int g=0; g<numSubgroups; g++){
-													dataResultsIter[g+1][d][s][0][n]=n; dataResultsVal[g+1][d][s][0][n]=n;
-													curOutcome=myModel.getSubgroupEV(g, s, d);
-													dataResultsIter[g+1][d][s][1][n]=curOutcome; dataResultsVal[g+1][d][s][1][n]=curOutcome;
+											//Get EVs
+											for(int d=0; d<numDim; d++){
+												for(int s=0; s<numStrat; s++){
+													//overall
+													dataResultsIter[0][d][s][0][n]=n; dataResultsVal[0][d][s][0][n]=n;
+													double curOutcome=worker.getStrategyEV(s, d);
+													dataResultsIter[0][d][s][1][n]=curOutcome; dataResultsVal[0][d][s][1][n]=curOutcome;
+													//subgroups
+													for(int g=0; g<numSubgroups; g++){
+														dataResultsIter[g+1][d][s][0][n]=n; dataResultsVal[g+1][d][s][0][n]=n;
+														curOutcome=worker.getSubgroupEV(g, s, d);
+														dataResultsIter[g+1][d][s][1][n]=curOutcome; dataResultsVal[g+1][d][s][1][n]=curOutcome;
+													}
 												}
 											}
-										}
-										if(analysisType>0){ //CEA or BCA
-											if(analysisType==1){ //CEA
-												for(int g=0; g<numSubgroups+1; g++){
-													Object table[][]=new CEAHelper().calculateICERs(myModel,g-1,true);
-													//get baseline row
-													int baseIndex=myModel.getStrategyIndex(myModel.dimInfo.baseScenario);
-													int baseRow=-1,curRow=0;
-													while(baseRow==-1 && curRow<table.length){
-														if((int)table[curRow][0]==baseIndex){
-															baseRow=curRow;
+											if(analysisType>0){ //CEA or BCA
+												if(analysisType==1){ //CEA
+													for(int g=0; g<numSubgroups+1; g++){
+														Object table[][]=new CEAHelper().calculateICERs(worker,g-1,true);
+														//get baseline row
+														int baseIndex=worker.getStrategyIndex(worker.dimInfo.baseScenario);
+														int baseRow=-1,curRow=0;
+														while(baseRow==-1 && curRow<table.length){
+															if((int)table[curRow][0]==baseIndex){
+																baseRow=curRow;
+															}
+															curRow++;
 														}
-														curRow++;
-													}
 
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														if(origStrat!=-1){
-															dataResultsIter[g][numDim][origStrat][0][n]=n; dataResultsVal[g][numDim][origStrat][0][n]=n;
+														for(int s=0; s<table.length; s++){	
+															int origStrat=(int) table[s][0];
+															if(origStrat!=-1){
+																dataResultsIter[g][numDim][origStrat][0][n]=n; dataResultsVal[g][numDim][origStrat][0][n]=n;
+																double curOutcome=(double) table[s][4];
+																dataResultsIter[g][numDim][origStrat][1][n]=curOutcome; dataResultsVal[g][numDim][origStrat][1][n]=curOutcome;
+																CEAnotes[g][origStrat][n]=(String) table[s][5];
+																double cost=(double) table[s][2];
+																double benefit=(double) table[s][3];
+																dataScatterAbs[g][origStrat][0][n]=benefit;
+																dataScatterAbs[g][origStrat][1][n]=cost;
+																double baseCost=(double) table[baseRow][2];
+																double baseBenefit=(double) table[baseRow][3];
+																dataScatterRel[g][origStrat][0][n]=benefit-baseBenefit;
+																dataScatterRel[g][origStrat][1][n]=cost-baseCost;
+															}
+														}
+													}
+												}
+												else if(analysisType==2){ //BCA
+													for(int g=0; g<numSubgroups+1; g++){
+														Object table[][]=new CEAHelper().calculateNMB(worker,g-1,true);
+														//use first row as baseline
+														//int baseIndex=worker.getStrategyIndex(worker.dimInfo.baseScenario);
+														int baseIndex=0;
+														int baseRow=-1,curRow=0;
+														while(baseRow==-1 && curRow<table.length){
+															if((int)table[curRow][0]==baseIndex){
+																baseRow=curRow;
+															}
+															curRow++;
+														}
+														for(int s=0; s<table.length; s++){	
+															int origStrat=(int) table[s][0];
+															dataResultsIter[g][numDim][origStrat][0][n]=n;	dataResultsVal[g][numDim][origStrat][0][n]=n;
 															double curOutcome=(double) table[s][4];
 															dataResultsIter[g][numDim][origStrat][1][n]=curOutcome; dataResultsVal[g][numDim][origStrat][1][n]=curOutcome;
-															CEAnotes[g][origStrat][n]=(String) table[s][5];
-															double cost=(double) table[s][2];
-															double benefit=(double) table[s][3];
+															double benefit=(double) table[s][2];
+															double cost=(double) table[s][3];
 															dataScatterAbs[g][origStrat][0][n]=benefit;
 															dataScatterAbs[g][origStrat][1][n]=cost;
-															double baseCost=(double) table[baseRow][2];
-															double baseBenefit=(double) table[baseRow][3];
+															double baseBenefit=(double) table[baseRow][2]; 
+															double baseCost=(double) table[baseRow][3];
 															dataScatterRel[g][origStrat][0][n]=benefit-baseBenefit;
 															dataScatterRel[g][origStrat][1][n]=cost-baseCost;
+														
 														}
 													}
 												}
 											}
-											else if(analysisType==2){ //BCA
-												for(int g=0; g<numSubgroups+1; g++){
-													Object table[][]=new CEAHelper().calculateNMB(myModel,g-1,true);
-													//use first row as baseline
-													//int baseIndex=myModel.getStrategyIndex(myModel.dimInfo.baseScenario);
-													int baseIndex=0;
-													int baseRow=-1,curRow=0;
-													while(baseRow==-1 && curRow<table.length){
-														if((int)table[curRow][0]==baseIndex){
-															baseRow=curRow;
-														}
-														curRow++;
-													}
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														dataResultsIter[g][numDim][origStrat][0][n]=n;	dataResultsVal[g][numDim][origStrat][0][n]=n;
-														double curOutcome=(double) table[s][4];
-														dataResultsIter[g][numDim][origStrat][1][n]=curOutcome; dataResultsVal[g][numDim][origStrat][1][n]=curOutcome;
-														double benefit=(double) table[s][2];
-														double cost=(double) table[s][3];
-														dataScatterAbs[g][origStrat][0][n]=benefit;
-														dataScatterAbs[g][origStrat][1][n]=cost;
-														double baseBenefit=(double) table[baseRow][2]; 
-														double baseCost=(double) table[baseRow][3];
-														dataScatterRel[g][origStrat][0][n]=benefit-baseBenefit;
-														dataScatterRel[g][origStrat][1][n]=cost-baseCost;
-														
-													}
+											
+											//Update progress
+											synchronized(progress){
+												int curComplete=numComplete.incrementAndGet();
+												double prog=(curComplete/(numIterations*1.0))*100;
+												long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
+												remTime=(long) (remTime*(100-prog));
+												remTime=remTime/1000;
+												String seconds = Integer.toString((int)(remTime % 60));
+												String minutes = Integer.toString((int)(remTime/60));
+												if(seconds.length()<2){seconds="0"+seconds;}
+												if(minutes.length()<2){minutes="0"+minutes;}
+												progress.setProgress(curComplete);
+												progress.setNote("Time left: "+minutes+":"+seconds);
+												if(progress.isCanceled()){  //Skip remaining iterations
+													psa.cancel();
 												}
 											}
 										}
-								
-										if(progress.isCanceled()){  //End loop
-											n=numIterations;
-											cancelled=true;
-										}
-									}
-
-									//Reset all parameters
-									myModel.sampleParam=false;
-									for(int v=0; v<numParams; v++){ //Reset 'locked' for all parameter and orig values
-										Parameter curParam=myModel.parameters.get(v);
-										curParam.locked=false;
-										curParam.value=origValues[v];
-									}
-									myModel.validateModelObjects();
-									
-									if(myModel.type==1){
-										myModel.markov.showTrace=origShowTrace;
-									}
+									});
+									boolean cancelled=psa.isCancelled();
 									
 									if(cancelled==false){
+										if(myModel.type==1){
+											for(int c=0; c<numChains; c++){
+												for(int g=0; g<numSubgroups+1; g++){traceSummaries[c][g].summarize();}
+											}
+										}
 										double meanResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
 										double lbResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
 										double ubResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
@@ -1065,16 +1006,12 @@ public class frmPSA {
 											if(myModel.markov.compileTraces==false) {
 												//get mean and bounds of results
 												for(int c=0; c<numChains; c++){
-													MarkovTraceSummary traceSummaries[]=new MarkovTraceSummary[numSubgroups+1];
-													for(int g=0; g<numSubgroups+1; g++){
-														traceSummaries[g]=new MarkovTraceSummary(traces[c][g]);
-													}
-													frmTraceSummary showSummary=new frmTraceSummary(traceSummaries,myModel.errorLog,subgroupNames);
+													frmTraceSummary showSummary=new frmTraceSummary(traceSummaries[c],myModel.errorLog,subgroupNames);
 													showSummary.frmTraceSummary.setVisible(true);
 												}
 											}
 											else {
-												RunReportSummary reportSummary=new RunReportSummary(reports);
+												RunReportSummary reportSummary=new RunReportSummary(reports,traceSummaries);
 												frmTraceSummaryMulti window=new frmTraceSummaryMulti(reportSummary,myModel.errorLog);
 												window.frmTraceSummaryMulti.setVisible(true);
 											}
@@ -1141,7 +1078,7 @@ public class frmPSA {
 										
 										if(myModel.simType==1 && myModel.displayIndResults==true){
 											console.print("\nIndividual-level Results:\n");
-											RunReportSummary summary=new RunReportSummary(reports);
+											RunReportSummary summary=new RunReportSummary(reports,traceSummaries);
 											for(int s=0; s<numStrat; s++){
 												console.print("Strategy: "+myModel.strategyNames[s]+"\n");
 												summary.microStatsSummary[s].printSummary(console);
@@ -110,10 +110,12 @@ public class frmProperties {
 	JCheckBox chckbxCRN;
 	private JTextField textCRNSeed;
 	JCheckBox chckbxDisplayIndResults;
+	JCheckBox chckbxStreamMicrosim;
 	JCheckBox chckbxMultithread;
 	private JTextField textNumThreads;
 	JLabel lblThreads;
 	JButton btnSetToMax;
+	JCheckBox chckbxCompileExpressions;
 	
 	//Markov
 	private JTextField textMarkovMaxCycles;
@@ -464,6 +466,7 @@ public class frmProperties {
 						chckbxCRN.setEnabled(false);
 						textCRNSeed.setEnabled(false);
 						chckbxDisplayIndResults.setEnabled(false);
+						chckbxStreamMicrosim.setEnabled(false);
 						tabbedPane.setEnabledAt(4, false); //no subgroups
 					}
 					else if(selected==1){ //Monte Carlo
@@ -472,6 +475,7 @@ public class frmProperties {
 						if(chckbxCRN.isSelected()){textCRNSeed.setEnabled(true);}
 						else{textCRNSeed.setEnabled(false);}
 						chckbxDisplayIndResults.setEnabled(true);
+						chckbxStreamMicrosim.setEnabled(true);
 						tabbedPane.setEnabledAt(4, true);
 					}
 				}
@@ -522,6 +526,12 @@ public class frmProperties {
 			chckbxDisplayIndResults.setEnabled(false);
 			chckbxDisplayIndResults.setBounds(15, 105, 193, 18);
 			panelSimulation.add(chckbxDisplayIndResults);
+			
+			chckbxStreamMicrosim = new JCheckBox("Summary statistics only");
+			chckbxStreamMicrosim.setToolTipText("Summarize individual-level results as they are simulated instead of storing every individual");
+			chckbxStreamMicrosim.setEnabled(false);
+			chckbxStreamMicrosim.setBounds(240, 105, 180, 18);
+			panelSimulation.add(chckbxStreamMicrosim);
 						
 			lblThreads = new JLabel("threads");
 			lblThreads.setEnabled(false);
@@ -564,6 +574,11 @@ public class frmProperties {
 			panelSimulation.add(textNumThreads);
 			textNumThreads.setColumns(10);
 			
+			chckbxCompileExpressions = new JCheckBox("Compile expressions");
+			chckbxCompileExpressions.setToolTipText("Evaluate scalar expressions with a compiled form instead of re-interpreting them");
+			chckbxCompileExpressions.setBounds(240, 135, 180, 18);
+			panelSimulation.add(chckbxCompileExpressions);
+			
 			
 			
 			//Markov #######################################################################
@@ -831,6 +846,7 @@ public class frmProperties {
 			textCRNSeed.setText(myModel.crnSeed+"");
 		}
 		chckbxDisplayIndResults.setSelected(myModel.displayIndResults);
+		chckbxStreamMicrosim.setSelected(myModel.streamMicrosim);
 		if(myModel.numThreads>1){
 			chckbxMultithread.setSelected(true);
 			textNumThreads.setText(myModel.numThreads+"");
@@ -838,6 +854,7 @@ public class frmProperties {
 			lblThreads.setEnabled(true);
 			btnSetToMax.setEnabled(true);
 		}
+		chckbxCompileExpressions.setSelected(myModel.compileExpressions);
 	}
 	
 	private void displayMarkovSettings(){
@@ -1074,7 +1091,9 @@ public class frmProperties {
 		boolean CRN=false;
 		int crnSeed=-1;
 		boolean displayIndResults=false;
+		boolean streamMicrosim=false;
 		int numThreads=1;
+		boolean compileExpressions=chckbxCompileExpressions.isSelected();
 		if(simType==0){ //Cohort
 			try{
 				String text=textCohortSize.getText().replaceAll(",",""); //remove commas
@@ -1103,6 +1122,7 @@ public class frmProperties {
 			
 			CRN=chckbxCRN.isSelected(); //CRN
 			displayIndResults=chckbxDisplayIndResults.isSelected();
+			streamMicrosim=chckbxStreamMicrosim.isSelected();
 			if(CRN){ //get seed
 				try{
 					String text=textCRNSeed.getText().replaceAll(",",""); //remove commas
@@ -1243,7 +1263,9 @@ public class frmProperties {
 			myModel.CRN=CRN;
 			myModel.crnSeed=crnSeed;
 			myModel.displayIndResults=displayIndResults;
+			myModel.streamMicrosim=streamMicrosim;
 			myModel.numThreads=numThreads;
+			myModel.compileExpressions=compileExpressions;
 			
 			//markov settings
 			if(myModel.type==1){
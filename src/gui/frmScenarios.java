@@ -875,7 +875,7 @@ public class frmScenarios {
 													for(int v=0; v<numParams; v++){ //sample all parameters
 														Parameter curParam=myModel.parameters.get(v);
 														if(curParam.locked==false) {
-															curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true);
+															curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true).copy();
 															curParam.locked=true;
 														}
 													}
@@ -28,6 +28,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.awt.event.ActionEvent;
 
 import javax.swing.DefaultComboBoxModel;
@@ -52,6 +53,7 @@ import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 
 import base.AmuaModel;
+import base.ParallelSweep;
 import filters.CSVFilter;
 import main.CEAHelper;
 import main.DimInfo;
@@ -422,104 +424,103 @@ public class frmSensOneWay {
 										curParam.sensMin=strMin;
 										curParam.sensMax=strMax;
 										
-										long startTime=System.currentTimeMillis();
+										final long startTime=System.currentTimeMillis();
 										
-										boolean origShowTrace=false;
-										if(myModel.type==1) {
-											origShowTrace=myModel.markov.showTrace;
-											myModel.markov.showTrace=false;
-										}
-										
-										for(int i=0; i<=intervals; i++){
-											double curVal=min+(step*i);
-											curParam.value.setDouble(curVal);
-											curParam.locked=true;
-											myModel.parseModel();
-											myModel.runModel(null, false);
+										//Run points in parallel, each worker on its own copy of the model
+										final ParallelSweep sweep=new ParallelSweep(myModel, intervals+1);
+										final AtomicInteger numComplete=new AtomicInteger();
+										sweep.run(new ParallelSweep.PointTask(){
+											@Override
+											public void setParameters(int i, AmuaModel worker) throws Exception{
+												Parameter workerParam=worker.parameters.get(row);
+												workerParam.value.setDouble(min+(step*i));
+												workerParam.locked=true;
+											}
 											
-											//Get EVs
-											for(int d=0; d<numDim; d++){
-												for(int s=0; s<numStrat; s++){
-													results[d][s][0][i]=curVal;
-													results[d][s][1][i]=myModel.getStrategyEV(s, d);
-													//subgroups
-													for(int g=0; g<numSubgroups; g++){
-														resultsGroup[g][d][s][0][i]=curVal;
-														resultsGroup[g][d][s][1][i]=myModel.getSubgroupEV(g,s,d);
+											@Override
+											public void pointComplete(int i, AmuaModel worker) throws Exception{
+												double curVal=min+(step*i);
+												//Get EVs
+												for(int d=0; d<numDim; d++){
+													for(int s=0; s<numStrat; s++){
+														results[d][s][0][i]=curVal;
+														results[d][s][1][i]=worker.getStrategyEV(s, d);
+														//subgroups
+														for(int g=0; g<numSubgroups; g++){
+															resultsGroup[g][d][s][0][i]=curVal;
+															resultsGroup[g][d][s][1][i]=worker.getSubgroupEV(g,s,d);
+														}
 													}
 												}
-											}
-											if(analysisType>0){ //CEA or BCA
-												if(analysisType==1){ //CEA
-													//overall
-													Object table[][]=new CEAHelper().calculateICERs(myModel,-1,true);
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														if(origStrat!=-1){
-															results[numDim][origStrat][0][i]=curVal;
-															results[numDim][origStrat][1][i]=(double) table[s][4];
-															CEAnotes[origStrat][i]=(String) table[s][5];
+												if(analysisType>0){ //CEA or BCA
+													if(analysisType==1){ //CEA
+														//overall
+														Object table[][]=new CEAHelper().calculateICERs(worker,-1,true);
+														for(int s=0; s<table.length; s++){	
+															int origStrat=(int) table[s][0];
+															if(origStrat!=-1){
+																results[numDim][origStrat][0][i]=curVal;
+																results[numDim][origStrat][1][i]=(double) table[s][4];
+																CEAnotes[origStrat][i]=(String) table[s][5];
+															}
+														}
+														//subgroups
+														for(int g=0; g<numSubgroups; g++){
+															table=new CEAHelper().calculateICERs(worker, g, true);
+															for(int s=0; s<table.length; s++){
+																int origStrat=(int) table[s][0];
+																if(origStrat!=-1){
+																	resultsGroup[g][numDim][origStrat][0][i]=curVal;
+																	resultsGroup[g][numDim][origStrat][1][i]=(double) table[s][4];
+																	CEAnotesGroup[g][origStrat][i]=(String) table[s][5];
+																}
+															}
 														}
 													}
-													//subgroups
-													for(int g=0; g<numSubgroups; g++){
-														table=new CEAHelper().calculateICERs(myModel, g, true);
-														for(int s=0; s<table.length; s++){
+													else if(analysisType==2){
+														Object table[][]=new CEAHelper().calculateNMB(worker,-1,true);
+														for(int s=0; s<table.length; s++){	
 															int origStrat=(int) table[s][0];
-															if(origStrat!=-1){
+															results[numDim][origStrat][0][i]=curVal;
+															results[numDim][origStrat][1][i]=(double) table[s][4];
+														}
+														//subgroups
+														for(int g=0; g<numSubgroups; g++){
+															table=new CEAHelper().calculateNMB(worker, g, true);
+															for(int s=0; s<table.length; s++){
+																int origStrat=(int) table[s][0];
 																resultsGroup[g][numDim][origStrat][0][i]=curVal;
 																resultsGroup[g][numDim][origStrat][1][i]=(double) table[s][4];
-																CEAnotesGroup[g][origStrat][i]=(String) table[s][5];
 															}
 														}
 													}
 												}
-												else if(analysisType==2){
-													Object table[][]=new CEAHelper().calculateNMB(myModel,-1,true);
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														results[numDim][origStrat][0][i]=curVal;
-														results[numDim][origStrat][1][i]=(double) table[s][4];
-													}
-													//subgroups
-													for(int g=0; g<numSubgroups; g++){
-														table=new CEAHelper().calculateNMB(myModel, g, true);
-														for(int s=0; s<table.length; s++){
-															int origStrat=(int) table[s][0];
-															resultsGroup[g][numDim][origStrat][0][i]=curVal;
-															resultsGroup[g][numDim][origStrat][1][i]=(double) table[s][4];
-														}
+												
+												//Update progress
+												synchronized(progress){
+													int curComplete=numComplete.incrementAndGet();
+													double prog=(curComplete/((intervals+1)*1.0))*100;
+													long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
+													remTime=(long) (remTime*(100-prog));
+													remTime=remTime/1000;
+													String seconds = Integer.toString((int)(remTime % 60));
+													String minutes = Integer.toString((int)(remTime/60));
+													if(seconds.length()<2){seconds="0"+seconds;}
+													if(minutes.length()<2){minutes="0"+minutes;}
+													progress.setProgress(curComplete);
+													progress.setNote("Time left: "+minutes+":"+seconds);
+													if(progress.isCanceled()){ //Skip remaining points
+														sweep.cancel();
 													}
 												}
 											}
-											
-											//Update progress
-											double prog=(i/(intervals*1.0))*100;
-											long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-											remTime=(long) (remTime*(100-prog));
-											remTime=remTime/1000;
-											String seconds = Integer.toString((int)(remTime % 60));
-											String minutes = Integer.toString((int)(remTime/60));
-											if(seconds.length()<2){seconds="0"+seconds;}
-											if(minutes.length()<2){minutes="0"+minutes;}
-											progress.setProgress(i);
-											progress.setNote("Time left: "+minutes+":"+seconds);
-											
-											
-											if(progress.isCanceled()){ //End loop
-												cancelled=true;
-												i=intervals+1;
-											}
-										}
+										});
+										cancelled=sweep.isCancelled();
 										//Reset param value
 										curParam.value=origValue;
 										curParam.locked=false;
 										myModel.validateModelObjects();
 										
-										if(myModel.type==1) {
-											myModel.markov.showTrace=origShowTrace;
-										}
-										
 										if(cancelled==false){
 											updateChart();
 											if(numOutcomes>1){
@@ -28,6 +28,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.awt.event.ActionEvent;
 
 import javax.swing.DefaultComboBoxModel;
@@ -61,6 +62,7 @@ import org.jfree.ui.RectangleEdge;
 import org.jfree.ui.TextAnchor;
 
 import base.AmuaModel;
+import base.ParallelSweep;
 import filters.CSVFilter;
 import main.CEAHelper;
 import main.DimInfo;
@@ -380,6 +382,11 @@ public class frmSensOneWayStacked {
 
 					Thread SimThread = new Thread(){ //Non-UI
 						public void run(){
+							boolean origShowTrace=false, origKeepTraces=false;
+							if(myModel.type==1) {
+								origShowTrace=myModel.markov.showTrace;
+								origKeepTraces=myModel.markov.keepTraces;
+							}
 							try{
 								//Check model first
 								ArrayList<String> errorsBase=myModel.parseModel();
@@ -387,10 +394,9 @@ public class frmSensOneWayStacked {
 									JOptionPane.showMessageDialog(frmSensOneWayStacked, "Errors in base case model!");
 								}
 								else{
-									boolean origShowTrace=false;
 									if(myModel.type==1) {
-										origShowTrace=myModel.markov.showTrace;
 										myModel.markov.showTrace=false;
+										myModel.markov.keepTraces=false; //only EVs are used
 									}
 									
 									//Get baseline results
@@ -454,7 +460,7 @@ public class frmSensOneWayStacked {
 									//Get parameters
 									boolean proceed=true;
 
-									ArrayList<Integer> paramIndices=new ArrayList<Integer>();
+									final ArrayList<Integer> paramIndices=new ArrayList<Integer>();
 									for(int p=0; p<tableParams.getRowCount(); p++){
 										String paramName=(String)tableParams.getValueAt(p, 0);
 										String strMin=(String)tableParams.getValueAt(p, 2);
@@ -491,13 +497,12 @@ public class frmSensOneWayStacked {
 										}
 										
 										boolean cancelled=false;
-										long startTime=System.currentTimeMillis();
-										double maxProg=numParams*(intervals+1);
-										progress.setMaximum((int)maxProg);
+										final long startTime=System.currentTimeMillis();
 										
 										paramNames=new String[numParams];
 										paramVals=new double[numParams][2];
 										paramValsBase=new double[numParams];
+										final ArrayList<Integer> validParams=new ArrayList<Integer>();
 
 										for(int p=0; p<numParams; p++) {
 											int pIndex=paramIndices.get(p);
@@ -509,7 +514,6 @@ public class frmSensOneWayStacked {
 											double max=Double.parseDouble(strMax);
 											paramVals[p][0]=min; paramVals[p][1]=max;
 
-											double step=(max-min)/(intervals*1.0);
 											curParam=myModel.parameters.get(pIndex);
 											paramNames[p]=curParam.name;
 											curParam.locked=true;
@@ -540,66 +544,82 @@ public class frmSensOneWayStacked {
 												//record min/max
 												curParam.sensMin=strMin;
 												curParam.sensMax=strMax;
-
-												for(int i=0; i<=intervals; i++){
-													double curVal=min+(step*i);
-													curParam.value.setDouble(curVal);
-													curParam.locked=true;
-													myModel.parseModel();
-													myModel.runModel(null, false);
-
-													//Get EVs
-													for(int d=0; d<numDim; d++){
-														for(int s=0; s<numStrat; s++){
-															results[d][s][p][i]=myModel.getStrategyEV(s, d);
-															//subgroups
-															for(int g=0; g<numSubgroups; g++){
-																resultsGroup[g][d][s][p][i]=myModel.getSubgroupEV(g,s,d);
-															}
-														}
-													}
-													if(myModel.dimInfo.analysisType==1){ //CEA
-														//overall
-														Object table[][]=new CEAHelper().calculateICERs(myModel,-1,true);
-														for(int s=0; s<table.length; s++){	
-															int origStrat=(int) table[s][0];
-															if(origStrat!=-1){
-																results[numDim][origStrat][p][i]=(double) table[s][4];
-																//CEAnotes[origStrat][i]=(String) table[s][5];
-															}
-														}
+												curParam.locked=false;
+												validParams.add(p);
+											} //end error check
+										}  //end parameter loop
+										
+										//Run all points in parallel, each worker on its own copy of the model
+										final int numPoints=validParams.size()*(intervals+1);
+										progress.setMaximum(numPoints);
+										final ParallelSweep sweep=new ParallelSweep(myModel, numPoints);
+										final AtomicInteger numComplete=new AtomicInteger();
+										sweep.run(new ParallelSweep.PointTask(){
+											@Override
+											public void setParameters(int point, AmuaModel worker) throws Exception{
+												int p=validParams.get(point/(intervals+1)), i=point%(intervals+1);
+												double min=paramVals[p][0], max=paramVals[p][1];
+												double step=(max-min)/(intervals*1.0);
+												Parameter workerParam=worker.parameters.get(paramIndices.get(p));
+												workerParam.value.setDouble(min+(step*i));
+												workerParam.locked=true;
+											}
+											
+											@Override
+											public void pointComplete(int point, AmuaModel worker) throws Exception{
+												int p=validParams.get(point/(intervals+1)), i=point%(intervals+1);
+												//Get EVs
+												for(int d=0; d<numDim; d++){
+													for(int s=0; s<numStrat; s++){
+														results[d][s][p][i]=worker.getStrategyEV(s, d);
 														//subgroups
 														for(int g=0; g<numSubgroups; g++){
-															table=new CEAHelper().calculateICERs(myModel, g, true);
-															for(int s=0; s<table.length; s++){
-																int origStrat=(int) table[s][0];
-																if(origStrat!=-1){
-																	resultsGroup[g][numDim][origStrat][p][i]=(double) table[s][4];
-																	//CEAnotesGroup[g][origStrat][i]=(String) table[s][5];
-																}
-															}
+															resultsGroup[g][d][s][p][i]=worker.getSubgroupEV(g,s,d);
 														}
 													}
-													else if(myModel.dimInfo.analysisType==2){
-														Object table[][]=new CEAHelper().calculateNMB(myModel,-1,true);
-														for(int s=0; s<table.length; s++){	
-															int origStrat=(int) table[s][0];
+												}
+												if(worker.dimInfo.analysisType==1){ //CEA
+													//overall
+													Object table[][]=new CEAHelper().calculateICERs(worker,-1,true);
+													for(int s=0; s<table.length; s++){	
+														int origStrat=(int) table[s][0];
+														if(origStrat!=-1){
 															results[numDim][origStrat][p][i]=(double) table[s][4];
+															//CEAnotes[origStrat][i]=(String) table[s][5];
 														}
-														//subgroups
-														for(int g=0; g<numSubgroups; g++){
-															table=new CEAHelper().calculateNMB(myModel, g, true);
-															for(int s=0; s<table.length; s++){
-																int origStrat=(int) table[s][0];
+													}
+													//subgroups
+													for(int g=0; g<numSubgroups; g++){
+														table=new CEAHelper().calculateICERs(worker, g, true);
+														for(int s=0; s<table.length; s++){
+															int origStrat=(int) table[s][0];
+															if(origStrat!=-1){
 																resultsGroup[g][numDim][origStrat][p][i]=(double) table[s][4];
+																//CEAnotesGroup[g][origStrat][i]=(String) table[s][5];
 															}
 														}
 													}
-													
-													
-													
-													//Update progress
-													double prog=((p*intervals+i)/maxProg)*100;
+												}
+												else if(worker.dimInfo.analysisType==2){
+													Object table[][]=new CEAHelper().calculateNMB(worker,-1,true);
+													for(int s=0; s<table.length; s++){	
+														int origStrat=(int) table[s][0];
+														results[numDim][origStrat][p][i]=(double) table[s][4];
+													}
+													//subgroups
+													for(int g=0; g<numSubgroups; g++){
+														table=new CEAHelper().calculateNMB(worker, g, true);
+														for(int s=0; s<table.length; s++){
+															int origStrat=(int) table[s][0];
+															resultsGroup[g][numDim][origStrat][p][i]=(double) table[s][4];
+														}
+													}
+												}
+												
+												//Update progress
+												synchronized(progress){
+													int curComplete=numComplete.incrementAndGet();
+													double prog=(curComplete/(numPoints*1.0))*100;
 													long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
 													remTime=(long) (remTime*(100-prog));
 													remTime=remTime/1000;
@@ -607,31 +627,18 @@ public class frmSensOneWayStacked {
 													String minutes = Integer.toString((int)(remTime/60));
 													if(seconds.length()<2){seconds="0"+seconds;}
 													if(minutes.length()<2){minutes="0"+minutes;}
-													progress.setProgress(p*intervals+i);
+													progress.setProgress(curComplete);
 													progress.setNote("Time left: "+minutes+":"+seconds);
-
-													if(progress.isCanceled()){ //End loop
-														cancelled=true;
-														i=intervals+1;
-														p=numParams;
+													if(progress.isCanceled()){ //Skip remaining points
+														sweep.cancel();
 													}
-													
-												} //end interval loop
-
-												//Reset param value
-												curParam.value=origValue;
-												curParam.locked=false;
-
-
-											} //end error check
-										}  //end parameter loop
+												}
+											}
+										});
+										cancelled=sweep.isCancelled();
 
 										myModel.validateModelObjects();
 
-										if(myModel.type==1) {
-											myModel.markov.showTrace=origShowTrace;
-										}
-
 										if(cancelled==false){
 											getBestStrategies();
 											
@@ -651,6 +658,11 @@ public class frmSensOneWayStacked {
 								e.printStackTrace();
 								JOptionPane.showMessageDialog(frmSensOneWayStacked, e.getMessage());
 								myModel.errorLog.recordError(e);
+							} finally{ //restore even if the run fails
+								if(myModel.type==1) {
+									myModel.markov.showTrace=origShowTrace;
+									myModel.markov.keepTraces=origKeepTraces;
+								}
 							}
 						}
 					};
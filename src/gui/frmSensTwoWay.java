@@ -38,6 +38,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JButton;
@@ -75,6 +76,7 @@ import org.jfree.data.Range;
 import org.jfree.data.xy.DefaultXYDataset;
 
 import base.AmuaModel;
+import base.ParallelSweep;
 import filters.CSVFilter;
 import main.CEAHelper;
 import main.DimInfo;
@@ -494,41 +496,43 @@ public class frmSensTwoWay {
 										boolean cancelled=false;
 										//Run model...
 
-										boolean origShowTrace=false;
-										if(myModel.type==1) {
-											origShowTrace=myModel.markov.showTrace;
-											myModel.markov.showTrace=false;
-										}
-
 										int group=-1;
 										if(comboGroup.isEnabled()){group=comboGroup.getSelectedIndex()-1;}
+										final int outcomeType=analysisType, groupIndex=group;
+										final double threshold=ceThresh;
+										final boolean maximize=max;
 
-										int numStrat=myModel.strategyNames.length;
+										final int numStrat=myModel.strategyNames.length;
 										//dataEV=new double[numStrat][2][(intervals+1)*(intervals+1)];
 										dataSurface=new double[numStrat][intervals+1][intervals+1];
 										bestStrategy=new int[intervals+1][intervals+1];
 										param1Vals=new double[intervals+1][intervals+1];
 										param2Vals=new double[intervals+1][intervals+1];
-										int numRuns=(intervals+1)*(intervals+1);
+										final int numRuns=(intervals+1)*(intervals+1);
 										progress.setMaximum(numRuns);
 
-										long startTime=System.currentTimeMillis();
-
-										int count=0;
-										for(int i=0; i<=intervals; i++){
-											double curVal1=min1+(step1*i);
-											curParam1.value.setDouble(curVal1);
-											for(int j=0; j<=intervals; j++){
-												double curVal2=min2+(step2*j);
-												param1Vals[i][j]=curVal1;
-												param2Vals[i][j]=curVal2;
+										final long startTime=System.currentTimeMillis();
+
+										//Run points in parallel, each worker on its own copy of the model
+										final ParallelSweep sweep=new ParallelSweep(myModel, numRuns);
+										final AtomicInteger numComplete=new AtomicInteger();
+										sweep.run(new ParallelSweep.PointTask(){
+											@Override
+											public void setParameters(int point, AmuaModel worker) throws Exception{
+												int i=point/(intervals+1), j=point%(intervals+1);
+												Parameter workerParam1=worker.parameters.get(row1), workerParam2=worker.parameters.get(row2);
+												workerParam1.value.setDouble(min1+(step1*i));
+												workerParam2.value.setDouble(min2+(step2*j));
+												workerParam1.locked=true; workerParam2.locked=true;
+											}
+											
+											@Override
+											public void pointComplete(int point, AmuaModel worker) throws Exception{
+												int i=point/(intervals+1), j=point%(intervals+1);
+												param1Vals[i][j]=min1+(step1*i);
+												param2Vals[i][j]=min2+(step2*j);
 												
-												curParam2.value.setDouble(curVal2);
-												curParam1.locked=true; curParam2.locked=true;
-												myModel.parseModel();
-												myModel.runModel(null, false);
-
-												if(analysisType==0){ //EV
+												if(outcomeType==0){ //EV
 													double maxEV=Double.NEGATIVE_INFINITY;
 													double minEV=Double.POSITIVE_INFINITY;
 													int maxStrat=-1, minStrat=-1;
@@ -536,13 +540,13 @@ public class frmSensTwoWay {
 														//dataEV[s][0][count]=curVal1;
 														//dataEV[s][1][count]=Double.NaN;
 														double curOutcome;
-														if(group==-1){curOutcome=myModel.getStrategyEV(s, dim);}
-														else{curOutcome=myModel.getSubgroupEV(group, s, dim);}
+														if(groupIndex==-1){curOutcome=worker.getStrategyEV(s, dim);}
+														else{curOutcome=worker.getSubgroupEV(groupIndex, s, dim);}
 														if(curOutcome>maxEV){maxEV=curOutcome; maxStrat=s;}
 														if(curOutcome<minEV){minEV=curOutcome; minStrat=s;}
 														dataSurface[s][i][j]=curOutcome;
 													}
-													if(max){
+													if(maximize){
 														//dataEV[maxStrat][1][count]=curVal2;
 														bestStrategy[i][j]=maxStrat;
 													}
@@ -553,21 +557,21 @@ public class frmSensTwoWay {
 												}
 												else { //CEA or BCA
 													//get best strategy
-													double wtp=myModel.dimInfo.WTP;
-													int costDim=myModel.dimInfo.costDim;
-													int effectDim=myModel.dimInfo.effectDim;
+													double wtp=worker.dimInfo.WTP;
+													int costDim=worker.dimInfo.costDim;
+													int effectDim=worker.dimInfo.effectDim;
 													double maxNMB=Double.NEGATIVE_INFINITY;
 													int bestStrat=-1;
 
 													for(int s=0; s<numStrat; s++) {
 														double cost=0, effect=0;
-														if(group==-1){
-															cost=myModel.getStrategyEV(s, costDim);
-															effect=myModel.getStrategyEV(s, effectDim);
+														if(groupIndex==-1){
+															cost=worker.getStrategyEV(s, costDim);
+															effect=worker.getStrategyEV(s, effectDim);
 														}
 														else{
-															cost=myModel.getSubgroupEV(group, s, costDim);
-															effect=myModel.getSubgroupEV(group, s, effectDim);
+															cost=worker.getSubgroupEV(groupIndex, s, costDim);
+															effect=worker.getSubgroupEV(groupIndex, s, effectDim);
 														}
 														double curNMB=(effect*wtp)-cost;
 														if(curNMB>maxNMB) {
@@ -578,8 +582,8 @@ public class frmSensTwoWay {
 													bestStrategy[i][j]=bestStrat;
 
 													//get ICERs or NMBs
-													if(analysisType==1){ //CEA
-														Object table[][]=new CEAHelper().calculateICERs(myModel,group,true);
+													if(outcomeType==1){ //CEA
+														Object table[][]=new CEAHelper().calculateICERs(worker,groupIndex,true);
 														double bestICER=Double.NEGATIVE_INFINITY;
 														bestStrat=-1;
 														for(int s=0; s<table.length; s++){	
@@ -588,7 +592,7 @@ public class frmSensTwoWay {
 																//dataEV[origStrat][0][count]=curVal1;
 																//dataEV[origStrat][1][count]=Double.NaN;
 																double curICER=(double)table[s][4];
-																if(curICER>bestICER && curICER<=ceThresh){
+																if(curICER>bestICER && curICER<=threshold){
 																	bestICER=curICER;
 																	bestStrat=origStrat;
 																}
@@ -599,8 +603,8 @@ public class frmSensTwoWay {
 															//dataEV[bestStrat][1][count]=curVal2;
 														}
 													}
-													else if(analysisType==2){ //BCA
-														Object table[][]=new CEAHelper().calculateNMB(myModel,group,true);
+													else if(outcomeType==2){ //BCA
+														Object table[][]=new CEAHelper().calculateNMB(worker,groupIndex,true);
 														maxNMB=Double.NEGATIVE_INFINITY;
 														int maxStrat=-1;
 														for(int s=0; s<table.length; s++){	
@@ -618,35 +622,31 @@ public class frmSensTwoWay {
 													}
 												}
 
-												count++;
 												//Update progress
-												double prog=(count/(numRuns*1.0))*100;
-												long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-												remTime=(long) (remTime*(100-prog));
-												remTime=remTime/1000;
-												String seconds = Integer.toString((int)(remTime % 60));
-												String minutes = Integer.toString((int)(remTime/60));
-												if(seconds.length()<2){seconds="0"+seconds;}
-												if(minutes.length()<2){minutes="0"+minutes;}
-												progress.setProgress(count);
-												progress.setNote("Time left: "+minutes+":"+seconds);
-
-												if(progress.isCanceled()){ //End loop
-													cancelled=true;
-													j=intervals+1;
-													i=intervals+1;
+												synchronized(progress){
+													int count=numComplete.incrementAndGet();
+													double prog=(count/(numRuns*1.0))*100;
+													long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
+													remTime=(long) (remTime*(100-prog));
+													remTime=remTime/1000;
+													String seconds = Integer.toString((int)(remTime % 60));
+													String minutes = Integer.toString((int)(remTime/60));
+													if(seconds.length()<2){seconds="0"+seconds;}
+													if(minutes.length()<2){minutes="0"+minutes;}
+													progress.setProgress(count);
+													progress.setNote("Time left: "+minutes+":"+seconds);
+													if(progress.isCanceled()){ //Skip remaining points
+														sweep.cancel();
+													}
 												}
 											}
-										}
+										});
+										cancelled=sweep.isCancelled();
 										//Reset parameter values
 										curParam1.value=origValue1; curParam2.value=origValue2;
 										curParam1.locked=false; curParam2.locked=false;
 										myModel.validateModelObjects();
 
-										if(myModel.type==1) {
-											myModel.markov.showTrace=origShowTrace;
-										}
-
 										if(cancelled==false){
 											//Update chart
 											chart.getXYPlot().getDomainAxis().setLabel(curParam1.name);
@@ -25,6 +25,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JButton;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.awt.event.ActionEvent;
 
 import javax.swing.DefaultComboBoxModel;
@@ -49,6 +50,8 @@ import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 
 import base.AmuaModel;
+import base.ParallelSweep;
+import base.ThresholdSearch;
 import main.CEAHelper;
 import main.DimInfo;
 import main.Parameter;
@@ -84,6 +87,7 @@ public class frmThreshOneWay {
 	JComboBox<String> comboDimensions;
 	double dataEV[][][];
 	private JTextField textThresh;
+	private JLabel lblAchieved;
 	private JTextField textIntervals;
 	String CEAnotes[][];
 	Parameter curParam;
@@ -230,6 +234,10 @@ public class frmThreshOneWay {
 			panel_2.add(textThresh);
 			textThresh.setColumns(10);
 			
+			lblAchieved = new JLabel("");
+			lblAchieved.setBounds(6, 128, 330, 16);
+			panel_2.add(lblAchieved);
+			
 			JLabel lblIntervals = new JLabel("Intervals:");
 			lblIntervals.setBounds(338, 16, 55, 16);
 			panel_2.add(lblIntervals);
@@ -402,202 +410,169 @@ public class frmThreshOneWay {
 										boolean cancelled=false;
 										//Run model...
 										int numStrat=myModel.strategyNames.length;
-										double minDist=Double.POSITIVE_INFINITY;
-										int minIndex=-1;
 
 										dataEV=new double[numStrat][2][intervals+1];
 										progress.setMaximum(intervals+1);
 										if(analysisType==1){CEAnotes=new String[numStrat][intervals+1];} //CEA
 										else{CEAnotes=null;}
 										
-										boolean origShowTrace=false;
-										if(myModel.type==1) {
-											origShowTrace=myModel.markov.showTrace;
-											myModel.markov.showTrace=false;
-										}
+										final double diffs[]=new double[intervals+1];
+										final int outcomeType=analysisType, groupIndex=group;
+										final double gridStep=step;
+										final long startTime=System.currentTimeMillis();
 										
-										double diffs[]=new double[intervals+1];
-										for(int i=0; i<=intervals; i++){
-											double curVal=min+(step*i);
-											curParam.value.setDouble(curVal);
-											curParam.locked=true;
-											myModel.parseModel();
-											myModel.runModel(null, false);
+										//Run grid points in parallel, each worker on its own copy of the model
+										final ParallelSweep sweep=new ParallelSweep(myModel, intervals+1);
+										final AtomicInteger numComplete=new AtomicInteger();
+										sweep.run(new ParallelSweep.PointTask(){
+											@Override
+											public void setParameters(int i, AmuaModel worker) throws Exception{
+												Parameter workerParam=worker.parameters.get(row);
+												workerParam.value.setDouble(min+(gridStep*i));
+												workerParam.locked=true;
+											}
 											
-											if(analysisType==0){ //EV
-												for(int s=0; s<numStrat; s++){
-													dataEV[s][0][i]=curVal;
-													if(group==-1){dataEV[s][1][i]=myModel.getStrategyEV(s, dim);}
-													else{dataEV[s][1][i]=myModel.getSubgroupEV(group, s, dim);}
+											@Override
+											public void pointComplete(int i, AmuaModel worker) throws Exception{
+												double curVal=min+(gridStep*i);
+												if(outcomeType==0){ //EV
+													for(int s=0; s<numStrat; s++){
+														dataEV[s][0][i]=curVal;
+														if(groupIndex==-1){dataEV[s][1][i]=worker.getStrategyEV(s, dim);}
+														else{dataEV[s][1][i]=worker.getSubgroupEV(groupIndex, s, dim);}
+													}
 												}
-											}
-											else if(analysisType==1){ //CEA
-												Object table[][]=new CEAHelper().calculateICERs(myModel,group,true);
-												for(int s=0; s<table.length; s++){	
-													int origStrat=(int) table[s][0];
-													if(origStrat!=-1){
+												else if(outcomeType==1){ //CEA
+													Object table[][]=new CEAHelper().calculateICERs(worker,groupIndex,true);
+													for(int s=0; s<table.length; s++){	
+														int origStrat=(int) table[s][0];
+														if(origStrat!=-1){
+															dataEV[origStrat][0][i]=curVal;
+															dataEV[origStrat][1][i]=(double) table[s][4];
+															CEAnotes[origStrat][i]=(String) table[s][5];
+														}
+													}
+												}
+												else if(outcomeType==2){ //BCA
+													Object table[][]=new CEAHelper().calculateNMB(worker,groupIndex,true);
+													for(int s=0; s<table.length; s++){	
+														int origStrat=(int) table[s][0];
 														dataEV[origStrat][0][i]=curVal;
 														dataEV[origStrat][1][i]=(double) table[s][4];
-														CEAnotes[origStrat][i]=(String) table[s][5];
 													}
 												}
-											}
-											else if(analysisType==2){ //BCA
-												Object table[][]=new CEAHelper().calculateNMB(myModel,group,true);
-												for(int s=0; s<table.length; s++){	
-													int origStrat=(int) table[s][0];
-													dataEV[origStrat][0][i]=curVal;
-													dataEV[origStrat][1][i]=(double) table[s][4];
+												diffs[i]=dataEV[strat1][1][i]-dataEV[strat2][1][i];
+												
+												//Update progress
+												synchronized(progress){
+													int curComplete=numComplete.incrementAndGet();
+													double prog=(curComplete/((intervals+1)*1.0))*100;
+													long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
+													remTime=(long) (remTime*(100-prog));
+													remTime=remTime/1000;
+													String seconds = Integer.toString((int)(remTime % 60));
+													String minutes = Integer.toString((int)(remTime/60));
+													if(seconds.length()<2){seconds="0"+seconds;}
+													if(minutes.length()<2){minutes="0"+minutes;}
+													progress.setProgress(curComplete);
+													progress.setNote("Time left: "+minutes+":"+seconds);
+													if(progress.isCanceled()){ //Skip remaining points
+														sweep.cancel();
+													}
 												}
 											}
-											
-											
-											diffs[i]=dataEV[strat1][1][i]-dataEV[strat2][1][i];
-											double curDist=Math.abs(diffs[i]);
-											if(curDist<minDist){
-												minDist=curDist;
-												minIndex=i;
-											}
-											progress.setProgress(i);
-											if(progress.isCanceled()){ //End loop
-												cancelled=true;
-												i=intervals+1;
-											}
-										}
-
+										});
+										cancelled=sweep.isCancelled();
+										
 										if(cancelled==false){
-											//Find intersection
-											double intersection=Double.NaN;
-											if(minDist==0){ //Intersection coincides with interval
-												intersection=dataEV[0][0][minIndex];
+											//Bracket sign changes on the grid, then refine each one with root-finding
+											double grid[]=new double[intervals+1];
+											for(int i=0; i<=intervals; i++){grid[i]=min+(gridStep*i);}
+											final ThresholdSearch search=new ThresholdSearch(myModel, row, grid, diffs);
+											ThresholdSearch.Threshold thresholds[]=null;
+											if(search.getNumThresholds()==0){
+												lblAchieved.setText("");
+												JOptionPane.showMessageDialog(frmThreshOneWay, "No intersection found in current range!");
 											}
-											else{ //No exact intersection found
-												//Check if lines cross
-												boolean cross=false;
-												for(int i=1; i<=intervals; i++) {
-													if(Math.signum(diffs[i-1])!=Math.signum(diffs[i])) {
-														cross=true;
-													}
-												}
-												if(cross==false) {
-													JOptionPane.showMessageDialog(frmThreshOneWay, "No intersection found in current range!");
-												}
-												else{ //Search neighbourhood for intersection
-													frmThreshOneWay.setCursor(new Cursor(Cursor.WAIT_CURSOR));
-													
-													double minVal=dataEV[0][0][minIndex];
-													//if min dist is at either extreme move to the midpoint of the interval
-													//if(minIndex==0) {minVal+=(step/2.0);}
-													//else if(minIndex==intervals) {minVal-=(step/2.0);}
-													
-													int dec=myModel.dimInfo.decimals[decimalDim]+1;
-													int i=0;
-													progress.setMaximum(100);
-													while(minDist>tol && i<100){ //Binary search of neighbourhood until convergence
-														progress.setProgress(i);
-														progress.setNote("Distance: "+MathUtils.round(minDist, dec));
-														
-														//Left
-														double valL=minVal-(step/2.0);
-														valL=Math.max(valL, min); //floor of min
-														curParam.value.setDouble(valL);
-														curParam.locked=true;
-														myModel.parseModel();
-														myModel.runModel(null, false);
-														
-														double result1L=0, result2L=0;
-														if(analysisType==0){ //EV
-															if(group==-1){
-																result1L=myModel.getStrategyEV(strat1, dim);
-																result2L=myModel.getStrategyEV(strat2, dim);
+											else{
+												frmThreshOneWay.setCursor(new Cursor(Cursor.WAIT_CURSOR));
+												final int maxRuns=Math.max(1, search.getNumBrackets()*search.getMaxIterations());
+												progress.setMaximum(maxRuns);
+												progress.setProgress(0);
+												thresholds=search.solve(new ThresholdSearch.Difference(){
+													@Override
+													public double evaluate(AmuaModel worker) throws Exception{
+														double result1=0, result2=0;
+														if(outcomeType==0){ //EV
+															if(groupIndex==-1){
+																result1=worker.getStrategyEV(strat1, dim);
+																result2=worker.getStrategyEV(strat2, dim);
 															}
 															else{
-																result1L=myModel.getSubgroupEV(group,strat1, dim);
-																result2L=myModel.getSubgroupEV(group,strat2, dim);
-															}
-														}
-														else if(analysisType==1){ //CEA
-															Object table[][]=new CEAHelper().calculateICERs(myModel,group,true);
-															for(int s=0; s<table.length; s++){	
-																int origStrat=(int) table[s][0];
-																if(origStrat==strat1){result1L=(double) table[s][4];}
-																if(origStrat==strat2){result2L=(double) table[s][4];}
+																result1=worker.getSubgroupEV(groupIndex, strat1, dim);
+																result2=worker.getSubgroupEV(groupIndex, strat2, dim);
 															}
 														}
-														else if(analysisType==2){ //BCA
-															Object table[][]=new CEAHelper().calculateNMB(myModel,group,true);
+														else if(outcomeType==1){ //CEA
+															Object table[][]=new CEAHelper().calculateICERs(worker,groupIndex,true);
 															for(int s=0; s<table.length; s++){	
 																int origStrat=(int) table[s][0];
-																if(origStrat==strat1){result1L=(double) table[s][4];}
-																if(origStrat==strat2){result2L=(double) table[s][4];}
+																if(origStrat==strat1){result1=(double) table[s][4];}
+																if(origStrat==strat2){result2=(double) table[s][4];}
 															}
 														}
-														double distL=Math.abs(result1L-result2L);
-														
-														//Right
-														double valR=minVal+(step/2.0);
-														valR=Math.min(valR, max); //ceiling of max
-														curParam.value.setDouble(valR);
-														curParam.locked=true;
-														myModel.parseModel();
-														myModel.runModel(null, false);
-														
-														double result1R=0, result2R=0;
-														if(analysisType==0){ //EV
-															if(group==-1){
-																result1R=myModel.getStrategyEV(strat1, dim);
-																result2R=myModel.getStrategyEV(strat2, dim);
-															}
-															else{
-																result1R=myModel.getSubgroupEV(group,strat1, dim);
-																result2R=myModel.getSubgroupEV(group,strat2, dim);
-															}
-														}
-														else if(analysisType==1){ //CEA
-															Object table[][]=new CEAHelper().calculateICERs(myModel,group,true);
+														else if(outcomeType==2){ //BCA
+															Object table[][]=new CEAHelper().calculateNMB(worker,groupIndex,true);
 															for(int s=0; s<table.length; s++){	
 																int origStrat=(int) table[s][0];
-																if(origStrat==strat1){result1R=(double) table[s][4];}
-																if(origStrat==strat2){result2R=(double) table[s][4];}
+																if(origStrat==strat1){result1=(double) table[s][4];}
+																if(origStrat==strat2){result2=(double) table[s][4];}
 															}
 														}
-														else if(analysisType==2){ //BCA
-															Object table[][]=new CEAHelper().calculateNMB(myModel,group,true);
-															for(int s=0; s<table.length; s++){	
-																int origStrat=(int) table[s][0];
-																if(origStrat==strat1){result1R=(double) table[s][4];}
-																if(origStrat==strat2){result2R=(double) table[s][4];}
+														return(result1-result2);
+													}
+												}, tol, new ThresholdSearch.ProgressListener(){
+													@Override
+													public void progress(int numRuns){
+														synchronized(progress){
+															progress.setProgress(Math.min(numRuns, maxRuns-1));
+															progress.setNote("Refining threshold - Runs: "+numRuns);
+															if(progress.isCanceled()){
+																search.cancel();
 															}
 														}
-														double distR=Math.abs(result1R-result2R);
-														
-														//Move to lowest dist (or stay)
-														if(distL<minDist){
-															minVal=valL;
-															minDist=distL;
-														}
-														if(distR<minDist){
-															minVal=valR;
-															minDist=distR;
-														}
-														step/=2.0;
-														
-														i++;
-														if(progress.isCanceled()){ //End loop
-															cancelled=true;
-															i=1000; //end
-														}
-													}
-													if(minDist<tol){ //Convergence achieved
-														intersection=minVal;
 													}
-													else{
-														JOptionPane.showMessageDialog(frmThreshOneWay, "No intersection found! Try increasing tolerance.");
+												});
+												frmThreshOneWay.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+												if(thresholds==null){cancelled=true;}
+											}
+											
+											if(thresholds!=null){
+												//Report converged thresholds and the tolerance achieved
+												int dec=myModel.dimInfo.decimals[decimalDim];
+												String strThresh="";
+												double maxDiff=0, maxWidth=0;
+												int numConverged=0;
+												for(int t=0; t<thresholds.length; t++){
+													ThresholdSearch.Threshold curThresh=thresholds[t];
+													maxDiff=Math.max(maxDiff, Math.abs(curThresh.difference));
+													maxWidth=Math.max(maxWidth, curThresh.upper-curThresh.lower);
+													if(curThresh.converged){
+														if(numConverged>0){strThresh+=", ";}
+														strThresh+=MathUtils.round(curThresh.value, dec);
+														numConverged++;
 													}
-													frmThreshOneWay.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
+												}
+												if(numConverged==0){strThresh="NaN";}
+												textThresh.setText(strThresh);
+												lblAchieved.setText("Runs: "+search.getNumRuns()+"   |Diff|: "+MathUtils.round(maxDiff, dec+1)+"   Bracket: "+MathUtils.round(maxWidth, dec+1));
+												if(numConverged==0){
+													JOptionPane.showMessageDialog(frmThreshOneWay, "No intersection found! Try increasing tolerance.");
 												}
 											}
-											textThresh.setText(MathUtils.round(intersection,myModel.dimInfo.decimals[decimalDim])+"");
+										}
+										
+										if(cancelled==false){
 
 											//Update chart
 											DimInfo info=myModel.dimInfo;
@@ -634,10 +609,6 @@ public class frmThreshOneWay {
 										curParam.locked=false;
 										myModel.validateModelObjects();
 										
-										if(myModel.type==1) {
-											myModel.markov.showTrace=origShowTrace;
-										}
-										
 										progress.close();
 									}
 								}
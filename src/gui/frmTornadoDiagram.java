@@ -28,6 +28,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.Collections;
 import java.awt.event.ActionEvent;
 
@@ -62,6 +63,7 @@ import org.jfree.chart.renderer.category.StandardBarPainter;
 import org.jfree.data.category.DefaultIntervalCategoryDataset;
 
 import base.AmuaModel;
+import base.ParallelSweep;
 import filters.CSVFilter;
 import main.CEAHelper;
 import main.DimInfo;
@@ -442,6 +444,11 @@ public class frmTornadoDiagram {
 
 					Thread SimThread = new Thread(){ //Non-UI
 						public void run(){
+							boolean origShowTrace=false, origKeepTraces=false;
+							if(myModel.type==1) {
+								origShowTrace=myModel.markov.showTrace;
+								origKeepTraces=myModel.markov.keepTraces;
+							}
 							try{
 								enablePlot(false);
 								btnExport.setEnabled(false);
@@ -453,7 +460,7 @@ public class frmTornadoDiagram {
 									boolean proceed=true;
 
 									int numRuns=1; //baseline
-									ArrayList<Integer> paramIndices=new ArrayList<Integer>();
+									final ArrayList<Integer> paramIndices=new ArrayList<Integer>();
 									for(int p=0; p<tableParams.getRowCount(); p++){
 										String paramName=(String)tableParams.getValueAt(p, 0);
 										String strMin=(String)tableParams.getValueAt(p, 2);
@@ -476,10 +483,9 @@ public class frmTornadoDiagram {
 									
 									if(proceed==true) {
 
-										boolean origShowTrace=false;
 										if(myModel.type==1) {
-											origShowTrace=myModel.markov.showTrace;
 											myModel.markov.showTrace=false;
+											myModel.markov.keepTraces=false; //only EVs are used
 										}
 										progress.setMaximum(numRuns+1);
 										int curProg=1;
@@ -523,7 +529,10 @@ public class frmTornadoDiagram {
 										numParams=paramIndices.size();
 										results=new double[1+numSubgroups][numStrategies][numOutcomes][numParams][2];
 										paramNames=new String[numParams];
+										final double paramBounds[][]=new double[numParams][2]; //[param][min/max]
 										
+										//Check parameters at min and max
+										int numChecked=0;
 										for(int p=0; p<numParams; p++){
 											int pIndex=paramIndices.get(p);
 											paramNames[p]=(String)tableParams.getValueAt(pIndex, 0);
@@ -533,119 +542,86 @@ public class frmTornadoDiagram {
 											strMax=strMax.replaceAll(",",""); //Replace any commas
 											double min=Double.parseDouble(strMin);
 											double max=Double.parseDouble(strMax);
+											paramBounds[p][0]=min; paramBounds[p][1]=max;
 											curParam=myModel.parameters.get(pIndex);
 											curParam.sensMin=strMin;
 											curParam.sensMax=strMax;
 
 											Numeric origValue=curParam.value.copy();
-
-											//Min
-											curParam.value.setDouble(min);
 											curParam.locked=true;
+											curParam.value.setDouble(min);
 											ArrayList<String> errorsMin=myModel.parseModel();
+											curParam.value.setDouble(max);
+											ArrayList<String> errorsMax=myModel.parseModel();
+											curParam.value=origValue;
+											curParam.locked=false;
 											if(errorsMin.size()>0){
-												curParam.value=origValue;
-												curParam.locked=false;
 												myModel.validateModelObjects();
 												JOptionPane.showMessageDialog(frmTornadoDiagram, "Error: "+paramNames[p]+" - Min value");
 												break;
 											}
-											else{
-												myModel.parseModel();
-												myModel.runModel(null, false);
-												curProg++; progress.setProgress(curProg);
-
-												//get results
-												for(int s=0; s<numStrategies; s++) {
-													for(int d=0; d<numDim; d++) {
-														results[0][s][d][p][0]=myModel.getStrategyEV(s, d); //overall
-														//subgroups
-														for(int g=0; g<numSubgroups; g++) {
-															results[g+1][s][d][p][0]=myModel.getSubgroupEV(g, s, d);
-														}
-													}
-												}
-												if(myModel.dimInfo.analysisType>0) { // CEA/BCA
-													//overall
-													Object table[][]=null;
-													if(myModel.dimInfo.analysisType==1) {table=new CEAHelper().calculateICERs(myModel,-1,true);}
-													else if(myModel.dimInfo.analysisType==2) {table=new CEAHelper().calculateNMB(myModel,-1,true);}
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														results[0][origStrat][numDim][p][0]=(double) table[s][4];
-													}
-													//subgroups
-													for(int g=0; g<numSubgroups; g++) {
-														table=new CEAHelper().calculateICERs(myModel,g,true);
-														for(int s=0; s<table.length; s++){	
-															int origStrat=(int) table[s][0];
-															results[g+1][origStrat][numDim][p][0]=(double) table[s][4];
-														}
-													}
-												}
-											}
-
-											//Max
-											curParam.value.setDouble(max);
-											curParam.locked=true;
-											ArrayList<String> errorsMax=myModel.parseModel();
 											if(errorsMax.size()>0){
-												curParam.value=origValue;
-												curParam.locked=false;
 												myModel.validateModelObjects();
 												JOptionPane.showMessageDialog(frmTornadoDiagram, "Error: "+paramNames[p]+" - Max value");
 												break;
 											}
-											else{
-												myModel.parseModel();
-												myModel.runModel(null, false);
-												curProg++; progress.setProgress(curProg);
-
+											numChecked++;
+										}
+										myModel.validateModelObjects();
+										
+										//Run min and max of each parameter in parallel, each worker on its own copy of the model
+										final ParallelSweep sweep=new ParallelSweep(myModel, numChecked*2);
+										final AtomicInteger numComplete=new AtomicInteger(curProg);
+										sweep.run(new ParallelSweep.PointTask(){
+											@Override
+											public void setParameters(int point, AmuaModel worker) throws Exception{
+												int p=point/2, b=point%2;
+												Parameter workerParam=worker.parameters.get(paramIndices.get(p));
+												workerParam.value.setDouble(paramBounds[p][b]);
+												workerParam.locked=true;
+											}
+											
+											@Override
+											public void pointComplete(int point, AmuaModel worker) throws Exception{
+												int p=point/2, b=point%2; //b: 0=min, 1=max
 												//get results
 												for(int s=0; s<numStrategies; s++) {
 													for(int d=0; d<numDim; d++) {
-														results[0][s][d][p][1]=myModel.getStrategyEV(s, d); //overall
+														results[0][s][d][p][b]=worker.getStrategyEV(s, d); //overall
 														//subgroups
 														for(int g=0; g<numSubgroups; g++) {
-															results[g+1][s][d][p][1]=myModel.getSubgroupEV(g, s, d);
+															results[g+1][s][d][p][b]=worker.getSubgroupEV(g, s, d);
 														}
 													}
 												}
-												if(myModel.dimInfo.analysisType>0) { // CEA/BCA
+												if(worker.dimInfo.analysisType>0) { // CEA/BCA
 													//overall
 													Object table[][]=null;
-													if(myModel.dimInfo.analysisType==1) {table=new CEAHelper().calculateICERs(myModel,-1,true);}
-													else if(myModel.dimInfo.analysisType==2) {table=new CEAHelper().calculateNMB(myModel,-1,true);}
+													if(worker.dimInfo.analysisType==1) {table=new CEAHelper().calculateICERs(worker,-1,true);}
+													else if(worker.dimInfo.analysisType==2) {table=new CEAHelper().calculateNMB(worker,-1,true);}
 													for(int s=0; s<table.length; s++){	
 														int origStrat=(int) table[s][0];
-														results[0][origStrat][numDim][p][1]=(double) table[s][4];
+														results[0][origStrat][numDim][p][b]=(double) table[s][4];
 													}
 													//subgroups
 													for(int g=0; g<numSubgroups; g++) {
-														table=new CEAHelper().calculateICERs(myModel,g,true);
+														table=new CEAHelper().calculateICERs(worker,g,true);
 														for(int s=0; s<table.length; s++){	
 															int origStrat=(int) table[s][0];
-															results[g+1][origStrat][numDim][p][1]=(double) table[s][4];
+															results[g+1][origStrat][numDim][p][b]=(double) table[s][4];
 														}
 													}
 												}
-
-												curParam.value=origValue;
-												curParam.locked=false;
+												synchronized(progress){
+													progress.setProgress(numComplete.incrementAndGet());
+												}
 											}
-
-										} //end param loop
+										});
 										progress.close();
 
-										myModel.validateModelObjects();
-
 										enablePlot(true);
 										btnExport.setEnabled(true);
 
-										if(myModel.type==1) {
-											myModel.markov.showTrace=origShowTrace;
-										}
-
 									} //end proceed check
 								}
 								
@@ -655,6 +631,11 @@ public class frmTornadoDiagram {
 								JOptionPane.showMessageDialog(frmTornadoDiagram, e1.getMessage());
 								e1.printStackTrace();
 								myModel.errorLog.recordError(e1);
+							} finally{ //restore even if the run fails
+								if(myModel.type==1) {
+									myModel.markov.showTrace=origShowTrace;
+									myModel.markov.keepTraces=origKeepTraces;
+								}
 							}
 
 						}
@@ -45,6 +45,7 @@ import filters.CSVFilter;
 import main.ErrorLog;
 import main.ScaledIcon;
 import markov.MarkovTrace;
+import markov.TraceColumn;
 
 import javax.swing.border.LineBorder;
 import java.awt.Color;
@@ -157,7 +158,7 @@ public class frmTrace {
 					int selected=comboGroup.getSelectedIndex();
 					if(selected==0){curTrace=traceOverall;}
 					else{curTrace=traceGroup[selected-1];}
-					table.setModel(curTrace.modelTraceRounded);
+					table.setModel(curTrace.getTableModel());
 					updateChart(comboPlot.getSelectedIndex());
 				}
 			});
@@ -210,19 +211,19 @@ public class frmTrace {
 							BufferedWriter out = new BufferedWriter(fstream);
 							
 							//Write headers
-							int numCol=curTrace.modelTraceRounded.getColumnCount();
-							int numRow=curTrace.modelTraceRounded.getRowCount();
+							int numCol=curTrace.getTableModel().getColumnCount();
+							int numRow=curTrace.getTableModel().getRowCount();
 							for(int c=0; c<numCol-1; c++){
-								out.write(curTrace.modelTraceRounded.getColumnName(c)+",");
+								out.write(curTrace.getTableModel().getColumnName(c)+",");
 							}
-							out.write(curTrace.modelTraceRounded.getColumnName(numCol-1)); out.newLine();
+							out.write(curTrace.getTableModel().getColumnName(numCol-1)); out.newLine();
 							
 							//Write trace rows
 							for(int r=0; r<numRow; r++){
 								for(int c=0; c<numCol-1; c++){
-									out.write(curTrace.modelTraceRounded.getValueAt(r, c)+",");
+									out.write(curTrace.getTableModel().getValueAt(r, c)+",");
 								}
-								out.write(curTrace.modelTraceRounded.getValueAt(r, numCol-1)+""); out.newLine();
+								out.write(curTrace.getTableModel().getValueAt(r, numCol-1)+""); out.newLine();
 							}
 							
 							out.close();
@@ -243,17 +244,17 @@ public class frmTrace {
 			JButton btnCopy = new JButton("Copy");
 			btnCopy.addActionListener(new ActionListener() {
 				public void actionPerformed(ActionEvent arg0) {
-					int numCol=curTrace.modelTraceRounded.getColumnCount();
-					int numRow=curTrace.modelTraceRounded.getRowCount();
+					int numCol=curTrace.getTableModel().getColumnCount();
+					int numRow=curTrace.getTableModel().getRowCount();
 					String data[][]=new String[numRow+1][numCol];
 					//Get headers
 					for(int c=0; c<numCol; c++){
-						data[0][c]=curTrace.modelTraceRounded.getColumnName(c);
+						data[0][c]=curTrace.getTableModel().getColumnName(c);
 					}
 					//Get row
 					for(int r=0; r<numRow; r++){
 						for(int c=0; c<numCol; c++){
-							data[r+1][c]=curTrace.modelTraceRounded.getValueAt(r, c)+"";
+							data[r+1][c]=curTrace.getTableModel().getValueAt(r, c)+"";
 						}
 					}
 					
@@ -278,7 +279,7 @@ public class frmTrace {
 			table = new JTable();
 			table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
 			table.setEnabled(false);
-			table.setModel(curTrace.modelTraceRounded);
+			table.setModel(curTrace.getTableModel());
 			table.setShowVerticalLines(true);
 			table.getTableHeader().setReorderingAllowed(false);
 			scrollPane.setViewportView(table);
@@ -372,7 +373,7 @@ public class frmTrace {
 		}
 	}
 	
-	private double [][] getSeriesData(ArrayList<Integer> cycle, ArrayList<Double> traceData){
+	private double [][] getSeriesData(ArrayList<Integer> cycle, TraceColumn traceData){
 		int numCycles=cycle.size();
 		double data[][]=new double[2][numCycles];
 		for(int i=0; i<numCycles; i++){
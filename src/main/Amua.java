@@ -23,6 +23,7 @@ import java.awt.EventQueue;
 import javax.swing.UIManager;
 import javax.swing.UIManager.LookAndFeelInfo;
 
+import cluster.BatchRun;
 import cluster.ClusterRun;
 import gui.frmMain;
 
@@ -72,7 +73,12 @@ public class Amua {
 			});
 		}
 		else { //process arguments for cluster run
-			new ClusterRun(args,version);
+			if(args[0].equals("-batch")) {
+				new BatchRun(args,version);
+			}
+			else {
+				new ClusterRun(args,version);
+			}
 		}
 	
 	}
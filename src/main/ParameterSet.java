@@ -29,6 +29,10 @@ import math.Numeric;
 public class ParameterSet{
 	@XmlElement public String id;
 	@XmlElement public double score;
+	/**
+	 * Relative importance weight, e.g. from ABC-SMC.  Sets are sampled in proportion to their weights, 1 if unweighted
+	 */
+	@XmlElement public double weight=1;
 	@XmlElement public String strValues[];
 	@XmlTransient public Numeric values[];
 	
@@ -84,11 +88,34 @@ public class ParameterSet{
 		}
 	}
 
+	/**
+	 * Draws the index of a set in proportion to its weight.  Sets with equal weights are drawn uniformly, with the
+	 * same random draws as unweighted sets.
+	 */
+	public static int sampleIndex(ParameterSet sets[], MersenneTwisterFast generator){
+		int numSets=sets.length;
+		boolean equal=true;
+		double total=0;
+		for(int i=0; i<numSets; i++){
+			total+=sets[i].weight;
+			if(sets[i].weight!=sets[0].weight){equal=false;}
+		}
+		if(equal){return(generator.nextInt(numSets));}
+		double rand=generator.nextDouble()*total;
+		double cum=0;
+		for(int i=0; i<numSets; i++){
+			cum+=sets[i].weight;
+			if(rand<cum){return(i);}
+		}
+		return(numSets-1);
+	}
+	
 	//returns a copy of this parameter set
 	public ParameterSet copy(){
 		ParameterSet set=new ParameterSet();
 		set.id=this.id;
 		set.score=this.score;
+		set.weight=this.weight;
 		int numParams=strValues.length;
 		set.strValues=new String[numParams];
 		set.values=new Numeric[numParams];
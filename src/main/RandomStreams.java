@@ -0,0 +1,83 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Independent random number streams for parallel runs.  A stream is identified by a 64-bit key, and sub-streams are
+ * split from a key by index (e.g. chunk of people, cycle, PSA iteration) using the SplitMix64 mixing function, as in
+ * java.util.SplittableRandom.  Each key seeds a MersenneTwisterFast through its full seed array, so streams from
+ * neighbouring seeds or indices are not correlated the way seed+n seeds are.
+ * Streams are indexed by the work they drive rather than by thread, so seeded results do not depend on the number of threads.
+ */
+public final class RandomStreams{
+	
+	//Stream purposes
+	public static final int INITIALIZE=0;
+	public static final int SIMULATE=1;
+	public static final int REFRESH=2;
+	
+	private static final long GOLDEN_GAMMA=0x9e3779b97f4a7c15L;
+	private static final AtomicLong seeder=new AtomicLong(mix(System.currentTimeMillis())^mix(System.nanoTime()));
+	
+	private RandomStreams(){}
+	
+	/**
+	 * Returns the key for a user-specified seed
+	 */
+	public static long getKey(long seed){
+		return(mix(seed*GOLDEN_GAMMA));
+	}
+	
+	/**
+	 * Returns a new unseeded key.  Keys are unique within the process, even if requested in the same millisecond.
+	 */
+	public static long newKey(){
+		return(mix(seeder.getAndAdd(GOLDEN_GAMMA)));
+	}
+	
+	/**
+	 * Returns the key of sub-stream index
+	 */
+	public static long split(long key, long index){
+		return(mix(key+(index+1)*GOLDEN_GAMMA));
+	}
+	
+	public static long split(long key, long index1, long index2){
+		return(split(split(key,index1),index2));
+	}
+	
+	public static void seed(MersenneTwisterFast generator, long key){
+		generator.setSeed(new int[]{(int)(key>>>32), (int)key});
+	}
+	
+	public static MersenneTwisterFast create(long key){
+		return(new MersenneTwisterFast(new int[]{(int)(key>>>32), (int)key}));
+	}
+	
+	/**
+	 * SplitMix64 finalizer
+	 */
+	private static long mix(long z){
+		z=(z^(z>>>30))*0xbf58476d1ce4e5b9L;
+		z=(z^(z>>>27))*0x94d049bb133111ebL;
+		return(z^(z>>>31));
+	}
+}
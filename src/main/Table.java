@@ -46,6 +46,8 @@ public class Table{
 	@XmlTransient double value;
 	@XmlTransient public CubicSpline splines[];
 	@XmlTransient public AmuaModel myModel;
+	@XmlTransient TableLookup lookups[]; //[col] built on first use, cleared when the table is edited
+	@XmlTransient TableDistribution dists[]; //[col] built on first use, cleared when the table is edited
 
 	//Constructor
 	public Table(){
@@ -99,66 +101,66 @@ public class Table{
 	}
 	
 	public double getLookupValue(double index, String colText){
-		//Get column index
 		int col=getColumnIndex(colText);
-		if(col<1 || col>(numCols-1)){return(Double.NaN);} //Throw error
-
-		double val=Double.NaN;
-		if(lookupMethod.matches("Exact")){
-			int row=-1;
-			boolean found=false;
-			while(found==false && row<numRows){
-				row++;
-				if(index==data[row][0]){found=true;}
-			}
-			if(found){val=data[row][col];}
+		return(getLookup(col).getValue(index));
+	}
+	
+	/**
+	 * Returns the lookup for a column, building it the first time the column is used
+	 */
+	public TableLookup getLookup(int col){
+		if(col<1 || col>numCols-1){return(new TableLookup(this,col));} //invalid column, not cached
+		TableLookup cache[]=lookups;
+		if(cache==null){
+			cache=new TableLookup[numCols];
+			lookups=cache;
 		}
-		else if(lookupMethod.matches("Truncate")){
-			if(index<data[0][0]){val=Double.NaN;} //Below first value - error
-			else if(index>=data[numRows-1][0]){val=data[numRows-1][col];} //Above last value
-			else{
-				int row=0;
-				while(data[row][0]<index){row++;}
-				if(index==data[row][0]){val=data[row][col];}
-				else{val=data[row-1][col];}
-			}
+		TableLookup lookup=cache[col];
+		if(lookup==null){ //immutable, so threads that race here build equivalent lookups
+			lookup=new TableLookup(this,col);
+			cache[col]=lookup;
 		}
-		else if(lookupMethod.matches("Interpolate")){
-			if(interpolate.matches("Linear")){
-				if(index<=data[0][0]){ //Below or at first index
-					double slope=(data[1][col]-data[0][col])/(data[1][0]-data[0][0]);
-					val=data[0][col]-(data[0][0]-index)*slope;
-				}
-				else if(index>data[numRows-1][0]){ //Above last index
-					double slope=(data[numRows-1][col]-data[numRows-2][col])/(data[numRows-1][0]-data[numRows-2][0]);
-					val=data[numRows-1][col]+(index-data[numRows-1][0])*slope;
-				}
-				else{ //Between
-					int row=0;
-					while(data[row][0]<index){row++;}
-					double slope=(data[row][col]-data[row-1][col])/(data[row][0]-data[row-1][0]);
-					val=data[row-1][col]+(index-data[row-1][0])*slope;
-				}
-			}
-			else if(interpolate.matches("Cubic Splines")){
-				val=splines[col-1].evaluate(index);
-			}
-
-			//Check extrapolation conditions
-			if(extrapolate.matches("No")){
-				if(index<=data[0][0]){val=data[0][col];} //Below or at first index
-				else if(index>data[numRows-1][0]){val=data[numRows-1][col];} //Above last index
-			}
-			else if(extrapolate.matches("Left only")){ //truncate right
-				if(index>data[numRows-1][0]){val=data[numRows-1][col];} //Above last index
-			}
-			else if(extrapolate.matches("Right only")){ //truncate left
-				if(index<=data[0][0]){val=data[0][col];} //Below or at first index
+		return(lookup);
+	}
+	
+	/**
+	 * Returns the distribution for a valid column (1 to numCols-1), building it the first time the column is used
+	 */
+	public TableDistribution getDistribution(int col){
+		TableDistribution cache[]=dists;
+		if(cache==null){
+			cache=new TableDistribution[numCols];
+			dists=cache;
+		}
+		TableDistribution dist=cache[col];
+		if(dist==null){ //immutable, so threads that race here build equivalent distributions
+			dist=new TableDistribution(this,col);
+			cache[col]=dist;
+		}
+		return(dist);
+	}
+	
+	/**
+	 * Clears the lookups and distributions built from the table data.  Must be called whenever the data, lookup method, or splines change.
+	 */
+	public void clearCache(){
+		lookups=null;
+		dists=null;
+	}
+	
+	/**
+	 * Returns a compiled lookup if the column is given by name or number, or null if the column is an expression and has
+	 * to be resolved on each lookup
+	 */
+	public TableLookup compileLookup(String colText){
+		try{
+			if(colText.contains("\"") || colText.contains("\'")){ //header name
+				return(getLookup(getColumnIndex(colText)));
 			}
-
+			return(getLookup(Integer.parseInt(colText.trim())));
+		} catch(Exception e){ //not a constant column
+			return(null);
 		}
-
-		return(val);
 	}
 
 	public void constructSplines(){
@@ -167,61 +169,30 @@ public class Table{
 		for(int i=0; i<numY; i++){
 			splines[i]=new CubicSpline(data,i+1,boundary);
 		}
+		clearCache();
 	}
 	
 	public Numeric evaluateDist(String params[], int df) throws Exception{
 		if(params.length==2){ //(p,~)
-			if(df==-1 || df==3){ //Sample, Mean
-				int col=getColumnIndex(params[0]);
-				if(col<1 || col>(numCols-1)){throw new NumericException("Invalid column index: "+col+" ("+params[0]+")",name);} //Throw error
-				return(new Numeric(calcEV(col)));
-			} 
-			else if(df==4){ //Variance
-				int col=getColumnIndex(params[0]);
-				if(col<1 || col>(numCols-1)){throw new NumericException("Invalid column index: "+col+" ("+params[0]+")",name);} //Throw error
-				return(new Numeric(calcVariance(col)));
-			} 
+			int col=getColumnIndex(params[0]);
+			if(col<1 || col>(numCols-1)){throw new NumericException("Invalid column index: "+col+" ("+params[0]+")",name);} //Throw error
+			TableDistribution dist=getDistribution(col);
+			if(df==-1 || df==3){return(new Numeric(dist.getMean()));} //Sample, Mean
+			else if(df==4){return(new Numeric(dist.getVariance()));} //Variance
 			else{throw new NumericException("Invalid parameters",name);}
 		}
 		else if(params.length==3){ //(k,n,f): PMF/CDF
 			int col=getColumnIndex(params[1]);
 			if(col<1 || col>(numCols-1)){throw new NumericException("Invalid column index: "+col+" ("+params[1]+")",name);} //Throw error
+			TableDistribution dist=getDistribution(col);
 			if(df==0){ //PMF
-				double k=Interpreter.evaluate(params[0], myModel,false).getDouble();
-				int row=-1;
-				boolean found=false;
-				double val=0;
-				while(found==false && row<(numRows-1)){
-					row++;
-					if(data[row][col]==k){
-						found=true;
-						val=data[row][0]; //Prob
-					}
-				}
-				return(new Numeric(val));
+				return(new Numeric(dist.pmf(Interpreter.evaluate(params[0], myModel,false).getDouble())));
 			} 
 			else if(df==1){ //CDF
-				double k=Interpreter.evaluate(params[0], myModel,false).getDouble();
-				double CDF=0;
-				if(k<data[0][col]){CDF=0;}
-				else if(k>=data[numRows-1][col]){CDF=1;}
-				else{
-					int row=0;
-					while(data[row][col]<=k){
-						CDF+=data[row][0];
-						row++;
-					}
-				}
-				return(new Numeric(CDF));
+				return(new Numeric(dist.cdf(Interpreter.evaluate(params[0], myModel,false).getDouble())));
 			}
 			else if(df==2){ //Quantile
-				double x=Interpreter.evaluate(params[0], myModel,false).getProb(), CDF=0;
-				int row=0;
-				while(x>CDF){
-					CDF+=data[row][0];
-					row++;
-				}
-				return(new Numeric(data[row][col]));
+				return(new Numeric(dist.quantile(Interpreter.evaluate(params[0], myModel,false).getProb())));
 			}
 			else{throw new NumericException("Invalid parameters",name);}
 		}
@@ -248,21 +219,26 @@ public class Table{
 
 	public double sample(String params[],double rand) throws Exception{
 		int col=getColumnIndex(params[0]);
-			if(col<1 || col>(numCols-1)){return(Double.NaN);} //Throw error
-			else{ //Valid column
-				int row=0;
-				double cdf=data[row][0]; //First entry
-				while(rand>cdf){
-					row++;
-					cdf+=data[row][0];
-				}
-				value=data[row][col];
-			}
-		
-		
+		if(col<1 || col>(numCols-1)){return(Double.NaN);} //Throw error
+		value=getDistribution(col).sample(rand);
 		return(value);
 	}
 	
+	/**
+	 * Compiles a distribution on a constant column (header name or column number), or returns null if the column is an expression or invalid
+	 */
+	public TableDistribution compileDistribution(String colText){
+		try{
+			int col;
+			if(colText.contains("\"") || colText.contains("\'")){col=getColumnIndex(colText);} //header name
+			else{col=Integer.parseInt(colText.trim());}
+			if(col<1 || col>(numCols-1) || numRows==0){return(null);}
+			return(getDistribution(col));
+		} catch(Exception e){ //not a constant column
+			return(null);
+		}
+	}
+	
 	public void writeCSV(String filepath, ErrorLog errorLog){
 		try{
 			FileWriter fstream;
@@ -0,0 +1,108 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package main;
+
+import math.MathUtils;
+
+/**
+ * Discrete distribution defined by one column of a table, compiled once when an expression is parsed.
+ * Cumulative probabilities are stored so sampling and quantiles are found by binary search instead of summing rows on each call.
+ */
+public final class TableDistribution{
+	
+	final int numRows;
+	final double probs[], values[]; //[row]
+	/**
+	 * Cumulative probability up to and including each row, summed in row order
+	 */
+	final double cdf[];
+	/**
+	 * True if the values are in ascending order
+	 */
+	final boolean sorted;
+	final double mean, variance;
+	
+	//Constructor
+	public TableDistribution(Table table, int col){
+		numRows=table.numRows;
+		probs=new double[numRows];
+		values=new double[numRows];
+		cdf=new double[numRows];
+		boolean curSorted=true;
+		for(int r=0; r<numRows; r++){
+			probs[r]=table.data[r][0];
+			values[r]=table.data[r][col];
+			if(r==0){cdf[r]=probs[r];}
+			else{
+				cdf[r]=cdf[r-1]+probs[r];
+				if(values[r]<values[r-1]){curSorted=false;}
+			}
+		}
+		sorted=curSorted;
+		mean=table.calcEV(col);
+		variance=table.calcVariance(col);
+	}
+	
+	/**
+	 * Returns the value of the first row whose cumulative probability is >= rand
+	 */
+	public double sample(double rand){
+		return(values[MathUtils.searchCDF(cdf, rand)]);
+	}
+	
+	public double pmf(double k){
+		for(int r=0; r<numRows; r++){
+			if(values[r]==k){return(probs[r]);}
+		}
+		return(0);
+	}
+	
+	public double cdf(double k){
+		if(k<values[0]){return(0);}
+		else if(k>=values[numRows-1]){return(1);}
+		int row; //first row with value > k
+		if(sorted){
+			int lo=0, hi=numRows-1;
+			while(lo<hi){
+				int mid=(lo+hi)>>>1;
+				if(values[mid]<=k){lo=mid+1;}
+				else{hi=mid;}
+			}
+			row=lo;
+		}
+		else{
+			row=0;
+			while(values[row]<=k){row++;}
+		}
+		return(cdf[row-1]);
+	}
+	
+	public double quantile(double x){
+		return(sample(x));
+	}
+	
+	public double getMean(){
+		return(mean);
+	}
+	
+	public double getVariance(){
+		return(variance);
+	}
+}
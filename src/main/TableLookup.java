@@ -0,0 +1,182 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+import math.CubicSpline;
+
+/**
+ * Lookup on one column of a table, compiled once when an expression is parsed.  The lookup method is decoded up front,
+ * rows are found by binary search (or directly when the index column is evenly spaced, e.g. single years of age), and
+ * slopes for linear interpolation are precomputed.
+ */
+public final class TableLookup{
+	
+	enum Method{EXACT, TRUNCATE, LINEAR, CUBIC_SPLINE, NONE}
+	enum Extrapolate{YES, NO, LEFT_ONLY, RIGHT_ONLY}
+	
+	final Method method;
+	final Extrapolate extrapolate;
+	final int numRows;
+	final double index[], values[]; //[row]
+	final double slopes[]; //[row] slope to next row
+	final CubicSpline spline;
+	/**
+	 * True if the index column is strictly ascending, otherwise rows are found by scanning
+	 */
+	final boolean sorted;
+	/**
+	 * Spacing of the index column if evenly spaced, otherwise NaN
+	 */
+	final double step;
+	
+	//Constructor
+	public TableLookup(Table table, int col){
+		numRows=table.numRows;
+		index=new double[numRows];
+		values=new double[numRows];
+		boolean validCol=(col>=1 && col<=table.numCols-1);
+		for(int r=0; r<numRows; r++){
+			index[r]=table.data[r][0];
+			if(validCol){values[r]=table.data[r][col];}
+		}
+		
+		Method curMethod=Method.NONE;
+		Extrapolate curExtrapolate=Extrapolate.YES;
+		CubicSpline curSpline=null;
+		if(validCol==false || numRows==0){curMethod=Method.NONE;}
+		else if(table.lookupMethod.equals("Exact")){curMethod=Method.EXACT;}
+		else if(table.lookupMethod.equals("Truncate")){curMethod=Method.TRUNCATE;}
+		else if(table.lookupMethod.equals("Interpolate")){
+			if(table.interpolate.equals("Linear")){curMethod=Method.LINEAR;}
+			else if(table.interpolate.equals("Cubic Splines")){
+				curMethod=Method.CUBIC_SPLINE;
+				curSpline=table.splines[col-1];
+			}
+			if(table.extrapolate.equals("No")){curExtrapolate=Extrapolate.NO;}
+			else if(table.extrapolate.equals("Left only")){curExtrapolate=Extrapolate.LEFT_ONLY;}
+			else if(table.extrapolate.equals("Right only")){curExtrapolate=Extrapolate.RIGHT_ONLY;}
+		}
+		if(curMethod==Method.LINEAR && numRows<2){curMethod=Method.NONE;}
+		method=curMethod;
+		extrapolate=curExtrapolate;
+		spline=curSpline;
+		
+		slopes=new double[Math.max(numRows-1, 0)];
+		for(int r=0; r<numRows-1; r++){
+			slopes[r]=(values[r+1]-values[r])/(index[r+1]-index[r]);
+		}
+		
+		boolean curSorted=true, even=(numRows>1);
+		double curStep=(numRows>1) ? index[1]-index[0] : Double.NaN;
+		for(int r=1; r<numRows; r++){
+			if(index[r]<=index[r-1]){curSorted=false;}
+			if(index[r]-index[r-1]!=curStep){even=false;}
+		}
+		sorted=curSorted;
+		step=(sorted && even) ? curStep : Double.NaN;
+	}
+	
+	/**
+	 * Returns the same value as Table.getLookupValue
+	 */
+	public double getValue(double x){
+		double val=Double.NaN;
+		int last=numRows-1;
+		switch(method){
+		case EXACT:
+			if(sorted){
+				int row=lowerBound(x);
+				if(row<numRows && index[row]==x){val=values[row];}
+			}
+			else{
+				for(int r=0; r<numRows; r++){
+					if(index[r]==x){return(values[r]);}
+				}
+			}
+			return(val);
+		case TRUNCATE:
+			if(x<index[0]){return(Double.NaN);} //Below first value - error
+			else if(x>=index[last]){return(values[last]);} //Above last value
+			else{
+				int row=lowerBound(x);
+				if(index[row]==x){return(values[row]);}
+				return(values[row-1]);
+			}
+		case LINEAR:
+			if(x<=index[0]){ //Below or at first index
+				val=values[0]-(index[0]-x)*slopes[0];
+			}
+			else if(x>index[last]){ //Above last index
+				val=values[last]+(x-index[last])*slopes[last-1];
+			}
+			else{ //Between
+				int row=lowerBound(x);
+				val=values[row-1]+(x-index[row-1])*slopes[row-1];
+			}
+			break;
+		case CUBIC_SPLINE:
+			val=spline.evaluate(x);
+			break;
+		case NONE:
+			return(Double.NaN);
+		}
+		
+		//Check extrapolation conditions
+		switch(extrapolate){
+		case NO:
+			if(x<=index[0]){val=values[0];} //Below or at first index
+			else if(x>index[last]){val=values[last];} //Above last index
+			break;
+		case LEFT_ONLY: //truncate right
+			if(x>index[last]){val=values[last];}
+			break;
+		case RIGHT_ONLY: //truncate left
+			if(x<=index[0]){val=values[0];}
+			break;
+		default:
+			break;
+		}
+		return(val);
+	}
+	
+	/**
+	 * Returns the first row with index >= x, or numRows if there is none
+	 */
+	private int lowerBound(double x){
+		if(sorted==false){ //scan
+			int row=0;
+			while(row<numRows && index[row]<x){row++;}
+			return(row);
+		}
+		if(step==step){ //evenly spaced - start from the expected row
+			double guess=Math.ceil((x-index[0])/step);
+			int row=(int)Math.max(0, Math.min(numRows, guess));
+			while(row>0 && index[row-1]>=x){row--;}
+			while(row<numRows && index[row]<x){row++;}
+			return(row);
+		}
+		int low=0, high=numRows;
+		while(low<high){
+			int mid=(low+high)>>>1;
+			if(index[mid]<x){low=mid+1;}
+			else{high=mid;}
+		}
+		return(low);
+	}
+}
@@ -36,6 +36,10 @@ public class Variable{
 	
 	@XmlTransient public boolean valid=true;
 	@XmlTransient public ArrayList<Variable> dependents; //variables that depend on me
+	/**
+	 * Variables that depend on me directly or indirectly, in topological order (see AmuaModel.scheduleVariables)
+	 */
+	@XmlTransient public Variable updateOrder[];
 	@XmlTransient public boolean independent;
 		
 	@XmlTransient public Numeric value[]; //thread-specific
@@ -89,24 +93,22 @@ public class Variable{
 		}
 	}
 	
+	/**
+	 * Re-evaluates unlocked dependents in one pass.  Inputs come before the variables that use them, so each is evaluated at most once
+	 */
 	public void updateDependents(AmuaModel myModel, int curThread) throws Exception{
-		for(int d=0; d<dependents.size(); d++){
-			Variable curDep=dependents.get(d);
+		for(int d=0; d<updateOrder.length; d++){
+			Variable curDep=updateOrder[d];
 			if(curDep.locked[curThread]==false){
 				curDep.locked[curThread]=true;
-				curDep.value[curThread]=Interpreter.evaluateTokens(curDep.parsedTokens, curThread, false);
-				curDep.updateDependents(myModel, curThread);
+				curDep.value[curThread]=Interpreter.evaluateTokens(curDep.parsedTokens, curThread, false).copy();
 			}
 		}
 	}
 	
 	public void unlockDependents(int curThread) {
-		for(int d=0; d<dependents.size(); d++) {
-			Variable curDep=dependents.get(d);
-			if(curDep.locked[curThread]==true) {
-				curDep.locked[curThread]=false;
-				curDep.unlockDependents(curThread);
-			}
+		for(int d=0; d<updateOrder.length; d++) {
+			updateOrder[d].locked[curThread]=false;
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package markov;
+
+/**
+ * Cycle totals for one chunk of people.  A chunk is only simulated by one thread at a time, so each thread writes to
+ * its own object instead of adjacent slots of shared [thread] arrays.  Totals are summed in chunk order at the end of
+ * each cycle, so results don't depend on the number of threads.
+ */
+public class ChunkTotals{
+	double prev[]; //[state] current prevalence, carried over to the next cycle
+	double rewards[]; //[dim] cycle rewards
+	double variables[]; int variablesDenom[]; //[variable] cycle sum and count
+	double prevGroup[][]; //[subgroup][state]
+	double rewardsGroup[][]; //[subgroup][dim]
+	double variablesGroup[][]; int variablesDenomGroup[][]; //[subgroup][variable]
+	
+	//Constructor
+	public ChunkTotals(int numStates, int numDim, int numVars, int numSubgroups){
+		prev=new double[numStates];
+		rewards=new double[numDim];
+		variables=new double[numVars]; variablesDenom=new int[numVars];
+		prevGroup=new double[numSubgroups][numStates];
+		rewardsGroup=new double[numSubgroups][numDim];
+		variablesGroup=new double[numSubgroups][numVars]; variablesDenomGroup=new int[numSubgroups][numVars];
+	}
+	
+}
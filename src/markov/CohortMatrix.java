@@ -0,0 +1,438 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package markov;
+
+import java.util.Set;
+
+import main.Variable;
+import math.Interpreter;
+import math.MathUtils;
+
+/**
+ * Matrix form of a cohort chain.  Each state's subtree is collapsed into a row of state-to-state transition probabilities
+ * and a per-person reward, so a cycle is a sparse matrix-vector product instead of a traversal per state.
+ * Expressions that don't depend on t, updated variables, or the trace are evaluated once, and only rows with
+ * time-dependent expressions are re-assembled each cycle.
+ */
+final class CohortMatrix{
+	int numStates, numDim;
+	int curThread;
+	Row rows[]; //[from state]
+	boolean first;
+	
+	/**
+	 * Subtree of one state, flattened so that each node's children are contiguous
+	 */
+	static final class Row{
+		MarkovNode nodes[]; //[0] is the state
+		int parent[], firstChild[];
+		boolean probDynamic[]; //prob of node
+		boolean childDynamic[]; //prob of any child
+		boolean costDynamic[][], rewardDynamic[]; //[node][dim], [dim]
+		double prob[], pathProb[];
+		double cost[][]; //[node][dim]
+		double reward[]; //[dim] state reward
+		boolean dynamic;
+		
+		double trans[]; //[to state]
+		int cols[]; //states with non-zero entries
+		double rewards[]; //[dim] state reward plus expected costs along the subtree
+	}
+	
+	/**
+	 * Returns false if a node below a state updates variables - the order of updates then matters, so the chain has to be traversed
+	 */
+	static boolean canUse(MarkovNode states[]){
+		for(int s=0; s<states.length; s++){
+			if(hasVarUpdates(states[s])){return(false);}
+		}
+		return(true);
+	}
+	
+	private static boolean hasVarUpdates(MarkovNode node){
+		if(node.hasVarUpdates){return(true);}
+		for(int c=0; c<node.numChildren; c++){
+			if(hasVarUpdates(node.children[c])){return(true);}
+		}
+		return(false);
+	}
+	
+	/**
+	 * @param changing Variables that may change from cycle to cycle (t, updated variables, and their dependents)
+	 */
+	CohortMatrix(MarkovNode states[], int numDim, Set<Variable> changing, int curThread){
+		numStates=states.length;
+		this.numDim=numDim;
+		this.curThread=curThread;
+		rows=new Row[numStates];
+		for(int s=0; s<numStates; s++){
+			rows[s]=buildRow(states[s],changing);
+		}
+		first=true;
+	}
+	
+	private Row buildRow(MarkovNode state, Set<Variable> changing){
+		int numNodes=countNodes(state);
+		Row row=new Row();
+		row.nodes=new MarkovNode[numNodes];
+		row.parent=new int[numNodes];
+		row.firstChild=new int[numNodes];
+		row.nodes[0]=state;
+		row.parent[0]=-1;
+		int numAdded=1;
+		for(int k=0; k<numNodes; k++){ //breadth-first
+			MarkovNode node=row.nodes[k];
+			row.firstChild[k]=numAdded;
+			for(int c=0; c<node.numChildren; c++){
+				row.nodes[numAdded]=node.children[c];
+				row.parent[numAdded]=k;
+				numAdded++;
+			}
+		}
+		
+		row.probDynamic=new boolean[numNodes];
+		row.childDynamic=new boolean[numNodes];
+		row.costDynamic=new boolean[numNodes][];
+		row.prob=new double[numNodes];
+		row.pathProb=new double[numNodes];
+		row.cost=new double[numNodes][];
+		for(int k=0; k<numNodes; k++){
+			MarkovNode node=row.nodes[k];
+			if(k>0 && isComplement(node)==false){
+				row.probDynamic[k]=Interpreter.dependsOn(node.curProbTokens, changing);
+				if(row.probDynamic[k]){
+					row.childDynamic[row.parent[k]]=true;
+					row.dynamic=true;
+				}
+			}
+			if(node.hasCost){
+				row.costDynamic[k]=new boolean[numDim];
+				row.cost[k]=new double[numDim];
+				for(int d=0; d<numDim; d++){
+					row.costDynamic[k][d]=Interpreter.dependsOn(node.curCostTokens[d], changing);
+					if(row.costDynamic[k][d]){row.dynamic=true;}
+				}
+			}
+		}
+		row.rewardDynamic=new boolean[numDim];
+		row.reward=new double[numDim];
+		for(int d=0; d<numDim; d++){
+			row.rewardDynamic[d]=Interpreter.dependsOn(state.curRewardTokens[d], changing);
+		}
+		
+		row.trans=new double[numStates];
+		row.rewards=new double[numDim];
+		boolean nonZero[]=new boolean[numStates];
+		nonZero[state.transFrom]=true;
+		int numCols=1;
+		for(int k=0; k<numNodes; k++){
+			MarkovNode node=row.nodes[k];
+			if(node.type==4 && nonZero[node.transTo]==false){
+				nonZero[node.transTo]=true;
+				numCols++;
+			}
+		}
+		row.cols=new int[numCols];
+		int c=0;
+		for(int s=0; s<numStates; s++){
+			if(nonZero[s]){row.cols[c]=s; c++;}
+		}
+		return(row);
+	}
+	
+	private static int countNodes(MarkovNode node){
+		int count=1;
+		if(node.type!=4){
+			for(int c=0; c<node.numChildren; c++){
+				count+=countNodes(node.children[c]);
+			}
+		}
+		return(count);
+	}
+	
+	private static boolean isComplement(MarkovNode node){
+		return(node.prob.matches("C") || node.prob.matches("c"));
+	}
+	
+	/**
+	 * Re-evaluates the rows that depend on the current cycle (all rows on the first call)
+	 */
+	void update() throws Exception{
+		for(int s=0; s<numStates; s++){
+			Row row=rows[s];
+			boolean rewardChanged=false;
+			for(int d=0; d<numDim; d++){
+				if(first || row.rewardDynamic[d]){
+					row.reward[d]=Interpreter.evaluateDouble(row.nodes[0].curRewardTokens[d], curThread, false);
+					rewardChanged=true;
+				}
+			}
+			if(first || row.dynamic){
+				updateRow(row);
+			}
+			else if(rewardChanged){
+				for(int d=0; d<numDim; d++){
+					row.rewards[d]=row.reward[d]+getCosts(row,d);
+				}
+			}
+		}
+		first=false;
+	}
+	
+	private double getCosts(Row row, int d){
+		double costs=0;
+		for(int k=0; k<row.nodes.length; k++){
+			if(row.nodes[k].hasCost){costs+=row.cost[k][d]*row.pathProb[k];}
+		}
+		return(costs);
+	}
+	
+	private void updateRow(Row row) throws Exception{
+		int numNodes=row.nodes.length;
+		//probabilities and costs
+		for(int k=0; k<numNodes; k++){
+			MarkovNode node=row.nodes[k];
+			if(node.hasCost){
+				for(int d=0; d<numDim; d++){
+					if(first || row.costDynamic[k][d]){
+						row.cost[k][d]=Interpreter.evaluateDouble(node.curCostTokens[d], curThread, false);
+					}
+				}
+			}
+			if(node.type!=4 && node.numChildren>0 && (first || row.childDynamic[k])){
+				updateChildProbs(row,k);
+			}
+		}
+		//path probabilities
+		row.pathProb[0]=1.0;
+		for(int k=1; k<numNodes; k++){
+			row.pathProb[k]=row.pathProb[row.parent[k]]*row.prob[k];
+		}
+		//transitions and expected costs
+		int from=row.nodes[0].transFrom;
+		for(int i=0; i<row.cols.length; i++){row.trans[row.cols[i]]=0;}
+		row.trans[from]=1.0;
+		for(int k=1; k<numNodes; k++){
+			MarkovNode node=row.nodes[k];
+			if(node.type==4){
+				row.trans[from]-=row.pathProb[k];
+				row.trans[node.transTo]+=row.pathProb[k];
+			}
+		}
+		for(int d=0; d<numDim; d++){
+			row.rewards[d]=row.reward[d]+getCosts(row,d);
+		}
+	}
+	
+	private void updateChildProbs(Row row, int k) throws Exception{
+		MarkovNode node=row.nodes[k];
+		double sumProb=0;
+		int indexCompProb=-1;
+		for(int c=0; c<node.numChildren; c++){
+			int child=row.firstChild[k]+c;
+			if(isComplement(row.nodes[child])){indexCompProb=child;}
+			else{
+				if(first || row.probDynamic[child]){
+					row.prob[child]=Interpreter.evaluateDouble(row.nodes[child].curProbTokens, curThread, false);
+				}
+				sumProb+=row.prob[child];
+			}
+		}
+		if(indexCompProb==-1){
+			if(Math.abs(1.0-sumProb)>MathUtils.tolerance){ //throw error
+				throw new Exception("Error: Probabilities sum to "+sumProb+" ("+node.chain.name+": "+node.name+")");
+			}
+		}
+		else{
+			if(sumProb>1.0 || sumProb<0.0){ //throw error
+				throw new Exception("Error: Probabilities sum to "+sumProb+" ("+node.chain.name+": "+node.name+")");
+			}
+			row.prob[indexCompProb]=1.0-sumProb;
+		}
+	}
+	
+	/**
+	 * Returns true if no transition probabilities or rewards change between cycles
+	 */
+	boolean isHomogeneous(){
+		for(int s=0; s<numStates; s++){
+			Row row=rows[s];
+			if(row.dynamic){return(false);}
+			for(int d=0; d<numDim; d++){
+				if(row.rewardDynamic[d]){return(false);}
+			}
+		}
+		return(true);
+	}
+	
+	/**
+	 * Expected rewards of a time-homogeneous chain over numCycles cycles, without stepping through each cycle.
+	 * Sums of powers of the transition matrix are found by repeated squaring, so the cost grows with log(numCycles).
+	 * update() must have been called.
+	 * @param prev Initial prevalence
+	 * @param terminated True if the termination condition ended the chain (the last cycle gets the half-cycle correction)
+	 */
+	void getExpectedRewards(double prev[], int numCycles, boolean terminated, MarkovTree tree, double ev[], double evDis[]){
+		double trans[][]=new double[numStates][];
+		double rewards[][]=new double[numStates][];
+		for(int s=0; s<numStates; s++){
+			trans[s]=rows[s].trans;
+			rewards[s]=rows[s].rewards;
+		}
+		double sum[][]=sumPowers(trans,rewards,numCycles);
+		double prevLast[]=multiply(prev,power(trans,numCycles-1));
+		double first[]=multiply(prev,rewards), last[]=multiply(prevLast,rewards); //cycle rewards
+		for(int d=0; d<numDim; d++){
+			ev[d]=dot(prev,sum,d);
+			if(tree.halfCycleCorrection){
+				ev[d]-=0.5*first[d];
+				if(terminated){ev[d]-=0.5*last[d];}
+			}
+		}
+		
+		if(tree.discountRewards){
+			//undiscounted before start cycle, then geometric
+			int start=Math.min(tree.discountStartCycle, numCycles);
+			double sumBefore[][]=null, prevStart[]=prev;
+			if(start>0){
+				sumBefore=sumPowers(trans,rewards,start);
+				prevStart=multiply(prev,power(trans,start));
+			}
+			for(int d=0; d<numDim; d++){
+				double discountRate=tree.discountRates[d]/100.0;
+				evDis[d]=0;
+				if(start>0){evDis[d]=dot(prev,sumBefore,d);}
+				if(numCycles>start){
+					double factor=1.0/Math.pow(1+discountRate, 1.0/tree.cyclesPerYear); //per cycle
+					double transDis[][]=new double[numStates][numStates];
+					for(int i=0; i<numStates; i++){
+						for(int j=0; j<numStates; j++){transDis[i][j]=trans[i][j]*factor;}
+					}
+					evDis[d]+=factor*dot(prevStart,sumPowers(transDis,rewards,numCycles-start),d);
+				}
+				if(tree.halfCycleCorrection){
+					evDis[d]-=0.5*first[d]*getDiscountFactor(tree,discountRate,0);
+					if(terminated){evDis[d]-=0.5*last[d]*getDiscountFactor(tree,discountRate,numCycles-1);}
+				}
+			}
+		}
+	}
+	
+	private static double getDiscountFactor(MarkovTree tree, double discountRate, int t){
+		if(t<tree.discountStartCycle){return(1.0);}
+		int disCycle=(t-tree.discountStartCycle)+1;
+		double disYear=disCycle/tree.cyclesPerYear; //convert to years
+		return(1.0/Math.pow(1+discountRate, disYear));
+	}
+	
+	/**
+	 * Returns sum_{k<n} A^k*x, doubling the number of terms for each bit of n: S_2m=S_m+A^m*S_m, S_m+1=x+A*S_m
+	 */
+	private static double[][] sumPowers(double a[][], double x[][], int n){
+		int size=a.length, numCols=x[0].length;
+		double sum[][]=new double[size][numCols];
+		double pow[][]=identity(size); //A^m
+		for(int bit=Integer.highestOneBit(Math.max(n,1)); bit>0 && n>0; bit>>=1){
+			//m -> 2m
+			double next[][]=multiply(pow,sum);
+			for(int i=0; i<size; i++){
+				for(int j=0; j<numCols; j++){sum[i][j]+=next[i][j];}
+			}
+			pow=multiply(pow,pow);
+			if((n & bit)!=0){ //m -> m+1
+				sum=multiply(a,sum);
+				for(int i=0; i<size; i++){
+					for(int j=0; j<numCols; j++){sum[i][j]+=x[i][j];}
+				}
+				pow=multiply(a,pow);
+			}
+		}
+		return(sum);
+	}
+	
+	private static double[][] power(double a[][], int n){
+		double result[][]=identity(a.length);
+		double base[][]=a;
+		while(n>0){
+			if((n & 1)!=0){result=multiply(result,base);}
+			n>>=1;
+			if(n>0){base=multiply(base,base);}
+		}
+		return(result);
+	}
+	
+	private static double[][] identity(int size){
+		double a[][]=new double[size][size];
+		for(int i=0; i<size; i++){a[i][i]=1.0;}
+		return(a);
+	}
+	
+	private static double[][] multiply(double a[][], double b[][]){
+		int numRows=a.length, inner=b.length, numCols=b[0].length;
+		double c[][]=new double[numRows][numCols];
+		for(int i=0; i<numRows; i++){
+			double ci[]=c[i];
+			for(int k=0; k<inner; k++){
+				double aik=a[i][k];
+				if(aik==0){continue;}
+				double bk[]=b[k];
+				for(int j=0; j<numCols; j++){ci[j]+=aik*bk[j];}
+			}
+		}
+		return(c);
+	}
+	
+	/**
+	 * Row vector times matrix
+	 */
+	private static double[] multiply(double x[], double a[][]){
+		int numCols=a[0].length;
+		double y[]=new double[numCols];
+		for(int k=0; k<x.length; k++){
+			if(x[k]==0){continue;}
+			for(int j=0; j<numCols; j++){y[j]+=x[k]*a[k][j];}
+		}
+		return(y);
+	}
+	
+	private static double dot(double x[], double a[][], int col){
+		double sum=0;
+		for(int k=0; k<x.length; k++){sum+=x[k]*a[k][col];}
+		return(sum);
+	}
+	
+	/**
+	 * Moves the cohort one cycle: newPrev=curPrev*T, and adds the expected rewards for the cycle
+	 */
+	void step(double curPrev[], double newPrev[], double cycleRewards[]){
+		for(int s=0; s<numStates; s++){newPrev[s]=0;}
+		for(int s=0; s<numStates; s++){
+			Row row=rows[s];
+			double prev=curPrev[s];
+			for(int i=0; i<row.cols.length; i++){
+				int to=row.cols[i];
+				newPrev[to]+=prev*row.trans[to];
+			}
+			for(int d=0; d<numDim; d++){
+				cycleRewards[d]+=prev*row.rewards[d];
+			}
+		}
+	}
+}
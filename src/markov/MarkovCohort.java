@@ -18,6 +18,10 @@
 
 package markov;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
 import base.AmuaModel;
 import main.Variable;
 import math.Interpreter;
@@ -83,7 +87,7 @@ public class MarkovCohort{
 		//Initialize variables
 		myModel.unlockVarsAll(curThread);
 		for(int c=0; c<numVariables; c++){
-			variables[c].value[curThread]=Interpreter.evaluateTokens(variables[c].parsedTokens, curThread, false);
+			variables[c].value[curThread]=Interpreter.evaluateTokens(variables[c].parsedTokens, curThread, false).copy(); //updated in place
 			variables[c].locked[curThread]=true;
 		}
 		
@@ -108,7 +112,7 @@ public class MarkovCohort{
 				indexCompProb=s;
 			}
 			else{ //Evaluate text
-				states[s].curProb[0]=Interpreter.evaluateTokens(states[s].curProbTokens, curThread, false).getDouble();
+				states[s].curProb[0]=Interpreter.evaluateDouble(states[s].curProbTokens, curThread, false);
 				sumProb+=states[s].curProb[0];
 			}
 		}
@@ -132,36 +136,42 @@ public class MarkovCohort{
 			curPrev[s]=myModel.cohortSize*states[s].curProb[0];
 		}
 		
+		//Collapse the chain into a transition matrix if no variables are updated below the states
+		CohortMatrix matrix=null;
+		if(CohortMatrix.canUse(states)){
+			matrix=new CohortMatrix(states, numDim, getChangingVariables(), curThread);
+		}
+		
 		//Simulate cycles
 		int t=0;
 		
 		boolean terminate=false;
-		while(terminate==false && t<markovTree.maxCycles){
-			//update time dependent variables
-			if(t>0) {
-				curT.unlockDependents(curThread);
-				curT.updateDependents(myModel, curThread);
+		if(matrix!=null && markovTree.keepTraces==false && matrix.isHomogeneous() && 
+				Interpreter.dependsOn(chainRoot.curTerminationTokens, Collections.<Variable>emptySet())==false){ //closed form
+			matrix.update();
+			while(terminate==false && t<markovTree.maxCycles){ //find number of cycles
+				if(t>0){updateVariables();}
+				terminate=checkTerminationCondition();
+				t++;
+				curT.value[curThread].setInt(t);
 			}
+			matrix.getExpectedRewards(curPrev, t, terminate, markovTree, cumRewards, cumRewardsDis);
+		}
+		while(terminate==false && t<markovTree.maxCycles){
+			if(t>0){updateVariables();}
 			
-			//chain root variable updates
-			if(t>0 && chainRoot.hasVarUpdates && chainRoot.curVariableUpdates!=null){
-				//myModel.unlockVars(curThread);
-				//Perform variable updates
-				for(int u=0; u<chainRoot.curVariableUpdates.length; u++){
-					chainRoot.curVariableUpdates[u].update(false,curThread);
-				}
-				//Update any dependent variables
-				for(int u=0; u<chainRoot.curVariableUpdates.length; u++){
-					chainRoot.curVariableUpdates[u].variable.updateDependents(myModel,curThread);
-				}
+			if(matrix!=null){ //matrix form
+				matrix.update();
+				matrix.step(curPrev, newPrev, cycleRewards);
 			}
-			
-			for(int s=0; s<numStates; s++){ //Update each state
-				for(int d=0; d<numDim; d++){ //Update state rewards
-					double curReward=Interpreter.evaluateTokens(states[s].curRewardTokens[d], curThread, false).getDouble();
-					cycleRewards[d]+=curReward*curPrev[s];
+			else{
+				for(int s=0; s<numStates; s++){ //Update each state
+					for(int d=0; d<numDim; d++){ //Update state rewards
+						double curReward=Interpreter.evaluateDouble(states[s].curRewardTokens[d], curThread, false);
+						cycleRewards[d]+=curReward*curPrev[s];
+					}
+					traverseNode(states[s],curPrev[s]);
 				}
-				traverseNode(states[s],curPrev[s]);
 			}
 			updateTrace(t);
 			terminate=checkTerminationCondition(); //check condition
@@ -175,6 +185,10 @@ public class MarkovCohort{
 					}
 				}
 			}
+			if(markovTree.traceMonitor!=null && markovTree.traceMonitor.stopAfterCycle(chainRoot, trace, t)){
+				markovTree.stopped=true;
+				terminate=true;
+			}
 
 			t++; //next cycle
 			curT.value[curThread].setInt(t);
@@ -189,7 +203,7 @@ public class MarkovCohort{
 		}
 		if(chainRoot.hasCost) {
 			for(int d=0; d<numDim; d++){
-				double curCost=Interpreter.evaluateTokens(chainRoot.curCostTokens[d],curThread,false).getDouble();
+				double curCost=Interpreter.evaluateDouble(chainRoot.curCostTokens[d],curThread,false);
 				curCost*=myModel.cohortSize;
 				chainRoot.expectedValues[d]+=curCost;
 				chainRoot.expectedValuesDis[d]+=curCost;
@@ -201,6 +215,44 @@ public class MarkovCohort{
 		
 	}
 	
+	/**
+	 * Updates variables that depend on t and performs chain root variable updates
+	 */
+	private void updateVariables() throws Exception{
+		//update time dependent variables
+		curT.unlockDependents(curThread);
+		curT.updateDependents(myModel, curThread);
+		
+		//chain root variable updates
+		if(chainRoot.hasVarUpdates && chainRoot.curVariableUpdates!=null){
+			//Perform variable updates
+			for(int u=0; u<chainRoot.curVariableUpdates.length; u++){
+				chainRoot.curVariableUpdates[u].update(false,curThread);
+			}
+			//Update any dependent variables
+			for(int u=0; u<chainRoot.curVariableUpdates.length; u++){
+				chainRoot.curVariableUpdates[u].variable.updateDependents(myModel,curThread);
+			}
+		}
+	}
+	
+	/**
+	 * Variables that may change between cycles: t, variables updated at the chain root, and their dependents
+	 */
+	private Set<Variable> getChangingVariables(){
+		Set<Variable> changing=Collections.newSetFromMap(new IdentityHashMap<Variable,Boolean>());
+		changing.add(curT);
+		Collections.addAll(changing, curT.updateOrder);
+		if(chainRoot.hasVarUpdates && chainRoot.curVariableUpdates!=null){
+			for(int u=0; u<chainRoot.curVariableUpdates.length; u++){
+				Variable curVar=chainRoot.curVariableUpdates[u].variable;
+				changing.add(curVar);
+				Collections.addAll(changing, curVar.updateOrder);
+			}
+		}
+		return(changing);
+	}
+	
 	private boolean checkTerminationCondition(){
 		boolean terminate=false;
 		try{
@@ -231,7 +283,7 @@ public class MarkovCohort{
 		//Update costs
 		if(node.hasCost){
 			for(int d=0; d<numDim; d++){
-				double curCost=Interpreter.evaluateTokens(node.curCostTokens[d],curThread,false).getDouble();
+				double curCost=Interpreter.evaluateDouble(node.curCostTokens[d],curThread,false);
 				cycleRewards[d]+=curCost*nodePrev;
 			}
 		}
@@ -259,7 +311,7 @@ public class MarkovCohort{
 					indexCompProb=c;
 				}
 				else{ //Evaluate text
-					curChild.curProb[0]=Interpreter.evaluateTokens(curChild.curProbTokens, curThread, false).getDouble();
+					curChild.curProb[0]=Interpreter.evaluateDouble(curChild.curProbTokens, curThread, false);
 					sumProb+=curChild.curProb[0];
 				}
 			}
@@ -333,12 +385,11 @@ public class MarkovCohort{
 			cycleRewardsDis[d]=0;
 		}
 		//Update variables
-		for(int c=0; c<numVariables; c++){
+		for(int c=0; c<trace.numVariables; c++){
 			cycleVariables[c]=variables[c].value[curThread].getDouble();
 			trace.cycleVariables[c].add(cycleVariables[c]);
 		}
 		
-		trace.updateTable(t);
 	}
 	
 	private void getTransitionIndex(MarkovNode node){
@@ -903,7 +903,6 @@ public class MarkovMonteCarloOLD{
 			double mean=num/(denom*1.0);
 			trace.cycleVariables[v].add(mean);
 		}
-		trace.updateTable(t);
 	}
 	
 	private void updateTraceGroup(int g, int t){
@@ -954,7 +953,6 @@ public class MarkovMonteCarloOLD{
 			double mean=num/(denom*1.0);
 			traceGroup[g].cycleVariables[v].add(mean);
 		}
-		traceGroup[g].updateTable(t);
 	}
 	
 	private void getTransitionIndex(MarkovNode node){
@@ -18,16 +18,17 @@
 
 package markov;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.ProgressMonitor;
 
 import base.AmuaModel;
 import base.MicroStats;
 import base.RunReport;
+import base.Scheduler;
 import main.MersenneTwisterFast;
+import main.RandomStreams;
 import main.Variable;
 import math.Interpreter;
 import math.MathUtils;
@@ -46,7 +47,7 @@ public class MarkovMonteCarloPOOL{
 	
 	//people
 	int numPeople;
-	MarkovPerson people[];
+	MarkovPopulation people;
 	int numSubgroups;
 	int subgroupSize[];
 	
@@ -55,28 +56,30 @@ public class MarkovMonteCarloPOOL{
 	int numStates;
 	MarkovNode states[];
 	double initPrev[][]; //[state][curThread]
-	double curPrev[][], newPrev[][], curPrevGroup[][][], newPrevGroup[][][];
-	double cycleRewards[][],cumRewards[];
+	ChunkTotals chunkTotals[]; //[chunk]
+	double curPrev[], curPrevGroup[][]; //prevalence at beginning of cycle
+	double cumRewards[];
 	double cycleRewardsDis[],cumRewardsDis[];
-	double cycleRewardsGroup[][][], cumRewardsGroup[][], cycleRewardsDisGroup[][], cumRewardsDisGroup[][];
-	double cycleVariables[][]; int cycleVariablesDenom[][];
-	double cycleVariablesGroup[][][]; int cycleVariablesDenomGroup[][][];
+	double cumRewardsGroup[][], cycleRewardsDisGroup[][], cumRewardsDisGroup[][];
 	
 	MarkovTrace trace, traceGroup[];
 	MicroStats microStats, microStatsGroup[];
 	Variable curT;
 	
-	MersenneTwisterFast generator[];
+	MersenneTwisterFast generator[]; //[thread] generator of chunk being simulated
+	MersenneTwisterFast chunkGenerator[]; //[chunk]
+	MersenneTwisterFast refreshGenerator[]; //[thread] used to re-evaluate cycle expressions without consuming chunk streams
+	long runKey, chainKey, refreshKey; //random number streams
+	int refreshedCycle[]; //[thread] cycle that thread-specific costs, rewards, and probs were last evaluated for
 	ProgressMonitor progress;
 	double discountFactor[];
 	
 	
 	int numThreads=1;
-	int blockSize;
+	int numChunks;
 	double maxProg;
 	long startTime, endTime;
 	boolean cancelled;
-	Exception threadError; //caught inside multithread and thrown outside
 	int guessMaxCycles=100;
 	int curProg=0;
 	
@@ -91,7 +94,6 @@ public class MarkovMonteCarloPOOL{
 		
 		//threads
 		numThreads=myModel.numThreads;
-		threadError=null;
 		
 		//Get innate variable 't'
 		int indexT=myModel.getInnateVariableIndex("t");
@@ -132,7 +134,6 @@ public class MarkovMonteCarloPOOL{
 	
 	private void initializePeople(final boolean showProgress) throws Exception{
 		numPeople=myModel.cohortSize;
-		people=new MarkovPerson[numPeople];
 		
 		maxProg=numPeople; //initialize + simulate
 		if(myModel.cluster==false) { //desktop
@@ -148,109 +149,81 @@ public class MarkovMonteCarloPOOL{
 			myModel.parseSubgroups();
 		}
 		
-		//Initialize random number generator
+		//Initialize random number streams - one per chunk of people so results don't depend on the number of threads
+		runKey=myModel.CRN ? RandomStreams.getKey(myModel.crnSeed) : RandomStreams.newKey();
+		numChunks=Scheduler.getNumChunks(numPeople);
+		chunkGenerator=new MersenneTwisterFast[numChunks];
+		for(int k=0; k<numChunks; k++){
+			chunkGenerator[k]=RandomStreams.create(RandomStreams.split(runKey, RandomStreams.INITIALIZE, k));
+		}
+		refreshGenerator=new MersenneTwisterFast[numThreads];
+		for(int n=0; n<numThreads; n++){
+			refreshGenerator[n]=new MersenneTwisterFast(0); //seeded each cycle
+		}
 		generator=new MersenneTwisterFast[numThreads];
-		myModel.generatorVar=new MersenneTwisterFast[numThreads];
+		myModel.generatorVar=generator;
 		myModel.curGenerator=new MersenneTwisterFast[numThreads];
-		for(int i=0; i<numThreads; i++){
-			generator[i]=new MersenneTwisterFast(System.currentTimeMillis()+i); //offset so that not all get the same time in millis
-			if(myModel.CRN){ //Common random numbers
-				generator[i].setSeed(myModel.crnSeed+i+555); //initialization seed
-			}
-			myModel.generatorVar[i]=generator[i];
-			myModel.curGenerator[i]=myModel.generatorVar[i];
+		for(int n=0; n<numThreads; n++){
+			useChunkGenerator(0,n);
 		}
+		refreshedCycle=new int[numThreads];
 		
 		//Initialize people
-		blockSize = numPeople/numThreads;
-		Thread[] threads = new Thread[numThreads];
-		for(int n=0; n<numThreads; n++){
-			final int finalN = n;
-			threads[n] = new Thread() {
-				public void run(){
-					try{
-						int threadProg=0;
-						final int beginIndex = finalN * blockSize;
-						final int endIndex = (finalN==numThreads-1) ? numPeople :(finalN+1)*blockSize;
-						for(int p=beginIndex; p<endIndex; p++){
-							people[p]=new MarkovPerson();
-							people[p].rewards=new double[numDim];
-							people[p].rewardsDis=new double[numDim];
-							people[p].prevRewards=new double[numDim];
-							people[p].prevRewardsDis=new double[numDim];
-							
-							//initialize variables
-							people[p].initVariableVals=new Numeric[numVars];
-							people[p].variableVals=new Numeric[numVars];
-							//eval independent vars
-							myModel.unlockVarsAll(finalN);
-							for(int v=0; v<numVars; v++){
-								if(variables[v].independent){
-									variables[v].locked[finalN]=true;
-									variables[v].value[finalN]=Interpreter.evaluateTokens(variables[v].parsedTokens, finalN, true);
-								}
-							}
-							//Update any dependent variables
-							for(int v=0; v<numVars; v++){
-								variables[v].updateDependents(myModel,finalN);
-							}
-							//assign vals to person
-							for(int v=0; v<numVars; v++) {
-								people[p].initVariableVals[v]=variables[v].value[finalN];
-							}
-							
-
-							//get subgroup
-							if(myModel.reportSubgroups){
-								people[p].inSubgroup=new boolean[numSubgroups];
-								for(int g=0; g<numSubgroups; g++){
-									Numeric curVal=Interpreter.evaluateTokens(myModel.subgroupTokens[g], finalN, false);
-									people[p].inSubgroup[g]=curVal.getBool();
-								}
-							}
-
-							if(finalN==0 && showProgress && myModel.cluster==false){ //update progress from thread 0
-								threadProg++;
-								int prog=threadProg*numThreads;
-								progress.setProgress(prog);
-								//double curProg=(prog/(numPeople*1.0));
-								//updateProgress((int)curProg,"Initializing simulants");
-								if(progress.isCanceled()){
-									cancelled=true;	p=numPeople;
-								}
-							}
-
+		people=new MarkovPopulation(numPeople,numDim,numVars,numSubgroups);
+		final AtomicInteger initProg=new AtomicInteger();
+		Scheduler.run(numThreads, numChunks, new Scheduler.ChunkTask(){
+			public void run(int chunk, int slot) throws Exception{
+				if(cancelled){return;}
+				useChunkGenerator(chunk,slot);
+				final int beginIndex=Scheduler.getChunkBegin(chunk, numChunks, numPeople);
+				final int endIndex=Scheduler.getChunkBegin(chunk+1, numChunks, numPeople);
+				for(int p=beginIndex; p<endIndex; p++){
+					//eval independent vars
+					myModel.unlockVarsAll(slot);
+					for(int v=0; v<numVars; v++){
+						if(variables[v].independent){
+							variables[v].locked[slot]=true;
+							variables[v].value[slot]=Interpreter.evaluateTokens(variables[v].parsedTokens, slot, true).copy();
+						}
+					}
+					//Update any dependent variables
+					for(int v=0; v<numVars; v++){
+						variables[v].updateDependents(myModel,slot);
+					}
+					//assign vals to person
+					for(int v=0; v<numVars; v++) {
+						people.initVariableVals[v][p]=variables[v].value[slot];
+					}
+					
+					//get subgroup
+					if(myModel.reportSubgroups){
+						for(int g=0; g<numSubgroups; g++){
+							Numeric curVal=Interpreter.evaluateTokens(myModel.subgroupTokens[g], slot, false);
+							people.inSubgroup[g][p]=curVal.getBool();
 						}
-					} catch(Exception e){
-						threadError=e;
 					}
 				}
-			};
-			threads[n].start();
-		}
-		//Wait for threads to finish
-		for(int n=0; n<numThreads; n++){
-			try{
-				threads[n].join();
-			} catch (InterruptedException e){
-				System.exit(-1);
+				
+				int prog=initProg.addAndGet(endIndex-beginIndex);
+				if(showProgress && myModel.cluster==false){
+					progress.setProgress(prog);
+					if(progress.isCanceled()){
+						cancelled=true;
+					}
+				}
 			}
-		}
+		});
 		
-		//Check for error
-		if(threadError!=null){
-			throw threadError;
-		}
+		if(cancelled){return;}
 		
 		//Get subgroup indices
 		subgroupSize=new int[numSubgroups];
 		int subgroupCounters[]=new int[numSubgroups];
 		for(int p=0; p<numPeople; p++){
-			people[p].subgroupIndex=new int[numSubgroups];
 			for(int g=0; g<numSubgroups; g++){
-				if(people[p].inSubgroup[g]){
+				if(people.inSubgroup[g][p]){
 					subgroupSize[g]++;
-					people[p].subgroupIndex[g]=subgroupCounters[g];
+					people.subgroupIndex[g][p]=subgroupCounters[g];
 					subgroupCounters[g]++;
 				}
 			}
@@ -293,12 +266,15 @@ public class MarkovMonteCarloPOOL{
 				curT.value[n].setInt(0);
 			}
 			
-			//initialize RNG
+			//initialize RNG - common random numbers use the same streams for each chain
+			int chainIndex=myModel.CRN ? 0 : c;
+			chainKey=RandomStreams.split(runKey, RandomStreams.SIMULATE, chainIndex);
+			refreshKey=RandomStreams.split(runKey, RandomStreams.REFRESH, chainIndex);
+			for(int k=0; k<numChunks; k++){
+				RandomStreams.seed(chunkGenerator[k], RandomStreams.split(chainKey, k));
+			}
 			for(int n=0; n<numThreads; n++){
-				if(myModel.CRN){ //Common random numbers
-					myModel.generatorVar[n].setSeed(myModel.crnSeed+n);
-				}
-				myModel.curGenerator[n]=myModel.generatorVar[n];
+				useRefreshGenerator(n,-1);
 			
 				evalCosts(curChain,n); //Update expressions for costs/rewards
 				evalChildProbs(curChain,true,n); //Update probs
@@ -313,21 +289,21 @@ public class MarkovMonteCarloPOOL{
 				states[s].curRewards=new double[numDim][numThreads];
 			}
 
+			chunkTotals=new ChunkTotals[numChunks]; //created when chain is initialized
+			
 			//Prev/rewards - overall
-			curPrev=new double[numStates][numThreads]; newPrev=new double[numStates][numThreads];
-			cycleRewards=new double[numDim][numThreads]; cycleRewardsDis=new double[numDim];
+			curPrev=new double[numStates];
+			cycleRewardsDis=new double[numDim];
 			cumRewards=new double[numDim]; cumRewardsDis=new double[numDim];
-			cycleVariables=new double[numVars][numThreads]; cycleVariablesDenom=new int[numVars][numThreads];
 
 			//subgroup
-			curPrevGroup=new double[numSubgroups][numStates][numThreads]; newPrevGroup=new double[numSubgroups][numStates][numThreads];
-			cycleRewardsGroup=new double[numSubgroups][numDim][numThreads]; cycleRewardsDisGroup=new double[numSubgroups][numDim];
+			curPrevGroup=new double[numSubgroups][numStates];
+			cycleRewardsDisGroup=new double[numSubgroups][numDim];
 			cumRewardsGroup=new double[numSubgroups][numDim]; cumRewardsDisGroup=new double[numSubgroups][numDim];
-			cycleVariablesGroup=new double[numSubgroups][numVars][numThreads]; cycleVariablesDenomGroup=new int[numSubgroups][numVars][numThreads];
 
 			trace=new MarkovTrace(curChain);
 			myModel.traceMarkov=trace;
-			if(myModel.displayIndResults){
+			if(myModel.displayIndResults && myModel.streamMicrosim==false){
 				microStats=new MicroStats(myModel, numPeople);
 			}
 			
@@ -338,7 +314,7 @@ public class MarkovMonteCarloPOOL{
 				for(int g=0; g<numSubgroups; g++){
 					traceGroup[g]=new MarkovTrace(curChain);
 				}
-				if(myModel.displayIndResults){
+				if(myModel.displayIndResults && myModel.streamMicrosim==false){
 					microStatsGroup=new MicroStats[numSubgroups];
 					for(int g=0; g<numSubgroups; g++){
 						microStatsGroup[g]=new MicroStats(myModel,subgroupSize[g]);
@@ -362,6 +338,13 @@ public class MarkovMonteCarloPOOL{
 			}
 			
 			initializeChain(curChain,showProgress,finalC);
+			for(int k=0; k<numChunks; k++){ //starting prevalence
+				for(int s=0; s<numStates; s++){
+					curPrev[s]+=chunkTotals[k].prev[s];
+					for(int g=0; g<numSubgroups; g++){curPrevGroup[g][s]+=chunkTotals[k].prevGroup[g][s];}
+				}
+			}
+			Arrays.fill(refreshedCycle, -1);
 			
 			//check termination condition type
 			boolean staticTerimnationCondition=false;
@@ -388,9 +371,7 @@ public class MarkovMonteCarloPOOL{
 			discountFactor=new double[numDim];
 			
 			boolean terminate=false;
-						
-			ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(numThreads);
-						
+			
 			while(terminate==false && t<markovTree.maxCycles){
 				if(showProgress){
 					curProg++;
@@ -415,37 +396,14 @@ public class MarkovMonteCarloPOOL{
 					}
 				}
 				
-				//Update expressions for costs/rewards
-				for(int n=0; n<numThreads; n++){
-					evalCosts(curChain,n);
-					for(int s=0; s<numStates; s++){
-						for(int d=0; d<numDim; d++){
-							double curReward=Interpreter.evaluateTokens(states[s].curRewardTokens[d], n, false).getDouble();
-							states[s].curRewards[d][n]=curReward;
-						}
+				//Sim cycle - each thread re-evaluates its costs/rewards/probs when it picks up its first chunk
+				final int finalT=t;
+				Scheduler.run(numThreads, numChunks, new Scheduler.ChunkTask(){
+					public void run(int chunk, int slot) throws Exception{
+						simCycleChunk(chunk,slot,finalT,curChain);
 					}
-				}
-				
-				//Update probs
-				for(int n=0; n<numThreads; n++){
-					evalChildProbs(curChain,true,n);
-				}
-				
-				//Sim cycle
+				});
 				
-				//thread pool
-				Future futures[]=new Future[numThreads];
-				for(int n=0; n<numThreads; n++){
-					int beginIndex = n * blockSize;
-					int endIndex = (n==numThreads-1) ? numPeople :(n+1)*blockSize;
-					
-					Runnable worker = new simCycleThread(beginIndex,endIndex,n,t,curChain);
-					futures[n]=executor.submit(worker);
-				}
-				for(int n=0; n<numThreads; n++){ //join
-					futures[n].get();
-				}
-								
 				updateTrace(t);
 				for(int g=0; g<numSubgroups; g++){updateTraceGroup(g,t);}
 				
@@ -471,17 +429,23 @@ public class MarkovMonteCarloPOOL{
 						}
 					}
 					//individual level
-					for(int p=0; p<numPeople; p++) {
-						MarkovPerson curPerson=people[p];
-						for(int d=0; d<numDim; d++) {
-							double lastCycleRewards=curPerson.rewards[d]-curPerson.prevRewards[d];
-							curPerson.rewards[d]=curPerson.prevRewards[d]+(lastCycleRewards/2.0);
-							lastCycleRewards=curPerson.rewardsDis[d]-curPerson.prevRewardsDis[d];
-							curPerson.rewardsDis[d]=curPerson.prevRewardsDis[d]+(lastCycleRewards/2.0);
+					for(int d=0; d<numDim; d++) {
+						double rewards[]=people.rewards[d], prevRewards[]=people.prevRewards[d];
+						double rewardsDis[]=people.rewardsDis[d], prevRewardsDis[]=people.prevRewardsDis[d];
+						for(int p=0; p<numPeople; p++) {
+							double lastCycleRewards=rewards[p]-prevRewards[p];
+							rewards[p]=prevRewards[p]+(lastCycleRewards/2.0);
+							lastCycleRewards=rewardsDis[p]-prevRewardsDis[p];
+							rewardsDis[p]=prevRewardsDis[p]+(lastCycleRewards/2.0);
 						}
 					}
 				}
 
+				if(markovTree.traceMonitor!=null && markovTree.traceMonitor.stopAfterCycle(curChain, trace, t)){
+					markovTree.stopped=true;
+					terminate=true;
+				}
+
 				t++; //next cycle
 				for(int n=0; n<numThreads; n++){
 					curT.value[n].setInt(t);
@@ -496,8 +460,6 @@ public class MarkovMonteCarloPOOL{
 				
 			} //end cycle loop
 			
-			executor.shutdown();
-			
 			//Update max cycle guess
 			guessMaxCycles=t;
 			maxProg=numChains*guessMaxCycles; //initialize + simulate
@@ -516,11 +478,11 @@ public class MarkovMonteCarloPOOL{
 			}
 			
 			//Get chain EVs
-			if(cancelled==false){
+			if(cancelled==false && markovTree.stopped==false){
 				final double chainCosts[]=new double[numDim]; //up-front costs
 				if(curChain.hasCost) {
 					for(int d=0; d<numDim; d++){
-						double curCost=Interpreter.evaluateTokens(curChain.curCostTokens[d],0,false).getDouble();
+						double curCost=Interpreter.evaluateDouble(curChain.curCostTokens[d],0,false);
 						chainCosts[d]=curCost;
 					}
 				}
@@ -542,58 +504,40 @@ public class MarkovMonteCarloPOOL{
 				}
 			
 				//record individual results
-				if(myModel.displayIndResults){
-					Thread[] threads = new Thread[numThreads];
-					for(int n=0; n<numThreads; n++){
-						final int finalN = n;
-						threads[n] = new Thread() {
-							public void run(){
-								try{
-									final int beginIndex = finalN * blockSize;
-									final int endIndex = (finalN==numThreads-1) ? numPeople :(finalN+1)*blockSize;
-									//Update each person
-									for(int p=beginIndex; p<endIndex; p++){ 
-										MarkovPerson curPerson=people[p];
-										//overall
+				if(myModel.displayIndResults && myModel.streamMicrosim){
+					summarizeIndividualResults(chainCosts);
+				}
+				else if(myModel.displayIndResults){
+					Scheduler.run(numThreads, numChunks, new Scheduler.ChunkTask(){
+						public void run(int chunk, int slot) throws Exception{
+							final int beginIndex=Scheduler.getChunkBegin(chunk, numChunks, numPeople);
+							final int endIndex=Scheduler.getChunkBegin(chunk+1, numChunks, numPeople);
+							//Update each person
+							for(int p=beginIndex; p<endIndex; p++){ 
+								//overall
+								for(int d=0; d<numDim; d++){
+									if(markovTree.discountRewards){microStats.outcomes[d][p]=people.rewardsDis[d][p]+chainCosts[d];}
+									else{microStats.outcomes[d][p]=people.rewards[d][p]+chainCosts[d];}
+								}
+								for(int v=0; v<numVars; v++){
+									microStats.variables[v][p]=people.variableVals[v][p].getValue();
+								}
+								//subgroups
+								for(int g=0; g<numSubgroups; g++){
+									if(people.inSubgroup[g][p]){
+										int z=people.subgroupIndex[g][p];
 										for(int d=0; d<numDim; d++){
-											if(markovTree.discountRewards){microStats.outcomes[d][p]=curPerson.rewardsDis[d]+chainCosts[d];}
-											else{microStats.outcomes[d][p]=curPerson.rewards[d]+chainCosts[d];}
+											if(markovTree.discountRewards){microStatsGroup[g].outcomes[d][z]=people.rewardsDis[d][p]+chainCosts[d];}
+											else{microStatsGroup[g].outcomes[d][z]=people.rewards[d][p]+chainCosts[d];}
 										}
 										for(int v=0; v<numVars; v++){
-											microStats.variables[v][p]=curPerson.variableVals[v].getValue();
-										}
-										//subgroups
-										for(int g=0; g<numSubgroups; g++){
-											if(curPerson.inSubgroup[g]){
-												int z=curPerson.subgroupIndex[g];
-												for(int d=0; d<numDim; d++){
-													if(markovTree.discountRewards){microStatsGroup[g].outcomes[d][z]=curPerson.rewardsDis[d]+chainCosts[d];}
-													else{microStatsGroup[g].outcomes[d][z]=curPerson.rewards[d]+chainCosts[d];}
-												}
-												for(int v=0; v<numVars; v++){
-													microStatsGroup[g].variables[v][z]=curPerson.variableVals[v].getValue();
-												}
-											}
+											microStatsGroup[g].variables[v][z]=people.variableVals[v][p].getValue();
 										}
 									}
-								} catch(Exception e){
-									threadError=e;
 								}
 							}
-						};
-						threads[n].start();
-					}
-					//Wait for threads to finish
-					for(int n=0; n<numThreads; n++){
-						try{
-							threads[n].join();
-						} catch (InterruptedException e){
-							System.exit(-1);
 						}
-					}
-
-					//Check for error
-					if(threadError!=null){throw threadError;}
+					});
 				}
 				
 				//update run report
@@ -610,7 +554,7 @@ public class MarkovMonteCarloPOOL{
 				}
 				
 			}
-			else{ //was cancelled
+			else{ //was cancelled or stopped
 				c=numChains; //end loop
 			}
 		} //end chain Loop
@@ -618,192 +562,141 @@ public class MarkovMonteCarloPOOL{
 	
 	private void initializeChain(final MarkovNode curChain, final boolean showProgress, final int finalC) throws Exception{
 		//Initialize state for all people - multithread
-		Thread[] threads = new Thread[numThreads];
-		for(int n=0; n<numThreads; n++){
-			final int finalN = n;
-			threads[n] = new Thread() {
-				public void run(){
-					try{
-						final int beginIndex = finalN * blockSize;
-						final int endIndex = (finalN==numThreads-1) ? numPeople :(finalN+1)*blockSize;
-						for(int p=beginIndex; p<endIndex; p++){
-							MarkovPerson curPerson=people[p];
-							for(int v=0; v<numVars; v++){ //get person-specific variables
-								curPerson.variableVals[v]=curPerson.initVariableVals[v].copy();
-								variables[v].value[finalN]=curPerson.variableVals[v];
-							}
-							for(int d=0; d<numDim; d++){ //reset rewards
-								people[p].rewards[d]=0;	people[p].rewardsDis[d]=0;
-							}
-	
-							//initialize state
-							if(curChain.hasVarUpdates && curChain.curVariableUpdatesT0!=null){
-								//Perform variable updates
-								for(int u=0; u<curChain.curVariableUpdatesT0.length; u++){
-									curChain.curVariableUpdatesT0[u].update(true,finalN);
-								}
-								//Update any dependent variables
-								for(int u=0; u<curChain.curVariableUpdatesT0.length; u++){
-									curChain.curVariableUpdatesT0[u].variable.updateDependents(myModel,finalN);
-								}
-								//re-point variables
-								for(int v=0; v<numVars; v++){
-									curPerson.variableVals[v]=variables[v].value[finalN];
-								}
-								
-							}
-							//assign starting state
-							if(curChain.childHasProbVariables){
-								evalChildProbs(curChain,false,finalN);
-								initPrev[0][finalN]=states[0].curProb[finalN];
-								for(int s=1; s<numStates; s++){
-									initPrev[s][finalN]=initPrev[s-1][finalN]+states[s].curProb[finalN];
-								}
-							}
+		Scheduler.run(numThreads, numChunks, new Scheduler.ChunkTask(){
+			public void run(int chunk, int slot) throws Exception{
+				useChunkGenerator(chunk,slot);
+				//allocated by the worker thread so totals of chunks run on different threads are not packed together
+				ChunkTotals totals=new ChunkTotals(numStates,numDim,numVars,numSubgroups);
+				chunkTotals[chunk]=totals;
+				final int beginIndex=Scheduler.getChunkBegin(chunk, numChunks, numPeople);
+				final int endIndex=Scheduler.getChunkBegin(chunk+1, numChunks, numPeople);
+				for(int p=beginIndex; p<endIndex; p++){
+					for(int v=0; v<numVars; v++){ //get person-specific variables
+						people.variableVals[v][p]=people.initVariableVals[v][p].copy();
+						variables[v].value[slot]=people.variableVals[v][p];
+					}
+					for(int d=0; d<numDim; d++){ //reset rewards
+						people.rewards[d][p]=0;	people.rewardsDis[d][p]=0;
+					}
+
+					//initialize state
+					if(curChain.hasVarUpdates && curChain.curVariableUpdatesT0!=null){
+						//Perform variable updates
+						for(int u=0; u<curChain.curVariableUpdatesT0.length; u++){
+							curChain.curVariableUpdatesT0[u].update(true,slot);
+						}
+						//Update any dependent variables
+						for(int u=0; u<curChain.curVariableUpdatesT0.length; u++){
+							curChain.curVariableUpdatesT0[u].variable.updateDependents(myModel,slot);
+						}
+						//re-point variables
+						for(int v=0; v<numVars; v++){
+							people.variableVals[v][p]=variables[v].value[slot];
+						}
+						
+					}
+					//assign starting state
+					if(curChain.childHasProbVariables){
+						evalChildProbs(curChain,false,slot);
+						initPrev[0][slot]=states[0].curProb[slot];
+						for(int s=1; s<numStates; s++){
+							initPrev[s][slot]=initPrev[s-1][slot]+states[s].curProb[slot];
+						}
+					}
+
+					double rand=generator[slot].nextDouble();
+					int k=0;
+					while(rand>initPrev[k][slot]){k++;}
+					people.curState[p]=k;
+					
+					totals.prev[k]++;
+					for(int g=0; g<numSubgroups; g++){
+						if(people.inSubgroup[g][p]){
+							totals.prevGroup[g][k]++;
+						}
+					}
+				} //end simulate loop
+			}
+		});
+	}
 	
-							double rand=generator[finalN].nextDouble();
-							int k=0;
-							while(rand>initPrev[k][finalN]){k++;}
-							people[p].curState=k;
-							
-							curPrev[k][finalN]++; newPrev[k][finalN]++;
-							for(int g=0; g<numSubgroups; g++){
-								if(curPerson.inSubgroup[g]){
-									curPrevGroup[g][k][finalN]++; newPrevGroup[g][k][finalN]++;
-								}
-							}
-						} //end simulate loop
-					} catch(Exception e){
-						threadError=e;
+	/**
+	 * Folds individual results into streaming summaries instead of storing them.  Each chunk is summarized separately
+	 * and the summaries are merged in chunk order, so results do not depend on thread scheduling.
+	 */
+	private void summarizeIndividualResults(final double chainCosts[]) throws Exception{
+		final MicroStats chunkStats[]=new MicroStats[numChunks];
+		final MicroStats chunkStatsGroup[][]=new MicroStats[numSubgroups][numChunks];
+		Scheduler.run(numThreads, numChunks, new Scheduler.ChunkTask(){
+			public void run(int chunk, int slot) throws Exception{
+				final int beginIndex=Scheduler.getChunkBegin(chunk, numChunks, numPeople);
+				final int endIndex=Scheduler.getChunkBegin(chunk+1, numChunks, numPeople);
+				MicroStats curStats=new MicroStats(myModel);
+				MicroStats curStatsGroup[]=new MicroStats[numSubgroups];
+				for(int g=0; g<numSubgroups; g++){curStatsGroup[g]=new MicroStats(myModel);}
+				double personOutcomes[]=new double[numDim];
+				double personVars[]=new double[numVars];
+				for(int p=beginIndex; p<endIndex; p++){
+					for(int d=0; d<numDim; d++){
+						if(markovTree.discountRewards){personOutcomes[d]=people.rewardsDis[d][p]+chainCosts[d];}
+						else{personOutcomes[d]=people.rewards[d][p]+chainCosts[d];}
+					}
+					for(int v=0; v<numVars; v++){
+						personVars[v]=people.variableVals[v][p].getValue();
+					}
+					curStats.addPerson(personOutcomes, personVars);
+					for(int g=0; g<numSubgroups; g++){
+						if(people.inSubgroup[g][p]){curStatsGroup[g].addPerson(personOutcomes, personVars);}
 					}
 				}
-			};
-			threads[n].start();
-		}
-		//Wait for threads to finish
-		for(int n=0; n<numThreads; n++){
-			try{
-				threads[n].join();
-			} catch (InterruptedException e){
-				System.exit(-1);
+				chunkStats[chunk]=curStats;
+				for(int g=0; g<numSubgroups; g++){chunkStatsGroup[g][chunk]=curStatsGroup[g];}
 			}
-		}
-		
-		//Check for error
-		if(threadError!=null){throw threadError;}
-		
+		});
 		
+		microStats=new MicroStats(myModel);
+		for(int k=0; k<numChunks; k++){microStats.merge(chunkStats[k]);}
+		microStatsGroup=new MicroStats[numSubgroups];
+		for(int g=0; g<numSubgroups; g++){
+			microStatsGroup[g]=new MicroStats(myModel);
+			for(int k=0; k<numChunks; k++){microStatsGroup[g].merge(chunkStatsGroup[g][k]);}
+		}
 	}
-
+	
 	/**
-	 * @deprecated
-	 * @param curChain
-	 * @param t
-	 * @throws Exception
+	 * Points the thread's RNG to the generator for the given chunk
 	 */
-	private void simCycle(final MarkovNode curChain, final int t) throws Exception{
-		//multi-thread
-		Thread[] threads = new Thread[numThreads];
-		for(int n=0; n<numThreads; n++){
-			final int finalN = n;
-			threads[n] = new Thread() {
-				public void run(){
-					try{
-						final int beginIndex = finalN * blockSize;
-						final int endIndex = (finalN==numThreads-1) ? numPeople :(finalN+1)*blockSize;
-						//Update each person
-						for(int p=beginIndex; p<endIndex; p++){ 
-							MarkovPerson curPerson=people[p];
-							
-							//re-point variables
-							for(int v=0; v<numVars; v++){
-								variables[v].value[finalN]=curPerson.variableVals[v];
-							}
-							
-							//update time dependent variables
-							if(t>0) {
-								//myModel.unlockVars(finalN);
-								curT.unlockDependents(finalN);
-								curT.updateDependents(myModel, finalN);
-							}
-
-							//chain root variable updates
-							if(t>0 && curChain.hasVarUpdates && curChain.curVariableUpdates!=null){
-								//myModel.unlockVars(finalN);
-								//Perform variable updates
-								for(int u=0; u<curChain.curVariableUpdates.length; u++){
-									curChain.curVariableUpdates[u].update(true,finalN);
-								}
-								//Update any dependent variables
-								for(int u=0; u<curChain.curVariableUpdates.length; u++){
-									curChain.curVariableUpdates[u].variable.updateDependents(myModel,finalN);
-								}
-							}
+	private void useChunkGenerator(int chunk, int slot){
+		generator[slot]=chunkGenerator[chunk];
+		myModel.curGenerator[slot]=chunkGenerator[chunk];
+	}
 
-							//rewards
-							int curState=curPerson.curState;
-							for(int d=0; d<numDim; d++){ //Update state rewards
-								if(states[curState].rewardHasVariables[d]==false){ //use pre-calculated reward
-									cycleRewards[d][finalN]+=states[curState].curRewards[d][finalN];
-									for(int g=0; g<numSubgroups; g++){
-										if(curPerson.inSubgroup[g]){cycleRewardsGroup[g][d][finalN]+=states[curState].curRewards[d][finalN];}
-									}
-									curPerson.rewards[d]+=states[curState].curRewards[d][finalN];
-									curPerson.rewardsDis[d]+=states[curState].curRewards[d][finalN]*discountFactor[d];
-								}
-								else{ //has variable, re-evaluate reward
-									double curReward=Interpreter.evaluateTokens(states[curState].curRewardTokens[d], finalN, false).getDouble();
-									cycleRewards[d][finalN]+=curReward;
-									for(int g=0; g<numSubgroups; g++){
-										if(curPerson.inSubgroup[g]){cycleRewardsGroup[g][d][finalN]+=curReward;}
-									}
-									curPerson.rewards[d]+=curReward;
-									curPerson.rewardsDis[d]+=curReward*discountFactor[d];
-								}
-							}
-							
-							//state transition
-							traverseNode(states[curState],curPerson,finalN);
-							
-							//record variable values
-							for(int v=0; v<numVars; v++){
-								double val=variables[v].value[finalN].getDouble();
-								cycleVariables[v][finalN]+=val; cycleVariablesDenom[v][finalN]++;
-								for(int g=0; g<numSubgroups; g++){
-									if(curPerson.inSubgroup[g]){
-										cycleVariablesGroup[g][v][finalN]+=val; cycleVariablesDenomGroup[g][v][finalN]++;
-									}
-								}
-							}
-						}
+	/**
+	 * Points the thread's RNG to the refresh stream for cycle t.  The stream is re-seeded so every thread makes the same
+	 * draws, whichever chunk it picks up first.
+	 */
+	private void useRefreshGenerator(int curThread, int t){
+		RandomStreams.seed(refreshGenerator[curThread], RandomStreams.split(refreshKey, t));
+		generator[curThread]=refreshGenerator[curThread];
+		myModel.curGenerator[curThread]=refreshGenerator[curThread];
+	}
 
-					} catch(Exception e){
-						threadError=e;
-					}
-				}
-			};
-			threads[n].start();
-		}
-		//Wait for threads to finish
-		for(int n=0; n<numThreads; n++){
-			try{
-				threads[n].join();
-			} catch (InterruptedException e){
-				System.exit(-1);
+	/**
+	 * Re-evaluates the thread's costs, rewards, and transition probs once per cycle
+	 */
+	private void refreshCycleExpressions(int curThread, int t, MarkovNode curChain) throws Exception{
+		if(refreshedCycle[curThread]==t){return;}
+		useRefreshGenerator(curThread,t);
+		evalCosts(curChain,curThread);
+		for(int s=0; s<numStates; s++){
+			for(int d=0; d<numDim; d++){
+				states[s].curRewards[d][curThread]=Interpreter.evaluateDouble(states[s].curRewardTokens[d], curThread, false);
 			}
 		}
-		
-		//Check for error
-		if(threadError!=null){
-			throw threadError;
-		}
-		
-		updateTrace(t);
-		for(int g=0; g<numSubgroups; g++){updateTraceGroup(g,t);}
-		
+		evalChildProbs(curChain,true,curThread);
+		refreshedCycle[curThread]=t;
 	}
-	
-	
+
 	private void updateProgress(int curProg, String note){
 		//Update progress
 		double prog=((curProg+1)/maxProg)*100;
@@ -839,7 +732,7 @@ public class MarkovMonteCarloPOOL{
 	 * @throws Exception 
 	 */
 	
-	private void traverseNode(MarkovNode node, MarkovPerson curPerson, int curThread) throws Exception{
+	private void traverseNode(MarkovNode node, int p, int curThread, ChunkTotals totals) throws Exception{
 		//Update variables
 		if(node.hasVarUpdates){
 			//myModel.unlockVars(curThread);
@@ -857,35 +750,35 @@ public class MarkovMonteCarloPOOL{
 		if(node.hasCost){
 			for(int d=0; d<numDim; d++){
 				if(node.costHasVariables[d]==false){ //use pre-calculated cost
-					cycleRewards[d][curThread]+=node.curCosts[d][curThread];
+					totals.rewards[d]+=node.curCosts[d][curThread];
 					for(int g=0; g<numSubgroups; g++){
-						if(curPerson.inSubgroup[g]){cycleRewardsGroup[g][d][curThread]+=node.curCosts[d][curThread];}
+						if(people.inSubgroup[g][p]){totals.rewardsGroup[g][d]+=node.curCosts[d][curThread];}
 					}
-					curPerson.rewards[d]+=node.curCosts[d][curThread];
-					curPerson.rewardsDis[d]+=node.curCosts[d][curThread]*discountFactor[d];
+					people.rewards[d][p]+=node.curCosts[d][curThread];
+					people.rewardsDis[d][p]+=node.curCosts[d][curThread]*discountFactor[d];
 				}
 				else{ //has variable, re-evaluate cost
-					double curCost=Interpreter.evaluateTokens(node.curCostTokens[d], curThread, false).getDouble();
-					cycleRewards[d][curThread]+=curCost;
+					double curCost=Interpreter.evaluateDouble(node.curCostTokens[d], curThread, false);
+					totals.rewards[d]+=curCost;
 					for(int g=0; g<numSubgroups; g++){
-						if(curPerson.inSubgroup[g]){cycleRewardsGroup[g][d][curThread]+=curCost;}
+						if(people.inSubgroup[g][p]){totals.rewardsGroup[g][d]+=curCost;}
 					}
-					curPerson.rewards[d]+=curCost;
-					curPerson.rewardsDis[d]+=curCost*discountFactor[d];
+					people.rewards[d][p]+=curCost;
+					people.rewardsDis[d][p]+=curCost*discountFactor[d];
 				}
 			}
 		}
 		
 		if(node.type==4){ //Transition node, end of branch
-			newPrev[node.transFrom][curThread]--; //from state
-			newPrev[node.transTo][curThread]++; //next state
+			totals.prev[node.transFrom]--; //from state
+			totals.prev[node.transTo]++; //next state
 			for(int g=0; g<numSubgroups; g++){
-				if(curPerson.inSubgroup[g]){
-					newPrevGroup[g][node.transFrom][curThread]--;
-					newPrevGroup[g][node.transTo][curThread]++;
+				if(people.inSubgroup[g][p]){
+					totals.prevGroup[g][node.transFrom]--;
+					totals.prevGroup[g][node.transTo]++;
 				}
 			}
-			curPerson.curState=node.transTo;
+			people.curState[p]=node.transTo;
 		}
 		else{ //sim chance node
 			double rand=generator[curThread].nextDouble();
@@ -895,7 +788,7 @@ public class MarkovMonteCarloPOOL{
 			}
 			while(rand>node.curChildProbs[k][curThread]){k++;}
 			MarkovNode curChild=node.children[k];
-			traverseNode(curChild,curPerson,curThread);
+			traverseNode(curChild,p,curThread,totals);
 		}
 	}
 	
@@ -908,7 +801,7 @@ public class MarkovMonteCarloPOOL{
 	private void evalCosts(MarkovNode node,int curThread) throws NumericException, Exception{
 		if(node.hasCost){
 			for(int d=0; d<numDim; d++){
-				double curCost=Interpreter.evaluateTokens(node.curCostTokens[d], curThread, false).getDouble();
+				double curCost=Interpreter.evaluateDouble(node.curCostTokens[d], curThread, false);
 				node.curCosts[d][curThread]=curCost;
 			}
 		}
@@ -935,7 +828,7 @@ public class MarkovMonteCarloPOOL{
 					indexCompProb=c;
 				}
 				else{ //Evaluate text
-					curChild.curProb[curThread]=Interpreter.evaluateTokens(curChild.curProbTokens, curThread, false).getDouble();
+					curChild.curProb[curThread]=Interpreter.evaluateDouble(curChild.curProbTokens, curThread, false);
 					sumProb+=curChild.curProb[curThread];
 				}
 			}
@@ -975,39 +868,38 @@ public class MarkovMonteCarloPOOL{
 	}
 
 	
-	//Sum across threads and update trace
+	//Sum across chunks and update trace
 	private void updateTrace(int t){
 		trace.cycles.add(t);
 		//Update prev
 		for(int s=0; s<numStates; s++){
-			double totalPrev=0;
-			for(int n=0; n<numThreads; n++){
-				totalPrev+=curPrev[s][n];
-				curPrev[s][n]=newPrev[s][n];
+			trace.prev[s].add(curPrev[s]); //prev at beginning of cycle
+			curPrev[s]=0;
+			for(int k=0; k<numChunks; k++){
+				curPrev[s]+=chunkTotals[k].prev[s];
 			}
-			trace.prev[s].add(totalPrev); //prev at beginning of cycle
 		}
 		//Check for half-cycle correction - first cycle
 		if(t==0 && markovTree.halfCycleCorrection==true){
 			for(int d=0; d<numDim; d++){
-				for(int n=0; n<numThreads; n++){
-					cycleRewards[d][n]*=0.5; //half-cycle correction
+				for(int k=0; k<numChunks; k++){
+					chunkTotals[k].rewards[d]*=0.5; //half-cycle correction
 				}
 			}
 			//individual-level
-			for(int p=0; p<numPeople; p++) {
-				MarkovPerson curPerson=people[p];
-				for(int d=0; d<numDim; d++) {
-					curPerson.rewards[d]*=0.5;
-					curPerson.rewardsDis[d]*=0.5;
+			for(int d=0; d<numDim; d++) {
+				double rewards[]=people.rewards[d], rewardsDis[]=people.rewardsDis[d];
+				for(int p=0; p<numPeople; p++) {
+					rewards[p]*=0.5;
+					rewardsDis[p]*=0.5;
 				}
 			}
 		}
 		//Update rewards
 		for(int d=0; d<numDim; d++){
 			double curCycleRewards=0;
-			for(int n=0; n<numThreads; n++){
-				curCycleRewards+=cycleRewards[d][n];
+			for(int k=0; k<numChunks; k++){
+				curCycleRewards+=chunkTotals[k].rewards[d];
 			}
 			cumRewards[d]+=curCycleRewards;
 			trace.cycleRewards[d].add(curCycleRewards);
@@ -1019,46 +911,43 @@ public class MarkovMonteCarloPOOL{
 				trace.cumRewardsDis[d].add(cumRewardsDis[d]);
 			}
 			//reset
-			for(int n=0; n<numThreads; n++){cycleRewards[d][n]=0;} 
+			for(int k=0; k<numChunks; k++){chunkTotals[k].rewards[d]=0;} 
 			cycleRewardsDis[d]=0;
 		}
 		//Update variables
 		for(int v=0; v<numVars; v++){
 			double num=0, denom=0;
-			for(int n=0; n<numThreads; n++){
-				num+=cycleVariables[v][n]; cycleVariables[v][n]=0;
-				denom+=cycleVariablesDenom[v][n]; cycleVariablesDenom[v][n]=0;
+			for(int k=0; k<numChunks; k++){
+				num+=chunkTotals[k].variables[v]; chunkTotals[k].variables[v]=0;
+				denom+=chunkTotals[k].variablesDenom[v]; chunkTotals[k].variablesDenom[v]=0;
 			}
-			double mean=num/(denom*1.0);
-			trace.cycleVariables[v].add(mean);
+			if(trace.numVariables>0){trace.cycleVariables[v].add(num/(denom*1.0));}
 		}
-		trace.updateTable(t);
 	}
 	
 	private void updateTraceGroup(int g, int t){
 		traceGroup[g].cycles.add(t);
 		//Update prev
 		for(int s=0; s<numStates; s++){
-			double totalPrev=0;
-			for(int n=0; n<numThreads; n++){
-				totalPrev+=curPrevGroup[g][s][n];
-				curPrevGroup[g][s][n]=newPrevGroup[g][s][n];
+			traceGroup[g].prev[s].add(curPrevGroup[g][s]); //prev at beginning of cycle
+			curPrevGroup[g][s]=0;
+			for(int k=0; k<numChunks; k++){
+				curPrevGroup[g][s]+=chunkTotals[k].prevGroup[g][s];
 			}
-			traceGroup[g].prev[s].add(totalPrev); //prev at beginning of cycle
 		}
 		//Check for half-cycle correction - first and last cycle
 		if(t==0 && markovTree.halfCycleCorrection==true){
 			for(int d=0; d<numDim; d++){
-				for(int n=0; n<numThreads; n++){
-					cycleRewardsGroup[g][d][n]*=0.5; //half-cycle correction
+				for(int k=0; k<numChunks; k++){
+					chunkTotals[k].rewardsGroup[g][d]*=0.5; //half-cycle correction
 				}
 			}
 		}
 		//Update rewards
 		for(int d=0; d<numDim; d++){
 			double curCycleRewards=0;
-			for(int n=0; n<numThreads; n++){
-				curCycleRewards+=cycleRewardsGroup[g][d][n];
+			for(int k=0; k<numChunks; k++){
+				curCycleRewards+=chunkTotals[k].rewardsGroup[g][d];
 			}
 			cumRewardsGroup[g][d]+=curCycleRewards;
 			traceGroup[g].cycleRewards[d].add(curCycleRewards);
@@ -1070,20 +959,18 @@ public class MarkovMonteCarloPOOL{
 				traceGroup[g].cumRewardsDis[d].add(cumRewardsDisGroup[g][d]);
 			}
 			//reset
-			for(int n=0; n<numThreads; n++){cycleRewardsGroup[g][d][n]=0;} 
+			for(int k=0; k<numChunks; k++){chunkTotals[k].rewardsGroup[g][d]=0;} 
 			cycleRewardsDisGroup[g][d]=0;
 		}
 		//Update variables
 		for(int v=0; v<numVars; v++){
 			double num=0, denom=0;
-			for(int n=0; n<numThreads; n++){
-				num+=cycleVariablesGroup[g][v][n]; cycleVariablesGroup[g][v][n]=0;
-				denom+=cycleVariablesDenomGroup[g][v][n]; cycleVariablesDenomGroup[g][v][n]=0;
+			for(int k=0; k<numChunks; k++){
+				num+=chunkTotals[k].variablesGroup[g][v]; chunkTotals[k].variablesGroup[g][v]=0;
+				denom+=chunkTotals[k].variablesDenomGroup[g][v]; chunkTotals[k].variablesDenomGroup[g][v]=0;
 			}
-			double mean=num/(denom*1.0);
-			traceGroup[g].cycleVariables[v].add(mean);
+			if(traceGroup[g].numVariables>0){traceGroup[g].cycleVariables[v].add(num/(denom*1.0));}
 		}
-		traceGroup[g].updateTable(t);
 	}
 	
 	private void getTransitionIndex(MarkovNode node){
@@ -1142,98 +1029,84 @@ public class MarkovMonteCarloPOOL{
 	}
 	
 	
-	private class simCycleThread implements Runnable{
-		private int beginIndex, endIndex;
-		private int finalN; //cur thread
-		private int t;
-		private MarkovNode curChain;
-		
-		public simCycleThread(int beginIndex, int endIndex, int finalN, int t, MarkovNode curChain){
-			this.beginIndex=beginIndex;
-			this.endIndex=endIndex;
-			this.finalN=finalN;
-			this.t=t;
-			this.curChain=curChain;
-		}
-		
-		@Override
-		public void run(){
-			try{
-				//Update each person
-				for(int p=beginIndex; p<endIndex; p++){ 
-					MarkovPerson curPerson=people[p];
+	/**
+	 * Simulates one cycle for a chunk of people
+	 */
+	private void simCycleChunk(int chunk, int curThread, int t, MarkovNode curChain) throws Exception{
+		refreshCycleExpressions(curThread,t,curChain);
+		useChunkGenerator(chunk,curThread);
+		ChunkTotals totals=chunkTotals[chunk];
+		int beginIndex=Scheduler.getChunkBegin(chunk, numChunks, numPeople);
+		int endIndex=Scheduler.getChunkBegin(chunk+1, numChunks, numPeople);
+		//Update each person
+		for(int p=beginIndex; p<endIndex; p++){ 
+			//re-point variables
+			for(int v=0; v<numVars; v++){
+				variables[v].value[curThread]=people.variableVals[v][p];
+			}
+			
+			//update time dependent variables
+			if(t>0) {
+				curT.unlockDependents(curThread);
+				curT.updateDependents(myModel, curThread);
+			}
 
-					//re-point variables
-					for(int v=0; v<numVars; v++){
-						variables[v].value[finalN]=curPerson.variableVals[v];
-					}
-					
-					//update time dependent variables
-					if(t>0) {
-						curT.unlockDependents(finalN);
-						curT.updateDependents(myModel, finalN);
-					}
+			//chain root variable updates
+			if(t>0 && curChain.hasVarUpdates && curChain.curVariableUpdates!=null){
+				//Perform variable updates
+				for(int u=0; u<curChain.curVariableUpdates.length; u++){
+					curChain.curVariableUpdates[u].update(true,curThread);
+				}
+				//Update any dependent variables
+				for(int u=0; u<curChain.curVariableUpdates.length; u++){
+					curChain.curVariableUpdates[u].variable.updateDependents(myModel,curThread);
+				}
+			}
 
-					//chain root variable updates
-					if(t>0 && curChain.hasVarUpdates && curChain.curVariableUpdates!=null){
-						//Perform variable updates
-						for(int u=0; u<curChain.curVariableUpdates.length; u++){
-							curChain.curVariableUpdates[u].update(true,finalN);
-						}
-						//Update any dependent variables
-						for(int u=0; u<curChain.curVariableUpdates.length; u++){
-							curChain.curVariableUpdates[u].variable.updateDependents(myModel,finalN);
-						}
+			//rewards
+			int curState=people.curState[p];
+			for(int d=0; d<numDim; d++){ //Update state rewards
+				//record prev cum rewards
+				people.prevRewards[d][p]=people.rewards[d][p];
+				people.prevRewardsDis[d][p]=people.rewardsDis[d][p];
+				//update rewards
+				if(states[curState].rewardHasVariables[d]==false){ //use pre-calculated reward
+					totals.rewards[d]+=states[curState].curRewards[d][curThread];
+					for(int g=0; g<numSubgroups; g++){
+						if(people.inSubgroup[g][p]){totals.rewardsGroup[g][d]+=states[curState].curRewards[d][curThread];}
 					}
-
-					//rewards
-					int curState=curPerson.curState;
-					for(int d=0; d<numDim; d++){ //Update state rewards
-						//record prev cum rewards
-						curPerson.prevRewards[d]=curPerson.rewards[d];
-						curPerson.prevRewardsDis[d]=curPerson.rewardsDis[d];
-						//update rewards
-						if(states[curState].rewardHasVariables[d]==false){ //use pre-calculated reward
-							cycleRewards[d][finalN]+=states[curState].curRewards[d][finalN];
-							for(int g=0; g<numSubgroups; g++){
-								if(curPerson.inSubgroup[g]){cycleRewardsGroup[g][d][finalN]+=states[curState].curRewards[d][finalN];}
-							}
-							curPerson.rewards[d]+=states[curState].curRewards[d][finalN];
-							curPerson.rewardsDis[d]+=states[curState].curRewards[d][finalN]*discountFactor[d];
-						}
-						else{ //has variable, re-evaluate reward
-							double curReward=Interpreter.evaluateTokens(states[curState].curRewardTokens[d], finalN, false).getDouble();
-							cycleRewards[d][finalN]+=curReward;
-							for(int g=0; g<numSubgroups; g++){
-								if(curPerson.inSubgroup[g]){cycleRewardsGroup[g][d][finalN]+=curReward;}
-							}
-							curPerson.rewards[d]+=curReward;
-							curPerson.rewardsDis[d]+=curReward*discountFactor[d];
-						}
+					people.rewards[d][p]+=states[curState].curRewards[d][curThread];
+					people.rewardsDis[d][p]+=states[curState].curRewards[d][curThread]*discountFactor[d];
+				}
+				else{ //has variable, re-evaluate reward
+					double curReward=Interpreter.evaluateDouble(states[curState].curRewardTokens[d], curThread, false);
+					totals.rewards[d]+=curReward;
+					for(int g=0; g<numSubgroups; g++){
+						if(people.inSubgroup[g][p]){totals.rewardsGroup[g][d]+=curReward;}
 					}
+					people.rewards[d][p]+=curReward;
+					people.rewardsDis[d][p]+=curReward*discountFactor[d];
+				}
+			}
 
-					//state transition
-					traverseNode(states[curState],curPerson,finalN);
+			//state transition
+			traverseNode(states[curState],p,curThread,totals);
 
-					//update variables
-					for(int v=0; v<numVars; v++){
-						double val=variables[v].value[finalN].getDouble();
-						cycleVariables[v][finalN]+=val; cycleVariablesDenom[v][finalN]++;
-						for(int g=0; g<numSubgroups; g++){
-							if(curPerson.inSubgroup[g]){
-								cycleVariablesGroup[g][v][finalN]+=val; cycleVariablesDenomGroup[g][v][finalN]++;
-							}
-						}
-					}
-					//re-point variables
-					for(int v=0; v<numVars; v++){
-						curPerson.variableVals[v]=variables[v].value[finalN];
+			//update variables
+			for(int v=0; v<numVars; v++){
+				double val=variables[v].value[curThread].getDouble();
+				totals.variables[v]+=val; totals.variablesDenom[v]++;
+				for(int g=0; g<numSubgroups; g++){
+					if(people.inSubgroup[g][p]){
+						totals.variablesGroup[g][v]+=val; totals.variablesDenomGroup[g][v]++;
 					}
 				}
-			}catch(Exception e){
-				e.printStackTrace();
 			}
-		} //end run function
-	} //end thread class
+			//re-point variables
+			for(int v=0; v<numVars; v++){
+				people.variableVals[v][p]=variables[v].value[curThread];
+			}
+		}
+	}
 
 }
\ No newline at end of file
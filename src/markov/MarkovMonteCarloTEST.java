@@ -813,7 +813,6 @@ public class MarkovMonteCarloTEST{
 				double mean=num/(denom*1.0);
 				trace.cycleVariables[v].add(mean);
 			}
-			trace.updateTable(t);
 		}
 	}
 	
@@ -854,7 +853,6 @@ public class MarkovMonteCarloTEST{
 				double mean=num/(denom*1.0);
 				traceGroup[g].cycleVariables[v].add(mean);
 			}
-			traceGroup[g].updateTable(t);
 		}
 	}
 	
@@ -0,0 +1,49 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package markov;
+
+import math.Numeric;
+
+/**
+ * Microsimulation population stored as parallel arrays indexed by person, so each attribute is contiguous in memory
+ * and there is no per-person object overhead
+ */
+public class MarkovPopulation{
+	int size;
+	int curState[]; //[person]
+	Numeric variableVals[][]; //[variable][person]
+	Numeric initVariableVals[][]; //[variable][person]
+	double rewards[][], rewardsDis[][]; //[dim][person] cumulative rewards
+	double prevRewards[][], prevRewardsDis[][]; //[dim][person] cumulative rewards from last cycle - for last cycle half-cycle correction
+	boolean inSubgroup[][]; //[subgroup][person]
+	int subgroupIndex[][]; //[subgroup][person]
+	
+	//Constructor
+	public MarkovPopulation(int size, int numDim, int numVars, int numSubgroups){
+		this.size=size;
+		curState=new int[size];
+		variableVals=new Numeric[numVars][size];
+		initVariableVals=new Numeric[numVars][size];
+		rewards=new double[numDim][size]; rewardsDis=new double[numDim][size];
+		prevRewards=new double[numDim][size]; prevRewardsDis=new double[numDim][size];
+		inSubgroup=new boolean[numSubgroups][size];
+		subgroupIndex=new int[numSubgroups][size];
+	}
+	
+}
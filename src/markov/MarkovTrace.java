@@ -22,6 +22,7 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import javax.swing.table.DefaultTableModel;
 
@@ -36,18 +37,18 @@ public class MarkovTrace{
 	public ArrayList<Integer> cycles;
 	int numStates;
 	public String stateNames[];
-	public ArrayList<Double> prev[];
+	public TraceColumn prev[];
 	String dimSymbols[];
 	public String dimNames[];
 	public int numDim;
 	public boolean discounted;
-	public ArrayList<Double> cycleRewards[], cycleRewardsDis[];
-	public ArrayList<Double> cumRewards[], cumRewardsDis[];
+	public TraceColumn cycleRewards[], cycleRewardsDis[];
+	public TraceColumn cumRewards[], cumRewardsDis[];
 	public int numVariables;
 	public String varNames[];
-	public ArrayList<Double> cycleVariables[];
-	public DefaultTableModel modelTraceRounded;
-	DefaultTableModel modelTraceRaw;
+	public TraceColumn cycleVariables[];
+	String colNames[];
+	DefaultTableModel modelTraceRounded; //built when first displayed
 	AmuaModel myModel;
 	
 	//Constructor
@@ -57,149 +58,136 @@ public class MarkovTrace{
 		cycles=new ArrayList<Integer>();
 		numStates=chainRoot.stateNames.size();
 		stateNames=new String[numStates];
-		prev=new ArrayList[numStates];
+		prev=new TraceColumn[numStates];
 		MarkovTree tree=chainRoot.tree;
 		for(int s=0; s<numStates; s++){
 			int index=chainRoot.childIndices.get(s);
 			stateNames[s]=tree.nodes.get(index).name;
-			prev[s]=new ArrayList<Double>();
+			prev[s]=new TraceColumn();
 		}
 		numDim=chainRoot.numDimensions;
 		dimSymbols=chainRoot.myModel.dimInfo.dimSymbols;
 		dimNames=chainRoot.myModel.dimInfo.dimNames;
-		cycleRewards=new ArrayList[numDim]; cycleRewardsDis=new ArrayList[numDim];
-		cumRewards=new ArrayList[numDim]; cumRewardsDis=new ArrayList[numDim];
+		cycleRewards=new TraceColumn[numDim]; cycleRewardsDis=new TraceColumn[numDim];
+		cumRewards=new TraceColumn[numDim]; cumRewardsDis=new TraceColumn[numDim];
 		discounted=myModel.markov.discountRewards;
 		for(int d=0; d<numDim; d++){
-			cycleRewards[d]=new ArrayList<Double>(); cycleRewardsDis[d]=new ArrayList<Double>();
-			cumRewards[d]=new ArrayList<Double>(); cumRewardsDis[d]=new ArrayList<Double>();
+			cycleRewards[d]=new TraceColumn(); cycleRewardsDis[d]=new TraceColumn();
+			cumRewards[d]=new TraceColumn(); cumRewardsDis[d]=new TraceColumn();
 		}
 		numVariables=chainRoot.myModel.variables.size();
+		if(tree.summaryTraces){numVariables=0;} //states and rewards only
 		varNames=new String[numVariables];
-		cycleVariables=new ArrayList[numVariables];
+		cycleVariables=new TraceColumn[numVariables];
 		for(int c=0; c<numVariables; c++){
 			varNames[c]=chainRoot.myModel.variables.get(c).name;
-			cycleVariables[c]=new ArrayList<Double>();
-		}
-		//Build Model headers
-		modelTraceRaw=new DefaultTableModel(); modelTraceRounded=new DefaultTableModel();
-		modelTraceRaw.addColumn("Cycle"); modelTraceRounded.addColumn("Cycle");
-		for(int s=0; s<numStates; s++){
-			modelTraceRaw.addColumn(stateNames[s]);
-			modelTraceRounded.addColumn(stateNames[s]);
+			cycleVariables[c]=new TraceColumn();
 		}
+		//Column headers
+		int numCols=1+numStates+2*numDim+numVariables;
+		if(discounted){numCols+=2*numDim;}
+		colNames=new String[numCols];
+		int curCol=0;
+		colNames[curCol]="Cycle"; curCol++;
+		for(int s=0; s<numStates; s++){colNames[curCol]=stateNames[s]; curCol++;}
 		//undiscounted
-		for(int d=0; d<numDim; d++){
-			modelTraceRaw.addColumn("Cycle_"+dimSymbols[d]);
-			modelTraceRounded.addColumn("Cycle_"+dimSymbols[d]);
-		}
-		for(int d=0; d<numDim; d++){
-			modelTraceRaw.addColumn("Cum_"+dimSymbols[d]);
-			modelTraceRounded.addColumn("Cum_"+dimSymbols[d]);
-		}
+		for(int d=0; d<numDim; d++){colNames[curCol]="Cycle_"+dimSymbols[d]; curCol++;}
+		for(int d=0; d<numDim; d++){colNames[curCol]="Cum_"+dimSymbols[d]; curCol++;}
 		//discounted
 		if(discounted==true){
-			for(int d=0; d<numDim; d++){
-				modelTraceRaw.addColumn("Cycle_Dis_"+dimSymbols[d]);
-				modelTraceRounded.addColumn("Cycle_Dis_"+dimSymbols[d]);
-			}
-			for(int d=0; d<numDim; d++){
-				modelTraceRaw.addColumn("Cum_Dis_"+dimSymbols[d]);
-				modelTraceRounded.addColumn("Cum_Dis_"+dimSymbols[d]);
-			}
+			for(int d=0; d<numDim; d++){colNames[curCol]="Cycle_Dis_"+dimSymbols[d]; curCol++;}
+			for(int d=0; d<numDim; d++){colNames[curCol]="Cum_Dis_"+dimSymbols[d]; curCol++;}
 		}
 		//variables
-		for(int c=0; c<numVariables; c++){
-			modelTraceRaw.addColumn(chainRoot.myModel.variables.get(c).name);
-			modelTraceRounded.addColumn(chainRoot.myModel.variables.get(c).name);
-		}
+		for(int c=0; c<numVariables; c++){colNames[curCol]=varNames[c]; curCol++;}
 	}
 	
-	public void updateTable(int t){
-		modelTraceRaw.addRow(new Object[]{null}); modelTraceRounded.addRow(new Object[]{null});
-		int curCol=0;
-		modelTraceRaw.setValueAt(cycles.get(t), t, curCol); modelTraceRounded.setValueAt(cycles.get(t), t, curCol); //cycle
-		curCol++;
-		//state prevalence
-		for(int s=0; s<numStates; s++){
-			modelTraceRaw.setValueAt(prev[s].get(t), t, curCol);
-			double roundedPrev=MathUtils.round(prev[s].get(t),myModel.markov.stateDecimals);
-			modelTraceRounded.setValueAt(roundedPrev, t, curCol);
-			curCol++;
-		}
-		//undiscounted
-		for(int d=0; d<numDim; d++){
-			modelTraceRaw.setValueAt(cycleRewards[d].get(t),t,curCol);
-			modelTraceRounded.setValueAt(MathUtils.round(cycleRewards[d].get(t),myModel.dimInfo.decimals[d]),t,curCol);
-			curCol++;
-		}
-		for(int d=0; d<numDim; d++){
-			modelTraceRaw.setValueAt(cumRewards[d].get(t),t,curCol);
-			modelTraceRounded.setValueAt(MathUtils.round(cumRewards[d].get(t),myModel.dimInfo.decimals[d]),t,curCol);
-			curCol++;
+	public int getRowCount(){
+		return(cycles.size());
+	}
+	
+	public int getColumnCount(){
+		return(colNames.length);
+	}
+	
+	public String getColumnName(int col){
+		return(colNames[col]);
+	}
+	
+	/**
+	 * Returns the column store for a table column (null for the cycle column)
+	 */
+	private TraceColumn getColumn(int col){
+		if(col==0){return(null);}
+		col--;
+		if(col<numStates){return(prev[col]);}
+		col-=numStates;
+		if(col<numDim){return(cycleRewards[col]);}
+		col-=numDim;
+		if(col<numDim){return(cumRewards[col]);}
+		col-=numDim;
+		if(discounted){
+			if(col<numDim){return(cycleRewardsDis[col]);}
+			col-=numDim;
+			if(col<numDim){return(cumRewardsDis[col]);}
+			col-=numDim;
 		}
-		//discounted
-		if(discounted==true){
-			for(int d=0; d<numDim; d++){
-				modelTraceRaw.setValueAt(cycleRewardsDis[d].get(t),t,curCol);
-				modelTraceRounded.setValueAt(MathUtils.round(cycleRewardsDis[d].get(t),myModel.dimInfo.decimals[d]),t,curCol);
-				curCol++;
-			}
-			for(int d=0; d<numDim; d++){
-				modelTraceRaw.setValueAt(cumRewardsDis[d].get(t),t,curCol);
-				modelTraceRounded.setValueAt(MathUtils.round(cumRewardsDis[d].get(t),myModel.dimInfo.decimals[d]),t,curCol);
-				curCol++;
+		return(cycleVariables[col]);
+	}
+	
+	public double getValueAt(int row, int col){
+		if(col==0){return(cycles.get(row));}
+		return(getColumn(col).get(row));
+	}
+	
+	/**
+	 * Returns the trace as a table of rounded values.  The table is built on the first call, so traces that are never displayed don't keep a copy.
+	 */
+	public DefaultTableModel getTableModel(){
+		int numRows=cycles.size();
+		if(modelTraceRounded==null || modelTraceRounded.getRowCount()!=numRows){
+			int numCols=colNames.length;
+			Object data[][]=new Object[numRows][numCols];
+			int decimals[]=new int[numCols]; //-1: don't round
+			Arrays.fill(decimals, -1);
+			for(int c=1; c<=numStates; c++){decimals[c]=myModel.markov.stateDecimals;}
+			int numRewardCols=2*numDim;
+			if(discounted){numRewardCols+=2*numDim;}
+			for(int c=0; c<numRewardCols; c++){decimals[1+numStates+c]=myModel.dimInfo.decimals[c%numDim];}
+			for(int r=0; r<numRows; r++){data[r][0]=cycles.get(r);}
+			for(int c=1; c<numCols; c++){
+				TraceColumn column=getColumn(c);
+				for(int r=0; r<numRows; r++){
+					double val=column.get(r);
+					if(decimals[c]!=-1){val=MathUtils.round(val, decimals[c]);}
+					data[r][c]=val;
+				}
 			}
+			modelTraceRounded=new DefaultTableModel(data,colNames);
 		}
-		//variables
-		for(int c=0; c<numVariables; c++){
-			modelTraceRaw.setValueAt(cycleVariables[c].get(t), t, curCol);
-			modelTraceRounded.setValueAt(cycleVariables[c].get(t), t, curCol);
-			curCol++;
-		}
-	}	
+		return(modelTraceRounded);
+	}
 	
 	public void updateHalfCycle(){
-		int row=modelTraceRaw.getRowCount()-1; //get last row
+		int row=cycles.size()-1; //get last row
 		//update cycle rewards and cum rewards
-		int curCol=numStates+1;
-		
 		//undiscounted
 		for(int d=0; d<numDim; d++){
 			double halfReward=cycleRewards[d].get(row)*0.5;
 			cycleRewards[d].set(row, halfReward); //update with half-cycle reward
-			modelTraceRaw.setValueAt(halfReward,row,curCol);
-			modelTraceRounded.setValueAt(MathUtils.round(halfReward,myModel.dimInfo.decimals[d]),row,curCol);
-			curCol++;
-		}
-		for(int d=0; d<numDim; d++){
 			double rewardPrev=cumRewards[d].get(row-1);
-			double halfReward=cycleRewards[d].get(row);
 			cumRewards[d].set(row, rewardPrev+halfReward); //update with half-cycle reward
-			modelTraceRaw.setValueAt(rewardPrev+halfReward,row,curCol);
-			modelTraceRounded.setValueAt(MathUtils.round(rewardPrev+halfReward,myModel.dimInfo.decimals[d]),row,curCol);
-			curCol++;
 		}
 		//discounted
 		if(discounted==true){
 			for(int d=0; d<numDim; d++){
 				double halfReward=cycleRewardsDis[d].get(row)*0.5;
 				cycleRewardsDis[d].set(row, halfReward); //update with half-cycle reward
-				modelTraceRaw.setValueAt(halfReward,row,curCol);
-				modelTraceRounded.setValueAt(MathUtils.round(halfReward,myModel.dimInfo.decimals[d]),row,curCol);
-				curCol++;
-			}
-			for(int d=0; d<numDim; d++){
 				double rewardPrev=cumRewardsDis[d].get(row-1);
-				double halfReward=cycleRewardsDis[d].get(row);
 				cumRewardsDis[d].set(row, rewardPrev+halfReward); //update with half-cycle reward
-				modelTraceRaw.setValueAt(rewardPrev+halfReward,row,curCol);
-				modelTraceRounded.setValueAt(MathUtils.round(rewardPrev+halfReward,myModel.dimInfo.decimals[d]),row,curCol);
-				curCol++;
 			}
 		}
-		
-	}	
+	}
 	
 	public void setT0(MarkovNode chainRoot){
 		cycles.add(0);
@@ -220,23 +208,22 @@ public class MarkovTrace{
 		for(int c=0; c<numVariables; c++){
 			cycleVariables[c].add(0.0);
 		}
-		updateTable(0);
 	}
 	
 	/*public double getValue(int t, String colText){
 		//Get column index
 		int col=getColumnIndex(colText);
-		if(col<1 || col>(modelTraceRaw.getColumnCount()-1)){return(Double.NaN);} //Throw error
+		if(col<1 || col>(getColumnCount()-1)){return(Double.NaN);} //Throw error
 		else{ //Valid column
-			double val=(double) modelTraceRaw.getValueAt(t, col);
+			double val=getValueAt(t, col);
 			return(val);
 		}
 	}*/
 	
 	public Numeric getValue(String row, String col) throws NumericException, Exception{
 		double traceVals[][];
-		int numRows=modelTraceRaw.getRowCount();
-		int numCols=modelTraceRaw.getColumnCount();
+		int numRows=getRowCount();
+		int numCols=getColumnCount();
 		int startRow, endRow;
 		int startCol, endCol;
 		if(row.contains(":")){ //Multiple rows
@@ -272,7 +259,7 @@ public class MarkovTrace{
 		traceVals=new double[endRow-startRow+1][endCol-startCol+1];
 		for(int i=startRow; i<=endRow; i++){
 			for(int j=startCol; j<=endCol; j++){
-				traceVals[i-startRow][j-startCol]=(double) modelTraceRaw.getValueAt(i, j);
+				traceVals[i-startRow][j-startCol]=getValueAt(i, j);
 			}
 		}
 		
@@ -286,9 +273,9 @@ public class MarkovTrace{
 			colText=colText.replace("\"","");
 			colText=colText.replace("\'","");
 			boolean found=false;
-			while(found==false && col<modelTraceRaw.getColumnCount()){
+			while(found==false && col<getColumnCount()-1){
 				col++;
-				if(colText.equals(modelTraceRaw.getColumnName(col))){found=true;}
+				if(colText.equals(getColumnName(col))){found=true;}
 			}
 			if(found==false){
 				throw new NumericException("Can't find column: "+colText,"trace");
@@ -315,21 +302,21 @@ public class MarkovTrace{
 		FileWriter fstream = new FileWriter(curFilepath+".csv"); //Create new file
 		BufferedWriter out = new BufferedWriter(fstream);
 		
-		int numRows=modelTraceRaw.getRowCount();
-		int numCols=modelTraceRaw.getColumnCount();
+		int numRows=getRowCount();
+		int numCols=getColumnCount();
 		
 		//Headers
-		out.write(modelTraceRaw.getColumnName(0));
+		out.write(getColumnName(0));
 		for(int i=1; i<numCols; i++){
-			out.write(","+modelTraceRaw.getColumnName(i));
+			out.write(","+getColumnName(i));
 		}
 		out.newLine();
 		
 		//Data
 		for(int r=0; r<numRows; r++){
-			out.write(modelTraceRaw.getValueAt(r, 0)+"");
+			out.write(cycles.get(r)+"");
 			for(int i=1; i<numCols; i++){
-				out.write(","+modelTraceRaw.getValueAt(r,i));
+				out.write(","+getValueAt(r,i));
 			}
 			out.newLine();
 		}
@@ -22,13 +22,13 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.TreeMap;
 
 import javax.swing.table.DefaultTableModel;
 
 import base.AmuaModel;
 import math.MathUtils;
+import math.StreamingStats;
 
 public class MarkovTraceSummary{
 	public String traceName;
@@ -53,23 +53,107 @@ public class MarkovTraceSummary{
 	DefaultTableModel modelTraceRaw;
 	AmuaModel myModel;
 	
-	MarkovTrace allTraces[];
+	MarkovTrace allTraces[]; //null if traces were added as they finished
+	int numTraces;
+	int numCols; //per cycle: states, cycle/cum rewards, cycle/cum discounted rewards, variables
+	ArrayList<StreamingStats[]> cycleStats; //[cycle][col]
+	StreamingStats evStats[], evStatsDis[]; //final cumulative rewards
+	TreeMap<Integer,MarkovTrace> pending; //traces that finished before an earlier one, by index
+	int nextIndex; //index of the next trace to fold in
+	
+	/**
+	 * Empty summary - traces are added with add() and summarize() computes the results
+	 */
+	public MarkovTraceSummary(){
+		
+	}
 	
-	//Constructor
 	public MarkovTraceSummary(MarkovTrace traces[]){
+		for(int i=0; i<traces.length; i++){
+			add(traces[i]);
+		}
+		summarize();
 		allTraces=traces;
-		//get names
-		int numTraces=traces.length;
-		traceName=traces[0].traceName;
-		myModel=traces[0].myModel;
-		numStates=traces[0].numStates;
-		stateNames=traces[0].stateNames;
-		numDim=traces[0].numDim;
-		dimSymbols=traces[0].dimSymbols;
-		dimNames=traces[0].dimNames;
-		discounted=traces[0].discounted;
-		numVariables=traces[0].numVariables;
-		varNames=traces[0].varNames;
+	}
+	
+	/**
+	 * Adds trace number index (0, 1, 2, ...) in whatever order traces finish.  Traces are folded into the running summaries
+	 * in index order, so bounds don't depend on the order runs finish in, and are only held until every earlier trace has
+	 * been added.  May be called from several threads.
+	 */
+	public synchronized void add(int index, MarkovTrace trace){
+		if(pending==null){pending=new TreeMap<Integer,MarkovTrace>();}
+		pending.put(index, trace);
+		foldPending(false);
+	}
+	
+	/**
+	 * Folds pending traces in index order, stopping at the first missing index unless all are folded
+	 */
+	private void foldPending(boolean all){
+		if(pending==null){return;}
+		while(pending.isEmpty()==false && (all || pending.firstKey()==nextIndex)){
+			nextIndex=pending.firstKey()+1;
+			add(pending.pollFirstEntry().getValue());
+		}
+	}
+	
+	/**
+	 * Folds one trace into the running summaries, so the trace doesn't need to be kept
+	 */
+	public synchronized void add(MarkovTrace trace){
+		if(numTraces==0){ //get names
+			traceName=trace.traceName;
+			myModel=trace.myModel;
+			numStates=trace.numStates;
+			stateNames=trace.stateNames;
+			numDim=trace.numDim;
+			dimSymbols=trace.dimSymbols;
+			dimNames=trace.dimNames;
+			discounted=trace.discounted;
+			numVariables=trace.numVariables;
+			varNames=trace.varNames;
+			numCols=numStates+2*numDim+numVariables;
+			if(discounted){numCols+=2*numDim;}
+			cycleStats=new ArrayList<StreamingStats[]>();
+			evStats=new StreamingStats[numDim]; evStatsDis=new StreamingStats[numDim];
+			for(int d=0; d<numDim; d++){
+				evStats[d]=new StreamingStats(); evStatsDis[d]=new StreamingStats();
+			}
+		}
+		numTraces++;
+		
+		int numCycles=trace.cycles.size();
+		while(cycleStats.size()<numCycles){
+			StreamingStats stats[]=new StreamingStats[numCols];
+			for(int i=0; i<numCols; i++){stats[i]=new StreamingStats();}
+			cycleStats.add(stats);
+		}
+		for(int c=0; c<numCycles; c++){
+			StreamingStats stats[]=cycleStats.get(c);
+			int col=0;
+			for(int s=0; s<numStates; s++){stats[col].add(trace.prev[s].get(c)); col++;}
+			for(int d=0; d<numDim; d++){stats[col].add(trace.cycleRewards[d].get(c)); col++;}
+			for(int d=0; d<numDim; d++){stats[col].add(trace.cumRewards[d].get(c)); col++;}
+			if(discounted){
+				for(int d=0; d<numDim; d++){stats[col].add(trace.cycleRewardsDis[d].get(c)); col++;}
+				for(int d=0; d<numDim; d++){stats[col].add(trace.cumRewardsDis[d].get(c)); col++;}
+			}
+			for(int v=0; v<numVariables; v++){stats[col].add(trace.cycleVariables[v].get(c)); col++;}
+		}
+		//final cum expected values
+		int last=numCycles-1;
+		for(int d=0; d<numDim; d++){
+			evStats[d].add(trace.cumRewards[d].get(last));
+			if(discounted){evStatsDis[d].add(trace.cumRewardsDis[d].get(last));}
+		}
+	}
+	
+	/**
+	 * Gets the mean and bounds of the traces added so far and builds the summary table
+	 */
+	public synchronized void summarize(){
+		foldPending(true); //e.g. runs skipped after a cancel
 		//Build Model headers
 		modelTraceRaw=new DefaultTableModel(); modelTraceRounded=new DefaultTableModel();
 		modelTraceRaw.addColumn("Cycle"); modelTraceRounded.addColumn("Cycle");
@@ -98,50 +182,24 @@ public class MarkovTraceSummary{
 		}
 		//variables
 		for(int v=0; v<numVariables; v++) {
-			modelTraceRaw.addColumn(traces[0].varNames[v]+"_Mean"); modelTraceRaw.addColumn(traces[0].varNames[v]+"_LB"); modelTraceRaw.addColumn(traces[0].varNames[v]+"_UB");
-			modelTraceRounded.addColumn(traces[0].varNames[v]+"_Mean"); modelTraceRounded.addColumn(traces[0].varNames[v]+"_LB"); modelTraceRounded.addColumn(traces[0].varNames[v]+"_UB");
+			modelTraceRaw.addColumn(varNames[v]+"_Mean"); modelTraceRaw.addColumn(varNames[v]+"_LB"); modelTraceRaw.addColumn(varNames[v]+"_UB");
+			modelTraceRounded.addColumn(varNames[v]+"_Mean"); modelTraceRounded.addColumn(varNames[v]+"_LB"); modelTraceRounded.addColumn(varNames[v]+"_UB");
 		}
 		modelTraceRaw.addColumn("Num_Sims"); modelTraceRounded.addColumn("Num_Sims");
 		
-		//get max cycles
-		maxCyclesLocal=new int[numTraces];
-		maxCyclesLocal[0]=traces[0].cycles.size(); maxCyclesGlobal=maxCyclesLocal[0]; 
-		for(int i=1; i<numTraces; i++){
-			maxCyclesLocal[i]=traces[i].cycles.size(); maxCyclesGlobal=Math.max(maxCyclesGlobal, maxCyclesLocal[i]);
-		}
+		maxCyclesGlobal=cycleStats.size();
 		int numSims[]=new int[maxCyclesGlobal];
-		for(int i=0; i<numTraces; i++){
-			for(int j=0; j<maxCyclesLocal[i]; j++){
-				numSims[j]++;
-			}
+		for(int c=0; c<maxCyclesGlobal; c++){
+			numSims[c]=(int)cycleStats.get(c)[0].getCount();
 		}
 		
 		//get final cum expected values
 		expectedValues=new double[numDim][3]; expectedValuesDis=new double[numDim][3];
 		for(int d=0; d<numDim; d++){
-			double mean=0, meanDis=0;
-			double curVal[]=new double[numTraces], curValDis[]=new double[numTraces];
-			for(int t=0; t<numTraces; t++){
-				int c=maxCyclesLocal[t]-1; //max cycle observed
-				double val=traces[t].cumRewards[d].get(c);
-				mean+=val; curVal[t]=val;
-				if(discounted){
-					val=traces[t].cumRewardsDis[d].get(c);
-					meanDis+=val; curValDis[t]=val;
-				}
-			}
-			expectedValues[d][0]=mean/(numTraces*1.0);
-			Arrays.sort(curVal);
-			int bounds[]=MathUtils.getBoundIndices(numTraces); int lb=bounds[0], ub=bounds[1];
-			expectedValues[d][1]=curVal[lb]; expectedValues[d][2]=curVal[ub];
-			if(discounted){
-				expectedValuesDis[d][0]=meanDis/(numTraces*1.0);
-				Arrays.sort(curValDis);
-				expectedValuesDis[d][1]=curValDis[lb]; expectedValuesDis[d][2]=curValDis[ub];
-			}
+			setSummary(evStats[d], expectedValues[d]);
+			if(discounted){setSummary(evStatsDis[d], expectedValuesDis[d]);}
 		}
 		
-		
 		//initialize trace summaries
 		prev=new double[numStates][3][maxCyclesGlobal];
 		cycleRewards=new double[numDim][3][maxCyclesGlobal];
@@ -154,83 +212,18 @@ public class MarkovTraceSummary{
 			cycleVars=new double[numVariables][3][maxCyclesGlobal];
 		}
 		
-		//calculate prev
-		for(int s=0; s<numStates; s++){
-			for(int c=0; c<maxCyclesGlobal; c++){
-				ArrayList<Double> curPrev=new ArrayList<Double>();
-				double mean=0, denom=0;
-				for(int t=0; t<numTraces; t++){
-					if(maxCyclesLocal[t]>c){ //cycle observed
-						double val=traces[t].prev[s].get(c);
-						curPrev.add(val);
-						mean+=val; denom++;
-					}
-				}
-				prev[s][0][c]=mean/denom;
-				Collections.sort(curPrev);
-				int bounds[]=MathUtils.getBoundIndices(denom); int lb=bounds[0], ub=bounds[1];
-				prev[s][1][c]=curPrev.get(lb); prev[s][2][c]=curPrev.get(ub);
-			}
-		}
-		//calculate rewards
-		for(int d=0; d<numDim; d++){
-			for(int c=0; c<maxCyclesGlobal; c++){
-				ArrayList<Double> curRewards= new ArrayList<Double>();
-				ArrayList<Double> curCum= new ArrayList<Double>();
-				double mean=0, meanCum=0, denom=0;
-				for(int t=0; t<numTraces; t++){
-					if(maxCyclesLocal[t]>c){ //cycle observed
-						double val=traces[t].cycleRewards[d].get(c), valCum=traces[t].cumRewards[d].get(c);
-						curRewards.add(val); curCum.add(valCum);
-						mean+=val; meanCum+=valCum; denom++;
-					}
-				}
-				cycleRewards[d][0][c]=mean/denom; cumRewards[d][0][c]=meanCum/denom;
-				Collections.sort(curRewards); Collections.sort(curCum);
-				int bounds[]=MathUtils.getBoundIndices(denom); int lb=bounds[0], ub=bounds[1];
-				cycleRewards[d][1][c]=curRewards.get(lb); cycleRewards[d][2][c]=curRewards.get(ub);
-				cumRewards[d][1][c]=curCum.get(lb); cumRewards[d][2][c]=curCum.get(ub);
-			}
-		}
-		//discounted rewards
-		if(discounted){
-			for(int d=0; d<numDim; d++){
-				for(int c=0; c<maxCyclesGlobal; c++){
-					ArrayList<Double> curRewards= new ArrayList<Double>();
-					ArrayList<Double> curCum= new ArrayList<Double>();
-					double mean=0, meanCum=0, denom=0;
-					for(int t=0; t<numTraces; t++){
-						if(maxCyclesLocal[t]>c){ //cycle observed
-							double val=traces[t].cycleRewardsDis[d].get(c), valCum=traces[t].cumRewardsDis[d].get(c);
-							curRewards.add(val); curCum.add(valCum);
-							mean+=val; meanCum+=valCum; denom++;
-						}
-					}
-					cycleRewardsDis[d][0][c]=mean/denom; cumRewardsDis[d][0][c]=meanCum/denom;
-					Collections.sort(curRewards); Collections.sort(curCum);
-					int bounds[]=MathUtils.getBoundIndices(denom); int lb=bounds[0], ub=bounds[1];
-					cycleRewardsDis[d][1][c]=curRewards.get(lb); cycleRewardsDis[d][2][c]=curRewards.get(ub);
-					cumRewardsDis[d][1][c]=curCum.get(lb); cumRewardsDis[d][2][c]=curCum.get(ub);
-				}
-			}
-		}
-		//calculate variables
-		for(int v=0; v<numVariables; v++){
-			for(int c=0; c<maxCyclesGlobal; c++){
-				ArrayList<Double> curVars= new ArrayList<Double>();
-				double mean=0, denom=0;
-				for(int t=0; t<numTraces; t++){
-					if(maxCyclesLocal[t]>c){ //cycle observed
-						double val=traces[t].cycleVariables[v].get(c);
-						curVars.add(val);
-						mean+=val; denom++;
-					}
-				}
-				cycleVars[v][0][c]=mean/denom;
-				Collections.sort(curVars);
-				int bounds[]=MathUtils.getBoundIndices(denom); int lb=bounds[0], ub=bounds[1];
-				cycleVars[v][1][c]=curVars.get(lb); cycleVars[v][2][c]=curVars.get(ub);
+		double curSummary[]=new double[3];
+		for(int c=0; c<maxCyclesGlobal; c++){
+			StreamingStats stats[]=cycleStats.get(c);
+			int col=0;
+			for(int s=0; s<numStates; s++){setSummary(stats[col],prev[s],c,curSummary); col++;}
+			for(int d=0; d<numDim; d++){setSummary(stats[col],cycleRewards[d],c,curSummary); col++;}
+			for(int d=0; d<numDim; d++){setSummary(stats[col],cumRewards[d],c,curSummary); col++;}
+			if(discounted){
+				for(int d=0; d<numDim; d++){setSummary(stats[col],cycleRewardsDis[d],c,curSummary); col++;}
+				for(int d=0; d<numDim; d++){setSummary(stats[col],cumRewardsDis[d],c,curSummary); col++;}
 			}
+			for(int v=0; v<numVariables; v++){setSummary(stats[col],cycleVars[v],c,curSummary); col++;}
 		}
 		
 		//build table
@@ -295,6 +288,19 @@ public class MarkovTraceSummary{
 	}
 
 	
+	/**
+	 * Sets {mean,lb,ub}
+	 */
+	private static void setSummary(StreamingStats stat, double summary[]){
+		summary[0]=stat.getMean();
+		summary[1]=stat.getQuantile(0.025); summary[2]=stat.getQuantile(0.975); //same positions as MathUtils.getBoundIndices
+	}
+	
+	private static void setSummary(StreamingStats stat, double summary[][], int c, double curSummary[]){
+		setSummary(stat,curSummary);
+		summary[0][c]=curSummary[0]; summary[1][c]=curSummary[1]; summary[2][c]=curSummary[2];
+	}
+	
 	public void write(String filepath) throws IOException{
 		FileWriter fstream = new FileWriter(filepath+"_"+traceName+".csv"); //Create new file
 		BufferedWriter out = new BufferedWriter(fstream);
@@ -321,6 +327,7 @@ public class MarkovTraceSummary{
 	}
 	
 	public void writeAllTraces(String filepath) throws IOException {
+		if(allTraces==null){throw new IOException("Individual traces were not kept");}
 		int numSets=allTraces.length;
 		for(int s=0; s<numSets; s++) {
 			allTraces[s].write(filepath,(s+1));
@@ -61,6 +61,10 @@ public class MarkovTree{
 	@XmlElement public boolean compileTraces;
 		
 	@XmlTransient public boolean showEV=false;
+	@XmlTransient public boolean summaryTraces; //traces only keep state prevalence and rewards
+	@XmlTransient public boolean keepTraces=true; //false if only expected values are needed - time-homogeneous cohort chains are then solved in closed form
+	@XmlTransient public TraceMonitor traceMonitor; //checked after each cycle, may stop the run
+	@XmlTransient public volatile boolean stopped; //true if the last run was stopped by the trace monitor
 	@XmlTransient boolean validProbs;
 	@XmlTransient ArrayList<String> errors;
 	@XmlTransient public AmuaModel myModel;
@@ -120,6 +124,9 @@ public class MarkovTree{
 			}
 		}
 		copy.discountStartCycle=discountStartCycle;
+		copy.cyclesPerYear=cyclesPerYear;
+		copy.showTrace=showTrace;
+		copy.compileTraces=compileTraces;
 		
 		for(int i=0; i<nodes.size(); i++){
 			MarkovNode copyNode=nodes.get(i).copy();
@@ -204,7 +211,7 @@ public class MarkovTree{
 			else{ //Evaluate text
 				try{
 					curNode.curProbTokens=Interpreter.parse(curNode.prob, myModel);
-					curNode.curProb[0]=Interpreter.evaluateTokens(curNode.curProbTokens, 0, false).getDouble();
+					curNode.curProb[0]=Interpreter.evaluateDouble(curNode.curProbTokens, 0, false);
 				}catch(Exception e){
 					validProbs=false;
 					curNode.highlightTextField(0, Color.YELLOW); //Prob
@@ -243,7 +250,7 @@ public class MarkovTree{
 			for(int c=0; c<numDim; c++){
 				try{
 					curNode.curCostTokens[c]=Interpreter.parse(curNode.cost[c], myModel);
-					double testVal=Interpreter.evaluateTokens(curNode.curCostTokens[c], 0, false).getDouble();
+					double testVal=Interpreter.evaluateDouble(curNode.curCostTokens[c], 0, false);
 					
 					if(Double.isNaN(testVal)){
 						curNode.highlightTextField(1, Color.YELLOW); //Cost
@@ -262,7 +269,7 @@ public class MarkovTree{
 			for(int c=0; c<numDim; c++){
 				try{
 					curNode.curRewardTokens[c]=Interpreter.parse(curNode.rewards[c], myModel);
-					double testVal=Interpreter.evaluateTokens(curNode.curRewardTokens[c], 0, false).getDouble();
+					double testVal=Interpreter.evaluateDouble(curNode.curRewardTokens[c], 0, false);
 					
 					if(Double.isNaN(testVal)){
 						curNode.highlightTextField(3, Color.YELLOW); //rewards
@@ -468,7 +475,7 @@ public class MarkovTree{
 		if(node.curCosts==null || node.curCosts.length!=numDim){node.curCosts=new double[numDim][1];}
 		if(node.hasCost){
 			for(int c=0; c<numDim; c++){
-				node.curCosts[c][0]=Interpreter.evaluateTokens(node.curCostTokens[c], 0, false).getDouble();
+				node.curCosts[c][0]=Interpreter.evaluateDouble(node.curCostTokens[c], 0, false);
 				node.curCosts[c][0]*=myModel.cohortSize; //scale costs by cohort size
 			}
 		}
@@ -547,7 +554,7 @@ public class MarkovTree{
 					indexCompProb=c;
 				}
 				else{ //Evaluate text
-					curChild.curProb[0]=Interpreter.evaluateTokens(curChild.curProbTokens, 0, false).getDouble();
+					curChild.curProb[0]=Interpreter.evaluateDouble(curChild.curProbTokens, 0, false);
 					sumProb+=curChild.curProb[0];
 				}
 			}
@@ -608,6 +615,7 @@ public class MarkovTree{
 		//Run all chains and then get expected values
 		MarkovNode root=nodes.get(0);
 		long startTime=System.currentTimeMillis();
+		stopped=false;
 		
 		if(myModel.simType==0){ //Cohort
 			runCohort(runReport,display);
@@ -640,7 +648,7 @@ public class MarkovTree{
 			
 		}
 		
-		if(allChains==true){//Get EVs
+		if(allChains==true && stopped==false){//Get EVs
 			for(int c=0; c<root.numChildren; c++){
 				getEVs(root.children[c],display);
 			}
@@ -662,6 +670,7 @@ public class MarkovTree{
 		final int numThreads=Math.min(myModel.numThreads,numChains);
 		for(int v=0; v<myModel.variables.size(); v++){
 			myModel.variables.get(v).value=new Numeric[numThreads];
+			myModel.variables.get(v).locked=new boolean[numThreads];
 		}
 		int indexT=myModel.getInnateVariableIndex("t");
 		Variable curT=myModel.innateVariables.get(indexT);
@@ -677,7 +686,7 @@ public class MarkovTree{
 					try{
 						final int beginIndex = finalN * blockSize;
 						final int endIndex = (finalN==numThreads-1) ? numChains :(finalN+1)*blockSize;
-						for(int c=beginIndex; c<endIndex; c++){
+						for(int c=beginIndex; c<endIndex && stopped==false; c++){
 							MarkovNode curChain=chains.get(c);
 							MarkovCohort cohortModel=new MarkovCohort(curChain,finalN);
 							cohortModel.simulate();
@@ -0,0 +1,63 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package markov;
+
+import java.util.Arrays;
+
+/**
+ * Growable column of doubles for Markov traces, stored unboxed
+ */
+public final class TraceColumn{
+	private double values[];
+	private int size;
+	
+	public TraceColumn(){
+		values=new double[16];
+	}
+	
+	public void add(double value){
+		if(size==values.length){
+			values=Arrays.copyOf(values, size*2);
+		}
+		values[size]=value;
+		size++;
+	}
+	
+	public double get(int index){
+		if(index>=size){throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);}
+		return(values[index]);
+	}
+	
+	public void set(int index, double value){
+		if(index>=size){throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);}
+		values[index]=value;
+	}
+	
+	public int size(){
+		return(size);
+	}
+	
+	/**
+	 * Returns a copy of the values
+	 */
+	public double[] toArray(){
+		return(Arrays.copyOf(values, size));
+	}
+}
@@ -1,6 +1,6 @@
 /**
  * Amua - An open source modeling framework.
- * Copyright (C) 2017 Zachary J. Ward
+ * Copyright (C) 2017-2019 Zachary J. Ward
  *
  * This file is part of Amua. Amua is free software: you can redistribute
  * it and/or modify it under the terms of the GNU General Public License
@@ -16,22 +16,17 @@
  * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-package tree;
 
-import math.Numeric;
+package markov;
 
-public class TreePerson{
-	Numeric variableVals[];
-	double costs[];
-	double payoffs[];
-	boolean inSubgroup[];
-	int subgroupIndex[];
-	Numeric initVariableVals[];
-	
-	//Constructor
-	public TreePerson(){
-		
-	}
-	
-	
-}
\ No newline at end of file
+/**
+ * Watches chain traces while they are simulated, so a run can be stopped once its outcome is known
+ * (e.g. calibration proposals that can no longer meet the score threshold)
+ */
+public interface TraceMonitor{
+	/**
+	 * Called after cycle t has been added to the chain's trace
+	 * @return true to stop the run.  Remaining cycles and chains are skipped and the results are incomplete.
+	 */
+	boolean stopAfterCycle(MarkovNode chain, MarkovTrace trace, int t) throws Exception;
+}
@@ -0,0 +1,531 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package math;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Stack;
+
+import main.Parameter;
+import main.TableLookup;
+import main.Variable;
+
+/**
+ * Scalar expression compiled from post-fix tokens into a tree of nodes that evaluate directly to doubles.
+ * Operators are bound once at compile time so evaluation avoids the operand stack, string dispatch, and
+ * intermediate Numeric objects.  Operands are evaluated in the same order as the interpreter so any random
+ * draws are consumed identically.
+ * Integer operands are carried as doubles, so results match the interpreter except where integer arithmetic
+ * would overflow.
+ * Expressions that involve matrices are not compiled and stay with the interpreter.
+ * If an operand changes type part-way through an evaluation, the interpreter finishes it with the operands that have
+ * already been evaluated (see resume), so no operand is evaluated or sampled twice.
+ */
+final class CompiledExpression{
+
+	private final Node root;
+	private final Trail trail;
+
+	private CompiledExpression(Node root, Trail trail){
+		this.root=root;
+		this.trail=trail;
+	}
+
+	double evaluate(int curThread, boolean sample) throws Exception{
+		trail.pass[curThread]++;
+		return(root.eval(curThread,sample));
+	}
+	
+	/**
+	 * Finishes an evaluation that threw Deopt, in the interpreter.  Operands already evaluated in this pass are reused
+	 * instead of being evaluated again, so random draws and other side effects are not repeated.
+	 */
+	Numeric resume(Token tokens[], int curThread, boolean sample) throws Exception{
+		Stack<Numeric> operands=new Stack<Numeric>();
+		int curPass=trail.pass[curThread];
+		for(int i=0; i<tokens.length; i++){
+			Token curToken=tokens[i];
+			if(curToken.type==Type.OPERATOR){
+				Numeric operand_2=operands.pop();
+				Numeric operand_1=operands.pop();
+				operands.push(Operators.evaluate(curToken.word,operand_1,operand_2));
+			}
+			else if(trail.evaluated[curThread][i]==curPass){ //already evaluated
+				if(trail.lookup[i]){operands.push(new Numeric(trail.lookupValues[curThread][i]));}
+				else{operands.push(curToken.numeric[curThread]);}
+			}
+			else{
+				curToken.updateValue(curThread,sample);
+				operands.push(curToken.numeric[curThread]);
+			}
+		}
+		return(operands.pop());
+	}
+	
+	/**
+	 * Records which operands have been evaluated in the current pass of each thread
+	 */
+	private static final class Trail{
+		final int pass[]; //[thread]
+		final int evaluated[][]; //[thread][token] pass in which the token was last evaluated
+		final boolean lookup[]; //[token] true for table lookups, which don't store their value in the token
+		final double lookupValues[][]; //[thread][token]
+		final boolean integer[][]; //[thread][token] true if the last value of the node was an integer, as in Operators
+		
+		Trail(int numThreads, int numTokens){
+			pass=new int[numThreads];
+			evaluated=new int[numThreads][numTokens];
+			for(int t=0; t<numThreads; t++){Arrays.fill(evaluated[t], -1);}
+			lookup=new boolean[numTokens];
+			lookupValues=new double[numThreads][numTokens];
+			integer=new boolean[numThreads][numTokens];
+		}
+	}
+
+	/**
+	 * Thrown when an operand unexpectedly changes type (e.g. evaluates to a matrix) so the caller can fall back
+	 * to the interpreter.  Shared instance without a stack trace since it is only used for control flow.
+	 */
+	static final class Deopt extends Exception{
+		private static final long serialVersionUID = 1L;
+		private Deopt(){
+			super("Compiled expression operand changed type",null,false,false);
+		}
+	}
+	static final Deopt DEOPT=new Deopt();
+
+	/**
+	 * Compiles tokens that have just been evaluated on the given thread.  Operand types are taken from the most
+	 * recent token values and checked again at run time.
+	 * @return Compiled expression, or null if the expression is not a real-valued scalar
+	 */
+	static CompiledExpression compile(Token tokens[], int curThread){
+		if(tokens.length==0){return(null);}
+		Trail trail=new Trail(tokens[0].numThreads, tokens.length);
+		ArrayList<Node> stack=new ArrayList<Node>();
+		for(int i=0; i<tokens.length; i++){
+			Token curToken=tokens[i];
+			if(curToken.type==Type.OPERATOR){
+				if(stack.size()<2){return(null);}
+				Node right=stack.remove(stack.size()-1);
+				Node left=stack.remove(stack.size()-1);
+				Node result=bindOperator(curToken.word,left,right,i,trail);
+				if(result==null){return(null);}
+				stack.add(result);
+			}
+			else{
+				Node leaf=bindOperand(curToken,i,trail,curThread);
+				if(leaf==null){return(null);}
+				stack.add(leaf);
+			}
+		}
+		if(stack.size()!=1){return(null);}
+		Node root=stack.get(0);
+		if(root.bool){return(null);} //result must be a real number
+		return(new CompiledExpression(root,trail));
+	}
+
+	private static Node bindOperand(Token token, int index, Trail trail, int curThread){
+		Numeric value=token.numeric[curThread];
+		if(value==null || value.format==Format.MATRIX){return(null);}
+		boolean bool=(value.format==Format.BOOL);
+		switch(token.objectType){
+		case NUMBER:
+			if(bool){return(new ConstBool(value.bool));}
+			if(value.format==Format.INTEGER){return(new Const(value.intNum,true));}
+			return(new Const(value.doubleNum,false));
+		case MATRIX_STATIC:
+		case MATRIX_DYNAMIC:
+		case MATRIX_FUNCTION:
+			return(null);
+		case PARAMETER:
+			return(new ParamLeaf(token,index,trail,bool));
+		case VARIABLE:
+			return(new VarLeaf(token,index,trail,bool));
+		case TABLE_LOOKUP:
+			if(token.lookup!=null){
+				trail.lookup[index]=true;
+				return(new LookupLeaf(token,index,trail));
+			}
+			return(new TokenLeaf(token,index,trail,bool));
+		default:
+			return(new TokenLeaf(token,index,trail,bool));
+		}
+	}
+
+	private static Node bindOperator(String operator, Node left, Node right, int index, Trail trail){
+		Node node=null;
+		switch(operator){
+		case "+": if(left.bool || right.bool){return(null);} node=new Add(left,right,index,trail); break;
+		case "-": if(left.bool || right.bool){return(null);} node=new Subtract(left,right,index,trail); break;
+		case "*": if(left.bool || right.bool){return(null);} node=new Multiply(left,right,index,trail); break;
+		case "/": if(left.bool || right.bool){return(null);} node=new Divide(left,right,index,trail); break;
+		case "^": if(left.bool || right.bool){return(null);} node=new Power(left,right,index,trail); break;
+		case "%": if(left.bool || right.bool){return(null);} node=new Modulus(left,right,index,trail); break;
+		case "==": case "!=": case "<": case ">": case "<=": case ">=":
+			if(left.bool || right.bool){return(null);}
+			node=new Compare(operator,left,right,index,trail);
+			break;
+		case "&": case "|": case "^|":
+			if(!left.bool || !right.bool){return(null);}
+			node=new Logical(operator,left,right,index,trail);
+			break;
+		default: return(null);
+		}
+		//fold constants
+		if(left.isConstant() && right.isConstant()){
+			try{
+				if(node.bool){return(new ConstBool(node.test(0,false)));}
+				double value=node.eval(0,false);
+				return(new Const(value,node.isInt(0)));
+			} catch(Exception e){
+				return(node);
+			}
+		}
+		return(node);
+	}
+
+	private static boolean bool(Numeric value, boolean negate) throws Exception{
+		if(value.format!=Format.BOOL){throw DEOPT;}
+		if(negate){return(!value.bool);}
+		return(value.bool);
+	}
+
+	//Nodes
+
+	private static abstract class Node{
+		/**
+		 * True if the node evaluates to a boolean
+		 */
+		final boolean bool;
+
+		Node(boolean bool){
+			this.bool=bool;
+		}
+
+		double eval(int curThread, boolean sample) throws Exception{
+			throw DEOPT;
+		}
+
+		boolean test(int curThread, boolean sample) throws Exception{
+			throw DEOPT;
+		}
+
+		boolean isConstant(){
+			return(false);
+		}
+
+		/**
+		 * True if the last value from eval on this thread was an integer
+		 */
+		boolean isInt(int curThread){
+			return(false);
+		}
+	}
+	
+	/**
+	 * Operand node.  Marks its token as evaluated before the value is checked, so a Deopt can reuse it
+	 */
+	private static abstract class Leaf extends Node{
+		final Token token;
+		final int index;
+		final Trail trail;
+		Leaf(Token token, int index, Trail trail, boolean bool){
+			super(bool);
+			this.token=token;
+			this.index=index;
+			this.trail=trail;
+		}
+		final void update(int curThread, boolean sample) throws Exception{
+			token.updateValue(curThread, sample);
+			trail.evaluated[curThread][index]=trail.pass[curThread];
+		}
+		/**
+		 * Returns the real value of a Numeric, applying unary negation
+		 */
+		final double real(Numeric value, boolean negate, int curThread) throws Exception{
+			if(value.format==Format.DOUBLE){
+				trail.integer[curThread][index]=false;
+				if(negate){return(-value.doubleNum);}
+				return(value.doubleNum);
+			}
+			else if(value.format==Format.INTEGER){
+				trail.integer[curThread][index]=true;
+				if(negate){return(-value.intNum);}
+				return(value.intNum);
+			}
+			throw DEOPT;
+		}
+		@Override boolean isInt(int curThread){
+			return(trail.integer[curThread][index]);
+		}
+	}
+
+	private static final class Const extends Node{
+		final double value;
+		final boolean integer;
+		Const(double value, boolean integer){
+			super(false);
+			this.value=value;
+			this.integer=integer;
+		}
+		@Override double eval(int curThread, boolean sample){return(value);}
+		@Override boolean isConstant(){return(true);}
+		@Override boolean isInt(int curThread){return(integer);}
+	}
+
+	private static final class ConstBool extends Node{
+		final boolean value;
+		ConstBool(boolean value){
+			super(true);
+			this.value=value;
+		}
+		@Override boolean test(int curThread, boolean sample){return(value);}
+		@Override boolean isConstant(){return(true);}
+	}
+
+	/**
+	 * Reads the parameter value directly once it is locked, otherwise defers to the token
+	 */
+	private static final class ParamLeaf extends Leaf{
+		final Parameter param;
+		ParamLeaf(Token token, int index, Trail trail, boolean bool){
+			super(token,index,trail,bool);
+			this.param=token.curParam;
+		}
+		@Override double eval(int curThread, boolean sample) throws Exception{
+			if(param.locked==false){
+				update(curThread, sample);
+				return(real(token.numeric[curThread],false,curThread));
+			}
+			return(real(param.value,token.negate,curThread));
+		}
+		@Override boolean test(int curThread, boolean sample) throws Exception{
+			if(param.locked==false){
+				update(curThread, sample);
+				return(bool(token.numeric[curThread],false));
+			}
+			return(bool(param.value,token.negate));
+		}
+	}
+
+	/**
+	 * Reads the thread-specific variable value directly when it is current, otherwise defers to the token
+	 */
+	private static final class VarLeaf extends Leaf{
+		final Variable var;
+		VarLeaf(Token token, int index, Trail trail, boolean bool){
+			super(token,index,trail,bool);
+			this.var=token.curVar;
+		}
+		private boolean isCurrent(int curThread){
+			return(var.value[curThread]!=null && (var.locked[curThread] || var.independent));
+		}
+		@Override double eval(int curThread, boolean sample) throws Exception{
+			if(isCurrent(curThread)){
+				return(real(var.value[curThread],token.negate,curThread));
+			}
+			update(curThread, sample);
+			return(real(token.numeric[curThread],false,curThread));
+		}
+		@Override boolean test(int curThread, boolean sample) throws Exception{
+			if(isCurrent(curThread)){
+				return(bool(var.value[curThread],token.negate));
+			}
+			update(curThread, sample);
+			return(bool(token.numeric[curThread],false));
+		}
+	}
+
+	/**
+	 * Table lookup on a constant column - evaluates the index and returns the looked-up value without boxing it
+	 */
+	private static final class LookupLeaf extends Leaf{
+		final TableLookup lookup;
+		LookupLeaf(Token token, int index, Trail trail){
+			super(token,index,trail,false);
+			this.lookup=token.lookup;
+		}
+		@Override double eval(int curThread, boolean sample) throws Exception{
+			double val=lookup.getValue(Interpreter.evaluateDouble(token.args[0],curThread,sample));
+			if(token.negate){val=-val;}
+			trail.lookupValues[curThread][index]=val;
+			trail.integer[curThread][index]=false;
+			trail.evaluated[curThread][index]=trail.pass[curThread];
+			return(val);
+		}
+	}
+
+	/**
+	 * Functions, distributions, tables, matrix elements, and trace values
+	 */
+	private static final class TokenLeaf extends Leaf{
+		TokenLeaf(Token token, int index, Trail trail, boolean bool){
+			super(token,index,trail,bool);
+		}
+		@Override double eval(int curThread, boolean sample) throws Exception{
+			update(curThread, sample);
+			return(real(token.numeric[curThread],false,curThread));
+		}
+		@Override boolean test(int curThread, boolean sample) throws Exception{
+			update(curThread, sample);
+			return(bool(token.numeric[curThread],false));
+		}
+	}
+
+	/**
+	 * Operator node.  Integer operands keep integer results (with int overflow), as in Operators
+	 */
+	private static abstract class Binary extends Node{
+		final Node left, right;
+		final int index;
+		final Trail trail;
+		Binary(Node left, Node right, int index, Trail trail, boolean bool){
+			super(bool);
+			this.left=left;
+			this.right=right;
+			this.index=index;
+			this.trail=trail;
+		}
+		final double result(int curThread, double value, boolean integer){
+			trail.integer[curThread][index]=integer;
+			return(value);
+		}
+		@Override boolean isInt(int curThread){
+			return(trail.integer[curThread][index]);
+		}
+	}
+
+	private static final class Add extends Binary{
+		Add(Node left, Node right, int index, Trail trail){super(left,right,index,trail,false);}
+		@Override double eval(int curThread, boolean sample) throws Exception{
+			double a=left.eval(curThread,sample);
+			double b=right.eval(curThread,sample);
+			if(left.isInt(curThread) && right.isInt(curThread)){return(result(curThread,(int)a+(int)b,true));}
+			return(result(curThread,a+b,false));
+		}
+	}
+
+	private static final class Subtract extends Binary{
+		Subtract(Node left, Node right, int index, Trail trail){super(left,right,index,trail,false);}
+		@Override double eval(int curThread, boolean sample) throws Exception{
+			double a=left.eval(curThread,sample);
+			double b=right.eval(curThread,sample);
+			if(left.isInt(curThread) && right.isInt(curThread)){return(result(curThread,(int)a-(int)b,true));}
+			return(result(curThread,a-b,false));
+		}
+	}
+
+	private static final class Multiply extends Binary{
+		Multiply(Node left, Node right, int index, Trail trail){super(left,right,index,trail,false);}
+		@Override double eval(int curThread, boolean sample) throws Exception{
+			double a=left.eval(curThread,sample);
+			double b=right.eval(curThread,sample);
+			if(left.isInt(curThread) && right.isInt(curThread)){return(result(curThread,(int)a*(int)b,true));}
+			return(result(curThread,a*b,false));
+		}
+	}
+
+	private static final class Divide extends Binary{
+		Divide(Node left, Node right, int index, Trail trail){super(left,right,index,trail,false);}
+		@Override double eval(int curThread, boolean sample) throws Exception{
+			double a=left.eval(curThread,sample);
+			double result=a/right.eval(curThread,sample);
+			//snap to integer, as in Operators.divide
+			int test=(int) Math.round(result);
+			if(Math.abs(test-result)<MathUtils.tolerance){
+				return(result(curThread,test,true));
+			}
+			return(result(curThread,result,false));
+		}
+	}
+
+	private static final class Power extends Binary{
+		Power(Node left, Node right, int index, Trail trail){super(left,right,index,trail,false);}
+		@Override double eval(int curThread, boolean sample) throws Exception{
+			double a=left.eval(curThread,sample);
+			double b=right.eval(curThread,sample);
+			if(left.isInt(curThread) && right.isInt(curThread) && b>=0){return(result(curThread,(int)Math.pow(a,b),true));}
+			return(result(curThread,Math.pow(a,b),false));
+		}
+	}
+
+	private static final class Modulus extends Binary{
+		Modulus(Node left, Node right, int index, Trail trail){super(left,right,index,trail,false);}
+		@Override double eval(int curThread, boolean sample) throws Exception{
+			double a=left.eval(curThread,sample);
+			double b=right.eval(curThread,sample);
+			if(left.isInt(curThread) && right.isInt(curThread)){return(result(curThread,(int)a % (int)b,true));} //throws on 0
+			return(result(curThread,a % b,false));
+		}
+	}
+
+	private static final class Compare extends Binary{
+		/**
+		 * 0: ==, 1: !=, 2: <, 3: >, 4: <=, 5: >=
+		 */
+		final int op;
+		Compare(String operator, Node left, Node right, int index, Trail trail){
+			super(left,right,index,trail,true);
+			switch(operator){
+			case "==": op=0; break;
+			case "!=": op=1; break;
+			case "<": op=2; break;
+			case ">": op=3; break;
+			case "<=": op=4; break;
+			default: op=5; break;
+			}
+		}
+		@Override boolean test(int curThread, boolean sample) throws Exception{
+			double a=left.eval(curThread,sample);
+			double b=right.eval(curThread,sample);
+			switch(op){
+			case 0: return(a==b);
+			case 1: return(a!=b);
+			case 2: return(a<b);
+			case 3: return(a>b);
+			case 4: return(a<=b);
+			default: return(a>=b);
+			}
+		}
+	}
+
+	/**
+	 * Both operands are always evaluated, as in the interpreter
+	 */
+	private static final class Logical extends Binary{
+		/**
+		 * 0: &, 1: |, 2: ^|
+		 */
+		final int op;
+		Logical(String operator, Node left, Node right, int index, Trail trail){
+			super(left,right,index,trail,true);
+			if(operator.equals("&")){op=0;}
+			else if(operator.equals("|")){op=1;}
+			else{op=2;}
+		}
+		@Override boolean test(int curThread, boolean sample) throws Exception{
+			boolean a=left.test(curThread,sample);
+			boolean b=right.test(curThread,sample);
+			if(op==0){return(a && b);}
+			else if(op==1){return(a || b);}
+			return(a!=b);
+		}
+	}
+}
@@ -205,8 +205,13 @@ public class CubicSpline{
 			}
 		}
 		else{ //Interpolate
-			index=0;
-			while(x>knots[index+1] && index<numSplines-1){index++;}
+			int low=0, high=numSplines-1; //binary search for first spline with x<=right knot
+			while(low<high){
+				int mid=(low+high)>>>1;
+				if(x>knots[mid+1]){low=mid+1;}
+				else{high=mid;}
+			}
+			index=low;
 			x=x-knots[index];
 			y=splineCoeffs[index][0]+splineCoeffs[index][1]*x+splineCoeffs[index][2]*x*x+splineCoeffs[index][3]*x*x*x;
 		}
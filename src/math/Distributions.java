@@ -18,6 +18,8 @@
 
 
 package math;
+import java.util.HashMap;
+
 import main.MersenneTwisterFast;
 import math.distributions.Bernoulli;
 import math.distributions.Beta;
@@ -53,552 +55,371 @@ import math.distributions.Zipf;
 
 public final class Distributions{
 	
-	public static boolean isDistribution(String dist){
-		switch(dist){
+	/**
+	 * Distributions resolved when an expression is parsed
+	 */
+	public enum Distribution{
 		//Discrete
-		case "Bern": return(true);
-		case "Bin": return(true);
-		case "Cat": return(true);
-		case "DUnif": return(true);
-		case "Geom": return(true);
-		case "HGeom": return(true);
-		case "NBin": return(true);
-		case "Pois": return(true);
-		case "Zipf": return(true);
+		BERN("Bern",1),
+		BIN("Bin",2),
+		CAT("Cat",1),
+		DUNIF("DUnif",2),
+		GEOM("Geom",1),
+		HGEOM("HGeom",3),
+		NBIN("NBin",2),
+		POIS("Pois",1),
+		ZIPF("Zipf",2),
 		//Continuous
-		case "Beta": return(true);
-		case "Cauchy": return(true);
-		case "ChiSq": return(true);
-		case "Expo": return(true);
-		case "Gamma": return(true);
-		case "Gumbel": return(true);
-		case "HalfCauchy": return(true);
-		case "HalfNorm": return(true);
-		case "Laplace": return(true);
-		case "Logistic": return(true);
-		case "LogNorm": return(true);
-		case "Norm": return(true);
-		case "Pareto": return(true);
-		case "PERT": return(true);
-		case "StudentT": return(true);
-		case "Tri": return(true);
-		case "Unif": return(true);
-		case "Weibull": return(true);
+		BETA("Beta",2),
+		CAUCHY("Cauchy",2),
+		CHI_SQ("ChiSq",1),
+		EXPO("Expo",1),
+		GAMMA("Gamma",2),
+		GUMBEL("Gumbel",2),
+		HALF_CAUCHY("HalfCauchy",1),
+		HALF_NORM("HalfNorm",1),
+		LAPLACE("Laplace",2),
+		LOGISTIC("Logistic",2),
+		LOG_NORM("LogNorm",2),
+		NORM("Norm",2),
+		PARETO("Pareto",2),
+		PERT("PERT",3),
+		STUDENT_T("StudentT",1),
+		TRI("Tri",3),
+		UNIF("Unif",2),
+		WEIBULL("Weibull",2),
 		//Truncated
-		case "TruncNorm": return(true);
+		TRUNC_NORM("TruncNorm",4),
 		//MultiVariate
-		case "Dir": return(true);
-		case "MvNorm": return(true);
-		case "Multi": return(true);
+		DIR("Dir",1),
+		MV_NORM("MvNorm",2),
+		MULTI("Multi",2);
 		
+		final String word;
+		/**
+		 * Number of parameters, not counting the argument of f/F/Q
+		 */
+		final int numParams;
+		private static final HashMap<String,Distribution> words=new HashMap<String,Distribution>();
+		static{
+			for(Distribution cur:values()){words.put(cur.word, cur);}
+		}
+		
+		Distribution(String word, int numParams){
+			this.word=word;
+			this.numParams=numParams;
 		}
-		return(false);
 	}
 	
 	/**
-	 * 
-	 * @param dist
-	 * @param params
-	 * @param df Distribution function: 0=Density/Mass, 1=CDF, 2=Inverse CDF (quantile)
-	 * @return
-	 * @throws Exception 
+	 * Returns null if the word is not a distribution
 	 */
-	public static Numeric evaluate(String dist, Numeric params[], int df) throws NumericException{
+	public static Distribution getDistribution(String word){
+		return(Distribution.words.get(word));
+	}
+	
+	public static boolean isDistribution(String dist){
+		return(getDistribution(dist)!=null);
+	}
+	
+	/**
+	 * Returns true for univariate continuous distributions
+	 */
+	public static boolean isContinuous(Distribution dist){
 		switch(dist){
-		//Discrete
-		case "Bern":{
-			if(params.length==1){ //(p,~)
-				if(df==-1 || df==3){return(Bernoulli.mean(params));} //Sample, Mean
-				else if(df==4){return(Bernoulli.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Bern");}
-			}
-			else if(params.length==2){ //(k,p,f)
-				if(df==0){return(Bernoulli.pmf(params));} //PMF
-				else if(df==1){return(Bernoulli.cdf(params));} //CDF
-				else if(df==2){return(Bernoulli.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Bern");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Bern");}
-		}
-		case "Bin": {
-			if(params.length==2){ //(n,p,~)
-				if(df==-1 || df==3){return(Binomial.mean(params));} //Sample, Mean
-				else if(df==4){return(Binomial.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Bin");}
-			}
-			else if(params.length==3){ //(k,n,p,f)
-				if(df==0){return(Binomial.pmf(params));} //PMF
-				else if(df==1){return(Binomial.cdf(params));} //CDF
-				else if(df==2){return(Binomial.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Bin");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Bin");}
-		}
-		case "Cat":{
-			if(params.length==1){ //(p,~)
-				if(df==-1 || df==3){return(Categorical.mean(params));} //Sample, Mean
-				else if(df==4){return(Categorical.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Cat");}
-			}
-			else if(params.length==2){ //(k,p,f)
-				if(df==0){return(Categorical.pmf(params));} //PMF
-				else if(df==1){return(Categorical.cdf(params));} //CDF
-				else if(df==2){return(Categorical.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Cat");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Cat");}
-		}
-		case "DUnif": { 
-			if(params.length==2){ //(a,b,~)
-				if(df==-1 || df==3){return(DiscreteUniform.mean(params));} //Sample, Mean
-				else if(df==4){return(DiscreteUniform.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","DUnif");}
-			}
-			else if(params.length==3){ //(k,a,b,f)
-				if(df==0){return(DiscreteUniform.pmf(params));} //PMF
-				else if(df==1){return(DiscreteUniform.cdf(params));} //CDF
-				else if(df==2){return(DiscreteUniform.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","DUnif");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","DUnif");}
-		}
-		case "Geom": {
-			if(params.length==1){ //(p,~)
-				if(df==-1 || df==3){return(Geometric.mean(params));} //Sample, Mean
-				else if(df==4){return(Geometric.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Geom");}
-			}
-			else if(params.length==2){ //(k,p,f)
-				if(df==0){return(Geometric.pmf(params));} //PMF
-				else if(df==1){return(Geometric.cdf(params));} //CDF
-				else if(df==2){return(Geometric.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Geom");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Geom");}
-		}
-		case "HGeom": {
-			if(params.length==3){ //(w,b,n,~)
-				if(df==-1 || df==3){return(Hypergeometric.mean(params));} //Sample, Mean
-				else if(df==4){return(Hypergeometric.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","HGeom");}
-			}
-			else if(params.length==4){ //(k,w,b,n,f)
-				if(df==0){return(Hypergeometric.pmf(params));} //PMF
-				else if(df==1){return(Hypergeometric.cdf(params));} //CDF
-				else if(df==2){return(Hypergeometric.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","HGeom");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","HGeom");}
+		case BERN: case BIN: case CAT: case DUNIF: case GEOM: case HGEOM: case NBIN: case POIS: case ZIPF: return(false); //discrete
+		case DIR: case MV_NORM: case MULTI: return(false); //multivariate
+		default: return(true);
 		}
-		case "NBin": {
-			if(params.length==2){ //(r,p,~)
-				if(df==-1 || df==3){return(NegativeBinomial.mean(params));} //Sample, Mean
-				else if(df==4){return(NegativeBinomial.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","NBin");}
-			}
-			else if(params.length==3){ //(k,r,p,f)
-				if(df==0){return(NegativeBinomial.pmf(params));} //PMF
-				else if(df==1){return(NegativeBinomial.cdf(params));} //CDF
-				else if(df==2){return(NegativeBinomial.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","NBin");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","NBin");}
-		}
-		case "Pois": {
-			if(params.length==1){ //(λ,~)
-				if(df==-1 || df==3){return(Poisson.mean(params));} //Sample, Mean
-				else if(df==4){return(Poisson.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Pois");}
-			}
-			else if(params.length==2){ //(k,λ,f)
-				if(df==0){return(Poisson.pmf(params));} //PMF
-				else if(df==1){return(Poisson.cdf(params));} //CDF
-				else if(df==2){return(Poisson.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Pois");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Pois");}
-		}
-		case "Zipf": {
-			if(params.length==2){ //(s,n,~)
-				if(df==-1 || df==3){return(Zipf.mean(params));} //Sample, Mean
-				else if(df==4){return(Zipf.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Zipf");}
-			}
-			else if(params.length==3){ //(k,s,n,f)
-				if(df==0){return(Zipf.pmf(params));} //PMF
-				else if(df==1){return(Zipf.cdf(params));} //CDF
-				else if(df==2){return(Zipf.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Zipf");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Zipf");}
-		}
-
-		//Continuous
-		case "Beta": {
-			if(params.length==2){ //(a,b,~)
-				if(df==-1 || df==3){return(Beta.mean(params));} //Sample, Mean
-				else if(df==4){return(Beta.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Beta");}
-			}
-			else if(params.length==3){ //(x,a,b,f)
-				if(df==0){return(Beta.pdf(params));} //PDF
-				else if(df==1){return(Beta.cdf(params));} //CDF
-				else if(df==2){return(Beta.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Beta");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Beta");}
-		}
-		case "Cauchy": {
-			if(params.length==2){ //(loc,scale,~)
-				if(df==-1){ //Sample (return median) 
-					double a=params[0].getDouble(), b=params[1].getDouble();
-					if(b<=0){throw new NumericException("γ should be >0","Cauchy");}
-					return(new Numeric(a));
-				} 
-				else if(df==3){return(Cauchy.mean(params));} //Sample, Mean
-				else if(df==4){return(Cauchy.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Cauchy");}
-			}
-			else if(params.length==3){ //(x,loc,scale,f)
-				if(df==0){return(Cauchy.pdf(params));} //PDF
-				else if(df==1){return(Cauchy.cdf(params));} //CDF
-				else if(df==2){return(Cauchy.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Cauchy");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Cauchy");}
-		}
-		case "ChiSq":{
-			if(params.length==1){ //(k,~)
-				if(df==-1 || df==3){return(ChiSquare.mean(params));} //Sample, Mean
-				else if(df==4){return(ChiSquare.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","ChiSq");}
-			}
-			else if(params.length==2){ //(x,k,f)
-				if(df==0){return(ChiSquare.pdf(params));} //PDF
-				else if(df==1){return(ChiSquare.cdf(params));} //CDF
-				else if(df==2){return(ChiSquare.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","ChiSq");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","ChiSq");}
-		}
-		case "Expo": {
-			if(params.length==1){ //(lambda,~)
-				if(df==-1 || df==3){return(Exponential.mean(params));} //Sample, Mean
-				else if(df==4){return(Exponential.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Expo");}
-			}
-			else if(params.length==2){//(x,lambda,f): 
-				if(df==0){return(Exponential.pdf(params));} //PDF
-				else if(df==1){return(Exponential.cdf(params));} //CDF
-				else if(df==2){return(Exponential.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Expo");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Expo");}
-		}
-		case "Gamma":{
-			if(params.length==2){ //(k,theta,~)
-				if(df==-1 || df==3){return(Gamma.mean(params));} //Sample, Mean
-				else if(df==4){return(Gamma.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Gamma");}
-			}
-			else if(params.length==3){ //(x,k,theta,f)
-				if(df==0){return(Gamma.pdf(params));} //PDF
-				else if(df==1){return(Gamma.cdf(params));} //CDF
-				else if(df==2){return(Gamma.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Gamma");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Gamma");}
-		}
-		case "Gumbel":{
-			if(params.length==2){ //(mu,beta,~)
-				if(df==-1 || df==3){return(Gumbel.mean(params));} //Sample, Mean
-				else if(df==4){return(Gumbel.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Gumbel");}
-			}
-			else if(params.length==3){ //(x,mu,beta,f)
-				if(df==0){return(Gumbel.pdf(params));} //PDF
-				else if(df==1){return(Gumbel.cdf(params));} //CDF
-				else if(df==2){return(Gumbel.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Gumbel");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Gumbel");}
-		}
-		case "HalfCauchy":{
-			if(params.length==1){ //(gamma,~)
-				if(df==-1){ //Sample (return median)
-					double gamma=params[0].getDouble();
-					if(gamma<=0){throw new NumericException("γ should be >0","HalfCauchy");}
-					return(new Numeric(gamma)); //median
-				}
-				else if(df==3){return(HalfCauchy.mean(params));} //Mean
-				else if(df==4){return(HalfCauchy.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","HalfCauchy");}
-			}
-			else if(params.length==2){ //(x,gamma,f)
-				if(df==0){return(HalfCauchy.pdf(params));} //PDF
-				else if(df==1){return(HalfCauchy.cdf(params));} //CDF
-				else if(df==2){return(HalfCauchy.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","HalfCauchy");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","HalfCauchy");}
-		}
-		case "HalfNorm":{
-			if(params.length==1){ //(sigma,~)
-				if(df==-1 || df==3){return(HalfNormal.mean(params));} //Sample, Mean
-				else if(df==4){return(HalfNormal.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","HalfNorm");}
-			}
-			else if(params.length==2){ //(x,sigma,f)
-				if(df==0){return(HalfNormal.pdf(params));} //PDF
-				else if(df==1){return(HalfNormal.cdf(params));} //CDF
-				else if(df==2){return(HalfNormal.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","HalfNorm");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","HalfNorm");}
-		}
-		case "Laplace": {
-			if(params.length==2){ //(mu,b,~)
-				if(df==-1 || df==3){return(Laplace.mean(params));} //Sample, Mean
-				else if(df==4){return(Laplace.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Laplace");}
-			}
-			else if(params.length==3){ // (x,mu,b,f)
-				if(df==0){return(Laplace.pdf(params));} //PDF
-				else if(df==1){return(Laplace.cdf(params));} //CDF
-				else if(df==2){return(Laplace.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Laplace");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Laplace");}
-		}
-		case "Logistic": {
-			if(params.length==2){ //(mu,s,~)
-				if(df==-1 || df==3){return(Logistic.mean(params));} //Sample, Mean
-				else if(df==4){return(Logistic.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Logistic");}
-			}
-			else if(params.length==3){ //(x,mu,s,f)
-				if(df==0){return(Logistic.pdf(params));} //PDF
-				else if(df==1){return(Logistic.cdf(params));} //CDF
-				else if(df==2){return(Logistic.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Logistic");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Logistic");}
-		}
-		case "LogNorm": {
-			if(params.length==2){ //(mu,sigma,~)
-				if(df==-1 || df==3){return(LogNormal.mean(params));} //Sample, Mean
-				else if(df==4){return(LogNormal.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","LogNorm");}
-			}
-			else if(params.length==3){ //(x,mu,sigma,f)
-				if(df==0){return(LogNormal.pdf(params));} //PDF
-				else if(df==1){return(LogNormal.cdf(params));} //CDF
-				else if(df==2){return(LogNormal.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","LogNorm");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","LogNorm");}
-		}
-		case "Norm": {
-			if(params.length==2){ //(mu,sigma,~)
-				if(df==-1 || df==3){return(Normal.mean(params));} //Sample, Mean
-				else if(df==4){return(Normal.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Norm");}
-			}
-			else if(params.length==3){ //(x,mu,sigma,f)
-				if(df==0){return(Normal.pdf(params));} //PDF
-				else if(df==1){return(Normal.cdf(params));} //CDF
-				else if(df==2){return(Normal.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Norm");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Norm");}
+	}
+	
+	/**
+	 * Checks the number of parameters and the distribution function
+	 * @param numParams Number of parameters passed, including the argument of f/F/Q
+	 * @param df -1: ~, 0: f, 1: F, 2: Q, 3: E, 4: V
+	 */
+	public static void checkParams(Distribution dist, int numParams, int df) throws NumericException{
+		if(numParams==dist.numParams){ //(params,~)
+			if(df==-1 || df==3 || df==4){return;}
 		}
-		case "Pareto": {
-			if(params.length==2){ //(k,alpha,~)
-				if(df==-1 || df==3){return(Pareto.mean(params));} //Sample, Mean
-				else if(df==4){return(Pareto.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Pareto");}
-			}
-			else if(params.length==3){ //(x,k,alpha,f)
-				if(df==0){return(Pareto.pdf(params));} //PDF
-				else if(df==1){return(Pareto.cdf(params));} //CDF
-				else if(df==2){return(Pareto.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Pareto");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Pareto");}
+		else if(numParams==dist.numParams+1){ //(x,params,f)
+			if(df==0 || df==1 || df==2){return;}
 		}
-		case "PERT": { 
-			if(params.length==3){ //(a,b,c,~)
-				if(df==-1 || df==3){return(PERT.mean(params));} //Sample, Mean
-				else if(df==4){return(PERT.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","PERT");}
-			}
-			else if(params.length==4){ //(x,a,b,c,f)
-				if(df==0){return(PERT.pdf(params));} //PDF
-				else if(df==1){return(PERT.cdf(params));} //CDF
-				else if(df==2){return(PERT.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","PERT");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","PERT");}
+		else{throw new NumericException("Incorrect number of parameters",dist.word);}
+		throw new NumericException("Invalid parameters",dist.word);
+	}
+	
+	public static Numeric evaluate(String dist, Numeric params[], int df) throws NumericException{
+		Distribution distribution=getDistribution(dist);
+		if(distribution==null){return(null);} //not a distribution
+		checkParams(distribution,params.length,df);
+		return(evaluate(distribution,params,df));
+	}
+	
+	/**
+	 * Parameters should already have been checked by checkParams
+	 * @param df Distribution function: -1=Base case (not sampled), 0=Density/Mass, 1=CDF, 2=Inverse CDF (quantile), 3=Mean, 4=Variance
+	 */
+	public static Numeric evaluate(Distribution dist, Numeric params[], int df) throws NumericException{
+		switch(df){
+		case -1: return(baseCase(dist,params));
+		case 0: return(density(dist,params));
+		case 1: return(cdf(dist,params));
+		case 2: return(quantile(dist,params));
+		case 3: return(mean(dist,params));
+		case 4: return(variance(dist,params));
 		}
-		case "StudentT":{
-			if(params.length==1){ //(nu,~)
-				if(df==-1){return(new Numeric(0));} //Sample (median) 
-				else if(df==3){return(StudentT.mean(params));} //Mean
-				else if(df==4){return(StudentT.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","StudentT");}
-			}
-			else if(params.length==2){ //(x,nu,f)
-				if(df==0){return(StudentT.pdf(params));} //PDF
-				else if(df==1){return(StudentT.cdf(params));} //CDF
-				else if(df==2){return(StudentT.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","StudentT");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","StudentT");}
+		return(null);
+	}
+	
+	/**
+	 * Value used in place of a sample: the mean, or the median if the mean is undefined
+	 */
+	private static Numeric baseCase(Distribution dist, Numeric params[]) throws NumericException{
+		switch(dist){
+		case CAUCHY:{ //median
+			double a=params[0].getDouble(), b=params[1].getDouble();
+			if(b<=0){throw new NumericException("γ should be >0","Cauchy");}
+			return(new Numeric(a));
 		}
-		case "Tri": {
-			if(params.length==3){ //(a,b,c,~)
-				if(df==-1 || df==3){return(Triangular.mean(params));} //Sample, Mean
-				else if(df==4){return(Triangular.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Tri");}
-			}
-			else if(params.length==4){ //(x,a,b,c,f)
-				if(df==0){return(Triangular.pdf(params));} //PDF
-				else if(df==1){return(Triangular.cdf(params));} //CDF
-				else if(df==2){return(Triangular.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Tri");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Tri");}
+		case HALF_CAUCHY:{ //median
+			double gamma=params[0].getDouble();
+			if(gamma<=0){throw new NumericException("γ should be >0","HalfCauchy");}
+			return(new Numeric(gamma));
 		}
-		case "Unif": {
-			if(params.length==2){ //(a,b,~)
-				if(df==-1 || df==3){return(Uniform.mean(params));} //Sample, Mean
-				else if(df==4){return(Uniform.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Unif");}
-			}
-			else if(params.length==3){ //(x,a,b,f)
-				if(df==0){return(Uniform.pdf(params));} //PDF
-				else if(df==1){return(Uniform.cdf(params));} //CDF
-				else if(df==2){return(Uniform.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Unif");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Unif");}
+		case STUDENT_T: return(new Numeric(0)); //median
+		default: return(mean(dist,params));
 		}
-		case "Weibull": {
-			if(params.length==2){ //(a,b,~)
-				if(df==-1 || df==3){return(Weibull.mean(params));} //Sample, Mean
-				else if(df==4){return(Weibull.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Weibull");}
-			}
-			else if(params.length==3){ //(x,a,b,f)
-				if(df==0){return(Weibull.pdf(params));} //PDF
-				else if(df==1){return(Weibull.cdf(params));} //CDF
-				else if(df==2){return(Weibull.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Weibull");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Weibull");}
+	}
+	
+	private static Numeric mean(Distribution dist, Numeric params[]) throws NumericException{
+		switch(dist){
+		case BERN: return(Bernoulli.mean(params));
+		case BIN: return(Binomial.mean(params));
+		case CAT: return(Categorical.mean(params));
+		case DUNIF: return(DiscreteUniform.mean(params));
+		case GEOM: return(Geometric.mean(params));
+		case HGEOM: return(Hypergeometric.mean(params));
+		case NBIN: return(NegativeBinomial.mean(params));
+		case POIS: return(Poisson.mean(params));
+		case ZIPF: return(Zipf.mean(params));
+		case BETA: return(Beta.mean(params));
+		case CAUCHY: return(Cauchy.mean(params));
+		case CHI_SQ: return(ChiSquare.mean(params));
+		case EXPO: return(Exponential.mean(params));
+		case GAMMA: return(Gamma.mean(params));
+		case GUMBEL: return(Gumbel.mean(params));
+		case HALF_CAUCHY: return(HalfCauchy.mean(params));
+		case HALF_NORM: return(HalfNormal.mean(params));
+		case LAPLACE: return(Laplace.mean(params));
+		case LOGISTIC: return(Logistic.mean(params));
+		case LOG_NORM: return(LogNormal.mean(params));
+		case NORM: return(Normal.mean(params));
+		case PARETO: return(Pareto.mean(params));
+		case PERT: return(PERT.mean(params));
+		case STUDENT_T: return(StudentT.mean(params));
+		case TRI: return(Triangular.mean(params));
+		case UNIF: return(Uniform.mean(params));
+		case WEIBULL: return(Weibull.mean(params));
+		case TRUNC_NORM: return(TruncatedNormal.mean(params));
+		case DIR: return(Dirichlet.mean(params));
+		case MV_NORM: return(MultivariateNormal.mean(params));
+		case MULTI: return(Multinomial.mean(params));
 		}
-
-		//Truncated
-		case "TruncNorm": {
-			if(params.length==4){ //(mu,sigma,a,b,~) return mean
-				if(df==-1 || df==3){return(TruncatedNormal.mean(params));} //Sample, Mean
-				else if(df==4){return(TruncatedNormal.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","TruncNorm");}
-			}
-			else if(params.length==5){ //(x,mu,sigma,a,b,f)
-				if(df==0){return(TruncatedNormal.pdf(params));} //PDF
-				else if(df==1){return(TruncatedNormal.cdf(params));} //CDF
-				else if(df==2){return(TruncatedNormal.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","TruncNorm");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","TruncNorm");}
+		return(null);
+	}
+	
+	private static Numeric variance(Distribution dist, Numeric params[]) throws NumericException{
+		switch(dist){
+		case BERN: return(Bernoulli.variance(params));
+		case BIN: return(Binomial.variance(params));
+		case CAT: return(Categorical.variance(params));
+		case DUNIF: return(DiscreteUniform.variance(params));
+		case GEOM: return(Geometric.variance(params));
+		case HGEOM: return(Hypergeometric.variance(params));
+		case NBIN: return(NegativeBinomial.variance(params));
+		case POIS: return(Poisson.variance(params));
+		case ZIPF: return(Zipf.variance(params));
+		case BETA: return(Beta.variance(params));
+		case CAUCHY: return(Cauchy.variance(params));
+		case CHI_SQ: return(ChiSquare.variance(params));
+		case EXPO: return(Exponential.variance(params));
+		case GAMMA: return(Gamma.variance(params));
+		case GUMBEL: return(Gumbel.variance(params));
+		case HALF_CAUCHY: return(HalfCauchy.variance(params));
+		case HALF_NORM: return(HalfNormal.variance(params));
+		case LAPLACE: return(Laplace.variance(params));
+		case LOGISTIC: return(Logistic.variance(params));
+		case LOG_NORM: return(LogNormal.variance(params));
+		case NORM: return(Normal.variance(params));
+		case PARETO: return(Pareto.variance(params));
+		case PERT: return(PERT.variance(params));
+		case STUDENT_T: return(StudentT.variance(params));
+		case TRI: return(Triangular.variance(params));
+		case UNIF: return(Uniform.variance(params));
+		case WEIBULL: return(Weibull.variance(params));
+		case TRUNC_NORM: return(TruncatedNormal.variance(params));
+		case DIR: return(Dirichlet.variance(params));
+		case MV_NORM: return(MultivariateNormal.variance(params));
+		case MULTI: return(Multinomial.variance(params));
 		}
-		
-		//Multivariate
-		case "Dir": {
-			if(params.length==1){ //(alpha) return mean
-				if(df==-1 || df==3){return(Dirichlet.mean(params));} //Sample, Mean
-				else if(df==4){return(Dirichlet.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Dir");}
-			}
-			else if(params.length==2){ //(x,alpha,f)
-				if(df==0){return(Dirichlet.pdf(params));} //PDF
-				else if(df==1){return(Dirichlet.cdf(params));} //CDF
-				else if(df==2){return(Dirichlet.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Dir");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Dir");}
+		return(null);
+	}
+	
+	private static Numeric density(Distribution dist, Numeric params[]) throws NumericException{
+		switch(dist){
+		case BERN: return(Bernoulli.pmf(params));
+		case BIN: return(Binomial.pmf(params));
+		case CAT: return(Categorical.pmf(params));
+		case DUNIF: return(DiscreteUniform.pmf(params));
+		case GEOM: return(Geometric.pmf(params));
+		case HGEOM: return(Hypergeometric.pmf(params));
+		case NBIN: return(NegativeBinomial.pmf(params));
+		case POIS: return(Poisson.pmf(params));
+		case ZIPF: return(Zipf.pmf(params));
+		case BETA: return(Beta.pdf(params));
+		case CAUCHY: return(Cauchy.pdf(params));
+		case CHI_SQ: return(ChiSquare.pdf(params));
+		case EXPO: return(Exponential.pdf(params));
+		case GAMMA: return(Gamma.pdf(params));
+		case GUMBEL: return(Gumbel.pdf(params));
+		case HALF_CAUCHY: return(HalfCauchy.pdf(params));
+		case HALF_NORM: return(HalfNormal.pdf(params));
+		case LAPLACE: return(Laplace.pdf(params));
+		case LOGISTIC: return(Logistic.pdf(params));
+		case LOG_NORM: return(LogNormal.pdf(params));
+		case NORM: return(Normal.pdf(params));
+		case PARETO: return(Pareto.pdf(params));
+		case PERT: return(PERT.pdf(params));
+		case STUDENT_T: return(StudentT.pdf(params));
+		case TRI: return(Triangular.pdf(params));
+		case UNIF: return(Uniform.pdf(params));
+		case WEIBULL: return(Weibull.pdf(params));
+		case TRUNC_NORM: return(TruncatedNormal.pdf(params));
+		case DIR: return(Dirichlet.pdf(params));
+		case MV_NORM: return(MultivariateNormal.pdf(params));
+		case MULTI: return(Multinomial.pmf(params));
 		}
-		case "MvNorm": {
-			if(params.length==2){ //(mu,sigma) return mean
-				if(df==-1 || df==3){return(MultivariateNormal.mean(params));} //Sample, Mean
-				else if(df==4){return(MultivariateNormal.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","MvNorm");}
-			}
-			else if(params.length==3){ //(x,mu,sigma,f)
-				if(df==0){return(MultivariateNormal.pdf(params));} //PDF
-				else if(df==1){return(MultivariateNormal.cdf(params));} //CDF
-				else if(df==2){return(MultivariateNormal.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","MvNorm");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","MvNorm");}
+		return(null);
+	}
+	
+	private static Numeric cdf(Distribution dist, Numeric params[]) throws NumericException{
+		switch(dist){
+		case BERN: return(Bernoulli.cdf(params));
+		case BIN: return(Binomial.cdf(params));
+		case CAT: return(Categorical.cdf(params));
+		case DUNIF: return(DiscreteUniform.cdf(params));
+		case GEOM: return(Geometric.cdf(params));
+		case HGEOM: return(Hypergeometric.cdf(params));
+		case NBIN: return(NegativeBinomial.cdf(params));
+		case POIS: return(Poisson.cdf(params));
+		case ZIPF: return(Zipf.cdf(params));
+		case BETA: return(Beta.cdf(params));
+		case CAUCHY: return(Cauchy.cdf(params));
+		case CHI_SQ: return(ChiSquare.cdf(params));
+		case EXPO: return(Exponential.cdf(params));
+		case GAMMA: return(Gamma.cdf(params));
+		case GUMBEL: return(Gumbel.cdf(params));
+		case HALF_CAUCHY: return(HalfCauchy.cdf(params));
+		case HALF_NORM: return(HalfNormal.cdf(params));
+		case LAPLACE: return(Laplace.cdf(params));
+		case LOGISTIC: return(Logistic.cdf(params));
+		case LOG_NORM: return(LogNormal.cdf(params));
+		case NORM: return(Normal.cdf(params));
+		case PARETO: return(Pareto.cdf(params));
+		case PERT: return(PERT.cdf(params));
+		case STUDENT_T: return(StudentT.cdf(params));
+		case TRI: return(Triangular.cdf(params));
+		case UNIF: return(Uniform.cdf(params));
+		case WEIBULL: return(Weibull.cdf(params));
+		case TRUNC_NORM: return(TruncatedNormal.cdf(params));
+		case DIR: return(Dirichlet.cdf(params));
+		case MV_NORM: return(MultivariateNormal.cdf(params));
+		case MULTI: return(Multinomial.cdf(params));
 		}
-		case "Multi": {
-			if(params.length==2){ //(n,p,~) return mean
-				if(df==-1 || df==3){return(Multinomial.mean(params));} //Sample, Mean
-				else if(df==4){return(Multinomial.variance(params));} //Variance
-				else{throw new NumericException("Invalid parameters","Multi");}
-			}
-			else if(params.length==3){ //(k,n,p,f)
-				if(df==0){return(Multinomial.pmf(params));} //PMF
-				else if(df==1){return(Multinomial.cdf(params));} //CDF
-				else if(df==2){return(Multinomial.quantile(params));} //Quantile
-				else{throw new NumericException("Invalid parameters","Multi");}
-			}
-			else{throw new NumericException("Incorrect number of parameters","Multi");}
+		return(null);
+	}
+	
+	private static Numeric quantile(Distribution dist, Numeric params[]) throws NumericException{
+		switch(dist){
+		case BERN: return(Bernoulli.quantile(params));
+		case BIN: return(Binomial.quantile(params));
+		case CAT: return(Categorical.quantile(params));
+		case DUNIF: return(DiscreteUniform.quantile(params));
+		case GEOM: return(Geometric.quantile(params));
+		case HGEOM: return(Hypergeometric.quantile(params));
+		case NBIN: return(NegativeBinomial.quantile(params));
+		case POIS: return(Poisson.quantile(params));
+		case ZIPF: return(Zipf.quantile(params));
+		case BETA: return(Beta.quantile(params));
+		case CAUCHY: return(Cauchy.quantile(params));
+		case CHI_SQ: return(ChiSquare.quantile(params));
+		case EXPO: return(Exponential.quantile(params));
+		case GAMMA: return(Gamma.quantile(params));
+		case GUMBEL: return(Gumbel.quantile(params));
+		case HALF_CAUCHY: return(HalfCauchy.quantile(params));
+		case HALF_NORM: return(HalfNormal.quantile(params));
+		case LAPLACE: return(Laplace.quantile(params));
+		case LOGISTIC: return(Logistic.quantile(params));
+		case LOG_NORM: return(LogNormal.quantile(params));
+		case NORM: return(Normal.quantile(params));
+		case PARETO: return(Pareto.quantile(params));
+		case PERT: return(PERT.quantile(params));
+		case STUDENT_T: return(StudentT.quantile(params));
+		case TRI: return(Triangular.quantile(params));
+		case UNIF: return(Uniform.quantile(params));
+		case WEIBULL: return(Weibull.quantile(params));
+		case TRUNC_NORM: return(TruncatedNormal.quantile(params));
+		case DIR: return(Dirichlet.quantile(params));
+		case MV_NORM: return(MultivariateNormal.quantile(params));
+		case MULTI: return(Multinomial.quantile(params));
 		}
-
-		} //End switch
 		return(null);
 	}
-
+	
 	public static Numeric sample(String dist, Numeric params[], MersenneTwisterFast generator) throws NumericException{
+		Distribution distribution=getDistribution(dist);
+		if(distribution==null){return(null);} //not a distribution
+		return(sample(distribution,params,generator));
+	}
+	
+	public static Numeric sample(Distribution dist, Numeric params[], MersenneTwisterFast generator) throws NumericException{
 		switch(dist){
 		//Discrete
-		case "Bern": return(Bernoulli.sample(params, generator));
-		case "Bin": return(Binomial.sample(params, generator));
-		case "Cat": return(Categorical.sample(params, generator));
-		case "DUnif": return(DiscreteUniform.sample(params, generator));
-		case "Geom": return(Geometric.sample(params, generator));
-		case "HGeom": return(Hypergeometric.sample(params, generator));
-		case "NBin": return(NegativeBinomial.sample(params, generator));
-		case "Pois": return(Poisson.sample(params, generator));
-		case "Zipf": return(Zipf.sample(params, generator));
+		case BERN: return(Bernoulli.sample(params, generator));
+		case BIN: return(Binomial.sample(params, generator));
+		case CAT: return(Categorical.sample(params, generator));
+		case DUNIF: return(DiscreteUniform.sample(params, generator));
+		case GEOM: return(Geometric.sample(params, generator));
+		case HGEOM: return(Hypergeometric.sample(params, generator));
+		case NBIN: return(NegativeBinomial.sample(params, generator));
+		case POIS: return(Poisson.sample(params, generator));
+		case ZIPF: return(Zipf.sample(params, generator));
 		//Continuous
-		case "Beta": return(Beta.sample(params, generator));
-		case "Cauchy": return(Cauchy.sample(params, generator));
-		case "ChiSq": return(ChiSquare.sample(params, generator));
-		case "Expo": return(Exponential.sample(params, generator));
-		case "Gamma": return(Gamma.sample(params, generator));
-		case "Gumbel": return(Gumbel.sample(params, generator));
-		case "HalfCauchy": return(HalfCauchy.sample(params, generator));
-		case "HalfNorm": return(HalfNormal.sample(params, generator));
-		case "Laplace": return(Laplace.sample(params, generator));
-		case "Logistic": return(Logistic.sample(params, generator));
-		case "LogNorm": return(LogNormal.sample(params, generator));
-		case "Norm": return(Normal.sample(params, generator));
-		case "Pareto": return(Pareto.sample(params, generator));
-		case "PERT": return(PERT.sample(params, generator));
-		case "StudentT": return(StudentT.sample(params, generator));
-		case "Tri": return(Triangular.sample(params, generator));
-		case "Unif": return(Uniform.sample(params, generator));
-		case "Weibull": return(Weibull.sample(params, generator));
+		case BETA: return(Beta.sample(params, generator));
+		case CAUCHY: return(Cauchy.sample(params, generator));
+		case CHI_SQ: return(ChiSquare.sample(params, generator));
+		case EXPO: return(Exponential.sample(params, generator));
+		case GAMMA: return(Gamma.sample(params, generator));
+		case GUMBEL: return(Gumbel.sample(params, generator));
+		case HALF_CAUCHY: return(HalfCauchy.sample(params, generator));
+		case HALF_NORM: return(HalfNormal.sample(params, generator));
+		case LAPLACE: return(Laplace.sample(params, generator));
+		case LOGISTIC: return(Logistic.sample(params, generator));
+		case LOG_NORM: return(LogNormal.sample(params, generator));
+		case NORM: return(Normal.sample(params, generator));
+		case PARETO: return(Pareto.sample(params, generator));
+		case PERT: return(PERT.sample(params, generator));
+		case STUDENT_T: return(StudentT.sample(params, generator));
+		case TRI: return(Triangular.sample(params, generator));
+		case UNIF: return(Uniform.sample(params, generator));
+		case WEIBULL: return(Weibull.sample(params, generator));
 		//Truncated
-		case "TruncNorm": return(TruncatedNormal.sample(params, generator));
+		case TRUNC_NORM: return(TruncatedNormal.sample(params, generator));
 		//Multivariate
-		case "Dir": return(Dirichlet.sample(params, generator));
-		case "MvNorm": return(MultivariateNormal.sample(params, generator));
-		case "Multi": return(Multinomial.sample(params, generator));
+		case DIR: return(Dirichlet.sample(params, generator));
+		case MV_NORM: return(MultivariateNormal.sample(params, generator));
+		case MULTI: return(Multinomial.sample(params, generator));
 	
 		} //End switch
 		return(null);
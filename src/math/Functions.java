@@ -21,66 +21,93 @@ package math;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 
 import org.apache.commons.math3.special.Erf;
 import org.apache.commons.math3.special.Gamma;
 
 public final class Functions{
 
-	public static boolean isFunction(String word){
-		switch(word){
-		case "abs": return(true);
-		case "acos": return(true);
-		case "asin": return(true);
-		case "atan": return(true);
-		case "bound": return(true);
-		case "cbrt": return(true);
-		case "ceil": return(true);
-		case "choose": return(true);
-		case "cos": return(true);
-		case "cosh": return(true);
-		case "erf": return(true);
-		case "exp": return(true);
-		case "fact": return(true);
-		case "floor": return(true);
-		case "gamma": return(true);
-		case "hypot": return(true);
-		case "if": return(true);
-		case "invErf": return(true);
-		case "log": return(true);
-		case "logb": return(true);
-		case "logGamma": return(true);
-		case "log10": return(true);
-		case "logit": return(true);
-		case "logistic": return(true);
-		case "max": return(true);
-		case "min": return(true);
-		case "probRescale": return(true);
-		case "probToRate": return(true);
-		case "probit": return(true);
-		case "rateToProb": return(true);
-		case "round": return(true);
-		case "sin": return(true);
-		case "sinh": return(true);
-		case "sqrt": return(true);
-		case "tan": return(true);
-		case "tanh": return(true);
-		case "signum": return(true);
+	/**
+	 * Functions are resolved once when an expression is parsed, so evaluation switches on the constant instead of the name
+	 */
+	public enum Function{
+		ABS("abs"),
+		ACOS("acos"),
+		ASIN("asin"),
+		ATAN("atan"),
+		BOUND("bound"),
+		CBRT("cbrt"),
+		CEIL("ceil"),
+		CHOOSE("choose"),
+		COS("cos"),
+		COSH("cosh"),
+		ERF("erf"),
+		EXP("exp"),
+		FACT("fact"),
+		FLOOR("floor"),
+		GAMMA("gamma"),
+		HYPOT("hypot"),
+		IF("if"),
+		INV_ERF("invErf"),
+		LOG("log"),
+		LOGB("logb"),
+		LOG_GAMMA("logGamma"),
+		LOG10("log10"),
+		LOGIT("logit"),
+		LOGISTIC("logistic"),
+		MAX("max"),
+		MIN("min"),
+		PROB_RESCALE("probRescale"),
+		PROB_TO_RATE("probToRate"),
+		PROBIT("probit"),
+		RATE_TO_PROB("rateToProb"),
+		ROUND("round"),
+		SIN("sin"),
+		SINH("sinh"),
+		SQRT("sqrt"),
+		TAN("tan"),
+		TANH("tanh"),
+		SIGNUM("signum"),
 		//Summary functions
-		case "mean": return(true);
-		case "product": return(true);
-		case "quantile": return(true);
-		case "sd": return(true);
-		case "sum": return(true);
-		case "var": return(true);
+		MEAN("mean"),
+		PRODUCT("product"),
+		QUANTILE("quantile"),
+		SD("sd"),
+		SUM("sum"),
+		VAR("var");
 		
+		final String word;
+		private static final HashMap<String,Function> words=new HashMap<String,Function>();
+		static{
+			for(Function cur:values()){words.put(cur.word, cur);}
 		}
-		return(false); //fell through
+		
+		Function(String word){
+			this.word=word;
+		}
+	}
+	
+	/**
+	 * Returns null if the word is not a function
+	 */
+	public static Function getFunction(String word){
+		return(Function.words.get(word));
+	}
+	
+	public static boolean isFunction(String word){
+		return(getFunction(word)!=null);
 	}
 
 	public static Numeric evaluate(String fx, Numeric...args) throws NumericException{
-		switch(fx){
-		case "abs":{ //absolute value 
+		Function function=getFunction(fx);
+		if(function==null){return(new Numeric(Double.NaN));} //not a function
+		return(evaluate(function,args));
+	}
+	
+	public static Numeric evaluate(Function function, Numeric...args) throws NumericException{
+		switch(function){
+		case ABS:{ //absolute value 
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","abs");}
 			if(args[0].format==Format.INTEGER){
 				return(new Numeric(Math.abs(args[0].getInt())));
@@ -98,7 +125,7 @@ public final class Functions{
 				return(new Numeric(rMatrix));
 			}
 		}
-		case "acos":{ //arccosine
+		case ACOS:{ //arccosine
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","acos");}
 			if(args[0].format!=Format.MATRIX){
 				double x=args[0].getDouble();
@@ -117,7 +144,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "asin":{ //arcsine
+		case ASIN:{ //arcsine
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","asin");}
 			if(args[0].format!=Format.MATRIX){
 				double x=args[0].getDouble();
@@ -136,7 +163,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "atan":{ //arctan
+		case ATAN:{ //arctan
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","atan");}
 			if(args[0].format!=Format.MATRIX){
 				return(new Numeric(Math.atan(args[0].getDouble())));
@@ -152,7 +179,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "bound":{
+		case BOUND:{
 			if(args.length!=3){throw new NumericException("Function takes 3 arguments","bound");}
 			double a=args[1].getDouble(), b=args[2].getDouble();
 			if(a>=b){throw new NumericException("a should be <b","bound");}
@@ -175,7 +202,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "cbrt":{ //cube root
+		case CBRT:{ //cube root
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","cbrt");}
 			if(args[0].format!=Format.MATRIX){
 				return(new Numeric(Math.cbrt(args[0].getDouble())));
@@ -191,7 +218,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "ceil":{ //ceiling
+		case CEIL:{ //ceiling
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","ceil");}
 			if(args[0].format!=Format.MATRIX){
 				return(new Numeric((int)Math.ceil(args[0].getDouble())));
@@ -207,11 +234,11 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "choose":{ //n choose k
+		case CHOOSE:{ //n choose k
 			if(args.length!=2){throw new NumericException("Function takes 2 arguments","choose");}
 			return(new Numeric(MathUtils.choose(args[0].getInt(), args[1].getInt()))); 
 		}
-		case "cos":{ //cosine
+		case COS:{ //cosine
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","cos");}
 			if(args[0].format!=Format.MATRIX){
 				return(new Numeric(Math.cos(args[0].getDouble()))); 
@@ -227,7 +254,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "cosh":{ //hyperbolic cosine
+		case COSH:{ //hyperbolic cosine
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","cosh");}
 			if(args[0].format!=Format.MATRIX){
 				return(new Numeric(Math.cosh(args[0].getDouble())));
@@ -243,7 +270,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "erf":{ //error function
+		case ERF:{ //error function
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","erf");}
 			if(args[0].format!=Format.MATRIX){
 				return(new Numeric(Erf.erf(args[0].getDouble())));
@@ -259,7 +286,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "exp":{ //exp
+		case EXP:{ //exp
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","exp");}
 			if(args[0].format!=Format.MATRIX){
 				return(new Numeric(Math.exp(args[0].getDouble())));
@@ -275,13 +302,13 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "fact": { //factorial
+		case FACT: { //factorial
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","fact");}
 			int n=args[0].getInt();
 			if(n<0){throw new NumericException("n should be ≥0","fact");}
 			return(new Numeric(MathUtils.factorial(args[0].getInt()))); 
 		}
-		case "floor":{ //floor
+		case FLOOR:{ //floor
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","floor");}
 			if(args[0].format!=Format.MATRIX){
 				return(new Numeric((int)Math.floor(args[0].getDouble())));
@@ -297,7 +324,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "gamma":{ //gamma
+		case GAMMA:{ //gamma
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","gamma");}
 			if(args[0].format!=Format.MATRIX){
 				double x=args[0].getDouble();
@@ -316,16 +343,16 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "hypot":{ //hypotenuse
+		case HYPOT:{ //hypotenuse
 			if(args.length!=2){throw new NumericException("Function takes 2 arguments","hypot");}
 			return(new Numeric(Math.hypot(args[0].getDouble(),args[1].getDouble()))); 
 		}
-		case "if":{
+		case IF:{
 			if(args.length!=3){throw new NumericException("Function takes 3 arguments","if");}
 			if(args[0].getBool()==true){return(args[1]);}
 			else{return(args[2]);}
 		}
-		case "invErf":{ //inverse error function
+		case INV_ERF:{ //inverse error function
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","invErf");}
 			if(args[0].format!=Format.MATRIX){
 				double x=args[0].getDouble();
@@ -344,7 +371,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "log":{ //natural log
+		case LOG:{ //natural log
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","log");}
 			if(args[0].format!=Format.MATRIX){
 				double x=args[0].getDouble();
@@ -363,7 +390,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "logb": { //log base b
+		case LOGB: { //log base b
 			if(args.length!=2){throw new NumericException("Function takes 2 arguments","logb");}
 			if(args[0].format!=Format.MATRIX){ //real number
 				double x=args[0].getDouble();
@@ -388,7 +415,7 @@ public final class Functions{
 			}
 		}
 		
-		case "logGamma":{ //log gamma
+		case LOG_GAMMA:{ //log gamma
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","logGamma");}
 			if(args[0].format!=Format.MATRIX){
 				double x=args[0].getDouble();
@@ -407,7 +434,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "log10":{ //log base 10
+		case LOG10:{ //log base 10
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","log10");}
 			if(args[0].format!=Format.MATRIX){
 				double x=args[0].getDouble();
@@ -426,7 +453,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "logit":{ //logit
+		case LOGIT:{ //logit
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","logit");}
 			if(args[0].format!=Format.MATRIX){
 				double x=args[0].getDouble();
@@ -445,7 +472,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "logistic":{ //logistic
+		case LOGISTIC:{ //logistic
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","logistic");}
 			if(args[0].format!=Format.MATRIX){
 				double x=args[0].getDouble();
@@ -462,7 +489,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "max":{ //max(a,b)
+		case MAX:{ //max(a,b)
 			if(args.length!=2){throw new NumericException("Function takes 2 arguments","max");}
 			if(args[0].isInteger() && args[1].isInteger()){ //preserve integer type
 				return(new Numeric(Math.max(args[0].getInt(), args[1].getInt())));
@@ -471,7 +498,7 @@ public final class Functions{
 				return(new Numeric(Math.max(args[0].getDouble(), args[1].getDouble())));
 			}
 		}
-		case "min":{ //min(a,b)
+		case MIN:{ //min(a,b)
 			if(args.length!=2){throw new NumericException("Function takes 2 arguments","min");}
 			if(args[0].isInteger() && args[1].isInteger()){ //preserve integer type
 				return(new Numeric(Math.min(args[0].getInt(), args[1].getInt())));
@@ -480,7 +507,7 @@ public final class Functions{
 				return(new Numeric(Math.min(args[0].getDouble(), args[1].getDouble())));
 			}
 		}
-		case "probRescale":{ //prob to prob
+		case PROB_RESCALE:{ //prob to prob
 			if(args.length!=3){throw new NumericException("Function takes 3 arguments","probRescale");}
 			double t1=args[1].getDouble();
 			double t2=args[2].getDouble();
@@ -510,7 +537,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "probToRate":{ //prob to rate
+		case PROB_TO_RATE:{ //prob to rate
 			if(args.length!=1 && args.length!=3){throw new NumericException("Function takes 1 or 3 arguments","probToRate");}
 			double tProb=1.0, tRate=1.0;
 			if(args.length==3){
@@ -541,7 +568,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "probit":{ //probit
+		case PROBIT:{ //probit
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","probit");}
 			if(args[0].format!=Format.MATRIX){
 				double x=args[0].getDouble();
@@ -560,7 +587,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "rateToProb":{ //rate to prob
+		case RATE_TO_PROB:{ //rate to prob
 			if(args.length!=1 && args.length!=3){throw new NumericException("Function takes 1 or 3 arguments","rateToProb");}
 			double tRate=1.0, tProb=1.0;
 			if(args.length==3){
@@ -592,7 +619,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "round":{
+		case ROUND:{
 			if(args.length==1){ //round to integer
 				if(args[0].format!=Format.MATRIX){
 					return(new Numeric((int)Math.round(args[0].getDouble())));
@@ -628,7 +655,7 @@ public final class Functions{
 			}
 			else{throw new NumericException("Function takes 1 or 2 arguments","round");}
 		}
-		case "sin":{ //sin
+		case SIN:{ //sin
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","sin");}
 			if(args[0].format!=Format.MATRIX){
 				return(new Numeric(Math.sin(args[0].getDouble()))); 
@@ -644,7 +671,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "sinh":{ //hyperbolic sin
+		case SINH:{ //hyperbolic sin
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","sinh");}
 			if(args[0].format!=Format.MATRIX){
 				return(new Numeric(Math.sinh(args[0].getDouble())));
@@ -660,7 +687,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "sqrt":{ //square root
+		case SQRT:{ //square root
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","sqrt");}
 			if(args[0].format!=Format.MATRIX){
 				double x=args[0].getDouble();
@@ -679,7 +706,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "tan":{ //tan
+		case TAN:{ //tan
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","tan");}
 			if(args[0].format!=Format.MATRIX){
 				return(new Numeric(Math.tan(args[0].getDouble())));
@@ -695,7 +722,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "tanh":{ //hyperbolic tan
+		case TANH:{ //hyperbolic tan
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","tanh");}
 			if(args[0].format!=Format.MATRIX){
 				return(new Numeric(Math.tanh(args[0].getDouble())));
@@ -711,7 +738,7 @@ public final class Functions{
 				return(new Numeric(matrix));
 			}
 		}
-		case "signum":{ //signum
+		case SIGNUM:{ //signum
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","signum");}
 			if(args[0].format!=Format.MATRIX){
 				return(new Numeric(Math.signum(args[0].getDouble())));
@@ -729,7 +756,7 @@ public final class Functions{
 		}
 		
 		//Summary functions
-		case "mean":{
+		case MEAN:{
 			int numArgs=args.length;
 			if(numArgs==0){throw new NumericException("Function takes at least 1 argument","mean");}
 			double sum=0;
@@ -751,7 +778,7 @@ public final class Functions{
 			double mean=sum/(count*1.0);
 			return(new Numeric(mean));
 		}
-		case "product":{
+		case PRODUCT:{
 			int numArgs=args.length;
 			if(numArgs==0){throw new NumericException("Function takes at least 1 argument","product");}
 			double prod=1;
@@ -769,7 +796,7 @@ public final class Functions{
 			}
 			return(new Numeric(prod));
 		}
-		case "quantile":{
+		case QUANTILE:{
 			int numArgs=args.length;
 			if(numArgs<2){throw new NumericException("Function takes at least 2 arguments","quantile");}
 			//Get quantiles to evaluate
@@ -811,14 +838,14 @@ public final class Functions{
 			if(q.length==1){return new Numeric(quantiles[0][0]);} //one number
 			else{return(new Numeric(quantiles));} //row vector
 		}
-		case "sd":{
+		case SD:{
 			int numArgs=args.length;
 			if(numArgs==0){throw new NumericException("Function takes at least 1 argument","sd");}
 			double var=MathUtils.var(args);
 			double sd=Math.sqrt(var);
 			return(new Numeric(sd));
 		}
-		case "sum":{
+		case SUM:{
 			int numArgs=args.length;
 			if(numArgs==0){throw new NumericException("Function takes at least 1 argument","sum");}
 			double sum=0;
@@ -836,7 +863,7 @@ public final class Functions{
 			}
 			return(new Numeric(sum));
 		}
-		case "var":{
+		case VAR:{
 			int numArgs=args.length;
 			if(numArgs==0){throw new NumericException("Function takes at least 1 argument","var");}
 			double var=MathUtils.var(args);
@@ -0,0 +1,240 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package math;
+
+import java.util.ArrayList;
+
+import org.apache.commons.math3.analysis.MultivariateFunction;
+import org.apache.commons.math3.exception.TooManyEvaluationsException;
+import org.apache.commons.math3.optim.InitialGuess;
+import org.apache.commons.math3.optim.MaxEval;
+import org.apache.commons.math3.optim.nonlinear.scalar.GoalType;
+import org.apache.commons.math3.optim.nonlinear.scalar.ObjectiveFunction;
+import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.NelderMeadSimplex;
+import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.SimplexOptimizer;
+
+/**
+ * Gaussian process regression with a squared exponential kernel and one length scale per input (Rasmussen &amp;
+ * Williams 2006).  Unlike an additive model it captures interactions between inputs.  Hyperparameters maximize the
+ * marginal likelihood on a subsample of the data.  The posterior mean is then trained on up to MAX_TRAIN observations
+ * and evaluated at every observation.
+ */
+public class GaussianProcess{
+
+	/**
+	 * Observations used to estimate hyperparameters
+	 */
+	static final int MAX_OPTIMIZE=200;
+	/**
+	 * Observations used to train the posterior mean
+	 */
+	static final int MAX_TRAIN=1000;
+	
+	int inputs[]; //inputs that vary
+	double inputMean[], inputSD[];
+	double yMean, ySD;
+	/**
+	 * Length scale for each input that varies (on the standardized scale)
+	 */
+	double lengths[];
+	double signalVar, noiseVar;
+	
+	/**
+	 * Estimates the hyperparameters
+	 * @param x Inputs [input][observation].  Inputs with no variation are ignored
+	 * @param y Outputs [observation]
+	 */
+	public GaussianProcess(double x[][], double y[]){
+		int n=y.length;
+		ArrayList<Integer> varying=new ArrayList<Integer>();
+		ArrayList<double[]> moments=new ArrayList<double[]>();
+		for(int j=0; j<x.length; j++){
+			double curMoments[]=getMoments(x[j], n);
+			if(curMoments[1]>0 && !Double.isInfinite(curMoments[1])){
+				varying.add(j);
+				moments.add(curMoments);
+			}
+		}
+		int k=varying.size();
+		inputs=new int[k];
+		inputMean=new double[k]; inputSD=new double[k];
+		for(int j=0; j<k; j++){
+			inputs[j]=varying.get(j);
+			inputMean[j]=moments.get(j)[0];
+			inputSD[j]=moments.get(j)[1];
+		}
+		double yMoments[]=getMoments(y, n);
+		yMean=yMoments[0]; ySD=yMoments[1];
+		lengths=new double[k];
+		if(k==0 || !(ySD>0)){return;}
+		
+		//Maximize marginal likelihood over log(lengths), log(signal var), log(noise var)
+		int m=Math.min(n, MAX_OPTIMIZE);
+		int index[]=subsample(n, m);
+		final double z[][]=standardize(x, index);
+		final double yOpt[]=new double[m];
+		for(int i=0; i<m; i++){yOpt[i]=(y[index[i]]-yMean)/ySD;}
+		final double best[]=new double[k+3]; //hyperparameters, neg log likelihood
+		best[k+2]=Double.POSITIVE_INFINITY;
+		double init[]=new double[k+2];
+		init[k+1]=Math.log(0.1);
+		try{
+			SimplexOptimizer optimizer=new SimplexOptimizer(1E-6, 1E-8);
+			optimizer.optimize(new MaxEval(200*(k+2)), GoalType.MINIMIZE, new InitialGuess(init), new NelderMeadSimplex(k+2),
+				new ObjectiveFunction(new MultivariateFunction(){
+					@Override
+					public double value(double theta[]){
+						double nll=negLogLikelihood(z, yOpt, theta);
+						if(nll<best[best.length-1]){ //keep best point in case the optimizer runs out of evaluations
+							System.arraycopy(theta, 0, best, 0, theta.length);
+							best[best.length-1]=nll;
+						}
+						return(nll);
+					}
+				}));
+		} catch(TooManyEvaluationsException e){
+			//use best point found
+		}
+		for(int j=0; j<k; j++){lengths[j]=Math.exp(best[j]);}
+		signalVar=Math.exp(best[k]);
+		noiseVar=Math.exp(best[k+1]);
+	}
+	
+	/**
+	 * Returns the posterior mean at the first n observations
+	 * @param x Inputs [input][observation] - same inputs as used to estimate the hyperparameters
+	 * @param y Outputs [observation]
+	 */
+	public double[] fit(double x[][], double y[], int n){
+		double fitted[]=new double[n];
+		int k=inputs.length;
+		if(k==0 || !(ySD>0)){
+			double mean=0;
+			for(int i=0; i<n; i++){mean+=y[i];}
+			mean/=(n*1.0);
+			for(int i=0; i<n; i++){fitted[i]=mean;}
+			return(fitted);
+		}
+		int m=Math.min(n, MAX_TRAIN);
+		int train[]=subsample(n, m);
+		double zTrain[][]=standardize(x, train);
+		double yTrain[]=new double[m];
+		double mean=0;
+		for(int i=0; i<m; i++){mean+=y[train[i]];}
+		mean/=(m*1.0);
+		for(int i=0; i<m; i++){yTrain[i]=(y[train[i]]-mean)/ySD;}
+		
+		double K[][]=covariance(zTrain, lengths, signalVar, noiseVar);
+		double L[][]=MathUtils.cholesky(K);
+		double jitter=1E-8*signalVar;
+		while(L==null){ //add jitter until positive definite
+			for(int i=0; i<m; i++){K[i][i]+=jitter;}
+			jitter*=10;
+			L=MathUtils.cholesky(K);
+		}
+		double alpha[]=MathUtils.choleskySolve(L, yTrain);
+		
+		int all[]=subsample(n, n);
+		double z[][]=standardize(x, all);
+		double scale[]=new double[k];
+		for(int j=0; j<k; j++){scale[j]=1.0/(lengths[j]*lengths[j]);}
+		for(int i=0; i<n; i++){
+			double sum=0;
+			for(int t=0; t<m; t++){
+				double dist=0;
+				for(int j=0; j<k; j++){
+					double dz=z[j][i]-zTrain[j][t];
+					dist+=dz*dz*scale[j];
+				}
+				sum+=signalVar*Math.exp(-dist)*alpha[t];
+			}
+			fitted[i]=mean+sum*ySD;
+		}
+		return(fitted);
+	}
+	
+	static double negLogLikelihood(double z[][], double y[], double theta[]){
+		int k=z.length, m=y.length;
+		double lengths[]=new double[k];
+		for(int j=0; j<k; j++){lengths[j]=Math.exp(theta[j]);}
+		double signalVar=Math.exp(theta[k]), noiseVar=Math.exp(theta[k+1]);
+		if(noiseVar<1E-6 || signalVar>1E6 || noiseVar>1E6){return(Double.POSITIVE_INFINITY);} //keep search in a sensible range
+		double L[][]=MathUtils.cholesky(covariance(z, lengths, signalVar, noiseVar));
+		if(L==null){return(Double.POSITIVE_INFINITY);}
+		double alpha[]=MathUtils.choleskySolve(L, y);
+		double nll=0;
+		for(int i=0; i<m; i++){
+			nll+=0.5*y[i]*alpha[i]+Math.log(L[i][i]);
+		}
+		return(nll);
+	}
+	
+	static double[][] covariance(double z[][], double lengths[], double signalVar, double noiseVar){
+		int k=z.length, m=z[0].length;
+		double scale[]=new double[k];
+		for(int j=0; j<k; j++){scale[j]=1.0/(lengths[j]*lengths[j]);}
+		double K[][]=new double[m][m];
+		for(int a=0; a<m; a++){
+			for(int b=0; b<a; b++){
+				double dist=0;
+				for(int j=0; j<k; j++){
+					double dz=z[j][a]-z[j][b];
+					dist+=dz*dz*scale[j];
+				}
+				double cov=signalVar*Math.exp(-dist);
+				K[a][b]=cov; K[b][a]=cov;
+			}
+			K[a][a]=signalVar+noiseVar;
+		}
+		return(K);
+	}
+	
+	/**
+	 * Standardized inputs that vary [input][index]
+	 */
+	double[][] standardize(double x[][], int index[]){
+		int k=inputs.length, m=index.length;
+		double z[][]=new double[k][m];
+		for(int j=0; j<k; j++){
+			double curX[]=x[inputs[j]];
+			for(int i=0; i<m; i++){z[j][i]=(curX[index[i]]-inputMean[j])/inputSD[j];}
+		}
+		return(z);
+	}
+	
+	/**
+	 * m evenly spaced indices out of the first n
+	 */
+	static int[] subsample(int n, int m){
+		int index[]=new int[m];
+		for(int i=0; i<m; i++){index[i]=(int)(((long)i*n)/m);}
+		return(index);
+	}
+	
+	/**
+	 * Mean and standard deviation of the first n values
+	 */
+	static double[] getMoments(double x[], int n){
+		double mean=0, var=0;
+		for(int i=0; i<n; i++){mean+=x[i];}
+		mean/=(n*1.0);
+		for(int i=0; i<n; i++){var+=(x[i]-mean)*(x[i]-mean);}
+		return(new double[]{mean, Math.sqrt(var/(n*1.0))});
+	}
+}
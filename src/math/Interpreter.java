@@ -19,6 +19,7 @@
 package math;
 
 import java.util.ArrayList;
+import java.util.Set;
 import java.util.Stack;
 
 import base.AmuaModel;
@@ -47,18 +48,54 @@ public final class Interpreter{
 	public static Token[] parse(String expression,AmuaModel myModel) throws Exception{
 		ArrayList<Token> tokens=tokenize(expression,myModel);
 		Token[] output=shuntTokens(tokens);
+		prepareScalarStack(output);
 		return(output);
 	}
 	
+	/**
+	 * Allocates a thread-specific operand stack on the last token if no token in the expression is a matrix
+	 * by construction.  Parameters and variables are checked when evaluated.
+	 */
+	private static void prepareScalarStack(Token tokens[]){
+		int numTokens=tokens.length;
+		if(numTokens==0){return;}
+		int depth=0, maxDepth=0;
+		for(int i=0; i<numTokens; i++){
+			Token curToken=tokens[i];
+			if(curToken.type==Type.OPERATOR){
+				depth--;
+				if(depth<1){return;} //malformed
+			}
+			else{
+				ObjectType objType=curToken.objectType;
+				if(objType==ObjectType.MATRIX_STATIC || objType==ObjectType.MATRIX_DYNAMIC || objType==ObjectType.MATRIX_FUNCTION){
+					return;
+				}
+				depth++;
+				maxDepth=Math.max(maxDepth, depth);
+			}
+		}
+		if(depth!=1){return;}
+		Token root=tokens[numTokens-1];
+		root.valueStack=new double[root.numThreads][maxDepth];
+		root.formatStack=new Format[root.numThreads][maxDepth];
+	}
+	
 	/**
 	 * Evaluates post-fix expression from left to right
 	 * @return
 	 * @throws NumericException 
 	 */
 	public static Numeric evaluateTokens(Token tokens[], int curThread, boolean sample) throws NumericException, Exception{
+		return(evaluateTokens(tokens,0,new Stack<Numeric>(),curThread,sample));
+	}
+	
+	/**
+	 * Continues evaluation of post-fix expression from a given token with operands already on the stack
+	 */
+	private static Numeric evaluateTokens(Token tokens[], int start, Stack<Numeric> operands, int curThread, boolean sample) throws NumericException, Exception{
 		int numTokens=tokens.length;
-		Stack<Numeric> operands=new Stack<Numeric>();
-		for(int i=0; i<numTokens; i++){
+		for(int i=start; i<numTokens; i++){
 			Token curToken=tokens[i];
 			if(curToken.type==Type.OPERATOR){
 				String operator=curToken.word;
@@ -78,6 +115,258 @@ public final class Interpreter{
 		return(result);
 	}
 	
+	/**
+	 * Evaluates a real-valued expression.  If expression compilation is enabled for the model the tokens are
+	 * compiled after their first evaluation and later calls use the compiled form.  Falls back to the
+	 * interpreter for expressions that can't be compiled (e.g. matrices).
+	 * @throws NumericException 
+	 */
+	public static double evaluateDouble(Token tokens[], int curThread, boolean sample) throws NumericException, Exception{
+		int numTokens=tokens.length;
+		if(numTokens>0){
+			Token root=tokens[numTokens-1];
+			if(root.myModel!=null && root.myModel.compileExpressions){
+				CompiledExpression program=root.compiled;
+				if(program!=null){
+					try{
+						return(program.evaluate(curThread,sample));
+					} catch(CompiledExpression.Deopt e){ //operand changed type, use interpreter from now on
+						root.compiled=null;
+						return(program.resume(tokens,curThread,sample).getDouble()); //finish without re-evaluating operands
+					}
+				}
+				else if(root.compileChecked==false){
+					double result=evaluateTokens(tokens,curThread,sample).getDouble();
+					root.compiled=CompiledExpression.compile(tokens,curThread);
+					root.compileChecked=true;
+					return(result);
+				}
+			}
+			if(root.valueStack!=null){
+				return(evaluateScalar(tokens,root,curThread,sample));
+			}
+		}
+		return(evaluateTokens(tokens,curThread,sample).getDouble());
+	}
+	
+	/**
+	 * Evaluates post-fix expression on the preallocated primitive operand stack.  Operators follow the same
+	 * integer/double/boolean rules as Operators.  Locked parameters and current variables are read in place
+	 * instead of being copied.  If an operand turns out to be a matrix, or an operator isn't defined for its 
+	 * operands, the stack is converted to Numerics and evaluation continues in the interpreter. 
+	 */
+	private static double evaluateScalar(Token tokens[], Token root, int curThread, boolean sample) throws NumericException, Exception{
+		double values[]=root.valueStack[curThread];
+		Format formats[]=root.formatStack[curThread];
+		int numTokens=tokens.length;
+		int top=-1;
+		for(int i=0; i<numTokens; i++){
+			Token curToken=tokens[i];
+			if(curToken.type==Type.OPERATOR){
+				double a=values[top-1], b=values[top];
+				Format fa=formats[top-1], fb=formats[top];
+				boolean ints=(fa==Format.INTEGER && fb==Format.INTEGER);
+				boolean reals=(fa!=Format.BOOL && fb!=Format.BOOL);
+				boolean bools=(fa==Format.BOOL && fb==Format.BOOL);
+				double result=0;
+				Format format=Format.DOUBLE;
+				switch(curToken.opCode){
+				case 0: //+
+					if(!reals){return(resume(tokens,i,values,formats,top,curThread,sample));}
+					if(ints){result=(int)a+(int)b; format=Format.INTEGER;}
+					else{result=a+b;}
+					break;
+				case 1: //-
+					if(!reals){return(resume(tokens,i,values,formats,top,curThread,sample));}
+					if(ints){result=(int)a-(int)b; format=Format.INTEGER;}
+					else{result=a-b;}
+					break;
+				case 2: //*
+					if(!reals){return(resume(tokens,i,values,formats,top,curThread,sample));}
+					if(ints){result=(int)a*(int)b; format=Format.INTEGER;}
+					else{result=a*b;}
+					break;
+				case 3: // /
+					if(!reals){return(resume(tokens,i,values,formats,top,curThread,sample));}
+					result=a/b;
+					int test=(int) Math.round(result);
+					if(Math.abs(test-result)<MathUtils.tolerance){result=test; format=Format.INTEGER;}
+					break;
+				case 4: //^
+					if(!reals){return(resume(tokens,i,values,formats,top,curThread,sample));}
+					if(ints && b>=0){result=(int)(Math.pow(a,b)); format=Format.INTEGER;}
+					else{result=Math.pow(a,b);}
+					break;
+				case 5: //%
+					if(!reals){return(resume(tokens,i,values,formats,top,curThread,sample));}
+					if(ints){result=(int)a % (int)b; format=Format.INTEGER;}
+					else{result=a % b;}
+					break;
+				case 6: case 7: case 8: case 9: case 10: case 13: //comparisons
+					if(!reals){return(resume(tokens,i,values,formats,top,curThread,sample));}
+					boolean check;
+					if(curToken.opCode==6){check=(a==b);}
+					else if(curToken.opCode==7){check=(a<b);}
+					else if(curToken.opCode==8){check=(a>b);}
+					else if(curToken.opCode==9){check=(a<=b);}
+					else if(curToken.opCode==10){check=(a>=b);}
+					else{check=(a!=b);}
+					result=(check ? 1 : 0); format=Format.BOOL;
+					break;
+				case 11: case 12: case 14: //logical
+					if(!bools){return(resume(tokens,i,values,formats,top,curThread,sample));}
+					boolean p=(a!=0), q=(b!=0);
+					if(curToken.opCode==11){result=(p && q ? 1 : 0);}
+					else if(curToken.opCode==12){result=(p || q ? 1 : 0);}
+					else{result=(p!=q ? 1 : 0);}
+					format=Format.BOOL;
+					break;
+				default:
+					return(resume(tokens,i,values,formats,top,curThread,sample));
+				}
+				top--;
+				values[top]=result;
+				formats[top]=format;
+			}
+			else{ //operand
+				Numeric operand;
+				boolean negate=false;
+				ObjectType objType=curToken.objectType;
+				if(objType==ObjectType.PARAMETER && curToken.curParam.locked){
+					operand=curToken.curParam.value;
+					negate=curToken.negate;
+				}
+				else if(objType==ObjectType.VARIABLE && curToken.curVar.value[curThread]!=null && 
+						(curToken.curVar.locked[curThread] || curToken.curVar.independent)){
+					operand=curToken.curVar.value[curThread];
+					negate=curToken.negate;
+				}
+				else{
+					if(objType!=ObjectType.NUMBER){curToken.updateValue(curThread,sample);}
+					operand=curToken.numeric[curThread];
+				}
+				Format format=operand.format;
+				if(format==Format.MATRIX){ //continue in interpreter
+					if(negate){
+						operand=operand.copy();
+						operand.negate();
+					}
+					Stack<Numeric> operands=toNumerics(values,formats,top);
+					operands.push(operand);
+					return(evaluateTokens(tokens,i+1,operands,curThread,sample).getDouble());
+				}
+				top++;
+				if(format==Format.DOUBLE){values[top]=(negate ? -operand.doubleNum : operand.doubleNum);}
+				else if(format==Format.INTEGER){values[top]=(negate ? -operand.intNum : operand.intNum);}
+				else{values[top]=(operand.bool!=negate ? 1 : 0);}
+				formats[top]=format;
+			}
+		}
+		if(formats[0]==Format.BOOL){
+			throw(new NumericException("Matrix type, not real number","Numeric"));
+		}
+		return(values[0]);
+	}
+	
+	private static double resume(Token tokens[], int start, double values[], Format formats[], int top, int curThread, boolean sample) throws NumericException, Exception{
+		Stack<Numeric> operands=toNumerics(values,formats,top);
+		return(evaluateTokens(tokens,start,operands,curThread,sample).getDouble());
+	}
+	
+	private static Stack<Numeric> toNumerics(double values[], Format formats[], int top){
+		Stack<Numeric> operands=new Stack<Numeric>();
+		for(int i=0; i<=top; i++){
+			if(formats[i]==Format.INTEGER){operands.push(new Numeric((int)values[i]));}
+			else if(formats[i]==Format.DOUBLE){operands.push(new Numeric(values[i]));}
+			else{operands.push(new Numeric(values[i]!=0));}
+		}
+		return(operands);
+	}
+	
+	/**
+	 * Returns true if the value of the tokens may change when any of the given variables change.
+	 * Trace values, and matrix elements or table columns given as text, are always treated as changing.
+	 */
+	public static boolean dependsOn(Token tokens[], Set<Variable> variables){
+		for(int i=0; i<tokens.length; i++){
+			Token curToken=tokens[i];
+			if(curToken.type!=Type.NUMERIC){continue;}
+			ObjectType objType=curToken.objectType;
+			if(objType==ObjectType.VARIABLE && variables.contains(curToken.curVar)){return(true);}
+			else if(objType==ObjectType.TRACE || objType==ObjectType.MATRIX_ELEMENT || objType==ObjectType.PARAM_MATRIX || objType==ObjectType.VAR_MATRIX){return(true);}
+			else if(objType==ObjectType.TABLE_LOOKUP && curToken.lookup==null){return(true);}
+			else if(objType==ObjectType.TABLE_DISTRIBUTION && curToken.tableDist==null){return(true);}
+			if(curToken.args!=null){
+				for(int a=0; a<curToken.args.length; a++){
+					if(dependsOn(curToken.args[a],variables)){return(true);}
+				}
+			}
+			if(curToken.matrixTokens!=null){
+				for(int r=0; r<curToken.nrow; r++){
+					for(int c=0; c<curToken.ncol; c++){
+						if(dependsOn(curToken.matrixTokens[r][c],variables)){return(true);}
+					}
+				}
+			}
+		}
+		return(false);
+	}
+	
+	/**
+	 * Returns true if the tokens read any variable (including t), so their value may change while a model is running
+	 */
+	public static boolean readsVariables(Token tokens[]){
+		for(int i=0; i<tokens.length; i++){
+			Token curToken=tokens[i];
+			if(curToken.type!=Type.NUMERIC){continue;}
+			if(curToken.objectType==ObjectType.VARIABLE || curToken.objectType==ObjectType.VAR_MATRIX){return(true);}
+			if(curToken.args!=null){
+				for(int a=0; a<curToken.args.length; a++){
+					if(readsVariables(curToken.args[a])){return(true);}
+				}
+			}
+			if(curToken.matrixTokens!=null){
+				for(int r=0; r<curToken.nrow; r++){
+					for(int c=0; c<curToken.ncol; c++){
+						if(readsVariables(curToken.matrixTokens[r][c])){return(true);}
+					}
+				}
+			}
+		}
+		return(false);
+	}
+	
+	/**
+	 * Returns true if the tokens are a single sampled univariate continuous distribution, e.g. Beta(a,b,~)
+	 */
+	public static boolean isContinuousDistribution(Token tokens[]){
+		if(tokens==null || tokens.length!=1){return(false);}
+		Token curToken=tokens[0];
+		if(curToken.objectType!=ObjectType.DISTRIBUTION || curToken.distFx!=-1 || curToken.negate){return(false);}
+		return(Distributions.isContinuous(curToken.distribution));
+	}
+	
+	/**
+	 * Returns the density of x under a distribution checked by isContinuousDistribution, or 0 if x is outside its support.
+	 * Distribution parameters are evaluated with the current values of any parameters they refer to.
+	 */
+	public static double getDensity(Token tokens[], double x, int curThread) throws Exception{
+		Token curToken=tokens[0];
+		int numArgs=curToken.args.length;
+		Numeric params[]=new Numeric[numArgs+1];
+		params[0]=new Numeric(x);
+		for(int i=0; i<numArgs; i++){
+			params[i+1]=evaluateTokens(curToken.args[i], curThread, false);
+		}
+		try{
+			double density=Distributions.evaluate(curToken.distribution, params, 0).getDouble();
+			if(Double.isNaN(density)){return(0);}
+			return(density);
+		} catch(NumericException e){ //outside support
+			return(0);
+		}
+	}
+	
 	public static String[] splitArgs(String strArgs){
 		ArrayList<Integer> indices=new ArrayList<Integer>();
 		int parenLevel=0, bracketLevel=0;
@@ -208,6 +497,7 @@ public final class Interpreter{
 							String args=curExpr.substring(pos+1,close);
 							Token tokenFx=new Token(word,Type.NUMERIC,myModel,false);
 							tokenFx.objectType=ObjectType.FUNCTION;
+							tokenFx.function=Functions.getFunction(word);
 							tokenFx.args=parseArgs(args,myModel);
 							tokenFx.negate=negate;
 							tokens.add(tokenFx);
@@ -222,6 +512,7 @@ public final class Interpreter{
 							String args=curExpr.substring(pos+1,close);
 							Token tokenFx=new Token(word,Type.NUMERIC,myModel,false);
 							tokenFx.objectType=ObjectType.MATRIX_FUNCTION;
+							tokenFx.matrixFunction=MatrixFunctions.getFunction(word);
 							tokenFx.args=parseArgs(args,myModel);
 							tokenFx.negate=negate;
 							tokens.add(tokenFx);
@@ -247,6 +538,8 @@ public final class Interpreter{
 							Token tokenDist=new Token(word,Type.NUMERIC,myModel,false);
 							tokenDist.objectType=ObjectType.DISTRIBUTION;
 							tokenDist.distFx=df;
+							tokenDist.distribution=Distributions.getDistribution(word);
+							Distributions.checkParams(tokenDist.distribution,numParams,df);
 							String args=params[0];
 							for(int i=1; i<numParams; i++){args+=","+params[i];}
 							tokenDist.args=parseArgs(args,myModel);
@@ -309,6 +602,14 @@ public final class Interpreter{
 								tokenDist.distFx=df;
 								tokenDist.strArgs=new String[numParams];
 								for(int i=0; i<numParams; i++){tokenDist.strArgs[i]=params[i];}
+								if(numParams==2){tokenDist.tableDist=curTable.compileDistribution(params[0]);}
+								else if(numParams==3){
+									tokenDist.tableDist=curTable.compileDistribution(params[1]);
+									if(tokenDist.tableDist!=null){ //tokenize k/x
+										tokenDist.args=new Token[1][];
+										tokenDist.args[0]=parse(params[0],myModel);
+									}
+								}
 								tokenDist.negate=negate;
 								tokens.add(tokenDist);
 								
@@ -372,6 +673,7 @@ public final class Interpreter{
 								tokenLookup.objectType=ObjectType.TABLE_LOOKUP;
 								tokenLookup.curTable=curTable;
 								tokenLookup.strArgs=args;
+								tokenLookup.lookup=curTable.compileLookup(args[1]);
 								//tokenize index
 								tokenLookup.args=new Token[1][];
 								tokenLookup.args[0]=parse(args[0],myModel);
@@ -101,6 +101,21 @@ public final class MathUtils{
 		index=Math.min(num-1, index); //ceiling of num-1
 		return(index);
 	}
+	
+	/**
+	 * Returns the first index k with cdf[k]>=x, or the last index if x is above the total (rounding error).
+	 * Same result as scanning from k=0, in O(log n)
+	 * @param cdf Cumulative probabilities (non-decreasing)
+	 */
+	public static int searchCDF(double cdf[], double x){
+		int lo=0, hi=cdf.length-1;
+		while(lo<hi){
+			int mid=(lo+hi)>>>1;
+			if(cdf[mid]<x){lo=mid+1;}
+			else{hi=mid;}
+		}
+		return(lo);
+	}
 		
 	/**
 	 * Calculates the variance
@@ -135,6 +150,48 @@ public final class MathUtils{
 		return(var);
 	}
 	
+	/**
+	 * Cholesky decomposition of a symmetric positive definite matrix
+	 * @return Lower triangle L with A=LL', or null if A is not positive definite
+	 */
+	public static double[][] cholesky(double a[][]){
+		int n=a.length;
+		double L[][]=new double[n][n];
+		for(int i=0; i<n; i++){
+			double Li[]=L[i];
+			for(int j=0; j<=i; j++){
+				double Lj[]=L[j];
+				double sum=a[i][j];
+				for(int k=0; k<j; k++){sum-=Li[k]*Lj[k];}
+				if(i==j){
+					if(sum<=0 || Double.isNaN(sum)){return(null);}
+					Li[i]=Math.sqrt(sum);
+				}
+				else{Li[j]=sum/Lj[j];}
+			}
+		}
+		return(L);
+	}
+	
+	/**
+	 * Solves LL'x=b for a Cholesky factor L
+	 */
+	public static double[] choleskySolve(double L[][], double b[]){
+		int n=b.length;
+		double x[]=new double[n];
+		for(int i=0; i<n; i++){ //forward: Lz=b
+			double sum=b[i];
+			for(int k=0; k<i; k++){sum-=L[i][k]*x[k];}
+			x[i]=sum/L[i][i];
+		}
+		for(int i=n-1; i>=0; i--){ //back: L'x=z
+			double sum=x[i];
+			for(int k=i+1; k<n; k++){sum-=L[k][i]*x[k];}
+			x[i]=sum/L[i][i];
+		}
+		return(x);
+	}
+	
 	public static String consoleFont(String str){
 		return("<font face=\"Consolas\">"+str+"</font>");
 	}
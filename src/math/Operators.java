@@ -65,6 +65,32 @@ public final class Operators{
 		return(-1); //fell through
 	}
 
+	/**
+	 * Operator code used by the scalar evaluator
+	 * 0: +, 1: -, 2: *, 3: /, 4: ^, 5: %, 6: ==, 7: <, 8: >, 9: <=, 10: >=, 11: &, 12: |, 13: !=, 14: ^|
+	 */
+	static int getCode(String operator){
+		switch(operator){
+		case "+": return(0);
+		case "-": return(1);
+		case "*": return(2);
+		case "/": return(3);
+		case "^": return(4);
+		case "%": return(5);
+		//Logical
+		case "==": return(6);
+		case "<": return(7);
+		case ">": return(8);
+		case "<=": return(9);
+		case ">=": return(10);
+		case "&": return(11);
+		case "|": return(12);
+		case "!=": return(13);
+		case "^|": return(14);
+		}
+		return(-1); //fell through
+	}
+
 	public static Numeric evaluate(String operator,Numeric arg1, Numeric arg2) throws NumericException{
 		switch(operator){
 		case "+": return(add(arg1,arg2));
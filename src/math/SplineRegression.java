@@ -0,0 +1,161 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package math;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Penalized regression splines (Ruppert, Wand &amp; Carroll 2003).  Each input gets a cubic polynomial plus truncated
+ * cubic terms at knots on its quantiles.  The knot terms are shrunk by a ridge penalty chosen by generalized
+ * cross-validation (GCV).  With several inputs the terms are added, giving a generalized additive model (GAM).
+ */
+public final class SplineRegression{
+
+	/**
+	 * Maximum number of knots per input
+	 */
+	static final int MAX_KNOTS=10;
+	
+	/**
+	 * Returns the fitted values of y
+	 * @param x Inputs [input][observation].  Inputs with no variation are ignored
+	 * @param y Outputs [observation]
+	 * @param n Number of observations to use (the first n)
+	 */
+	public static double[] fit(double x[][], double y[], int n){
+		double fitted[]=new double[n];
+		
+		//Standardize outcome
+		double yMean=0, yVar=0;
+		for(int i=0; i<n; i++){yMean+=y[i];}
+		yMean/=(n*1.0);
+		for(int i=0; i<n; i++){yVar+=(y[i]-yMean)*(y[i]-yMean);}
+		double ySD=Math.sqrt(yVar/(n*1.0));
+		Arrays.fill(fitted, yMean);
+		if(ySD==0 || Double.isNaN(ySD)){return(fitted);}
+		double yStd[]=new double[n];
+		for(int i=0; i<n; i++){yStd[i]=(y[i]-yMean)/ySD;}
+		
+		//Build basis
+		ArrayList<double[]> basis=new ArrayList<double[]>();
+		ArrayList<Boolean> penalized=new ArrayList<Boolean>();
+		double ones[]=new double[n];
+		Arrays.fill(ones, 1);
+		basis.add(ones); penalized.add(false);
+		for(int j=0; j<x.length; j++){
+			double sorted[]=Arrays.copyOf(x[j], n);
+			Arrays.sort(sorted);
+			double min=sorted[0], range=sorted[n-1]-min;
+			if(!(range>0) || Double.isInfinite(range)){continue;} //constant or NaN
+			int numDistinct=1;
+			for(int i=1; i<n && numDistinct<MAX_KNOTS+4; i++){
+				if(sorted[i]!=sorted[i-1]){numDistinct++;}
+			}
+			double z[]=new double[n];
+			for(int i=0; i<n; i++){z[i]=(x[j][i]-min)/range;}
+			int degree=Math.min(3, numDistinct-1);
+			for(int d=1; d<=degree; d++){ //polynomial terms
+				double col[]=new double[n];
+				for(int i=0; i<n; i++){col[i]=Math.pow(z[i], d);}
+				basis.add(col); penalized.add(false);
+			}
+			int numKnots=Math.min(MAX_KNOTS, numDistinct-4);
+			double prevKnot=0;
+			for(int k=0; k<numKnots; k++){ //truncated cubic terms
+				double knot=(sorted[((k+1)*n)/(numKnots+1)]-min)/range;
+				if(knot<=prevKnot || knot>=1){continue;}
+				prevKnot=knot;
+				double col[]=new double[n];
+				for(int i=0; i<n; i++){
+					double dz=z[i]-knot;
+					if(dz>0){col[i]=dz*dz*dz;}
+				}
+				basis.add(col); penalized.add(true);
+			}
+		}
+		int p=basis.size();
+		if(p==1){return(fitted);} //no inputs vary
+		
+		//Cross-products
+		double XtX[][]=new double[p][p];
+		double Xty[]=new double[p];
+		for(int a=0; a<p; a++){
+			double colA[]=basis.get(a);
+			for(int b=0; b<=a; b++){
+				double colB[]=basis.get(b);
+				double sum=0;
+				for(int i=0; i<n; i++){sum+=colA[i]*colB[i];}
+				XtX[a][b]=sum; XtX[b][a]=sum;
+			}
+			double sum=0;
+			for(int i=0; i<n; i++){sum+=colA[i]*yStd[i];}
+			Xty[a]=sum;
+		}
+		double scale=0;
+		for(int a=0; a<p; a++){scale+=XtX[a][a];}
+		scale/=(p*1.0);
+		double jitter=1E-10*scale;
+		
+		//Choose smoothing by GCV
+		double bestGCV=Double.POSITIVE_INFINITY;
+		double bestCoeffs[]=null;
+		double A[][]=new double[p][p];
+		for(double e=-12; e<=4; e+=0.5){
+			double lambda=scale*Math.pow(10, e);
+			for(int a=0; a<p; a++){
+				System.arraycopy(XtX[a], 0, A[a], 0, p);
+				A[a][a]+=jitter;
+				if(penalized.get(a)){A[a][a]+=lambda;}
+			}
+			double L[][]=MathUtils.cholesky(A);
+			if(L==null){continue;}
+			double coeffs[]=MathUtils.choleskySolve(L, Xty);
+			//RSS=y'y-2b'X'y+b'X'Xb (y'y=n for standardized y)
+			double rss=n;
+			for(int a=0; a<p; a++){
+				double XtXb=0;
+				for(int b=0; b<p; b++){XtXb+=XtX[a][b]*coeffs[b];}
+				rss+=coeffs[a]*XtXb-2*coeffs[a]*Xty[a];
+			}
+			rss=Math.max(rss, 0);
+			//effective degrees of freedom: tr(A^-1 X'X)
+			double edf=0;
+			double col[]=new double[p];
+			for(int b=0; b<p; b++){
+				for(int a=0; a<p; a++){col[a]=XtX[a][b];}
+				edf+=MathUtils.choleskySolve(L, col)[b];
+			}
+			if(edf>=n){continue;}
+			double gcv=(n*rss)/((n-edf)*(n-edf));
+			if(gcv<bestGCV){
+				bestGCV=gcv;
+				bestCoeffs=coeffs;
+			}
+		}
+		if(bestCoeffs==null){return(fitted);}
+		
+		for(int a=0; a<p; a++){
+			double colA[]=basis.get(a);
+			double coeff=bestCoeffs[a]*ySD;
+			for(int i=0; i<n; i++){fitted[i]+=colA[i]*coeff;}
+		}
+		return(fitted);
+	}
+}
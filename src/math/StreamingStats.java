@@ -0,0 +1,169 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package math;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Mergeable one-pass summary of a stream of values: count, mean and variance (Welford), min/max, and a compacting
+ * quantile sketch (KLL) for quartiles.  Memory is bounded regardless of the number of values added.
+ * Quantiles are exact until the sketch first compacts (about SKETCH_SIZE values) and approximate after that,
+ * with rank error well under 1%.  Compaction is deterministic, so adding and merging in the same order always
+ * gives the same result.
+ */
+public class StreamingStats{
+	/**
+	 * Capacity of the top level of the quantile sketch
+	 */
+	static final int SKETCH_SIZE=512;
+	/**
+	 * Capacity ratio between sketch levels
+	 */
+	static final double LEVEL_RATIO=2.0/3.0;
+	
+	long n;
+	double mean, m2;
+	double min=Double.POSITIVE_INFINITY, max=Double.NEGATIVE_INFINITY;
+	
+	//sketch - items at level h have weight 2^h
+	double levels[][]=new double[1][8];
+	int sizes[]=new int[1];
+	boolean offsets[]=new boolean[1]; //alternates which half of a level is promoted
+	
+	public void add(double x){
+		n++;
+		double delta=x-mean;
+		mean+=delta/n;
+		m2+=delta*(x-mean);
+		if(x<min){min=x;}
+		if(x>max){max=x;}
+		append(0,x);
+		compress();
+	}
+	
+	/**
+	 * Adds the values summarized by another accumulator
+	 */
+	public void merge(StreamingStats other){
+		if(other.n==0){return;}
+		if(n==0){
+			mean=other.mean; m2=other.m2;
+		}
+		else{ //Chan et al. pairwise update
+			double delta=other.mean-mean;
+			long total=n+other.n;
+			mean+=delta*other.n/total;
+			m2+=other.m2+delta*delta*((double)n*other.n/total);
+		}
+		n+=other.n;
+		min=Math.min(min, other.min);
+		max=Math.max(max, other.max);
+		for(int h=0; h<other.sizes.length; h++){
+			for(int i=0; i<other.sizes[h]; i++){
+				append(h,other.levels[h][i]);
+			}
+		}
+		compress();
+	}
+	
+	public long getCount(){return(n);}
+	public double getMean(){return(mean);}
+	public double getMin(){return(min);}
+	public double getMax(){return(max);}
+	
+	/**
+	 * Population standard deviation
+	 */
+	public double getSD(){
+		if(n==0){return(0);}
+		return(Math.sqrt(m2/n));
+	}
+	
+	/**
+	 * Returns the value at the same sorted position as MathUtils.getQuantileIndex
+	 */
+	public double getQuantile(double quantile){
+		if(n==0){return(Double.NaN);}
+		long rank=MathUtils.getQuantileIndex(n, quantile)+1; //1-based
+		int numItems=0;
+		for(int h=0; h<sizes.length; h++){numItems+=sizes[h];}
+		double vals[]=new double[numItems];
+		long weights[]=new long[numItems];
+		int k=0;
+		for(int h=0; h<sizes.length; h++){
+			for(int i=0; i<sizes[h]; i++){
+				vals[k]=levels[h][i]; weights[k]=1L<<h; k++;
+			}
+		}
+		Integer order[]=new Integer[numItems];
+		for(int i=0; i<numItems; i++){order[i]=i;}
+		final double sortVals[]=vals;
+		Arrays.sort(order, new Comparator<Integer>(){
+			public int compare(Integer a, Integer b){return(Double.compare(sortVals[a],sortVals[b]));}
+		});
+		long cumWeight=0;
+		for(int i=0; i<numItems; i++){
+			cumWeight+=weights[order[i]];
+			if(cumWeight>=rank){return(vals[order[i]]);}
+		}
+		return(max);
+	}
+	
+	private void append(int h, double x){
+		if(h>=sizes.length){ //add levels
+			int numLevels=sizes.length;
+			levels=Arrays.copyOf(levels, h+1);
+			for(int i=numLevels; i<=h; i++){levels[i]=new double[8];}
+			sizes=Arrays.copyOf(sizes, h+1);
+			offsets=Arrays.copyOf(offsets, h+1);
+		}
+		if(sizes[h]==levels[h].length){
+			levels[h]=Arrays.copyOf(levels[h], levels[h].length*2);
+		}
+		levels[h][sizes[h]]=x;
+		sizes[h]++;
+	}
+	
+	private int getCapacity(int h){
+		int depth=sizes.length-1-h;
+		return(Math.max(2, (int)Math.ceil(SKETCH_SIZE*Math.pow(LEVEL_RATIO, depth))));
+	}
+	
+	/**
+	 * Compacts full levels, from the bottom up, by sorting and promoting every other item
+	 */
+	private void compress(){
+		for(int h=0; h<sizes.length; h++){
+			if(sizes[h]>=getCapacity(h)){
+				double level[]=levels[h];
+				int size=sizes[h];
+				Arrays.sort(level, 0, size);
+				int numPairs=size/2;
+				int start=size-2*numPairs; //keep the smallest item at this level if odd
+				int offset=offsets[h] ? 1 : 0;
+				offsets[h]=!offsets[h];
+				for(int i=0; i<numPairs; i++){
+					append(h+1, level[start+2*i+offset]);
+				}
+				sizes[h]=start;
+			}
+		}
+	}
+}
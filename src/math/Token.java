@@ -22,6 +22,8 @@ package math;
 import base.AmuaModel;
 import main.Parameter;
 import main.Table;
+import main.TableDistribution;
+import main.TableLookup;
 import main.Variable;
 
 enum Type{NUMERIC,OPERATOR,PAREN_LEFT,PAREN_RIGHT;}
@@ -38,6 +40,7 @@ public class Token{
 		
 	int precedence=-1; //operator precedence
 	boolean leftAssociative; //operator association
+	int opCode=-1; //see Operators.getCode
 	
 	/**
 	 * [Argument index][Tokens within argument]
@@ -54,6 +57,11 @@ public class Token{
 	 */
 	int distFx;
 	
+	//resolved when parsed
+	Functions.Function function;
+	MatrixFunctions.Function matrixFunction;
+	Distributions.Distribution distribution;
+	
 	int tableType; //0=Lookup, 1=Distribution, 2=Matrix
 	Numeric matrix;
 	
@@ -61,6 +69,8 @@ public class Token{
 	Parameter curParam;
 	Variable curVar;
 	Table curTable;
+	TableLookup lookup; //compiled table lookup, null if the column is an expression
+	TableDistribution tableDist; //compiled table distribution, null if the column is an expression
 	
 	//dynamic matrix
 	int nrow, ncol;
@@ -69,6 +79,15 @@ public class Token{
 	 */
 	Token matrixTokens[][][];
 	
+	//compiled expression, held by the last token of a parsed expression
+	volatile CompiledExpression compiled;
+	boolean compileChecked;
+	/**
+	 * Thread-specific operand stack for scalar expressions, held by the last token [Thread][Depth]
+	 */
+	double valueStack[][];
+	Format formatStack[][];
+	
 	
 	public Token(String word, Type type, AmuaModel myModel, boolean parseWord) throws Exception{
 		this.word=word;
@@ -90,6 +109,7 @@ public class Token{
 	private void parseWord() throws Exception{ //numeric or operator
 		if(this.type==Type.OPERATOR){
 			precedence=Operators.getPrecedence(word);
+			opCode=Operators.getCode(word);
 			leftAssociative=true;
 			if(word.equals("^")){
 				leftAssociative=false;
@@ -161,75 +181,79 @@ public class Token{
 		if(objectType!=ObjectType.NUMBER && objectType!=ObjectType.MATRIX_STATIC){ //Not static number or matrix
 			if(objectType==ObjectType.PARAMETER){ //Parameter
 				if(curParam.locked==false){
-					curParam.parsedTokens=Interpreter.parse(curParam.expression, myModel);
-					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens,curThread,sample);
+					curParam.parsedTokens=myModel.parseExpression(curParam.expression);
+					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens,curThread,sample).copy();
 					if(sample){curParam.locked=true;}
 				}
 				numeric[curThread]=curParam.value.copy();
 			}
 			else if(objectType==ObjectType.VARIABLE){ //Variable
 				if(curVar.value[curThread]==null){ //not initialized
-					curVar.parsedTokens=Interpreter.parse(curVar.expression, myModel);
-					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parsedTokens,curThread,sample);
+					if(curVar.valid==false){throw new NumericException("Invalid or circular variable",curVar.name);}
+					curVar.parsedTokens=myModel.parseExpression(curVar.expression);
+					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parsedTokens,curThread,sample).copy();
 				}
 				else if(curVar.locked[curThread]==false && curVar.independent==false) {
-					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parsedTokens,curThread,sample);
+					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parsedTokens,curThread,sample).copy();
 					curVar.locked[curThread]=true;
 				}
 				numeric[curThread]=curVar.value[curThread].copy();
 			}
 			else if(objectType==ObjectType.FUNCTION){
 				Numeric argsNumeric[]=evalArgs(curThread,sample);
-				numeric[curThread]=Functions.evaluate(word, argsNumeric);
+				numeric[curThread]=Functions.evaluate(function, argsNumeric);
 			}
 			else if(objectType==ObjectType.MATRIX_FUNCTION){
 				Numeric argsNumeric[]=evalArgs(curThread,sample);
-				numeric[curThread]=MatrixFunctions.evaluate(word, argsNumeric);
+				numeric[curThread]=MatrixFunctions.evaluate(matrixFunction, argsNumeric);
 			}
 			else if(objectType==ObjectType.DISTRIBUTION){
 				Numeric argsNumeric[]=evalArgs(curThread,sample);
 				if(sample==false){
-					numeric[curThread]=Distributions.evaluate(word,argsNumeric,distFx);
+					numeric[curThread]=Distributions.evaluate(distribution,argsNumeric,distFx);
 				}
 				else{ //sample is true
 					if(distFx!=-1){ //not a random variable
-						numeric[curThread]=Distributions.evaluate(word,argsNumeric,distFx);
+						numeric[curThread]=Distributions.evaluate(distribution,argsNumeric,distFx);
 					}
 					else{ //see if can sample
 						if(myModel.curGenerator[curThread]!=null){ //RNG available
 							//double rand=myModel.curGenerator[curThread].nextDouble();
 							//numeric[curThread]=Distributions.sample(word,argsNumeric,rand,myModel.curGenerator[curThread]);
-							numeric[curThread]=Distributions.sample(word,argsNumeric,myModel.curGenerator[curThread]);
+							numeric[curThread]=Distributions.sample(distribution,argsNumeric,myModel.curGenerator[curThread]);
 						}
 						else{ //no RNG, shouldn't sample
-							numeric[curThread]=Distributions.evaluate(word,argsNumeric,distFx);
+							numeric[curThread]=Distributions.evaluate(distribution,argsNumeric,distFx);
 						}
 					}
 				}
 			}
 			else if(objectType==ObjectType.TABLE_DISTRIBUTION){
 				if(sample==false){
-					numeric[curThread]=curTable.evaluateDist(strArgs,distFx);
+					numeric[curThread]=evaluateTableDist(curThread);
 				}
 				else{ //sample is true
 					if(distFx!=-1){ //not a random variable
-						numeric[curThread]=curTable.evaluateDist(strArgs,distFx);
+						numeric[curThread]=evaluateTableDist(curThread);
 					}
 					else{ //see if can sample
 						if(myModel.curGenerator[curThread]!=null){ //RNG available
 							double rand=myModel.curGenerator[curThread].nextDouble();
-							double val=curTable.sample(strArgs,rand);
+							double val;
+							if(tableDist!=null){val=tableDist.sample(rand);}
+							else{val=curTable.sample(strArgs,rand);}
 							numeric[curThread]=new Numeric(val);
 						}
 						else{ //no RNG, shouldn't sample
-							numeric[curThread]=curTable.evaluateDist(strArgs,distFx);
+							numeric[curThread]=evaluateTableDist(curThread);
 						}
 					}
 				}
 			}
 			else if(objectType==ObjectType.TABLE_LOOKUP){
 				Numeric index=Interpreter.evaluateTokens(args[0],curThread,sample);
-				numeric[curThread]=new Numeric(curTable.getLookupValue(index.getDouble(), strArgs[1]));
+				if(lookup!=null){numeric[curThread]=new Numeric(lookup.getValue(index.getDouble()));}
+				else{numeric[curThread]=new Numeric(curTable.getLookupValue(index.getDouble(), strArgs[1]));}
 			}
 			else if(objectType==ObjectType.MATRIX_ELEMENT){
 				numeric[curThread]=matrix.getMatrixValue(strArgs, myModel);
@@ -239,19 +263,20 @@ public class Token{
 			}
 			else if(objectType==ObjectType.PARAM_MATRIX){
 				if(curParam.locked==false){
-					curParam.parsedTokens=Interpreter.parse(curParam.expression, myModel);
-					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens,curThread,sample);
+					curParam.parsedTokens=myModel.parseExpression(curParam.expression);
+					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens,curThread,sample).copy();
 					if(sample){curParam.locked=true;}
 				}
 				numeric[curThread]=curParam.value.getMatrixValue(strArgs,myModel);
 			}
 			else if(objectType==ObjectType.VAR_MATRIX){
-				if(curVar.value==null){ //not initialized
-					curVar.parsedTokens=Interpreter.parse(curVar.expression, myModel);
-					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parsedTokens,curThread,sample);
+				if(curVar.value[curThread]==null){ //not initialized
+					if(curVar.valid==false){throw new NumericException("Invalid or circular variable",curVar.name);}
+					curVar.parsedTokens=myModel.parseExpression(curVar.expression);
+					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parsedTokens,curThread,sample).copy();
 				}
 				else if(curVar.locked[curThread]==false && curVar.independent==false) {
-					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parsedTokens,curThread,sample);
+					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parsedTokens,curThread,sample).copy();
 					curVar.locked[curThread]=true;
 				}
 				numeric[curThread]=curVar.value[curThread].getMatrixValue(strArgs,myModel);
@@ -260,7 +285,7 @@ public class Token{
 				double matrix[][]=new double[nrow][ncol];
 				for(int i=0; i<nrow; i++){
 					for(int j=0; j<ncol; j++){
-						matrix[i][j]=Interpreter.evaluateTokens(matrixTokens[i][j],curThread,sample).getDouble();
+						matrix[i][j]=Interpreter.evaluateDouble(matrixTokens[i][j],curThread,sample);
 					}
 				}
 				numeric[curThread]=new Numeric(matrix);
@@ -272,6 +297,24 @@ public class Token{
 		}
 	}
 	
+	/**
+	 * Evaluates a table distribution function (PMF/CDF/quantile) or moment
+	 */
+	private Numeric evaluateTableDist(int curThread) throws Exception{
+		if(tableDist==null){return(curTable.evaluateDist(strArgs,distFx));}
+		if(strArgs.length==2){ //(p,~)
+			if(distFx==-1 || distFx==3){return(new Numeric(tableDist.getMean()));}
+			else if(distFx==4){return(new Numeric(tableDist.getVariance()));}
+		}
+		else{ //(k,p,f)
+			Numeric k=Interpreter.evaluateTokens(args[0],curThread,false);
+			if(distFx==0){return(new Numeric(tableDist.pmf(k.getDouble())));}
+			else if(distFx==1){return(new Numeric(tableDist.cdf(k.getDouble())));}
+			else if(distFx==2){return(new Numeric(tableDist.quantile(k.getProb())));}
+		}
+		throw new NumericException("Invalid parameters",curTable.name);
+	}
+	
 	private Numeric[] evalArgs(int curThread, boolean sample) throws Exception{
 		Numeric argsNumeric[]=new Numeric[args.length];
 		for(int i=0; i<args.length; i++){
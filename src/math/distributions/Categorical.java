@@ -150,8 +150,7 @@ public final class Categorical{
 				throw new NumericException("p sums to "+cdf[n-1],"Cat");
 			}
 			//Sample
-			int k=0;
-			while(cdf[k]<x){k++;}
+			int k=MathUtils.searchCDF(cdf,x);
 			return(new Numeric(k));
 		}
 		else { //matrix
@@ -177,8 +176,7 @@ public final class Categorical{
 					throw new NumericException("p sums to "+cdf[n-1],"Cat");
 				}
 				//Sample
-				int k=0;
-				while(cdf[k]<x){k++;}
+				int k=MathUtils.searchCDF(cdf,x);
 				vals.matrix[r][0]=k;
 			}
 			return(vals);
@@ -291,8 +289,7 @@ public final class Categorical{
 			}
 			//Sample
 			double rand=generator.nextDouble();
-			int k=0;
-			while(cdf[k]<rand){k++;}
+			int k=MathUtils.searchCDF(cdf,rand);
 			return(new Numeric(k));
 		}
 		else { //matrix
@@ -311,8 +308,7 @@ public final class Categorical{
 				}
 				//Sample
 				double rand=generator.nextDouble();
-				int k=0;
-				while(cdf[k]<rand){k++;}
+				int k=MathUtils.searchCDF(cdf,rand);
 				vals.matrix[r][0]=k;
 			}
 			return(vals);
@@ -134,8 +134,7 @@ public final class Multinomial{
 		double curSample[][]=new double[1][len];
 		for(int i=0; i<n; i++){
 			double rand=generator.nextDouble();
-			int k=0;
-			while(cdf[k]<rand){k++;}
+			int k=MathUtils.searchCDF(cdf,rand);
 			curSample[0][k]++;
 		}
 		return(new Numeric(curSample));
@@ -148,7 +148,7 @@ public class DecisionTree{
 				else{ //Evaluate text
 					try{
 						curNode.curProbTokens=Interpreter.parse(curNode.prob, myModel);
-						curNode.curProb[0]=Interpreter.evaluateTokens(curNode.curProbTokens, 0, false).getDouble();
+						curNode.curProb[0]=Interpreter.evaluateDouble(curNode.curProbTokens, 0, false);
 					}catch(Exception e){
 						validProbs=false;
 						curNode.highlightTextField(0, Color.YELLOW); //Prob
@@ -170,7 +170,7 @@ public class DecisionTree{
 				for(int c=0; c<numDim; c++){
 					try{
 						curNode.curCostTokens[c]=Interpreter.parse(curNode.cost[c], myModel);
-						curNode.curCosts[c]=Interpreter.evaluateTokens(curNode.curCostTokens[c], 0, false).getDouble();
+						curNode.curCosts[c]=Interpreter.evaluateDouble(curNode.curCostTokens[c], 0, false);
 						
 						if(Double.isNaN(curNode.curCosts[c])){
 							curNode.highlightTextField(1, Color.YELLOW); //Cost
@@ -188,7 +188,7 @@ public class DecisionTree{
 				for(int c=0; c<numDim; c++){
 					try{
 						curNode.curPayoffTokens[c]=Interpreter.parse(curNode.payoff[c],myModel);
-						curNode.curPayoffs[c]=Interpreter.evaluateTokens(curNode.curPayoffTokens[c], 0, false).getDouble();
+						curNode.curPayoffs[c]=Interpreter.evaluateDouble(curNode.curPayoffTokens[c], 0, false);
 						if(Double.isNaN(curNode.curPayoffs[c])){
 							curNode.highlightTextField(2, Color.YELLOW); //Payoff
 							errors.add("Node "+curNode.name+": Payoff Error ("+curNode.payoff[c]+")");
@@ -18,10 +18,14 @@
 
 package tree;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.swing.ProgressMonitor;
 import base.AmuaModel;
 import base.MicroStats;
+import base.Scheduler;
 import main.MersenneTwisterFast;
+import main.RandomStreams;
 import main.Variable;
 import math.Interpreter;
 import math.MathUtils;
@@ -32,7 +36,7 @@ public class TreeMonteCarlo{
 	TreeNode root;
 	DecisionTree tree;
 	int numPeople, numStrat;
-	TreePerson people[];
+	TreePopulation people;
 	int numDim;
 	int numVars;
 	Variable variables[];
@@ -49,7 +53,15 @@ public class TreeMonteCarlo{
 	int numSubgroups;
 	int subgroupSize[];
 	boolean cancelled;
-	Exception threadError; //caught inside multithread and thrown outside
+	/**
+	 * Key of the run's random number streams
+	 */
+	long runKey;
+	int numChunks;
+	/**
+	 * Number of people per batch when streaming
+	 */
+	static final int BATCH_SIZE=1024;
 	
 	//Constructor
 	public TreeMonteCarlo(TreeNode root){
@@ -57,8 +69,6 @@ public class TreeMonteCarlo{
 		this.tree=root.tree;
 		this.myModel=root.myModel;
 		
-		threadError=null;
-		
 		//Individuals
 		numPeople=myModel.cohortSize;
 		if(myModel.cluster==false) { //desktop
@@ -103,20 +113,18 @@ public class TreeMonteCarlo{
 		
 		//multi-thread
 		final int numThreads=myModel.numThreads;
+		numChunks=Scheduler.getNumChunks(numPeople);
 		for(int s=0; s<tree.nodes.size(); s++){
 			TreeNode curNode=tree.nodes.get(s);
-			curNode.setThreads(numThreads,numDim,numSubgroups);
+			curNode.setThreads(numThreads,numChunks,numDim,numSubgroups);
 		}
 		
-		//Initialize random number generator
+		//Initialize random number streams - each chunk of people gets its own generators
+		runKey=myModel.CRN ? RandomStreams.getKey(myModel.crnSeed) : RandomStreams.newKey();
 		myModel.generatorVar=new MersenneTwisterFast[numThreads];
 		myModel.curGenerator=new MersenneTwisterFast[numThreads];
 		for(int n=0; n<numThreads; n++){
-			myModel.generatorVar[n]=new MersenneTwisterFast(System.currentTimeMillis()+n); //offset so that not all get the same time in millis
-			if(myModel.CRN){ //seend RNG
-				myModel.generatorVar[n].setSeed(myModel.crnSeed+555+n); //initialization seed
-			}
-			myModel.curGenerator[n]=myModel.generatorVar[n];
+			useGenerator(RandomStreams.create(RandomStreams.split(runKey, RandomStreams.REFRESH)),n);
 		}
 
 		//initialize probs
@@ -133,92 +141,90 @@ public class TreeMonteCarlo{
 			myModel.parseSubgroups();
 		}
 		
-		//initialize people
-		people=new TreePerson[numPeople];
-		
-		final int blockSize= numPeople/numThreads;
-		Thread[] threads = new Thread[numThreads];
-		for(int n=0; n<numThreads; n++){
-			final int finalN = n;
-			threads[n] = new Thread() {
-				public void run(){
-					try{
-						int threadProg=0;
-						final int beginIndex = finalN * blockSize;
-						final int endIndex = (finalN==numThreads-1) ? numPeople :(finalN+1)*blockSize;
-						for(int p=beginIndex; p<endIndex; p++){
-							people[p]=new TreePerson();
-							people[p].initVariableVals=new Numeric[numVars];
-							people[p].variableVals=new Numeric[numVars];
-							people[p].costs=new double[numDim];
-							people[p].payoffs=new double[numDim];
-							//initialize independent variables
-							myModel.unlockVarsAll(finalN);
-							for(int v=0; v<numVars; v++){
-								if(variables[v].independent){
-									variables[v].locked[finalN]=true;
-									people[p].initVariableVals[v]=Interpreter.evaluateTokens(variables[v].parsedTokens, finalN, true);
-									variables[v].value[finalN]=people[p].initVariableVals[v];
-								}
-							}
-							//Update any dependent variables
-							for(int v=0; v<numVars; v++){
-								if(variables[v].independent==true){
-									variables[v].updateDependents(myModel,finalN);
-									people[p].initVariableVals[v]=variables[v].value[finalN];
-								}
-							}
-
-							//get subgroup
-							if(myModel.reportSubgroups){
-								people[p].inSubgroup=new boolean[numSubgroups];
-								for(int g=0; g<numSubgroups; g++){
-									Numeric curVal=Interpreter.evaluateTokens(myModel.subgroupTokens[g], finalN, false);
-									people[p].inSubgroup[g]=curVal.getBool();
-								}
-							}
-							
-							if(finalN==0 && display){ //update progress from thread 0
-								threadProg++;
-								updateProgress(threadProg*numThreads);
-								if(myModel.cluster==false) {
-									if(progress.isCanceled()){
-										cancelled=true;	p=numPeople;
-									}
-								}
-							}
-						}
+		if(myModel.streamMicrosim){ //process people in batches, only keep summaries
+			simulateBatches(display,numThreads);
+		}
+		else{
+			simulatePopulation(display,numThreads);
+		}
 
-					} catch(Exception e){
-						threadError=e;
+		if(myModel.cluster==false) {
+			progress.close();
+		}
+		
+		//sum across chunks
+		for(int s=0; s<tree.nodes.size(); s++){
+			TreeNode curNode=tree.nodes.get(s);
+			curNode.sumChunks();
+		}
+		
+		//get EVs
+		for(int c=0; c<root.numChildren; c++){
+			calcEV(root.children[c]);
+		}
+				
+		//repoint variable vals
+		for(int c=0; c<numVars; c++){
+			variables[c].value[0]=origVariableVals[c];
+		}
+				
+		endTime=System.currentTimeMillis();
+				
+		//update display
+		if(cancelled==false && display==true){
+			for(int s=0; s<tree.nodes.size(); s++){
+				TreeNode node=tree.nodes.get(s);
+				if(node.type==1){ //chance
+					String buildString="";
+					for(int i=0; i<numDim-1; i++){
+						buildString+="("+myModel.dimInfo.dimSymbols[i]+") "+MathUtils.round(node.expectedValues[i],myModel.dimInfo.decimals[i])+"; ";
+					}
+					buildString+="("+myModel.dimInfo.dimSymbols[numDim-1]+") "+MathUtils.round(node.expectedValues[numDim-1],myModel.dimInfo.decimals[numDim-1]);
+					node.textEV.setText(buildString);
+					if(node.visible){
+						node.textEV.setVisible(true);
+					}
+				}
+				else if(node.type==2){ //terminal node
+					node.textNumEnd.setText(node.totalDenom+"");
+					if(node.visible){
+						node.textNumEnd.setVisible(true);
 					}
 				}
-			};
-			threads[n].start();
-		}
-		//Wait for threads to finish
-		for(int n=0; n<numThreads; n++){
-			try{
-				threads[n].join();
-			} catch (InterruptedException e){
-				System.exit(-1);
 			}
 		}
+	}
+	
+	
+	/**
+	 * Initializes all people, then simulates each strategy for the whole population
+	 */
+	private void simulatePopulation(final boolean display, final int numThreads) throws Exception{
+		//initialize people
+		people=new TreePopulation(numPeople,numDim,numVars,numSubgroups);
 		
-		//Check for error
-		if(threadError!=null){
-			throw threadError;
-		}
+		final AtomicInteger prog=new AtomicInteger();
+		Scheduler.run(numThreads, numChunks, new Scheduler.ChunkTask(){
+			public void run(int chunk, int slot) throws Exception{
+				if(cancelled){return;}
+				useGenerator(getChunkGenerator(RandomStreams.INITIALIZE,0,chunk),slot);
+				final int beginIndex=Scheduler.getChunkBegin(chunk, numChunks, numPeople);
+				final int endIndex=Scheduler.getChunkBegin(chunk+1, numChunks, numPeople);
+				for(int p=beginIndex; p<endIndex; p++){
+					initializePerson(people,p,slot);
+				}
+				chunkComplete(prog.addAndGet(endIndex-beginIndex),display);
+			}
+		});
 		
 		//Get subgroup indices
 		subgroupSize=new int[numSubgroups];
 		int subgroupCounters[]=new int[numSubgroups];
 		for(int p=0; p<numPeople; p++){
-			people[p].subgroupIndex=new int[numSubgroups];
 			for(int g=0; g<numSubgroups; g++){
-				if(people[p].inSubgroup[g]){
+				if(people.inSubgroup[g][p]){
 					subgroupSize[g]++;
-					people[p].subgroupIndex[g]=subgroupCounters[g];
+					people.subgroupIndex[g][p]=subgroupCounters[g];
 					subgroupCounters[g]++;
 				}
 			}
@@ -226,13 +232,6 @@ public class TreeMonteCarlo{
 		
 		//Simulate each strategy
 		for(int s=0; s<numStrat; s++){
-			for(int n=0; n<numThreads; n++){
-				if(myModel.CRN){ //Common random numbers
-					myModel.generatorVar[n].setSeed(myModel.crnSeed+n);
-				}
-				myModel.curGenerator[n]=myModel.generatorVar[n];
-			}
-			
 			strategyNames[s]=root.children[s].name;
 			
 			//Initialize individual summaries
@@ -248,127 +247,214 @@ public class TreeMonteCarlo{
 			//Simulate people - multithread
 			final int finalS=s;
 			final TreeNode strategy=root.children[s];
-			for(int n=0; n<numThreads; n++){
-				final int finalN = n;
-				threads[n] = new Thread() {
-					public void run(){
-						try{
-							final int beginIndex = finalN * blockSize;
-							final int endIndex = (finalN==numThreads-1) ? numPeople :(finalN+1)*blockSize;
-							int threadProg=0;
-							for(int p=beginIndex; p<endIndex; p++){
-								TreePerson curPerson=people[p];
-								for(int v=0; v<numVars; v++){ //get person-specific variables
-									curPerson.variableVals[v]=curPerson.initVariableVals[v].copy();
-									variables[v].value[finalN]=curPerson.variableVals[v];
-								}
-								for(int d=0; d<numDim; d++){ //reset outcomes
-									curPerson.costs[d]=0; 
-									curPerson.payoffs[d]=0;
-								}
+			Scheduler.run(numThreads, numChunks, new Scheduler.ChunkTask(){
+				public void run(int chunk, int slot) throws Exception{
+					if(cancelled){return;}
+					useGenerator(getChunkGenerator(RandomStreams.SIMULATE,finalS,chunk),slot);
+					final int beginIndex=Scheduler.getChunkBegin(chunk, numChunks, numPeople);
+					final int endIndex=Scheduler.getChunkBegin(chunk+1, numChunks, numPeople);
+					for(int p=beginIndex; p<endIndex; p++){
+						for(int v=0; v<numVars; v++){ //get person-specific variables
+							people.variableVals[v][p]=people.initVariableVals[v][p].copy();
+							variables[v].value[slot]=people.variableVals[v][p];
+						}
+						for(int d=0; d<numDim; d++){ //reset outcomes
+							people.costs[d][p]=0; 
+							people.payoffs[d][p]=0;
+						}
 
-								//traverse tree
-								traverseNode(strategy,curPerson,finalN);
+						//traverse tree
+						traverseNode(strategy,people,p,slot,chunk);
 
-								//record overall individual results
-								if(myModel.displayIndResults){
-									for(int d=0; d<numDim; d++){microStats[finalS].outcomes[d][p]=curPerson.costs[d]+curPerson.payoffs[d];}
-									for(int v=0; v<numVars; v++){microStats[finalS].variables[v][p]=curPerson.variableVals[v].getValue();}
+						//record overall individual results
+						if(myModel.displayIndResults){
+							for(int d=0; d<numDim; d++){microStats[finalS].outcomes[d][p]=people.costs[d][p]+people.payoffs[d][p];}
+							for(int v=0; v<numVars; v++){microStats[finalS].variables[v][p]=people.variableVals[v][p].getValue();}
 
-									//record subgroup results
-									if(myModel.reportSubgroups){
-										for(int g=0; g<numSubgroups; g++){
-											if(curPerson.inSubgroup[g]){
-												int z=curPerson.subgroupIndex[g]; //cur index in subgroup
-												for(int d=0; d<numDim; d++){microStatsGroup[g][finalS].outcomes[d][z]=microStats[finalS].outcomes[d][p];}
-												for(int v=0; v<numVars; v++){microStatsGroup[g][finalS].variables[v][z]=microStats[finalS].variables[v][p];}
-											}
-										}
-									}
-								}
-
-								if(finalN==0 && display){ //update progress from thread 0
-									threadProg++;
-									updateProgress(numPeople+(finalS*numPeople)+(threadProg*numThreads));
-									if(myModel.cluster==false) {
-										if(progress.isCanceled()){
-											cancelled=true;	p=numPeople;
-										}
+							//record subgroup results
+							if(myModel.reportSubgroups){
+								for(int g=0; g<numSubgroups; g++){
+									if(people.inSubgroup[g][p]){
+										int z=people.subgroupIndex[g][p]; //cur index in subgroup
+										for(int d=0; d<numDim; d++){microStatsGroup[g][finalS].outcomes[d][z]=microStats[finalS].outcomes[d][p];}
+										for(int v=0; v<numVars; v++){microStatsGroup[g][finalS].variables[v][z]=microStats[finalS].variables[v][p];}
 									}
 								}
-							} //end simulate loop
-						} catch(Exception e){
-							threadError=e;
+							}
 						}
-					}
-				};
-				threads[n].start();
-			}
-			//Wait for threads to finish
-			for(int n=0; n<numThreads; n++){
-				try{
-					threads[n].join();
-				} catch (InterruptedException e){
-					System.exit(-1);
+					} //end simulate loop
+					chunkComplete(prog.addAndGet(endIndex-beginIndex),display);
 				}
-			}
-			
-			//Check for error
-			if(threadError!=null){
-				throw threadError;
-			}
+			});
 			
 			if(cancelled){s=numStrat;}
 
 		} //end strategy loop
-
-		if(myModel.cluster==false) {
-			progress.close();
+	}
+	
+	/**
+	 * Simulates people in fixed-size batches, running every strategy on a batch before moving on to the next one, so
+	 * the population is never stored and individual results are folded into streaming summaries.
+	 * Chunks of people use the same random number streams as simulatePopulation, so with a seeded RNG the draws match.
+	 */
+	private void simulateBatches(final boolean display, final int numThreads) throws Exception{
+		for(int s=0; s<numStrat; s++){
+			strategyNames[s]=root.children[s].name;
 		}
 		
-		//sum across threads
-		for(int s=0; s<tree.nodes.size(); s++){
-			TreeNode curNode=tree.nodes.get(s);
-			curNode.sumThreads();
-		}
+		//Chunk summaries, merged in chunk order at the end
+		final MicroStats chunkStats[][]=new MicroStats[numStrat][numChunks];
+		final MicroStats chunkStatsGroup[][][]=new MicroStats[numSubgroups][numStrat][numChunks];
+		final int chunkSubgroupSize[][]=new int[numChunks][numSubgroups];
+		final AtomicInteger prog=new AtomicInteger();
 		
-		//get EVs
-		for(int c=0; c<root.numChildren; c++){
-			calcEV(root.children[c]);
-		}
+		Scheduler.run(numThreads, numChunks, new Scheduler.ChunkTask(){
+			public void run(int chunk, int slot) throws Exception{
+				if(cancelled){return;}
+				final int beginIndex=Scheduler.getChunkBegin(chunk, numChunks, numPeople);
+				final int endIndex=Scheduler.getChunkBegin(chunk+1, numChunks, numPeople);
 				
-		//repoint variable vals
-		for(int c=0; c<numVars; c++){
-			variables[c].value[0]=origVariableVals[c];
-		}
-				
-		endTime=System.currentTimeMillis();
+				MersenneTwisterFast initGenerator=getChunkGenerator(RandomStreams.INITIALIZE,0,chunk);
+				MersenneTwisterFast strategyGenerator[]=new MersenneTwisterFast[numStrat];
+				for(int s=0; s<numStrat; s++){
+					strategyGenerator[s]=getChunkGenerator(RandomStreams.SIMULATE,s,chunk);
+					if(myModel.displayIndResults){
+						chunkStats[s][chunk]=new MicroStats(myModel);
+						for(int g=0; g<numSubgroups; g++){
+							chunkStatsGroup[g][s][chunk]=new MicroStats(myModel);
+						}
+					}
+				}
 				
-		//update display
-		if(cancelled==false && display==true){
-			for(int s=0; s<tree.nodes.size(); s++){
-				TreeNode node=tree.nodes.get(s);
-				if(node.type==1){ //chance
-					String buildString="";
-					for(int i=0; i<numDim-1; i++){
-						buildString+="("+myModel.dimInfo.dimSymbols[i]+") "+MathUtils.round(node.expectedValues[i],myModel.dimInfo.decimals[i])+"; ";
+				TreePopulation batch=new TreePopulation(Math.min(BATCH_SIZE, endIndex-beginIndex),numDim,numVars,numSubgroups);
+				double personOutcomes[]=new double[numDim];
+				double personVars[]=new double[numVars];
+				for(int b=beginIndex; b<endIndex && cancelled==false; b+=BATCH_SIZE){
+					int batchSize=Math.min(BATCH_SIZE, endIndex-b);
+					
+					//initialize people in batch
+					useGenerator(initGenerator,slot);
+					for(int p=0; p<batchSize; p++){
+						initializePerson(batch,p,slot);
+						for(int g=0; g<numSubgroups; g++){
+							if(batch.inSubgroup[g][p]){chunkSubgroupSize[chunk][g]++;}
+						}
 					}
-					buildString+="("+myModel.dimInfo.dimSymbols[numDim-1]+") "+MathUtils.round(node.expectedValues[numDim-1],myModel.dimInfo.decimals[numDim-1]);
-					node.textEV.setText(buildString);
-					if(node.visible){
-						node.textEV.setVisible(true);
+					
+					//simulate each strategy
+					for(int s=0; s<numStrat; s++){
+						useGenerator(strategyGenerator[s],slot);
+						TreeNode strategy=root.children[s];
+						for(int p=0; p<batchSize; p++){
+							for(int v=0; v<numVars; v++){ //get person-specific variables
+								batch.variableVals[v][p]=batch.initVariableVals[v][p].copy();
+								variables[v].value[slot]=batch.variableVals[v][p];
+							}
+							for(int d=0; d<numDim; d++){ //reset outcomes
+								batch.costs[d][p]=0; 
+								batch.payoffs[d][p]=0;
+							}
+							
+							traverseNode(strategy,batch,p,slot,chunk);
+							
+							if(myModel.displayIndResults){
+								for(int d=0; d<numDim; d++){personOutcomes[d]=batch.costs[d][p]+batch.payoffs[d][p];}
+								for(int v=0; v<numVars; v++){personVars[v]=batch.variableVals[v][p].getValue();}
+								chunkStats[s][chunk].addPerson(personOutcomes, personVars);
+								for(int g=0; g<numSubgroups; g++){
+									if(batch.inSubgroup[g][p]){
+										chunkStatsGroup[g][s][chunk].addPerson(personOutcomes, personVars);
+									}
+								}
+							}
+						}
 					}
+					
+					chunkComplete(prog.addAndGet(batchSize*(numStrat+1)),display);
 				}
-				else if(node.type==2){ //terminal node
-					node.textNumEnd.setText(node.totalDenom+"");
-					if(node.visible){
-						node.textNumEnd.setVisible(true);
+			}
+		});
+		
+		//Merge chunk summaries
+		subgroupSize=new int[numSubgroups];
+		for(int k=0; k<numChunks; k++){
+			for(int g=0; g<numSubgroups; g++){
+				subgroupSize[g]+=chunkSubgroupSize[k][g];
+			}
+		}
+		if(myModel.displayIndResults && cancelled==false){
+			for(int s=0; s<numStrat; s++){
+				microStats[s]=new MicroStats(myModel);
+				for(int k=0; k<numChunks; k++){
+					microStats[s].merge(chunkStats[s][k]);
+				}
+				for(int g=0; g<numSubgroups; g++){
+					microStatsGroup[g][s]=new MicroStats(myModel);
+					for(int k=0; k<numChunks; k++){
+						microStatsGroup[g][s].merge(chunkStatsGroup[g][s][k]);
 					}
 				}
 			}
 		}
 	}
 	
+	/**
+	 * Returns a new generator for a chunk of people.  With common random numbers every strategy uses the same simulation streams.
+	 */
+	private MersenneTwisterFast getChunkGenerator(int purpose, int strategy, int chunk){
+		long key=RandomStreams.split(runKey, purpose);
+		if(purpose==RandomStreams.SIMULATE && myModel.CRN==false){
+			key=RandomStreams.split(key, strategy);
+		}
+		return(RandomStreams.create(RandomStreams.split(key, chunk)));
+	}
+	
+	/**
+	 * Updates progress once a chunk or batch of people is done.  Called from worker threads
+	 */
+	private synchronized void chunkComplete(int curProg, boolean display){
+		if(display){
+			updateProgress(curProg);
+			if(myModel.cluster==false && progress.isCanceled()){
+				cancelled=true;
+			}
+		}
+	}
+	
+	/**
+	 * Samples a person's independent variables and subgroup membership
+	 */
+	private void initializePerson(TreePopulation population, int p, int curThread) throws Exception{
+		//initialize independent variables
+		myModel.unlockVarsAll(curThread);
+		for(int v=0; v<numVars; v++){
+			if(variables[v].independent){
+				variables[v].locked[curThread]=true;
+				population.initVariableVals[v][p]=Interpreter.evaluateTokens(variables[v].parsedTokens, curThread, true).copy();
+				variables[v].value[curThread]=population.initVariableVals[v][p];
+			}
+		}
+		//Update any dependent variables
+		for(int v=0; v<numVars; v++){
+			if(variables[v].independent==true){
+				variables[v].updateDependents(myModel,curThread);
+				population.initVariableVals[v][p]=variables[v].value[curThread];
+			}
+		}
+
+		//get subgroup
+		if(myModel.reportSubgroups){
+			for(int g=0; g<numSubgroups; g++){
+				Numeric curVal=Interpreter.evaluateTokens(myModel.subgroupTokens[g], curThread, false);
+				population.inSubgroup[g][p]=curVal.getBool();
+			}
+		}
+	}
+	
+	private void useGenerator(MersenneTwisterFast generator, int curThread){
+		myModel.generatorVar[curThread]=generator;
+		myModel.curGenerator[curThread]=generator;
+	}
 	
 	private void updateProgress(int curProg){
 		//progress.setProgress(curProg);
@@ -400,10 +486,10 @@ public class TreeMonteCarlo{
 	 * @throws Exception 
 	 */
 	
-	private void traverseNode(TreeNode node, TreePerson curPerson, int curThread) throws Exception{
-		node.nTotalDenom[curThread]++;
+	private void traverseNode(TreeNode node, TreePopulation population, int p, int curThread, int chunk) throws Exception{
+		node.nTotalDenom[chunk]++;
 		for(int g=0; g<numSubgroups; g++){
-			if(curPerson.inSubgroup[g]){node.nTotalDenomGroup[curThread][g]++;}
+			if(population.inSubgroup[g][p]){node.nTotalDenomGroup[chunk][g]++;}
 		}
 				
 		//Update variables
@@ -423,18 +509,18 @@ public class TreeMonteCarlo{
 		if(node.hasCost){
 			for(int d=0; d<numDim; d++){
 				if(node.costHasVar[d]==false){ //use pre-calculated cost
-					node.nTotalCosts[curThread][d]+=node.curCosts[d];
-					curPerson.costs[d]+=node.curCosts[d];
+					node.nTotalCosts[chunk][d]+=node.curCosts[d];
+					population.costs[d][p]+=node.curCosts[d];
 					for(int g=0; g<numSubgroups; g++){
-						if(curPerson.inSubgroup[g]){node.nTotalCostsGroup[curThread][g][d]+=node.curCosts[d];}
+						if(population.inSubgroup[g][p]){node.nTotalCostsGroup[chunk][g][d]+=node.curCosts[d];}
 					}
 				}
 				else{ //has variable, re-evaluate cost
-					double curCost=Interpreter.evaluateTokens(node.curCostTokens[d], curThread, false).getDouble();
-					node.nTotalCosts[curThread][d]+=curCost;
-					curPerson.costs[d]+=curCost;
+					double curCost=Interpreter.evaluateDouble(node.curCostTokens[d], curThread, false);
+					node.nTotalCosts[chunk][d]+=curCost;
+					population.costs[d][p]+=curCost;
 					for(int g=0; g<numSubgroups; g++){
-						if(curPerson.inSubgroup[g]){node.nTotalCostsGroup[curThread][g][d]+=curCost;}
+						if(population.inSubgroup[g][p]){node.nTotalCostsGroup[chunk][g][d]+=curCost;}
 					}
 				}
 			}
@@ -444,18 +530,18 @@ public class TreeMonteCarlo{
 		if(node.type==2){ //terminal node
 			for(int d=0; d<numDim; d++){
 				if(node.payoffHasVar[d]==false){ //use pre-calculated payoff
-					node.nTotalPayoffs[curThread][d]+=node.curPayoffs[d];
-					curPerson.payoffs[d]+=node.curPayoffs[d];
+					node.nTotalPayoffs[chunk][d]+=node.curPayoffs[d];
+					population.payoffs[d][p]+=node.curPayoffs[d];
 					for(int g=0; g<numSubgroups; g++){
-						if(curPerson.inSubgroup[g]){node.nTotalPayoffsGroup[curThread][g][d]+=node.curPayoffs[d];}
+						if(population.inSubgroup[g][p]){node.nTotalPayoffsGroup[chunk][g][d]+=node.curPayoffs[d];}
 					}
 				}
 				else{ //has variable, re-evaluate payoff
-					double curPayoff=Interpreter.evaluateTokens(node.curPayoffTokens[d], curThread, false).getDouble();
-					node.nTotalPayoffs[curThread][d]+=curPayoff;
-					curPerson.payoffs[d]+=curPayoff;
+					double curPayoff=Interpreter.evaluateDouble(node.curPayoffTokens[d], curThread, false);
+					node.nTotalPayoffs[chunk][d]+=curPayoff;
+					population.payoffs[d][p]+=curPayoff;
 					for(int g=0; g<numSubgroups; g++){
-						if(curPerson.inSubgroup[g]){node.nTotalPayoffsGroup[curThread][g][d]+=curPayoff;}
+						if(population.inSubgroup[g][p]){node.nTotalPayoffsGroup[chunk][g][d]+=curPayoff;}
 					}
 				}
 			}
@@ -468,7 +554,7 @@ public class TreeMonteCarlo{
 			}
 			while(rand>node.curChildProbs[curThread][k]){k++;}
 			TreeNode curChild=node.children[k];
-			traverseNode(curChild,curPerson,curThread);
+			traverseNode(curChild,population,p,curThread,chunk);
 		}
 		
 	}
@@ -528,7 +614,7 @@ public class TreeMonteCarlo{
 					indexCompProb=c;
 				}
 				else{ //Evaluate text
-					curChild.curProb[curThread]=Interpreter.evaluateTokens(curChild.curProbTokens, curThread, false).getDouble();
+					curChild.curProb[curThread]=Interpreter.evaluateDouble(curChild.curProbTokens, curThread, false);
 					sumProb+=curChild.curProb[curThread];
 				}
 			}
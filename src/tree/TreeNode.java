@@ -65,9 +65,9 @@ public class TreeNode extends ModelNode{
 	@XmlTransient double totalDenom, totalCosts[], totalPayoffs[], totalNet[];
 	@XmlTransient double totalDenomGroup[],	totalCostsGroup[][], totalPayoffsGroup[][], totalNetGroup[][]; //subgroups
 	//multi-threaded
-	@XmlTransient int numThreads, numDim, numSubgroups;
-	@XmlTransient double nTotalDenom[], nTotalCosts[][], nTotalPayoffs[][];
-	@XmlTransient double nTotalDenomGroup[][], nTotalCostsGroup[][][], nTotalPayoffsGroup[][][];
+	@XmlTransient int numThreads, numChunks, numDim, numSubgroups;
+	@XmlTransient double nTotalDenom[], nTotalCosts[][], nTotalPayoffs[][]; //[chunk]
+	@XmlTransient double nTotalDenomGroup[][], nTotalCostsGroup[][][], nTotalPayoffsGroup[][][]; //[chunk][subgroup]
 	
 	//Visual Attributes
 	@XmlTransient PanelTree panel;
@@ -704,28 +704,35 @@ public class TreeNode extends ModelNode{
 		}
 	}
 	
-	public void setThreads(int numThreads, int numDim, int numSubgroups){
+	/**
+	 * Allocates thread-specific probs and chunk-specific totals.  Each chunk of people is simulated by one thread at a time.
+	 */
+	public void setThreads(int numThreads, int numChunks, int numDim, int numSubgroups){
 		this.numThreads=numThreads;
+		this.numChunks=numChunks;
 		this.numDim=numDim;
 		this.numSubgroups=numSubgroups;
 		curProb=new double[numThreads];
 		if(type==1){curChildProbs=new double[numThreads][numChildren];}
-		nTotalDenom=new double[numThreads];
-		nTotalDenomGroup=new double[numThreads][numSubgroups];
-		nTotalCosts=new double[numThreads][numDim];
-		nTotalCostsGroup=new double[numThreads][numSubgroups][numDim];
-		nTotalPayoffs=new double[numThreads][numDim];
-		nTotalPayoffsGroup=new double[numThreads][numSubgroups][numDim];
+		nTotalDenom=new double[numChunks];
+		nTotalDenomGroup=new double[numChunks][numSubgroups];
+		nTotalCosts=new double[numChunks][numDim];
+		nTotalCostsGroup=new double[numChunks][numSubgroups][numDim];
+		nTotalPayoffs=new double[numChunks][numDim];
+		nTotalPayoffsGroup=new double[numChunks][numSubgroups][numDim];
 	}
 	
-	public void sumThreads(){
+	/**
+	 * Sums totals in chunk order, so results don't depend on the number of threads
+	 */
+	public void sumChunks(){
 		totalDenom=0;
 		totalDenomGroup=new double[numSubgroups];
 		totalCosts=new double[numDim];
 		totalCostsGroup=new double[numSubgroups][numDim];
 		totalPayoffs=new double[numDim];
 		totalPayoffsGroup=new double[numSubgroups][numDim];
-		for(int n=0; n<numThreads; n++){
+		for(int n=0; n<numChunks; n++){
 			totalDenom+=nTotalDenom[n];
 			for(int d=0; d<numDim; d++){
 				totalCosts[d]+=nTotalCosts[n][d];
@@ -0,0 +1,91 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package base;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import main.Constraint;
+import main.Parameter;
+import main.Table;
+import main.Variable;
+import main.VariableUpdate;
+import math.Interpreter;
+
+/**
+ * Parsed tokens are shared by every object with the same expression, so values evaluated from them must not be shared
+ */
+public class ParseExpressionTest{
+
+	private static AmuaModel newModel(){
+		AmuaModel model=new AmuaModel();
+		model.type=0;
+		model.numThreads=1;
+		model.parameters=new ArrayList<Parameter>();
+		model.variables=new ArrayList<Variable>();
+		model.innateVariables=new ArrayList<Variable>();
+		model.tables=new ArrayList<Table>();
+		model.constraints=new ArrayList<Constraint>();
+		return(model);
+	}
+
+	private static Variable addVariable(AmuaModel model, String name, String expression){
+		Variable var=new Variable();
+		var.name=name;
+		var.expression=expression;
+		model.variables.add(var);
+		return(var);
+	}
+
+	@Test
+	public void updatingVariableDoesNotChangeVariableWithSameExpression() throws Exception{
+		AmuaModel model=newModel();
+		Variable a=addVariable(model,"a","0");
+		Variable b=addVariable(model,"b","0");
+		model.validateModelObjects();
+
+		new VariableUpdate("a++",model).update(false,0);
+		new VariableUpdate("a+=5",model).update(false,0);
+
+		assertEquals(6, a.value[0].getInt());
+		assertEquals(0, b.value[0].getInt());
+		assertEquals(0, Interpreter.evaluate("b",model,false).getInt());
+		assertEquals(0, Interpreter.evaluate("0",model,false).getInt()); //cached constant
+	}
+
+	@Test
+	public void updatingVariableDoesNotChangeParameterWithSameExpression() throws Exception{
+		AmuaModel model=newModel();
+		Parameter p=new Parameter();
+		p.name="p";
+		p.expression="2";
+		model.parameters.add(p);
+		Variable a=addVariable(model,"a","2");
+		model.validateModelObjects();
+
+		new VariableUpdate("a*=3",model).update(false,0);
+
+		assertEquals(6, a.value[0].getInt());
+		assertEquals(2, p.value.getInt());
+		assertEquals(2, Interpreter.evaluate("p",model,false).getInt());
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package math;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import base.AmuaModel;
+import main.Constraint;
+import main.Parameter;
+import main.Table;
+import main.Variable;
+
+/**
+ * Compiled expressions must give the same results as the interpreter, including Operators' integer rules
+ */
+public class CompiledExpressionTest{
+
+	private AmuaModel model;
+	private Variable x, y;
+
+	private void setup(Numeric xValue, Numeric yValue){
+		model=new AmuaModel();
+		model.type=0;
+		model.numThreads=1;
+		model.parameters=new ArrayList<Parameter>();
+		model.variables=new ArrayList<Variable>();
+		model.innateVariables=new ArrayList<Variable>();
+		model.tables=new ArrayList<Table>();
+		model.constraints=new ArrayList<Constraint>();
+		x=addVariable("x",xValue);
+		y=addVariable("y",yValue);
+	}
+
+	private Variable addVariable(String name, Numeric value){
+		Variable var=new Variable();
+		var.name=name;
+		var.expression=value.toString();
+		var.value[0]=value;
+		var.locked[0]=true;
+		var.independent=true;
+		model.variables.add(var);
+		return(var);
+	}
+
+	/**
+	 * Evaluates twice so the second evaluation uses the compiled form
+	 */
+	private double evaluate(String text, boolean compile) throws Exception{
+		model.compileExpressions=compile;
+		Token tokens[]=Interpreter.parse(text,model);
+		double first=Interpreter.evaluateDouble(tokens,0,false);
+		double second=Interpreter.evaluateDouble(tokens,0,false);
+		if(compile){assertNotNull(tokens[tokens.length-1].compiled);}
+		assertEquals(first, second, 0);
+		return(second);
+	}
+
+	private void check(String text, Numeric xValue, Numeric yValue) throws Exception{
+		setup(xValue,yValue);
+		assertEquals(text, evaluate(text,false), evaluate(text,true), 0);
+	}
+
+	@Test
+	public void integerOperandsFollowOperators() throws Exception{
+		check("x^y", new Numeric(2), new Numeric(40)); //int overflow
+		check("x^y", new Numeric(2.0), new Numeric(40));
+		check("x^y", new Numeric(2), new Numeric(-1));
+		check("x%y", new Numeric(7), new Numeric(3));
+		check("x%y", new Numeric(7.5), new Numeric(2));
+		check("x*y+1", new Numeric(100000), new Numeric(100000));
+		check("(x/y)^40", new Numeric(4), new Numeric(2)); //divide snaps to integer
+		check("x-y*3", new Numeric(5), new Numeric(2.5));
+		check("x^y+2^40", new Numeric(1.5), new Numeric(2)); //folded constant
+	}
+
+	@Test
+	public void integerModulusByZeroThrows() throws Exception{
+		setup(new Numeric(7), new Numeric(3));
+		Token tokens[]=Interpreter.parse("x%y",model);
+		Interpreter.evaluateDouble(tokens,0,false);
+		assertNotNull(tokens[tokens.length-1].compiled);
+		y.value[0]=new Numeric(0);
+		try{
+			Interpreter.evaluateDouble(tokens,0,false);
+			fail("Expected ArithmeticException");
+		} catch(ArithmeticException e){
+			//same as the interpreter
+		}
+	}
+}